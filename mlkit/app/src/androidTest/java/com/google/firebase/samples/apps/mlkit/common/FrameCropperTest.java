@@ -0,0 +1,108 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import android.graphics.Rect;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Instrumented tests for {@link FrameCropper}. They run on a device, since they need the real
+ * {@link Rect}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FrameCropperTest {
+
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 480;
+
+  @Test
+  public void uprightToSensor_noRotation_keepsRect() {
+    Rect out = new Rect();
+
+    FrameCropper.uprightToSensor(new Rect(10, 20, 50, 80), WIDTH, HEIGHT, 0, out);
+
+    assertEquals(new Rect(10, 20, 50, 80), out);
+  }
+
+  @Test
+  public void uprightToSensor_rotation90_swapsAxes() {
+    Rect out = new Rect();
+
+    FrameCropper.uprightToSensor(new Rect(10, 20, 50, 80), WIDTH, HEIGHT, 1, out);
+
+    assertEquals(new Rect(20, 430, 80, 470), out);
+  }
+
+  @Test
+  public void sensorToUpright_undoesUprightToSensor() {
+    Rect upright = new Rect(10, 20, 50, 80);
+    Rect sensor = new Rect();
+    Rect out = new Rect();
+
+    for (int rotation = 0; rotation < 4; rotation++) {
+      FrameCropper.uprightToSensor(upright, WIDTH, HEIGHT, rotation, sensor);
+      FrameCropper.sensorToUpright(sensor, WIDTH, HEIGHT, rotation, out);
+
+      assertEquals("rotation " + rotation, upright, out);
+    }
+  }
+
+  @Test
+  public void alignToChroma_growsToEvenAndClamps() {
+    Rect rect = new Rect(-3, 5, 9, 11);
+
+    FrameCropper.alignToChroma(rect, 8, 11);
+
+    assertEquals(new Rect(0, 4, 8, 10), rect);
+  }
+
+  @Test
+  public void crop_copiesLumaAndChromaRows() {
+    // A 4x4 frame whose samples hold their own index.
+    byte[] nv21 = new byte[4 * 4 * 3 / 2];
+    for (int i = 0; i < nv21.length; i++) {
+      nv21[i] = (byte) i;
+    }
+    byte[] out = new byte[2 * 2 * 3 / 2];
+
+    FrameCropper.crop(nv21, 0, 4, 4, new Rect(2, 2, 4, 4), out);
+
+    assertArrayEquals(new byte[] {10, 11, 14, 15, 22, 23}, out);
+  }
+
+  @Test
+  public void crop_honorsOffset() {
+    byte[] nv21 = new byte[1 + 4 * 4 * 3 / 2];
+    for (int i = 1; i < nv21.length; i++) {
+      nv21[i] = (byte) (i - 1);
+    }
+    byte[] out = new byte[2 * 2 * 3 / 2];
+
+    FrameCropper.crop(nv21, 1, 4, 4, new Rect(0, 0, 2, 2), out);
+
+    assertArrayEquals(new byte[] {0, 1, 4, 5, 16, 17}, out);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void crop_tooSmallOutput_throws() {
+    FrameCropper.crop(new byte[24], 0, 4, 4, new Rect(0, 0, 4, 4), new byte[23]);
+  }
+}
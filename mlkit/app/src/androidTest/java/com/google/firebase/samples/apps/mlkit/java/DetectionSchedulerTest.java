@@ -0,0 +1,141 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Rect;
+
+import androidx.annotation.Nullable;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Instrumented tests for {@link DetectionScheduler}. */
+@RunWith(AndroidJUnit4.class)
+public class DetectionSchedulerTest {
+
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 480;
+
+  /** Returns a fixed region and remembers how many frames it was told were skipped. */
+  private static class FixedPolicy implements DetectionScheduler.Policy<String> {
+    @Nullable Rect region;
+    int framesSinceDetection = -1;
+
+    FixedPolicy(@Nullable Rect region) {
+      this.region = region;
+    }
+
+    @Nullable
+    @Override
+    public Rect selectRegion(
+        Rect fullFrame,
+        @Nullable String lastResults,
+        @Nullable Rect lastRegion,
+        int framesSinceDetection) {
+      this.framesSinceDetection = framesSinceDetection;
+      return region == null ? null : new Rect(region);
+    }
+  }
+
+  @Test
+  public void next_withoutResults_detectsFullFrame() {
+    FixedPolicy policy = new FixedPolicy(null);
+    DetectionScheduler<String> scheduler = new DetectionScheduler<>(policy);
+
+    DetectionScheduler.Decision<String> decision = scheduler.next(WIDTH, HEIGHT);
+
+    assertFalse(decision.isSkipped());
+    assertEquals(new Rect(0, 0, WIDTH, HEIGHT), decision.region);
+    assertNull(decision.lastResults);
+    // Not asked, since there is nothing to reuse.
+    assertEquals(-1, policy.framesSinceDetection);
+  }
+
+  @Test
+  public void next_skippedFrame_reusesLastResults() {
+    DetectionScheduler<String> scheduler = new DetectionScheduler<>(new FixedPolicy(null));
+    Rect region = new Rect(10, 10, 100, 100);
+    scheduler.onResults("faces", region);
+
+    DetectionScheduler.Decision<String> decision = scheduler.next(WIDTH, HEIGHT);
+
+    assertTrue(decision.isSkipped());
+    assertEquals("faces", decision.lastResults);
+    assertSame(region, decision.lastRegion);
+  }
+
+  @Test
+  public void next_countsSkippedFramesUntilDetection() {
+    FixedPolicy policy = new FixedPolicy(null);
+    DetectionScheduler<String> scheduler = new DetectionScheduler<>(policy);
+    scheduler.onResults("faces", new Rect(0, 0, WIDTH, HEIGHT));
+
+    scheduler.next(WIDTH, HEIGHT);
+    scheduler.next(WIDTH, HEIGHT);
+    policy.region = new Rect(0, 0, 100, 100);
+    scheduler.next(WIDTH, HEIGHT);
+    assertEquals(2, policy.framesSinceDetection);
+
+    scheduler.next(WIDTH, HEIGHT);
+    assertEquals(0, policy.framesSinceDetection);
+  }
+
+  @Test
+  public void next_clipsRegionToFrame() {
+    DetectionScheduler<String> scheduler =
+        new DetectionScheduler<>(new FixedPolicy(new Rect(-10, -10, 50, 50)));
+    scheduler.onResults("faces", new Rect(0, 0, WIDTH, HEIGHT));
+
+    assertEquals(new Rect(0, 0, 50, 50), scheduler.next(WIDTH, HEIGHT).region);
+  }
+
+  @Test
+  public void next_regionOutsideFrame_detectsFullFrame() {
+    DetectionScheduler<String> scheduler =
+        new DetectionScheduler<>(new FixedPolicy(new Rect(1000, 1000, 1100, 1100)));
+    scheduler.onResults("faces", new Rect(0, 0, WIDTH, HEIGHT));
+
+    assertEquals(new Rect(0, 0, WIDTH, HEIGHT), scheduler.next(WIDTH, HEIGHT).region);
+  }
+
+  @Test
+  public void reset_forgetsLastResults() {
+    DetectionScheduler<String> scheduler = new DetectionScheduler<>(new FixedPolicy(null));
+    scheduler.onResults("faces", new Rect(0, 0, WIDTH, HEIGHT));
+
+    scheduler.reset();
+    DetectionScheduler.Decision<String> decision = scheduler.next(WIDTH, HEIGHT);
+
+    assertFalse(decision.isSkipped());
+    assertNull(decision.lastResults);
+  }
+
+  @Test
+  public void toString_reportsCounts() {
+    DetectionScheduler<String> scheduler =
+        new DetectionScheduler<>(new FixedPolicy(new Rect(0, 0, 320, 240)));
+    scheduler.next(WIDTH, HEIGHT);
+    scheduler.onResults("faces", new Rect(0, 0, WIDTH, HEIGHT));
+    scheduler.next(WIDTH, HEIGHT);
+
+    assertEquals("frames=2 skipped=0 regions=1 avgDetectedArea=63%", scheduler.toString());
+  }
+}
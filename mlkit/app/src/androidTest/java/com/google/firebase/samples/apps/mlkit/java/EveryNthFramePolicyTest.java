@@ -0,0 +1,53 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import android.graphics.Rect;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Instrumented tests for {@link EveryNthFramePolicy}. */
+@RunWith(AndroidJUnit4.class)
+public class EveryNthFramePolicyTest {
+
+  private static final Rect FULL_FRAME = new Rect(0, 0, 640, 480);
+
+  @Test
+  public void selectRegion_detectsEveryNthFrame() {
+    EveryNthFramePolicy<Object> policy = new EveryNthFramePolicy<>(3);
+    Object results = new Object();
+
+    assertNull(policy.selectRegion(FULL_FRAME, results, FULL_FRAME, 0));
+    assertNull(policy.selectRegion(FULL_FRAME, results, FULL_FRAME, 1));
+    assertSame(FULL_FRAME, policy.selectRegion(FULL_FRAME, results, FULL_FRAME, 2));
+  }
+
+  @Test
+  public void selectRegion_intervalOfOne_detectsEveryFrame() {
+    EveryNthFramePolicy<Object> policy = new EveryNthFramePolicy<>(1);
+
+    assertSame(FULL_FRAME, policy.selectRegion(FULL_FRAME, new Object(), FULL_FRAME, 0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void constructor_intervalBelowOne_throws() {
+    new EveryNthFramePolicy<Object>(0);
+  }
+}
@@ -0,0 +1,101 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import android.graphics.Rect;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Instrumented tests for {@link RegionOfInterestPolicy}. The results are the bounds to track
+ * themselves.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RegionOfInterestPolicyTest {
+
+  private static final Rect FULL_FRAME = new Rect(0, 0, 1000, 1000);
+
+  private static final DetectionScheduler.RegionExtractor<Rect> BOUNDS =
+      new DetectionScheduler.RegionExtractor<Rect>() {
+        @Override
+        public Rect getBounds(Rect results) {
+          return results;
+        }
+      };
+
+  @Test
+  public void selectRegion_withoutResults_scansFullFrame() {
+    RegionOfInterestPolicy<Rect> policy = new RegionOfInterestPolicy<>(BOUNDS, 0.5f, 10);
+
+    assertSame(FULL_FRAME, policy.selectRegion(FULL_FRAME, null, null, 0));
+    assertSame(FULL_FRAME, policy.selectRegion(FULL_FRAME, new Rect(), FULL_FRAME, 0));
+  }
+
+  @Test
+  public void selectRegion_growsBoundsInLastRegion() {
+    RegionOfInterestPolicy<Rect> policy = new RegionOfInterestPolicy<>(BOUNDS, 0.5f, 10);
+
+    Rect region =
+        policy.selectRegion(
+            FULL_FRAME, new Rect(100, 100, 300, 300), new Rect(50, 50, 500, 500), 0);
+
+    assertEquals(new Rect(50, 50, 450, 450), region);
+  }
+
+  @Test
+  public void selectRegion_smallBounds_growByMinimumMargin() {
+    RegionOfInterestPolicy<Rect> policy = new RegionOfInterestPolicy<>(BOUNDS, 0.1f, 10);
+
+    Rect region = policy.selectRegion(FULL_FRAME, new Rect(500, 500, 510, 510), FULL_FRAME, 0);
+
+    assertEquals(new Rect(468, 468, 542, 542), region);
+  }
+
+  @Test
+  public void selectRegion_clampsToFullFrame() {
+    RegionOfInterestPolicy<Rect> policy = new RegionOfInterestPolicy<>(BOUNDS, 0.5f, 10);
+
+    Rect region = policy.selectRegion(FULL_FRAME, new Rect(0, 0, 100, 100), FULL_FRAME, 0);
+
+    assertEquals(new Rect(0, 0, 150, 150), region);
+  }
+
+  @Test
+  public void selectRegion_boundsOutsideFrame_scansFullFrame() {
+    RegionOfInterestPolicy<Rect> policy = new RegionOfInterestPolicy<>(BOUNDS, 0.5f, 10);
+
+    Rect region =
+        policy.selectRegion(FULL_FRAME, new Rect(2000, 2000, 2100, 2100), FULL_FRAME, 0);
+
+    assertSame(FULL_FRAME, region);
+  }
+
+  @Test
+  public void selectRegion_scansFullFramePeriodically() {
+    RegionOfInterestPolicy<Rect> policy = new RegionOfInterestPolicy<>(BOUNDS, 0.5f, 2);
+    Rect bounds = new Rect(100, 100, 300, 300);
+    Rect expected = new Rect(0, 0, 400, 400);
+
+    assertEquals(expected, policy.selectRegion(FULL_FRAME, bounds, FULL_FRAME, 0));
+    assertEquals(expected, policy.selectRegion(FULL_FRAME, bounds, FULL_FRAME, 0));
+    assertSame(FULL_FRAME, policy.selectRegion(FULL_FRAME, bounds, FULL_FRAME, 0));
+    assertEquals(expected, policy.selectRegion(FULL_FRAME, bounds, FULL_FRAME, 0));
+  }
+}
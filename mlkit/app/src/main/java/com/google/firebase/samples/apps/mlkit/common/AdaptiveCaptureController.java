@@ -0,0 +1,408 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Adjusts the preview frame rate and size so that the detector is kept busy for a target fraction
+ * of the time.
+ *
+ * <p>Detection latencies are collected over an evaluation window. At the end of each window the
+ * controller computes the frame rate the detector can sustain at the target utilization. Slow
+ * detectors get a lower frame rate, and once the minimum frame rate is reached a smaller preview
+ * size. Fast detectors get a higher frame rate, and once the maximum is reached a larger preview
+ * size if the predicted latency still allows it. Each decision changes either the frame rate or
+ * the size, never both, and samples are discarded after every change so the next decision is
+ * based on the effect of that one change only.
+ *
+ * <p>The controller is independent of the camera. New settings are reported to a {@link Listener};
+ * time is read from a {@link Clock}, which tests can replace with a simulated one.
+ */
+public class AdaptiveCaptureController implements FrameLatencyListener {
+
+  /** Source of monotonic time. */
+  public interface Clock {
+    long nanoTime();
+  }
+
+  /** The clock backed by {@link System#nanoTime()}. */
+  public static final Clock SYSTEM_CLOCK =
+      new Clock() {
+        @Override
+        public long nanoTime() {
+          return System.nanoTime();
+        }
+      };
+
+  /** Notified when the controller decides on new capture settings. */
+  public interface Listener {
+    void onCaptureSettingsChanged(CaptureSettings settings);
+  }
+
+  /** A preview frame rate and size. */
+  public static final class CaptureSettings {
+    private final int fps;
+    private final int width;
+    private final int height;
+
+    public CaptureSettings(int fps, int width, int height) {
+      this.fps = fps;
+      this.width = width;
+      this.height = height;
+    }
+
+    public int getFps() {
+      return fps;
+    }
+
+    public int getWidth() {
+      return width;
+    }
+
+    public int getHeight() {
+      return height;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof CaptureSettings)) {
+        return false;
+      }
+      CaptureSettings other = (CaptureSettings) o;
+      return fps == other.fps && width == other.width && height == other.height;
+    }
+
+    @Override
+    public int hashCode() {
+      return (fps * 31 + width) * 31 + height;
+    }
+
+    @Override
+    public String toString() {
+      return width + "x" + height + "@" + fps;
+    }
+  }
+
+  /**
+   * A frame rate increase needs this much headroom on top of the sustainable rate, so the
+   * controller does not oscillate between two neighboring rates.
+   */
+  private static final float INCREASE_HEADROOM = 1.1f;
+
+  private final Clock clock;
+  private final int minFps;
+  private final int maxFps;
+  private final int fpsStep;
+  private final List<int[]> previewSizes;
+  private final float targetUtilization;
+  private final long windowNanos;
+  private final int minSamples;
+  private final Listener listener;
+
+  // @GuardedBy("this")
+  private int fps;
+  // @GuardedBy("this")
+  private int sizeIndex;
+
+  // Samples of the current evaluation window.
+  // @GuardedBy("this")
+  private long windowStartNanos;
+  // @GuardedBy("this")
+  private int sampleCount;
+  // @GuardedBy("this")
+  private long detectionNanosSum;
+  // @GuardedBy("this")
+  private long endToEndNanosSum;
+
+  // Metrics of the last evaluation window.
+  // @GuardedBy("this")
+  private float lastUtilization;
+  // @GuardedBy("this")
+  private float lastMeanDetectionMillis;
+  // @GuardedBy("this")
+  private float lastMeanEndToEndMillis;
+  // @GuardedBy("this")
+  private float lastSustainableFps;
+  // @GuardedBy("this")
+  private String lastDecision = "none";
+  // @GuardedBy("this")
+  private int evaluationCount;
+  // @GuardedBy("this")
+  private int fpsChangeCount;
+  // @GuardedBy("this")
+  private int sizeChangeCount;
+
+  private AdaptiveCaptureController(Builder builder) {
+    clock = builder.clock;
+    minFps = builder.minFps;
+    maxFps = builder.maxFps;
+    fpsStep = builder.fpsStep;
+    previewSizes = new ArrayList<>(builder.previewSizes);
+    Collections.sort(
+        previewSizes,
+        new Comparator<int[]>() {
+          @Override
+          public int compare(int[] a, int[] b) {
+            return Long.compare((long) a[0] * a[1], (long) b[0] * b[1]);
+          }
+        });
+    targetUtilization = builder.targetUtilization;
+    windowNanos = builder.windowMillis * 1000000L;
+    minSamples = builder.minSamples;
+    listener = builder.listener;
+
+    fps = Math.max(minFps, Math.min(maxFps, builder.initialFps));
+    sizeIndex = 0;
+    for (int i = 0; i < previewSizes.size(); i++) {
+      int[] size = previewSizes.get(i);
+      if (size[0] == builder.initialWidth && size[1] == builder.initialHeight) {
+        sizeIndex = i;
+      }
+    }
+    windowStartNanos = clock.nanoTime();
+  }
+
+  /** Returns the settings the controller currently asks for. */
+  public synchronized CaptureSettings getCurrentSettings() {
+    int[] size = previewSizes.get(sizeIndex);
+    return new CaptureSettings(fps, size[0], size[1]);
+  }
+
+  @Override
+  public void onFrameLatency(long endToEndNanos, long detectionNanos) {
+    CaptureSettings changed;
+    synchronized (this) {
+      sampleCount++;
+      detectionNanosSum += detectionNanos;
+      endToEndNanosSum += endToEndNanos;
+      long now = clock.nanoTime();
+      if (now - windowStartNanos < windowNanos || sampleCount < minSamples) {
+        return;
+      }
+      changed = evaluate(now);
+    }
+    if (changed != null && listener != null) {
+      listener.onCaptureSettingsChanged(changed);
+    }
+  }
+
+  /**
+   * Closes the current evaluation window and returns the new settings, or null if they are
+   * unchanged.
+   */
+  // @GuardedBy("this")
+  private CaptureSettings evaluate(long now) {
+    evaluationCount++;
+    lastUtilization = (float) detectionNanosSum / (now - windowStartNanos);
+    lastMeanDetectionMillis = detectionNanosSum / 1e6f / sampleCount;
+    lastMeanEndToEndMillis = endToEndNanosSum / 1e6f / sampleCount;
+    float meanDetectionNanos = Math.max(1f, (float) detectionNanosSum / sampleCount);
+    lastSustainableFps = targetUtilization * 1e9f / meanDetectionNanos;
+    resetWindow(now);
+
+    int newFps = fps;
+    int newSizeIndex = sizeIndex;
+    if (lastSustainableFps < fps) {
+      newFps = Math.max(minFps, roundDownToStep(lastSustainableFps));
+      // Only shrink the preview once the frame rate has already been lowered to the minimum.
+      if (lastSustainableFps < minFps && fps == minFps && sizeIndex > 0) {
+        newSizeIndex = sizeIndex - 1;
+      }
+    } else if (lastSustainableFps >= fps * INCREASE_HEADROOM) {
+      newFps = Math.min(maxFps, roundDownToStep(lastSustainableFps / INCREASE_HEADROOM));
+      newFps = Math.max(fps, newFps);
+      if (fps == maxFps && sizeIndex < previewSizes.size() - 1) {
+        // Assume the detection time grows with the number of pixels.
+        float predictedNanos =
+            meanDetectionNanos * pixelCount(sizeIndex + 1) / pixelCount(sizeIndex);
+        if (targetUtilization * 1e9f / predictedNanos >= maxFps * INCREASE_HEADROOM) {
+          newSizeIndex = sizeIndex + 1;
+        }
+      }
+    }
+
+    if (newFps == fps && newSizeIndex == sizeIndex) {
+      lastDecision = String.format(Locale.US, "keep (sustainable %.1f fps)", lastSustainableFps);
+      return null;
+    }
+    if (newFps != fps) {
+      fpsChangeCount++;
+    }
+    if (newSizeIndex != sizeIndex) {
+      sizeChangeCount++;
+    }
+    CaptureSettings previous = getCurrentSettings();
+    fps = newFps;
+    sizeIndex = newSizeIndex;
+    CaptureSettings current = getCurrentSettings();
+    lastDecision =
+        String.format(
+            Locale.US, "%s -> %s (sustainable %.1f fps)", previous, current, lastSustainableFps);
+    return current;
+  }
+
+  private void resetWindow(long now) {
+    windowStartNanos = now;
+    sampleCount = 0;
+    detectionNanosSum = 0;
+    endToEndNanosSum = 0;
+  }
+
+  private int roundDownToStep(float value) {
+    int steps = (int) Math.floor((value - minFps) / fpsStep);
+    return minFps + Math.max(0, steps) * fpsStep;
+  }
+
+  private long pixelCount(int index) {
+    int[] size = previewSizes.get(index);
+    return (long) size[0] * size[1];
+  }
+
+  /** Returns the fraction of the last evaluation window the detector was busy. */
+  public synchronized float getUtilization() {
+    return lastUtilization;
+  }
+
+  /** Returns the mean detection time of the last evaluation window. */
+  public synchronized float getMeanDetectionMillis() {
+    return lastMeanDetectionMillis;
+  }
+
+  /** Returns the mean camera-to-result time of the last evaluation window. */
+  public synchronized float getMeanEndToEndMillis() {
+    return lastMeanEndToEndMillis;
+  }
+
+  /** Returns the frame rate the detector could sustain at the target utilization. */
+  public synchronized float getSustainableFps() {
+    return lastSustainableFps;
+  }
+
+  /** Returns a description of the last decision. */
+  public synchronized String getLastDecision() {
+    return lastDecision;
+  }
+
+  public synchronized int getEvaluationCount() {
+    return evaluationCount;
+  }
+
+  public synchronized int getFpsChangeCount() {
+    return fpsChangeCount;
+  }
+
+  public synchronized int getSizeChangeCount() {
+    return sizeChangeCount;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(
+        Locale.US,
+        "settings=%s utilization=%.2f detection=%.1fms endToEnd=%.1fms evaluations=%d"
+            + " fpsChanges=%d sizeChanges=%d last=%s",
+        getCurrentSettings(),
+        lastUtilization,
+        lastMeanDetectionMillis,
+        lastMeanEndToEndMillis,
+        evaluationCount,
+        fpsChangeCount,
+        sizeChangeCount,
+        lastDecision);
+  }
+
+  /** Builder of {@link AdaptiveCaptureController}. */
+  public static class Builder {
+
+    private Clock clock = SYSTEM_CLOCK;
+    private int minFps = 5;
+    private int maxFps = 30;
+    private int fpsStep = 5;
+    private final List<int[]> previewSizes = new ArrayList<>();
+    private int initialFps = 20;
+    private int initialWidth;
+    private int initialHeight;
+    private float targetUtilization = 0.8f;
+    private long windowMillis = 2000;
+    private int minSamples = 5;
+    private Listener listener;
+
+    public Builder setClock(Clock clock) {
+      this.clock = clock;
+      return this;
+    }
+
+    /** Sets the bounds of the frame rate and the step it is changed by. */
+    public Builder setFpsRange(int minFps, int maxFps, int fpsStep) {
+      if (minFps < 1 || maxFps < minFps || fpsStep < 1) {
+        throw new IllegalArgumentException(
+            "Invalid fps range: " + minFps + "-" + maxFps + " step " + fpsStep);
+      }
+      this.minFps = minFps;
+      this.maxFps = maxFps;
+      this.fpsStep = fpsStep;
+      return this;
+    }
+
+    /** Adds a preview size the controller may switch to. */
+    public Builder addPreviewSize(int width, int height) {
+      previewSizes.add(new int[] {width, height});
+      return this;
+    }
+
+    /** Sets the settings the camera starts with; the size should be one of the preview sizes. */
+    public Builder setInitialSettings(int fps, int width, int height) {
+      initialFps = fps;
+      initialWidth = width;
+      initialHeight = height;
+      return this;
+    }
+
+    /** Sets the fraction of time the detector should be busy, in (0, 1]. */
+    public Builder setTargetUtilization(float targetUtilization) {
+      if (targetUtilization <= 0 || targetUtilization > 1) {
+        throw new IllegalArgumentException("Invalid target utilization: " + targetUtilization);
+      }
+      this.targetUtilization = targetUtilization;
+      return this;
+    }
+
+    /**
+     * Sets how long, and over how many frames at least, latencies are collected before a
+     * decision.
+     */
+    public Builder setEvaluationWindow(long windowMillis, int minSamples) {
+      this.windowMillis = windowMillis;
+      this.minSamples = Math.max(1, minSamples);
+      return this;
+    }
+
+    public Builder setListener(Listener listener) {
+      this.listener = listener;
+      return this;
+    }
+
+    public AdaptiveCaptureController build() {
+      if (previewSizes.isEmpty()) {
+        addPreviewSize(initialWidth, initialHeight);
+      }
+      return new AdaptiveCaptureController(this);
+    }
+  }
+}
@@ -0,0 +1,244 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Output of a batch run, one JSON object per line and per image. Opening an existing log resumes
+ * it: the images that already have a result are reported as done, and a line cut short by an
+ * interrupted run is dropped.
+ *
+ * <p>Every line starts with the image id, e.g. {@code {"id":"content://...","width":640,
+ * "height":480,"sampleSize":4,"millis":312,"result":"..."}}, or carries an {@code "error"}
+ * instead of a result. Images that failed are tried again when the run is resumed.
+ */
+public final class BatchResultLog implements Closeable {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final String ID_PREFIX = "{\"id\":\"";
+  private static final String RESULT_KEY = ",\"result\":";
+
+  // @GuardedBy("this")
+  private final Set<String> doneIds;
+
+  // @GuardedBy("this")
+  private final Writer writer;
+
+  private BatchResultLog(Set<String> doneIds, Writer writer) {
+    this.doneIds = doneIds;
+    this.writer = writer;
+  }
+
+  /** Opens the log in {@code file}, creating it if needed and resuming it otherwise. */
+  public static BatchResultLog open(File file) throws IOException {
+    Set<String> doneIds = new HashSet<>();
+    if (file.exists()) {
+      truncateToLastLine(file);
+      BufferedReader reader =
+          new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          String id = readId(line);
+          if (id != null && line.contains(RESULT_KEY)) {
+            doneIds.add(id);
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    }
+    Writer writer =
+        new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), UTF_8));
+    return new BatchResultLog(doneIds, writer);
+  }
+
+  /** Returns whether a result for the image {@code id} is already in the log. */
+  public synchronized boolean isDone(String id) {
+    return doneIds.contains(id);
+  }
+
+  /** Returns the number of images that have a result in the log. */
+  public synchronized int getDoneCount() {
+    return doneIds.size();
+  }
+
+  /**
+   * Appends the {@code result} of the image {@code id}, decoded at {@code width} x {@code height}
+   * after being subsampled by {@code sampleSize}, which took {@code millis} to detect.
+   */
+  public synchronized void writeResult(
+      String id, int width, int height, int sampleSize, long millis, String result)
+      throws IOException {
+    StringBuilder line = new StringBuilder(ID_PREFIX.length() + id.length() + result.length() + 80);
+    line.append("{\"id\":");
+    appendQuoted(line, id);
+    line.append(",\"width\":").append(width)
+        .append(",\"height\":").append(height)
+        .append(",\"sampleSize\":").append(sampleSize)
+        .append(",\"millis\":").append(millis)
+        .append(RESULT_KEY);
+    appendQuoted(line, result);
+    writeLine(line.append('}'));
+    doneIds.add(id);
+  }
+
+  /** Appends the {@code error} that processing the image {@code id} failed with. */
+  public synchronized void writeError(String id, String error) throws IOException {
+    StringBuilder line = new StringBuilder(ID_PREFIX.length() + id.length() + error.length() + 16);
+    line.append("{\"id\":");
+    appendQuoted(line, id);
+    line.append(",\"error\":");
+    appendQuoted(line, error);
+    writeLine(line.append('}'));
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    writer.close();
+  }
+
+  // Every line is flushed on its own, so that an interrupted run loses at most the line it was
+  // writing.
+  private void writeLine(CharSequence line) throws IOException {
+    writer.append(line).append('\n');
+    writer.flush();
+  }
+
+  // Drops whatever follows the last line break, which is what is left of a line that was being
+  // written when the previous run stopped.
+  private static void truncateToLastLine(File file) throws IOException {
+    RandomAccessFile access = new RandomAccessFile(file, "rw");
+    try {
+      long length = access.length();
+      long end = length;
+      while (end > 0) {
+        access.seek(end - 1);
+        if (access.read() == '\n') {
+          break;
+        }
+        end--;
+      }
+      if (end < length) {
+        access.setLength(end);
+      }
+    } finally {
+      access.close();
+    }
+  }
+
+  /** Returns the id that {@code line} starts with, or null if it is not a complete log line. */
+  static String readId(String line) {
+    if (!line.startsWith(ID_PREFIX) || !line.endsWith("}")) {
+      return null;
+    }
+    StringBuilder id = new StringBuilder();
+    for (int i = ID_PREFIX.length(); i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '"') {
+        return id.toString();
+      }
+      if (c != '\\') {
+        id.append(c);
+        continue;
+      }
+      if (++i == line.length()) {
+        return null;
+      }
+      char escaped = line.charAt(i);
+      switch (escaped) {
+        case 'n':
+          id.append('\n');
+          break;
+        case 'r':
+          id.append('\r');
+          break;
+        case 't':
+          id.append('\t');
+          break;
+        case 'b':
+          id.append('\b');
+          break;
+        case 'f':
+          id.append('\f');
+          break;
+        case 'u':
+          if (i + 4 >= line.length()) {
+            return null;
+          }
+          try {
+            id.append((char) Integer.parseInt(line.substring(i + 1, i + 5), 16));
+          } catch (NumberFormatException e) {
+            return null;
+          }
+          i += 4;
+          break;
+        default:
+          id.append(escaped);
+          break;
+      }
+    }
+    return null;
+  }
+
+  /** Appends {@code value} to {@code out} as a JSON string literal. */
+  static void appendQuoted(StringBuilder out, String value) {
+    out.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          out.append("\\\"");
+          break;
+        case '\\':
+          out.append("\\\\");
+          break;
+        case '\n':
+          out.append("\\n");
+          break;
+        case '\r':
+          out.append("\\r");
+          break;
+        case '\t':
+          out.append("\\t");
+          break;
+        default:
+          // Line and paragraph separators are escaped too, so that readers splitting on them
+          // still see one result per line.
+          if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+            out.append(String.format("\\u%04x", (int) c));
+          } else {
+            out.append(c);
+          }
+          break;
+      }
+    }
+    out.append('"');
+  }
+}
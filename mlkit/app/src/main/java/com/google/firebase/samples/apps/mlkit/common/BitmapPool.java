@@ -0,0 +1,151 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import android.graphics.Bitmap;
+import androidx.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Mutable bitmaps kept around for reuse, e.g. as {@code BitmapFactory.Options.inBitmap}, instead
+ * of being left to the garbage collector. Bitmaps are bucketed by the power of two above their
+ * allocation size, so that finding one that fits only looks at bitmaps of about the right size.
+ * The pool holds up to a given number of bytes, and recycles the bitmaps that were least recently
+ * put back beyond that.
+ */
+public final class BitmapPool {
+
+  // One bucket per power of two of the allocation size, bucket i holding sizes in
+  // (2^(i - 1), 2^i].
+  private static final int BUCKET_COUNT = 32;
+
+  private final long maxBytes;
+
+  // @GuardedBy("this")
+  private final ArrayDeque<Bitmap>[] buckets;
+
+  // Every pooled bitmap, least recently put back first.
+  // @GuardedBy("this")
+  private final ArrayDeque<Bitmap> leastRecentlyPut = new ArrayDeque<>();
+
+  // @GuardedBy("this")
+  private long pooledBytes;
+
+  // @GuardedBy("this")
+  private int hitCount;
+
+  // @GuardedBy("this")
+  private int missCount;
+
+  /** Creates a pool that holds bitmaps of up to {@code maxBytes} in total. */
+  @SuppressWarnings("unchecked")
+  public BitmapPool(long maxBytes) {
+    this.maxBytes = maxBytes;
+    buckets = new ArrayDeque[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      buckets[i] = new ArrayDeque<>();
+    }
+  }
+
+  /**
+   * Takes a bitmap out of the pool and reconfigures it to {@code width} x {@code height} and
+   * {@code config}, or returns null if none is large enough. Its pixels are left as they were.
+   */
+  @Nullable
+  public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+    long byteCount = (long) width * height * getBytesPerPixel(config);
+    int bucket = getBucket(byteCount);
+    // Bitmaps in the bucket above are always large enough, and not much larger than needed.
+    for (int i = bucket; i < Math.min(bucket + 2, BUCKET_COUNT); i++) {
+      Iterator<Bitmap> iterator = buckets[i].iterator();
+      while (iterator.hasNext()) {
+        Bitmap bitmap = iterator.next();
+        if (bitmap.getAllocationByteCount() >= byteCount) {
+          iterator.remove();
+          leastRecentlyPut.remove(bitmap);
+          pooledBytes -= bitmap.getAllocationByteCount();
+          hitCount++;
+          bitmap.reconfigure(width, height, config);
+          return bitmap;
+        }
+      }
+    }
+    missCount++;
+    return null;
+  }
+
+  /**
+   * Puts {@code bitmap} back into the pool, after which the caller must no longer use it.
+   * Bitmaps that can not be reused are recycled right away.
+   */
+  public synchronized void put(Bitmap bitmap) {
+    if (bitmap.isRecycled()) {
+      return;
+    }
+    int byteCount = bitmap.getAllocationByteCount();
+    if (!bitmap.isMutable() || byteCount > maxBytes) {
+      bitmap.recycle();
+      return;
+    }
+    buckets[getBucket(byteCount)].add(bitmap);
+    leastRecentlyPut.add(bitmap);
+    pooledBytes += byteCount;
+    while (pooledBytes > maxBytes) {
+      Bitmap evicted = leastRecentlyPut.poll();
+      buckets[getBucket(evicted.getAllocationByteCount())].remove(evicted);
+      pooledBytes -= evicted.getAllocationByteCount();
+      evicted.recycle();
+    }
+  }
+
+  /** Recycles all the bitmaps in the pool. */
+  public synchronized void clear() {
+    for (Bitmap bitmap : leastRecentlyPut) {
+      bitmap.recycle();
+    }
+    leastRecentlyPut.clear();
+    for (ArrayDeque<Bitmap> bucket : buckets) {
+      bucket.clear();
+    }
+    pooledBytes = 0;
+  }
+
+  /** Returns how many times {@link #get} found a bitmap to reuse. */
+  public synchronized int getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns how many times {@link #get} found no bitmap to reuse. */
+  public synchronized int getMissCount() {
+    return missCount;
+  }
+
+  private static int getBucket(long byteCount) {
+    int bucket = byteCount <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(byteCount - 1);
+    return Math.min(bucket, BUCKET_COUNT - 1);
+  }
+
+  private static int getBytesPerPixel(Bitmap.Config config) {
+    switch (config) {
+      case ALPHA_8:
+        return 1;
+      case RGB_565:
+      case ARGB_4444:
+        return 2;
+      default:
+        return 4;
+    }
+  }
+}
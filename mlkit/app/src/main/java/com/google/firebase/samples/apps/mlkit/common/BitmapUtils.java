@@ -1,73 +1,129 @@
 package com.google.firebase.samples.apps.mlkit.common;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.ImageFormat;
-import android.graphics.Matrix;
-import android.graphics.Rect;
-import android.graphics.YuvImage;
 import android.hardware.Camera.CameraInfo;
 import androidx.annotation.Nullable;
 import android.util.Log;
-import com.google.firebase.ml.vision.common.FirebaseVisionImageMetadata;
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 
 /** Utils functions for bitmap conversions. */
 public class BitmapUtils {
 
+    private static final YuvToRgbConverter converter = new YuvToRgbConverter();
+
+    // Scratch copy of the frame, only used for buffers that are not backed by an array.
+    private static byte[] scratchFrame;
+
     // Convert NV21 format byte buffer to bitmap.
     @Nullable
     public static Bitmap getBitmap(ByteBuffer data, FrameMetadata metadata) {
-        data.rewind();
-        byte[] imageInBuffer = new byte[data.limit()];
-        data.get(imageInBuffer, 0, imageInBuffer.length);
-        try {
-            YuvImage image =
-                    new YuvImage(
-                            imageInBuffer, ImageFormat.NV21, metadata.getWidth(), metadata.getHeight(), null);
-            if (image != null) {
-                ByteArrayOutputStream stream = new ByteArrayOutputStream();
-                image.compressToJpeg(new Rect(0, 0, metadata.getWidth(), metadata.getHeight()), 80, stream);
-
-                Bitmap bmp = BitmapFactory.decodeByteArray(stream.toByteArray(), 0, stream.size());
+        return getBitmap(data, metadata, null);
+    }
 
-                stream.close();
-                return rotateBitmap(bmp, metadata.getRotation(), metadata.getCameraFacing());
+    /**
+     * Converts an NV21 byte buffer to an upright bitmap. If {@code reuse} is a mutable ARGB_8888
+     * bitmap of the right size, the pixels are written into it instead of a new bitmap.
+     */
+    @Nullable
+    public static Bitmap getBitmap(
+            ByteBuffer data, FrameMetadata metadata, @Nullable Bitmap reuse) {
+        int width = metadata.getWidth();
+        int height = metadata.getHeight();
+        int rotation = metadata.getRotation();
+        int outWidth = YuvToRgbConverter.getOutputWidth(width, height, rotation);
+        int outHeight = YuvToRgbConverter.getOutputHeight(width, height, rotation);
+        int[] pixels = converter.obtainPixels(width * height);
+        try {
+            if (data.hasArray()) {
+                YuvToRgbConverter.convert(
+                        data.array(), data.arrayOffset(), width, height, rotation,
+                        metadata.getCameraFacing() == CameraInfo.CAMERA_FACING_FRONT, pixels);
+            } else {
+                synchronized (BitmapUtils.class) {
+                    data.rewind();
+                    if (scratchFrame == null || scratchFrame.length < data.limit()) {
+                        scratchFrame = new byte[data.limit()];
+                    }
+                    data.get(scratchFrame, 0, data.limit());
+                    YuvToRgbConverter.convert(
+                            scratchFrame, 0, width, height, rotation,
+                            metadata.getCameraFacing() == CameraInfo.CAMERA_FACING_FRONT, pixels);
+                }
+            }
+            if (reuse != null
+                    && reuse.isMutable()
+                    && reuse.getConfig() == Bitmap.Config.ARGB_8888
+                    && reuse.getWidth() == outWidth
+                    && reuse.getHeight() == outHeight) {
+                reuse.setPixels(pixels, 0, outWidth, 0, 0, outWidth, outHeight);
+                return reuse;
             }
+            return Bitmap.createBitmap(pixels, outWidth, outHeight, Bitmap.Config.ARGB_8888);
         } catch (Exception e) {
             Log.e("VisionProcessorBase", "Error: " + e.getMessage());
+        } finally {
+            converter.recyclePixels(pixels);
         }
         return null;
     }
 
-    // Rotates a bitmap if it is converted from a bytebuffer.
-    private static Bitmap rotateBitmap(Bitmap bitmap, int rotation, int facing) {
-        Matrix matrix = new Matrix();
-        int rotationDegree = 0;
-        switch (rotation) {
-            case FirebaseVisionImageMetadata.ROTATION_90:
-                rotationDegree = 90;
-                break;
-            case FirebaseVisionImageMetadata.ROTATION_180:
-                rotationDegree = 180;
-                break;
-            case FirebaseVisionImageMetadata.ROTATION_270:
-                rotationDegree = 270;
-                break;
-            default:
-                break;
+    /**
+     * Returns the largest power of two that an image of {@code width} x {@code height} can be
+     * subsampled by, e.g. with {@code BitmapFactory.Options.inSampleSize}, while still covering
+     * {@code targetWidth} x {@code targetHeight} in either orientation.
+     */
+    public static int calculateInSampleSize(
+            int width, int height, int targetWidth, int targetHeight) {
+        int longSide = Math.max(width, height);
+        int shortSide = Math.min(width, height);
+        int targetLongSide = Math.max(targetWidth, targetHeight);
+        int targetShortSide = Math.min(targetWidth, targetHeight);
+        int sampleSize = 1;
+        while (longSide / (sampleSize * 2) >= targetLongSide
+                && shortSide / (sampleSize * 2) >= targetShortSide) {
+            sampleSize *= 2;
         }
+        return sampleSize;
+    }
 
-        // Rotate the image back to straight.}
-        matrix.postRotate(rotationDegree);
-        if (facing == CameraInfo.CAMERA_FACING_BACK) {
-            return Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
-        } else {
-            // Mirror the image along X axis for front-facing camera image.
-            matrix.postScale(-1.0f, 1.0f);
-            return Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+    /**
+     * Returns a 64-bit hash of the size and pixels of {@code bitmap}, e.g. to key the results
+     * detected in it. Images decoded the same way from the same file hash the same.
+     */
+    public static long contentHash(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        // FNV-1a over the pixels, one row at a time.
+        long hash = 0xcbf29ce484222325L;
+        hash = (hash ^ width) * 0x100000001b3L;
+        hash = (hash ^ height) * 0x100000001b3L;
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int pixel : row) {
+                hash = (hash ^ pixel) * 0x100000001b3L;
+            }
         }
+        return hash;
     }
-}
 
+    /**
+     * Returns a 64-bit hash of the bytes left in {@code in}, e.g. of an image file to key the
+     * results detected in it whatever size it is decoded at. The stream is read to its end but
+     * not closed.
+     */
+    public static long contentHash(InputStream in) throws IOException {
+        // FNV-1a over the bytes, like the pixels above.
+        long hash = 0xcbf29ce484222325L;
+        byte[] buffer = new byte[64 * 1024];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            for (int i = 0; i < count; i++) {
+                hash = (hash ^ (buffer[i] & 0xff)) * 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,46 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+/**
+ * Geometry of the bounding boxes detectors return, given as left, top, right and bottom edges so
+ * that trackers can compare them without allocating a {@code Rect} per result.
+ */
+public final class BoundingBoxes {
+
+  private BoundingBoxes() {}
+
+  /**
+   * Returns the area of the intersection of two boxes divided by the area of their union, from 0
+   * for boxes that do not overlap to 1 for equal ones. Empty boxes never overlap.
+   */
+  public static float intersectionOverUnion(
+      int left1, int top1, int right1, int bottom1,
+      int left2, int top2, int right2, int bottom2) {
+    long intersectWidth = (long) Math.min(right1, right2) - Math.max(left1, left2);
+    long intersectHeight = (long) Math.min(bottom1, bottom2) - Math.max(top1, top2);
+    if (intersectWidth <= 0 || intersectHeight <= 0) {
+      return 0;
+    }
+    long intersection = intersectWidth * intersectHeight;
+    long union =
+        area(left1, top1, right1, bottom1) + area(left2, top2, right2, bottom2) - intersection;
+    return union <= 0 ? 0 : (float) intersection / union;
+  }
+
+  /** Returns the area of a box, or 0 if it is empty. */
+  public static long area(int left, int top, int right, int bottom) {
+    return (long) Math.max(0, right - left) * Math.max(0, bottom - top);
+  }
+}
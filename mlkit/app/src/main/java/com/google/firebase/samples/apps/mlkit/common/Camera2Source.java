@@ -0,0 +1,867 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import android.Manifest;
+import android.annotation.SuppressLint;
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.HandlerThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresPermission;
+import android.util.Log;
+import android.util.Range;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.WindowManager;
+
+import com.google.android.gms.common.images.Size;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link CameraFrameSource} built on {@code android.hardware.camera2}. Preview frames are read
+ * from an {@link ImageReader} in {@link ImageFormat#YUV_420_888}.
+ *
+ * <p>{@link MediaImageProcessor}s are handed the camera images themselves, which ML Kit reads
+ * without a copy. Other processors get the frames packed into NV21 {@link FrameBuffer}s, just as
+ * {@link CameraSource} delivers them.
+ *
+ * <p>As with {@link CameraSource}, only the most recent frame is kept while the processor is busy.
+ * The reader owns a fixed number of images: when the processor still holds all of them, new frames
+ * are dropped until it releases one, rather than being queued. Processors may hold images past
+ * {@link #stop()}, so the reader is only closed once the last of them is released.
+ */
+@SuppressLint("MissingPermission")
+public class Camera2Source implements CameraFrameSource {
+
+  private static final String TAG = "MIDemoApp:Camera2Source";
+
+  /**
+   * The images the reader can hand out at a time: one pending, one being processed, two held by
+   * processors while they detect asynchronously and one for the next frame.
+   */
+  private static final int MAX_IMAGES = 5;
+
+  /** Number of NV21 buffers for processors that do not take camera images. */
+  private static final int FRAME_BUFFER_COUNT = 2;
+
+  private static final int MAX_FRAME_BUFFER_COUNT = 6;
+
+  private static final int REQUESTED_FPS = 20;
+  private static final int REQUESTED_PREVIEW_WIDTH = 480;
+  private static final int REQUESTED_PREVIEW_HEIGHT = 360;
+
+  private final Activity activity;
+  private final GraphicOverlay graphicOverlay;
+  private final CameraManager cameraManager;
+
+  private int facing = CameraSource.CAMERA_FACING_BACK;
+
+  // The state of the running camera, set up by start() and torn down by stop().
+  // @GuardedBy("this")
+  private HandlerThread cameraThread;
+  // @GuardedBy("this")
+  private Handler cameraHandler;
+  // @GuardedBy("this")
+  private ImageReader imageReader;
+  // @GuardedBy("this")
+  private ReaderFrames readerFrames;
+  // @GuardedBy("this")
+  private DeviceCallback deviceCallback;
+  // @GuardedBy("this")
+  private CameraDevice cameraDevice;
+  // @GuardedBy("this")
+  private CameraCaptureSession captureSession;
+  // @GuardedBy("this")
+  private SurfaceHolder previewHolder;
+  // Whether the preview surface has been resized to the frame size.
+  // @GuardedBy("this")
+  private boolean previewSurfaceReady;
+  // @GuardedBy("this")
+  private Range<Integer> fpsRange;
+  // @GuardedBy("this")
+  private boolean continuousFocus;
+
+  private volatile Size previewSize;
+
+  /** Rotation of the camera images, as one of the FirebaseVisionImageMetadata constants. */
+  private volatile int rotation;
+
+  private Thread processingThread;
+  private final FrameProcessingRunnable processingRunnable = new FrameProcessingRunnable();
+
+  private final Object processorLock = new Object();
+  // @GuardedBy("processorLock")
+  private VisionImageProcessor frameProcessor;
+  // Whether frameProcessor is stopped along with this source.
+  // @GuardedBy("processorLock")
+  private boolean ownsFrameProcessor;
+
+  // NV21 copies for processors that are not MediaImageProcessors.
+  private volatile FrameBufferPool frameBufferPool;
+  // @GuardedBy("freeBuffers")
+  private final ArrayDeque<byte[]> freeBuffers = new ArrayDeque<>();
+
+  // Traces frames from the image reader to the overlay when set.
+  @Nullable private volatile FrameMetrics frameMetrics;
+
+  private final AtomicLong receivedCount = new AtomicLong();
+  private final AtomicLong droppedCount = new AtomicLong();
+
+  private final SurfaceHolder.Callback previewCallback = new SurfaceHolder.Callback() {
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {}
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+      synchronized (Camera2Source.this) {
+        Size size = previewSize;
+        if (holder == previewHolder
+            && size != null
+            && width == size.getWidth()
+            && height == size.getHeight()) {
+          previewSurfaceReady = true;
+          createSessionIfReady();
+        }
+      }
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+      synchronized (Camera2Source.this) {
+        if (holder == previewHolder) {
+          previewSurfaceReady = false;
+        }
+      }
+    }
+  };
+
+  public Camera2Source(Activity activity, GraphicOverlay overlay) {
+    this.activity = activity;
+    graphicOverlay = overlay;
+    graphicOverlay.clear();
+    cameraManager = (CameraManager) activity.getSystemService(Context.CAMERA_SERVICE);
+
+    try {
+      String[] cameraIds = cameraManager.getCameraIdList();
+      if (cameraIds.length == 1) {
+        Integer lensFacing =
+            cameraManager.getCameraCharacteristics(cameraIds[0])
+                .get(CameraCharacteristics.LENS_FACING);
+        if (lensFacing != null && lensFacing == CameraCharacteristics.LENS_FACING_FRONT) {
+          facing = CameraSource.CAMERA_FACING_FRONT;
+        }
+      }
+    } catch (CameraAccessException e) {
+      Log.e(TAG, "Could not list the cameras: " + e);
+    }
+  }
+
+  // ==============================================================================================
+  // Public
+  // ==============================================================================================
+
+  /** Stops the camera and releases the resources of the camera and underlying detector. */
+  @Override
+  public void release() {
+    synchronized (processorLock) {
+      stop();
+      graphicOverlay.clear();
+
+      if (frameProcessor != null && ownsFrameProcessor) {
+        frameProcessor.stop();
+      }
+    }
+  }
+
+  /**
+   * Opens the camera and starts sending preview frames to the underlying detector. The preview
+   * frames are not displayed.
+   *
+   * @throws IOException if the requested camera could not be found or accessed
+   */
+  @RequiresPermission(Manifest.permission.CAMERA)
+  @Override
+  public synchronized Camera2Source start() throws IOException {
+    startCamera(null);
+    return this;
+  }
+
+  /**
+   * Opens the camera and starts sending preview frames to the underlying detector and to {@code
+   * surfaceHolder}, which is resized to the frame size. The capture session is created once the
+   * surface has the new size.
+   *
+   * @throws IOException if the requested camera could not be found or accessed
+   */
+  @RequiresPermission(Manifest.permission.CAMERA)
+  @Override
+  public synchronized Camera2Source start(SurfaceHolder surfaceHolder) throws IOException {
+    startCamera(surfaceHolder);
+    return this;
+  }
+
+  /**
+   * Closes the camera and stops sending frames to the underlying frame detector. Images that
+   * processors still hold stay open until they are released, and the reader is closed after the
+   * last of them.
+   *
+   * <p>This camera source may be restarted again by calling {@link #start()} or {@link
+   * #start(SurfaceHolder)}.
+   */
+  @Override
+  public synchronized void stop() {
+    processingRunnable.setActive(false);
+    if (processingThread != null) {
+      try {
+        processingThread.join();
+      } catch (InterruptedException e) {
+        Log.d(TAG, "Frame processing thread interrupted on release.");
+      }
+      processingThread = null;
+    }
+
+    // Callbacks of the closed camera are ignored from now on.
+    deviceCallback = null;
+    if (captureSession != null) {
+      captureSession.close();
+      captureSession = null;
+    }
+    if (cameraDevice != null) {
+      cameraDevice.close();
+      cameraDevice = null;
+    }
+    if (previewHolder != null) {
+      previewHolder.removeCallback(previewCallback);
+      previewHolder = null;
+      previewSurfaceReady = false;
+    }
+    if (imageReader != null) {
+      imageReader.setOnImageAvailableListener(null, null);
+      readerFrames.close();
+      imageReader = null;
+      readerFrames = null;
+      Log.i(TAG, "Camera images: received=" + receivedCount + ", dropped=" + droppedCount);
+    }
+    if (frameBufferPool != null) {
+      Log.i(TAG, "Frame buffers: " + frameBufferPool);
+      frameBufferPool.close();
+    }
+    if (cameraThread != null) {
+      cameraThread.quitSafely();
+      cameraThread = null;
+      cameraHandler = null;
+    }
+  }
+
+  /** Changes the facing of the camera. */
+  @Override
+  public synchronized void setFacing(int facing) {
+    if ((facing != CameraSource.CAMERA_FACING_BACK)
+        && (facing != CameraSource.CAMERA_FACING_FRONT)) {
+      throw new IllegalArgumentException("Invalid camera: " + facing);
+    }
+    this.facing = facing;
+  }
+
+  @Override
+  public int getCameraFacing() {
+    return facing;
+  }
+
+  /** Returns the size of the camera images. */
+  @Nullable
+  @Override
+  public Size getPreviewSize() {
+    return previewSize;
+  }
+
+  @Override
+  public void setMachineLearningFrameProcessor(VisionImageProcessor processor) {
+    setMachineLearningFrameProcessor(processor, /* owned= */ true);
+  }
+
+  @Override
+  public void setMachineLearningFrameProcessor(VisionImageProcessor processor, boolean owned) {
+    synchronized (processorLock) {
+      graphicOverlay.clear();
+      if (frameProcessor != null && ownsFrameProcessor && frameProcessor != processor) {
+        frameProcessor.stop();
+      }
+      frameProcessor = processor;
+      ownsFrameProcessor = owned;
+    }
+  }
+
+  /**
+   * Starts a {@link FrameTrace} in {@code metrics} for every camera image, which is passed to the
+   * frame processor in the {@link FrameMetadata}, or stops tracing if {@code metrics} is null.
+   */
+  @Override
+  public void setFrameMetrics(@Nullable FrameMetrics metrics) {
+    frameMetrics = metrics;
+  }
+
+  /** Returns the number of camera images acquired from the reader. */
+  public long getReceivedCount() {
+    return receivedCount.get();
+  }
+
+  /**
+   * Returns the number of camera images dropped, either replaced by a newer one before they were
+   * processed or not acquired because the processor held all images.
+   */
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  // ==============================================================================================
+  // Setup
+  // ==============================================================================================
+
+  private void startCamera(@Nullable SurfaceHolder holder) throws IOException {
+    if (deviceCallback != null) {
+      return;
+    }
+
+    String cameraId;
+    CameraCharacteristics characteristics;
+    try {
+      cameraId = getIdForRequestedCamera(facing);
+      if (cameraId == null) {
+        throw new IOException("Could not find requested camera.");
+      }
+      characteristics = cameraManager.getCameraCharacteristics(cameraId);
+    } catch (CameraAccessException e) {
+      throw new IOException("Could not access the camera.", e);
+    }
+
+    android.util.Size size = selectPreviewSize(characteristics);
+    if (size == null) {
+      throw new IOException("Could not find suitable preview size.");
+    }
+    int width = size.getWidth();
+    int height = size.getHeight();
+    previewSize = new Size(width, height);
+    rotation = getRotation(characteristics);
+    fpsRange = selectFpsRange(characteristics);
+    continuousFocus = supportsContinuousFocus(characteristics);
+
+    cameraThread = new HandlerThread("Camera2Source");
+    cameraThread.start();
+    cameraHandler = new Handler(cameraThread.getLooper());
+
+    imageReader = ImageReader.newInstance(width, height, ImageFormat.YUV_420_888, MAX_IMAGES);
+    readerFrames = new ReaderFrames(imageReader);
+    imageReader.setOnImageAvailableListener(
+        new ImageAvailableListener(readerFrames), cameraHandler);
+
+    synchronized (freeBuffers) {
+      freeBuffers.clear();
+    }
+    frameBufferPool =
+        new FrameBufferPool(
+            width * height * ImageFormat.getBitsPerPixel(ImageFormat.NV21) / 8,
+            FRAME_BUFFER_COUNT,
+            MAX_FRAME_BUFFER_COUNT,
+            new FrameBufferPool.Recycler() {
+              @Override
+              public void recycle(byte[] data) {
+                synchronized (freeBuffers) {
+                  freeBuffers.push(data);
+                }
+              }
+            });
+
+    if (holder != null) {
+      previewHolder = holder;
+      holder.addCallback(previewCallback);
+      holder.setFixedSize(width, height);
+      Rect surfaceFrame = holder.getSurfaceFrame();
+      previewSurfaceReady = surfaceFrame.width() == width && surfaceFrame.height() == height;
+    }
+
+    processingThread = new Thread(processingRunnable);
+    processingRunnable.setActive(true);
+    processingThread.start();
+
+    deviceCallback = new DeviceCallback();
+    try {
+      cameraManager.openCamera(cameraId, deviceCallback, cameraHandler);
+    } catch (CameraAccessException e) {
+      stop();
+      throw new IOException("Could not open the camera.", e);
+    }
+  }
+
+  /**
+   * Creates the capture session once both the camera is open and the preview surface, if any, has
+   * the frame size.
+   */
+  private void createSessionIfReady() {
+    if (cameraDevice == null
+        || captureSession != null
+        || (previewHolder != null && !previewSurfaceReady)) {
+      return;
+    }
+    List<Surface> surfaces = new ArrayList<>();
+    surfaces.add(imageReader.getSurface());
+    if (previewHolder != null) {
+      surfaces.add(previewHolder.getSurface());
+    }
+    try {
+      cameraDevice.createCaptureSession(surfaces, new SessionCallback(surfaces), cameraHandler);
+    } catch (CameraAccessException e) {
+      Log.e(TAG, "Could not create the capture session: " + e);
+    }
+  }
+
+  /**
+   * Gets the id of the camera facing in the requested direction, or null if there is none.
+   *
+   * @param facing {@link CameraSource#CAMERA_FACING_BACK} or {@link
+   *     CameraSource#CAMERA_FACING_FRONT}
+   */
+  @Nullable
+  private String getIdForRequestedCamera(int facing) throws CameraAccessException {
+    int lensFacing =
+        facing == CameraSource.CAMERA_FACING_FRONT
+            ? CameraCharacteristics.LENS_FACING_FRONT
+            : CameraCharacteristics.LENS_FACING_BACK;
+    for (String cameraId : cameraManager.getCameraIdList()) {
+      Integer cameraFacing =
+          cameraManager.getCameraCharacteristics(cameraId).get(CameraCharacteristics.LENS_FACING);
+      if (cameraFacing != null && cameraFacing == lensFacing) {
+        return cameraId;
+      }
+    }
+    return null;
+  }
+
+  /** Selects the YUV output size closest to the requested preview size. */
+  @Nullable
+  private static android.util.Size selectPreviewSize(CameraCharacteristics characteristics) {
+    StreamConfigurationMap map =
+        characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+    if (map == null) {
+      return null;
+    }
+    android.util.Size selectedSize = null;
+    int minDiff = Integer.MAX_VALUE;
+    for (android.util.Size size : map.getOutputSizes(ImageFormat.YUV_420_888)) {
+      int diff =
+          Math.abs(size.getWidth() - REQUESTED_PREVIEW_WIDTH)
+              + Math.abs(size.getHeight() - REQUESTED_PREVIEW_HEIGHT);
+      if (diff < minDiff) {
+        selectedSize = size;
+        minDiff = diff;
+      }
+    }
+    return selectedSize;
+  }
+
+  /**
+   * Selects the auto exposure frame rate range closest to the requested frame rate, using the same
+   * metric as {@link CameraSource}.
+   */
+  @Nullable
+  private static Range<Integer> selectFpsRange(CameraCharacteristics characteristics) {
+    Range<Integer>[] ranges =
+        characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+    if (ranges == null) {
+      return null;
+    }
+    Range<Integer> selectedRange = null;
+    int minDiff = Integer.MAX_VALUE;
+    for (Range<Integer> range : ranges) {
+      int diff =
+          Math.abs(REQUESTED_FPS - range.getLower()) + Math.abs(REQUESTED_FPS - range.getUpper());
+      if (diff < minDiff) {
+        selectedRange = range;
+        minDiff = diff;
+      }
+    }
+    return selectedRange;
+  }
+
+  private static boolean supportsContinuousFocus(CameraCharacteristics characteristics) {
+    int[] modes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+    if (modes != null) {
+      for (int mode : modes) {
+        if (mode == CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_VIDEO) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the rotation of the camera images relative to the display, as one of the
+   * FirebaseVisionImageMetadata rotation constants, computed the same way as in {@link
+   * CameraSource}.
+   */
+  private int getRotation(CameraCharacteristics characteristics) {
+    WindowManager windowManager = (WindowManager) activity.getSystemService(Context.WINDOW_SERVICE);
+    int degrees = 0;
+    int displayRotation = windowManager.getDefaultDisplay().getRotation();
+    switch (displayRotation) {
+      case Surface.ROTATION_0:
+        degrees = 0;
+        break;
+      case Surface.ROTATION_90:
+        degrees = 90;
+        break;
+      case Surface.ROTATION_180:
+        degrees = 180;
+        break;
+      case Surface.ROTATION_270:
+        degrees = 270;
+        break;
+      default:
+        Log.e(TAG, "Bad rotation value: " + displayRotation);
+    }
+
+    Integer sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+    int orientation = sensorOrientation == null ? 0 : sensorOrientation;
+    Integer lensFacing = characteristics.get(CameraCharacteristics.LENS_FACING);
+    int angle;
+    if (lensFacing != null && lensFacing == CameraCharacteristics.LENS_FACING_FRONT) {
+      angle = (orientation + degrees) % 360;
+    } else { // back-facing
+      angle = (orientation - degrees + 360) % 360;
+    }
+    return angle / 90;
+  }
+
+  // ==============================================================================================
+  // Camera callbacks
+  // ==============================================================================================
+
+  /** Keeps the opened camera, unless it has been stopped or restarted in the meantime. */
+  private class DeviceCallback extends CameraDevice.StateCallback {
+    @Override
+    public void onOpened(@NonNull CameraDevice camera) {
+      synchronized (Camera2Source.this) {
+        if (deviceCallback != this) {
+          camera.close();
+          return;
+        }
+        cameraDevice = camera;
+        createSessionIfReady();
+      }
+    }
+
+    @Override
+    public void onDisconnected(@NonNull CameraDevice camera) {
+      Log.w(TAG, "Camera disconnected.");
+      closeCamera(camera);
+    }
+
+    @Override
+    public void onError(@NonNull CameraDevice camera, int error) {
+      Log.e(TAG, "Camera error: " + error);
+      closeCamera(camera);
+    }
+
+    private void closeCamera(CameraDevice camera) {
+      synchronized (Camera2Source.this) {
+        if (cameraDevice == camera) {
+          cameraDevice = null;
+          captureSession = null;
+        }
+      }
+      camera.close();
+    }
+  }
+
+  /** Starts the repeating preview request on a configured session. */
+  private class SessionCallback extends CameraCaptureSession.StateCallback {
+    private final List<Surface> surfaces;
+
+    SessionCallback(List<Surface> surfaces) {
+      this.surfaces = surfaces;
+    }
+
+    @Override
+    public void onConfigured(@NonNull CameraCaptureSession session) {
+      synchronized (Camera2Source.this) {
+        if (cameraDevice == null || cameraDevice != session.getDevice()) {
+          session.close();
+          return;
+        }
+        captureSession = session;
+        try {
+          CaptureRequest.Builder request =
+              cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+          for (Surface surface : surfaces) {
+            request.addTarget(surface);
+          }
+          if (fpsRange != null) {
+            request.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, fpsRange);
+          }
+          if (continuousFocus) {
+            request.set(
+                CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_VIDEO);
+          }
+          session.setRepeatingRequest(request.build(), null, cameraHandler);
+        } catch (CameraAccessException | IllegalStateException e) {
+          Log.e(TAG, "Could not start the preview: " + e);
+        }
+      }
+    }
+
+    @Override
+    public void onConfigureFailed(@NonNull CameraCaptureSession session) {
+      Log.e(TAG, "Could not configure the capture session.");
+    }
+  }
+
+  /**
+   * Counts the images acquired from a reader that are still open, and closes the reader once it is
+   * no longer needed and the last of them has been closed.
+   */
+  private static final class ReaderFrames implements Runnable {
+    private final ImageReader reader;
+
+    // @GuardedBy("this")
+    private int openCount;
+
+    // @GuardedBy("this")
+    private boolean closing;
+
+    ReaderFrames(ImageReader reader) {
+      this.reader = reader;
+    }
+
+    /**
+     * Returns the latest image of the reader, counted as open, or null if there is none or the
+     * reader is closing.
+     *
+     * @throws IllegalStateException if the processor holds every image the reader has
+     */
+    @Nullable
+    synchronized Image acquireLatestImage() {
+      if (closing) {
+        return null;
+      }
+      // Also closes any older images still queued in the reader.
+      Image image = reader.acquireLatestImage();
+      if (image != null) {
+        openCount++;
+      }
+      return image;
+    }
+
+    /** Closes the reader now if no image is open, or else once the last one is closed. */
+    synchronized void close() {
+      closing = true;
+      if (openCount == 0) {
+        reader.close();
+      }
+    }
+
+    /** Called when an acquired image has been closed. */
+    @Override
+    public synchronized void run() {
+      openCount--;
+      if (closing && openCount == 0) {
+        reader.close();
+      }
+    }
+  }
+
+  /** Called on the camera thread when the reader has a new image. */
+  private class ImageAvailableListener implements ImageReader.OnImageAvailableListener {
+    private final ReaderFrames frames;
+
+    ImageAvailableListener(ReaderFrames frames) {
+      this.frames = frames;
+    }
+
+    @Override
+    public void onImageAvailable(ImageReader reader) {
+      Image image;
+      try {
+        image = frames.acquireLatestImage();
+      } catch (IllegalStateException e) {
+        // The processor holds every image the reader has. The camera keeps the frame and
+        // delivers the next one once an image is released.
+        droppedCount.incrementAndGet();
+        return;
+      }
+      if (image == null) {
+        return;
+      }
+      long nowNanos = System.nanoTime();
+      receivedCount.incrementAndGet();
+      FrameMetrics metrics = frameMetrics;
+      processingRunnable.setNextFrame(
+          new MediaImageFrame(image, rotation, nowNanos, frames),
+          metrics == null ? null : metrics.startFrame(nowNanos));
+    }
+  }
+
+  // ==============================================================================================
+  // Frame processing
+  // ==============================================================================================
+
+  /**
+   * Hands camera images to the processor on a dedicated thread, always the most recent one, as in
+   * {@link CameraSource}.
+   */
+  private class FrameProcessingRunnable implements Runnable {
+
+    // This lock guards all of the member variables below.
+    private final Object lock = new Object();
+    private boolean active = false;
+
+    private MediaImageFrame pendingFrame;
+    @Nullable private FrameTrace pendingTrace;
+
+    /** Marks the runnable as active/not active. Signals any blocked threads to continue. */
+    void setActive(boolean active) {
+      synchronized (lock) {
+        this.active = active;
+        lock.notifyAll();
+      }
+    }
+
+    /**
+     * Keeps {@code frame} as the next one to process, closing the previous pending frame, or
+     * closes {@code frame} right away if the camera source has been stopped.
+     */
+    void setNextFrame(MediaImageFrame frame, @Nullable FrameTrace trace) {
+      synchronized (lock) {
+        if (!active) {
+          frame.release();
+          return;
+        }
+        if (pendingFrame != null) {
+          droppedCount.incrementAndGet();
+          pendingFrame.release();
+        }
+        pendingFrame = frame;
+        pendingTrace = trace;
+        if (trace != null) {
+          trace.mark(FrameTrace.Point.FRAME_QUEUED);
+        }
+        lock.notifyAll();
+      }
+    }
+
+    @Override
+    public void run() {
+      MediaImageFrame frame;
+      FrameTrace trace;
+
+      while (true) {
+        synchronized (lock) {
+          while (active && (pendingFrame == null)) {
+            try {
+              lock.wait();
+            } catch (InterruptedException e) {
+              Log.d(TAG, "Frame processing loop terminated.", e);
+              return;
+            }
+          }
+
+          if (!active) {
+            if (pendingFrame != null) {
+              pendingFrame.release();
+              pendingFrame = null;
+            }
+            return;
+          }
+
+          frame = pendingFrame;
+          trace = pendingTrace;
+          pendingFrame = null;
+          pendingTrace = null;
+        }
+
+        try {
+          processFrame(frame, trace);
+        } catch (Throwable t) {
+          Log.e(TAG, "Exception thrown from receiver.", t);
+        } finally {
+          // Processors that still need the image have retained the frame; otherwise this hands
+          // the image back to the reader.
+          frame.release();
+        }
+      }
+    }
+  }
+
+  private void processFrame(MediaImageFrame frame, @Nullable FrameTrace trace) throws Exception {
+    FrameMetadata.Builder metadata =
+        new FrameMetadata.Builder()
+            .setWidth(frame.getWidth())
+            .setHeight(frame.getHeight())
+            .setRotation(frame.getRotation())
+            .setCameraFacing(facing)
+            .setFrameTrace(trace);
+    synchronized (processorLock) {
+      if (frameProcessor == null) {
+        return;
+      }
+      if (frameProcessor instanceof MediaImageProcessor) {
+        ((MediaImageProcessor) frameProcessor).process(frame, metadata.build(), graphicOverlay);
+        return;
+      }
+
+      // Processors that only take byte buffers get an NV21 copy in a pooled buffer.
+      FrameBufferPool pool = frameBufferPool;
+      byte[] data;
+      synchronized (freeBuffers) {
+        data = freeBuffers.poll();
+      }
+      if (data == null) {
+        droppedCount.incrementAndGet();
+        return;
+      }
+      frame.copyToNv21(data);
+      FrameBuffer frameBuffer = pool.onFrameReceived(data);
+      if (frameBuffer == null) {
+        return;
+      }
+      try {
+        frameProcessor.process(
+            frameBuffer.getBuffer(),
+            metadata.setFrameBuffer(frameBuffer).build(),
+            graphicOverlay);
+      } finally {
+        pool.markProcessed(frameBuffer);
+      }
+    }
+  }
+}
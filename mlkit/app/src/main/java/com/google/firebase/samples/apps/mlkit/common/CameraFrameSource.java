@@ -0,0 +1,69 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import android.Manifest;
+import android.view.SurfaceHolder;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresPermission;
+
+import com.google.android.gms.common.images.Size;
+
+import java.io.IOException;
+
+/**
+ * A camera that feeds preview frames to a {@link VisionImageProcessor}, implemented on top of
+ * either camera API: {@link CameraSource} for {@code android.hardware.Camera} and {@link
+ * Camera2Source} for {@code android.hardware.camera2}.
+ */
+public interface CameraFrameSource {
+
+  /** Opens the camera and starts sending preview frames to the processor, without showing them. */
+  @RequiresPermission(Manifest.permission.CAMERA)
+  CameraFrameSource start() throws IOException;
+
+  /** Opens the camera and starts sending preview frames to the processor and {@code holder}. */
+  @RequiresPermission(Manifest.permission.CAMERA)
+  CameraFrameSource start(SurfaceHolder holder) throws IOException;
+
+  /** Closes the camera and stops sending frames to the processor. The source can be restarted. */
+  void stop();
+
+  /** Stops the camera for good and releases the processor. */
+  void release();
+
+  /**
+   * Selects the back or front camera, using {@link CameraSource#CAMERA_FACING_BACK} or {@link
+   * CameraSource#CAMERA_FACING_FRONT}. Takes effect the next time the camera is started.
+   */
+  void setFacing(int facing);
+
+  int getCameraFacing();
+
+  /** Returns the size of the preview frames, or null if the camera has not been started. */
+  @Nullable
+  Size getPreviewSize();
+
+  void setMachineLearningFrameProcessor(VisionImageProcessor processor);
+
+  /**
+   * Sets the processor the frames are sent to. If {@code owned} is false, the processor is not
+   * stopped when it is replaced or the camera is released, e.g. because it is kept by a {@link
+   * VisionProcessorRegistry} for later.
+   */
+  void setMachineLearningFrameProcessor(VisionImageProcessor processor, boolean owned);
+
+  /** Starts a {@link FrameTrace} for every preview frame, or stops tracing if null. */
+  void setFrameMetrics(@Nullable FrameMetrics metrics);
+}
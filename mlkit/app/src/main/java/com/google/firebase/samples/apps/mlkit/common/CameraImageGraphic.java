@@ -9,6 +9,7 @@ import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay.Graphic;
 public class CameraImageGraphic extends Graphic {
 
     private final Bitmap bitmap;
+    private final Rect destRect = new Rect();
 
     public CameraImageGraphic(GraphicOverlay overlay, Bitmap bitmap) {
         super(overlay);
@@ -17,7 +18,8 @@ public class CameraImageGraphic extends Graphic {
 
     @Override
     public void draw(Canvas canvas) {
-        canvas.drawBitmap(bitmap, null, new Rect(0, 0, canvas.getWidth(), canvas.getHeight()), null);
+        destRect.set(0, 0, canvas.getWidth(), canvas.getHeight());
+        canvas.drawBitmap(bitmap, null, destRect, null);
     }
 }
 
@@ -18,6 +18,7 @@ import android.Manifest;
 import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.graphics.ImageFormat;
 import android.graphics.SurfaceTexture;
 import android.hardware.Camera;
@@ -33,11 +34,8 @@ import com.google.android.gms.common.images.Size;
 
 import java.io.IOException;
 import java.lang.Thread.State;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Manages the camera and allows UI updates on top of it (e.g. overlaying extra Graphics or
@@ -45,7 +43,7 @@ import java.util.Map;
  * sending those frames to child classes' detectors / classifiers as fast as it is able to process.
  */
 @SuppressLint("MissingPermission")
-public class CameraSource {
+public class CameraSource implements CameraFrameSource {
   @SuppressLint("InlinedApi")
   public static final int CAMERA_FACING_BACK = CameraInfo.CAMERA_FACING_BACK;
 
@@ -67,6 +65,17 @@ public class CameraSource {
    */
   private static final float ASPECT_RATIO_TOLERANCE = 0.01f;
 
+  /** Default number of preview buffers handed to the camera when it is opened. */
+  private static final int DEFAULT_FRAME_BUFFER_COUNT = 4;
+
+  /** Default upper bound for the preview buffers, when processors hold on to frames. */
+  private static final int DEFAULT_MAX_FRAME_BUFFER_COUNT = 8;
+
+  /** Notified on the UI thread when the camera was restarted with a new preview size. */
+  public interface PreviewSizeListener {
+    void onPreviewSizeChanged(Size previewSize);
+  }
+
   protected Activity activity;
 
   private Camera camera;
@@ -83,9 +92,9 @@ public class CameraSource {
 
   // These values may be requested by the caller.  Due to hardware limitations, we may need to
   // select close, but not exactly the same values for these.
-  private final float requestedFps = 20.0f;
-  private final int requestedPreviewWidth = 480;
-  private final int requestedPreviewHeight = 360;
+  private float requestedFps = 20.0f;
+  private int requestedPreviewWidth = 480;
+  private int requestedPreviewHeight = 360;
   private final boolean requestedAutoFocus = true;
 
   // These instances need to be held onto to avoid GC of their underlying resources.  Even though
@@ -101,6 +110,10 @@ public class CameraSource {
   // want to display a preview we use a SurfaceTexture if we are running at least Honeycomb.
   private boolean usingSurfaceTexture;
 
+  // The surface holder passed to start(SurfaceHolder), needed to restart the camera with a new
+  // preview size.
+  private SurfaceHolder surfaceHolder;
+
   /**
    * Dedicated thread and associated runnable for calling into the detector with frames, as the
    * frames become available from the camera.
@@ -112,17 +125,25 @@ public class CameraSource {
   private final Object processorLock = new Object();
   // @GuardedBy("processorLock")
   private VisionImageProcessor frameProcessor;
+  // Whether frameProcessor is stopped along with this source.
+  // @GuardedBy("processorLock")
+  private boolean ownsFrameProcessor;
+
+  private int frameBufferCount = DEFAULT_FRAME_BUFFER_COUNT;
+  private int maxFrameBufferCount = DEFAULT_MAX_FRAME_BUFFER_COUNT;
 
   /**
-   * Map to convert between a byte array, received from the camera, and its associated byte buffer.
-   * We use byte buffers internally because this is a more efficient way to call into native code
-   * later (avoids a potential copy).
-   *
-   * <p><b>Note:</b> uses IdentityHashMap here instead of HashMap because the behavior of an array's
-   * equals, hashCode and toString methods is both useless and unexpected. IdentityHashMap enforces
-   * identity ('==') check on the keys.
+   * The preview buffers shared between the camera and the frame processor, recreated each time the
+   * camera is opened. We use byte buffers internally because this is a more efficient way to call
+   * into native code later (avoids a potential copy).
    */
-  private final Map<byte[], ByteBuffer> bytesToByteBuffer = new IdentityHashMap<>();
+  private volatile FrameBufferPool frameBufferPool;
+
+  // Traces frames from the camera callback to the overlay when set.
+  @Nullable private volatile FrameMetrics frameMetrics;
+
+  // Told when setCaptureSettings changed the preview size, e.g. to lay out the preview again.
+  @Nullable private PreviewSizeListener previewSizeListener;
 
   public CameraSource(Activity activity, GraphicOverlay overlay) {
     this.activity = activity;
@@ -142,13 +163,14 @@ public class CameraSource {
   // ==============================================================================================
 
   /** Stops the camera and releases the resources of the camera and underlying detector. */
+  @Override
   public void release() {
     synchronized (processorLock) {
       stop();
       processingRunnable.release();
       cleanScreen();
 
-      if (frameProcessor != null) {
+      if (frameProcessor != null && ownsFrameProcessor) {
         frameProcessor.stop();
       }
     }
@@ -162,6 +184,7 @@ public class CameraSource {
    */
   @SuppressLint("MissingPermission")
   @RequiresPermission(Manifest.permission.CAMERA)
+  @Override
   public synchronized CameraSource start() throws IOException {
     if (camera != null) {
       return this;
@@ -187,6 +210,7 @@ public class CameraSource {
    * @throws IOException if the supplied surface holder could not be used as the preview display
    */
   @RequiresPermission(Manifest.permission.CAMERA)
+  @Override
   public synchronized CameraSource start(SurfaceHolder surfaceHolder) throws IOException {
     if (camera != null) {
       return this;
@@ -194,6 +218,7 @@ public class CameraSource {
 
     camera = createCamera();
     camera.setPreviewDisplay(surfaceHolder);
+    this.surfaceHolder = surfaceHolder;
     camera.startPreview();
 
     processingThread = new Thread(processingRunnable);
@@ -213,6 +238,7 @@ public class CameraSource {
    * <p>Call {@link #release()} instead to completely shut down this camera source and release the
    * resources of the underlying detector.
    */
+  @Override
   public synchronized void stop() {
     processingRunnable.setActive(false);
     if (processingThread != null) {
@@ -227,6 +253,12 @@ public class CameraSource {
       processingThread = null;
     }
 
+    if (frameBufferPool != null) {
+      // Buffers that processors release from now on must not go back to the camera.
+      Log.i(TAG, "Frame buffers: " + frameBufferPool);
+      frameBufferPool.close();
+    }
+
     if (camera != null) {
       camera.stopPreview();
       camera.setPreviewCallbackWithBuffer(null);
@@ -242,12 +274,10 @@ public class CameraSource {
       camera.release();
       camera = null;
     }
-
-    // Release the reference to any image buffers, since these will no longer be in use.
-    bytesToByteBuffer.clear();
   }
 
   /** Changes the facing of the camera. */
+  @Override
   public synchronized void setFacing(int facing) {
     if ((facing != CAMERA_FACING_BACK) && (facing != CAMERA_FACING_FRONT)) {
       throw new IllegalArgumentException("Invalid camera: " + facing);
@@ -255,7 +285,119 @@ public class CameraSource {
     this.facing = facing;
   }
 
+  /**
+   * Sets how many preview buffers are handed to the camera initially, and how many may be
+   * allocated in total when the frame processor holds on to frames. Takes effect the next time the
+   * camera is started.
+   */
+  public synchronized void setFrameBufferCount(int initialCount, int maxCount) {
+    if (initialCount < 1 || maxCount < initialCount) {
+      throw new IllegalArgumentException(
+          "Invalid frame buffer count: " + initialCount + " (max " + maxCount + ")");
+    }
+    frameBufferCount = initialCount;
+    maxFrameBufferCount = maxCount;
+  }
+
+  /**
+   * Returns the pool of preview buffers of the current or most recent camera session, or null if
+   * the camera has not been started yet.
+   */
+  @Nullable
+  public FrameBufferPool getFrameBufferPool() {
+    return frameBufferPool;
+  }
+
+  /**
+   * Starts a {@link FrameTrace} in {@code metrics} for every preview frame, which is passed to the
+   * frame processor in the {@link FrameMetadata}, or stops tracing if {@code metrics} is null.
+   */
+  @Override
+  public void setFrameMetrics(@Nullable FrameMetrics metrics) {
+    frameMetrics = metrics;
+  }
+
+  /**
+   * Sets the listener told when {@link #setCaptureSettings(int, int, int)} restarted the camera
+   * with a new preview size, or removes it if null.
+   */
+  public synchronized void setPreviewSizeListener(@Nullable PreviewSizeListener listener) {
+    previewSizeListener = listener;
+  }
+
+  /**
+   * Requests a new preview frame rate and size, e.g. from an {@link AdaptiveCaptureController}.
+   * Can be called from any thread; the change is applied on the UI thread. A new frame rate is
+   * applied to the running camera, while a new size restarts it. The camera picks the closest
+   * supported values.
+   */
+  public void setCaptureSettings(final int fps, final int width, final int height) {
+    activity.runOnUiThread(
+        new Runnable() {
+          @Override
+          public void run() {
+            applyCaptureSettings(fps, width, height);
+          }
+        });
+  }
+
+  private synchronized void applyCaptureSettings(int fps, int width, int height) {
+    boolean sizeChanged = width != requestedPreviewWidth || height != requestedPreviewHeight;
+    requestedFps = fps;
+    requestedPreviewWidth = width;
+    requestedPreviewHeight = height;
+    if (camera == null) {
+      return;
+    }
+
+    if (!sizeChanged) {
+      int[] previewFpsRange = selectPreviewFpsRange(camera, requestedFps);
+      if (previewFpsRange == null) {
+        return;
+      }
+      try {
+        Camera.Parameters parameters = camera.getParameters();
+        parameters.setPreviewFpsRange(
+            previewFpsRange[Camera.Parameters.PREVIEW_FPS_MIN_INDEX],
+            previewFpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]);
+        camera.setParameters(parameters);
+        Log.i(TAG, "Preview fps range changed for " + fps + " fps");
+      } catch (RuntimeException e) {
+        Log.e(TAG, "Failed to change the preview fps range.", e);
+      }
+      return;
+    }
+
+    boolean restartWithTexture = usingSurfaceTexture;
+    stop();
+    try {
+      if (restartWithTexture) {
+        start();
+      } else {
+        start(surfaceHolder);
+      }
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to restart the camera with a new preview size.", e);
+      return;
+    }
+    Log.i(TAG, "Preview restarted at " + previewSize.getWidth() + "x" + previewSize.getHeight());
+
+    // Keep the overlay's coordinate mapping in sync with the new frames.
+    int min = Math.min(previewSize.getWidth(), previewSize.getHeight());
+    int max = Math.max(previewSize.getWidth(), previewSize.getHeight());
+    if (activity.getResources().getConfiguration().orientation
+        == Configuration.ORIENTATION_PORTRAIT) {
+      graphicOverlay.setCameraInfo(min, max, facing);
+    } else {
+      graphicOverlay.setCameraInfo(max, min, facing);
+    }
+    if (previewSizeListener != null) {
+      previewSizeListener.onPreviewSizeChanged(previewSize);
+    }
+  }
+
   /** Returns the preview size that is currently in use by the underlying camera. */
+  @Override
   public Size getPreviewSize() {
     return previewSize;
   }
@@ -264,6 +406,7 @@ public class CameraSource {
    * Returns the selected camera; one of {@link #CAMERA_FACING_BACK} or {@link
    * #CAMERA_FACING_FRONT}.
    */
+  @Override
   public int getCameraFacing() {
     return facing;
   }
@@ -275,11 +418,12 @@ public class CameraSource {
    */
   @SuppressLint("InlinedApi")
   private Camera createCamera() throws IOException {
+    final Camera camera;
     int requestedCameraId = getIdForRequestedCamera(facing);
     if (requestedCameraId == -1) {
       throw new IOException("Could not find requested camera.");
     }
-    Camera camera = Camera.open(requestedCameraId);
+    camera = Camera.open(requestedCameraId);
 
     SizePair sizePair = selectSizePair(camera, requestedPreviewWidth, requestedPreviewHeight);
     if (sizePair == null) {
@@ -318,7 +462,7 @@ public class CameraSource {
 
     camera.setParameters(parameters);
 
-    // Four frame buffers are needed for working with the camera:
+    // By default four frame buffers are handed to the camera:
     //
     //   one for the frame that is currently being executed upon in doing detection
     //   one for the next pending frame to process immediately upon completing detection
@@ -329,11 +473,21 @@ public class CameraSource {
     // one thread for acquiring images, and another thread for calling into user code.  If only
     // three buffers are used, then the camera will spew thousands of warning messages when
     // detection takes a non-trivial amount of time.
+    //
+    // Processors may keep frames beyond that while they run asynchronous detection; the pool
+    // allocates extra buffers when the camera is about to run dry.
     camera.setPreviewCallbackWithBuffer(new CameraPreviewCallback());
-    camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-    camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-    camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-    camera.addCallbackBuffer(createPreviewBuffer(previewSize));
+    frameBufferPool =
+        new FrameBufferPool(
+            getPreviewBufferSize(previewSize),
+            frameBufferCount,
+            maxFrameBufferCount,
+            new FrameBufferPool.Recycler() {
+              @Override
+              public void recycle(byte[] data) {
+                camera.addCallbackBuffer(data);
+              }
+            });
 
     return camera;
   }
@@ -546,29 +700,14 @@ public class CameraSource {
   }
 
   /**
-   * Creates one buffer for the camera preview callback. The size of the buffer is based off of the
-   * camera preview size and the format of the camera image.
-   *
-   * @return a new preview buffer of the appropriate size for the current camera settings
+   * Returns the size of one buffer for the camera preview callback. The size of the buffer is based
+   * off of the camera preview size and the format of the camera image.
    */
   @SuppressLint("InlinedApi")
-  private byte[] createPreviewBuffer(Size previewSize) {
+  private static int getPreviewBufferSize(Size previewSize) {
     int bitsPerPixel = ImageFormat.getBitsPerPixel(ImageFormat.NV21);
     long sizeInBits = (long) previewSize.getHeight() * previewSize.getWidth() * bitsPerPixel;
-    int bufferSize = (int) Math.ceil(sizeInBits / 8.0d) + 1;
-
-    // Creating the byte array this way and wrapping it, as opposed to using .allocate(),
-    // should guarantee that there will be an array to work with.
-    byte[] byteArray = new byte[bufferSize];
-    ByteBuffer buffer = ByteBuffer.wrap(byteArray);
-    if (!buffer.hasArray() || (buffer.array() != byteArray)) {
-      // I don't think that this will ever happen.  But if it does, then we wouldn't be
-      // passing the preview content to the underlying detector later.
-      throw new IllegalStateException("Failed to create valid buffer for camera source.");
-    }
-
-    bytesToByteBuffer.put(byteArray, buffer);
-    return byteArray;
+    return (int) Math.ceil(sizeInBits / 8.0d) + 1;
   }
 
   // ==============================================================================================
@@ -579,17 +718,26 @@ public class CameraSource {
   private class CameraPreviewCallback implements Camera.PreviewCallback {
     @Override
     public void onPreviewFrame(byte[] data, Camera camera) {
-      processingRunnable.setNextFrame(data, camera);
+      FrameMetrics metrics = frameMetrics;
+      processingRunnable.setNextFrame(
+          data, metrics == null ? null : metrics.startFrame(System.nanoTime()));
     }
   }
 
+  @Override
   public void setMachineLearningFrameProcessor(VisionImageProcessor processor) {
+    setMachineLearningFrameProcessor(processor, /* owned= */ true);
+  }
+
+  @Override
+  public void setMachineLearningFrameProcessor(VisionImageProcessor processor, boolean owned) {
     synchronized (processorLock) {
       cleanScreen();
-      if (frameProcessor != null) {
+      if (frameProcessor != null && ownsFrameProcessor && frameProcessor != processor) {
         frameProcessor.stop();
       }
       frameProcessor = processor;
+      ownsFrameProcessor = owned;
     }
   }
 
@@ -610,7 +758,8 @@ public class CameraSource {
     private boolean active = true;
 
     // These pending variables hold the state associated with the new frame awaiting processing.
-    private ByteBuffer pendingFrameData;
+    private FrameBuffer pendingFrame;
+    @Nullable private FrameTrace pendingTrace;
 
     FrameProcessingRunnable() {}
 
@@ -632,25 +781,33 @@ public class CameraSource {
     }
 
     /**
-     * Sets the frame data received from the camera. This adds the previous unused frame buffer (if
-     * present) back to the camera, and keeps a pending reference to the frame data for future use.
+     * Sets the frame data received from the camera. This drops the previous unused frame (if
+     * present), which hands its buffer back to the camera, and keeps a pending reference to the
+     * frame data and its trace, if any, for future use.
      */
-    void setNextFrame(byte[] data, Camera camera) {
+    void setNextFrame(byte[] data, @Nullable FrameTrace trace) {
+      FrameBufferPool pool = frameBufferPool;
       synchronized (lock) {
-        if (pendingFrameData != null) {
-          camera.addCallbackBuffer(pendingFrameData.array());
-          pendingFrameData = null;
+        if (pendingFrame != null) {
+          pool.drop(pendingFrame);
+          pendingFrame = null;
+          pendingTrace = null;
         }
 
-        if (!bytesToByteBuffer.containsKey(data)) {
+        FrameBuffer frame = pool == null ? null : pool.onFrameReceived(data);
+        if (frame == null) {
           Log.d(
               TAG,
-              "Skipping frame. Could not find ByteBuffer associated with the image "
+              "Skipping frame. Could not find FrameBuffer associated with the image "
                   + "data from the camera.");
           return;
         }
 
-        pendingFrameData = bytesToByteBuffer.get(data);
+        pendingFrame = frame;
+        pendingTrace = trace;
+        if (trace != null) {
+          trace.mark(FrameTrace.Point.FRAME_QUEUED);
+        }
 
         // Notify the processor thread if it is waiting on the next frame (see below).
         lock.notifyAll();
@@ -674,11 +831,12 @@ public class CameraSource {
     @SuppressWarnings("GuardedBy")
     @Override
     public void run() {
-      ByteBuffer data;
+      FrameBuffer frame;
+      FrameTrace trace;
 
       while (true) {
         synchronized (lock) {
-          while (active && (pendingFrameData == null)) {
+          while (active && (pendingFrame == null)) {
             try {
               // Wait for the next frame to be received from the camera, since we
               // don't have it yet.
@@ -694,14 +852,20 @@ public class CameraSource {
             // this here, immediately after the wait() above, to handle the case where
             // setActive(false) had been called, triggering the termination of this
             // loop.
+            if (pendingFrame != null) {
+              pendingFrame.release();
+              pendingFrame = null;
+            }
             return;
           }
 
           // Hold onto the frame data locally, so that we can use this for detection
-          // below.  We need to clear pendingFrameData to ensure that this buffer isn't
+          // below.  We need to clear pendingFrame to ensure that this buffer isn't
           // recycled back to the camera before we are done using that data.
-          data = pendingFrameData;
-          pendingFrameData = null;
+          frame = pendingFrame;
+          trace = pendingTrace;
+          pendingFrame = null;
+          pendingTrace = null;
         }
 
         // The code below needs to run outside of synchronization, because this will allow
@@ -712,19 +876,23 @@ public class CameraSource {
           synchronized (processorLock) {
             Log.d(TAG, "Process an image");
             frameProcessor.process(
-                data,
+                frame.getBuffer(),
                 new FrameMetadata.Builder()
                     .setWidth(previewSize.getWidth())
                     .setHeight(previewSize.getHeight())
                     .setRotation(rotation)
                     .setCameraFacing(facing)
+                    .setFrameBuffer(frame)
+                    .setFrameTrace(trace)
                     .build(),
                 graphicOverlay);
           }
         } catch (Throwable t) {
           Log.e(TAG, "Exception thrown from receiver.", t);
         } finally {
-          camera.addCallbackBuffer(data.array());
+          // Processors that still need the data have retained the frame; otherwise this hands
+          // the buffer back to the camera.
+          frameBufferPool.markProcessed(frame);
         }
       }
     }
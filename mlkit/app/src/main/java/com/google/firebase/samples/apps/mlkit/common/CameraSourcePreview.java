@@ -26,7 +26,14 @@ import com.google.android.gms.common.images.Size;
 
 import java.io.IOException;
 
-/** Preview the camera image in the screen. */
+/**
+ * Preview the camera image in the screen.
+ *
+ * <p>By default the camera renders into an offscreen texture and processors draw the frames they
+ * analyzed behind their graphics. With {@link #setDirectPreview(boolean)}, the camera renders
+ * straight into this view's surface instead and the overlay is composited on top, so frames do not
+ * have to be converted to bitmaps just to be shown.
+ */
 public class CameraSourcePreview extends ViewGroup {
   private static final String TAG = "MIDemoApp:Preview";
 
@@ -34,7 +41,8 @@ public class CameraSourcePreview extends ViewGroup {
   private SurfaceView surfaceView;
   private boolean startRequested;
   private boolean surfaceAvailable;
-  private CameraSource cameraSource;
+  private CameraFrameSource cameraSource;
+  private boolean directPreview;
 
   private GraphicOverlay overlay;
 
@@ -49,7 +57,7 @@ public class CameraSourcePreview extends ViewGroup {
     addView(surfaceView);
   }
 
-  public void start(CameraSource cameraSource) throws IOException {
+  public void start(CameraFrameSource cameraSource) throws IOException {
     if (cameraSource == null) {
       stop();
     }
@@ -62,11 +70,31 @@ public class CameraSourcePreview extends ViewGroup {
     }
   }
 
-  public void start(CameraSource cameraSource, GraphicOverlay overlay) throws IOException {
+  public void start(CameraFrameSource cameraSource, GraphicOverlay overlay) throws IOException {
     this.overlay = overlay;
+    if (cameraSource instanceof CameraSource) {
+      // The surface and the overlay are sized for the aspect ratio of the preview, and the overlay
+      // scales graphics by its own size, so both need a new layout when the size changes.
+      ((CameraSource) cameraSource)
+          .setPreviewSizeListener(
+              new CameraSource.PreviewSizeListener() {
+                @Override
+                public void onPreviewSizeChanged(Size previewSize) {
+                  requestLayout();
+                }
+              });
+    }
     start(cameraSource);
   }
 
+  /**
+   * Sets whether the camera renders its preview directly into this view. Takes effect the next
+   * time the camera is started.
+   */
+  public void setDirectPreview(boolean directPreview) {
+    this.directPreview = directPreview;
+  }
+
   public void stop() {
     if (cameraSource != null) {
       cameraSource.stop();
@@ -83,8 +111,13 @@ public class CameraSourcePreview extends ViewGroup {
   @SuppressLint("MissingPermission")
   private void startIfReady() throws IOException {
     if (startRequested && surfaceAvailable) {
-      cameraSource.start();
+      if (directPreview) {
+        cameraSource.start(surfaceView.getHolder());
+      } else {
+        cameraSource.start();
+      }
       if (overlay != null) {
+        overlay.setCameraPreviewVisible(directPreview);
         Size size = cameraSource.getPreviewSize();
         int min = Math.min(size.getWidth(), size.getHeight());
         int max = Math.max(size.getWidth(), size.getHeight());
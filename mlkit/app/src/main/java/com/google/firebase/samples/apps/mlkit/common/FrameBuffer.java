@@ -0,0 +1,97 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reference counted camera preview buffer owned by a {@link FrameBufferPool}.
+ *
+ * <p>The camera source holds one reference while a frame is pending or being processed. A
+ * processor that keeps using the frame after {@code process()} returns, for example while an
+ * asynchronous detection is running, calls {@link #retain()} and later {@link #release()}. The
+ * buffer goes back to the camera exactly once, when the last reference is released.
+ */
+public class FrameBuffer {
+
+  private final FrameBufferPool pool;
+  private final byte[] data;
+  private final ByteBuffer buffer;
+  private final AtomicInteger refCount = new AtomicInteger();
+  private volatile long timestampNanos;
+
+  FrameBuffer(FrameBufferPool pool, byte[] data) {
+    this.pool = pool;
+    this.data = data;
+    // Wrapping the array, as opposed to using .allocate(), guarantees that there is an array to
+    // work with.
+    buffer = ByteBuffer.wrap(data);
+  }
+
+  /** Returns the frame data, wrapped in a byte buffer. */
+  public ByteBuffer getBuffer() {
+    return buffer;
+  }
+
+  /** Returns the array the camera writes frame data into. */
+  byte[] getData() {
+    return data;
+  }
+
+  /** Returns the {@link System#nanoTime()} at which the camera delivered this frame. */
+  public long getTimestampNanos() {
+    return timestampNanos;
+  }
+
+  /** Returns the number of outstanding references. */
+  public int getRefCount() {
+    return refCount.get();
+  }
+
+  /**
+   * Adds a reference to the frame, which keeps the buffer from being handed back to the camera
+   * until it is released.
+   *
+   * @throws IllegalStateException if the buffer has already been recycled
+   */
+  public FrameBuffer retain() {
+    while (true) {
+      int count = refCount.get();
+      if (count <= 0) {
+        throw new IllegalStateException("Frame buffer has already been recycled.");
+      }
+      if (refCount.compareAndSet(count, count + 1)) {
+        return this;
+      }
+    }
+  }
+
+  /** Drops a reference, recycling the buffer when it was the last one. */
+  public void release() {
+    int count = refCount.decrementAndGet();
+    if (count == 0) {
+      pool.recycle(this);
+    } else if (count < 0) {
+      refCount.incrementAndGet();
+      throw new IllegalStateException("Frame buffer released more often than retained.");
+    }
+  }
+
+  /** Called by the pool when the camera filled the buffer with a new frame. */
+  void onFilled(long timestampNanos) {
+    this.timestampNanos = timestampNanos;
+    refCount.set(1);
+  }
+}
@@ -0,0 +1,202 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import androidx.annotation.Nullable;
+
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The preview buffers shared between the camera and the frame processors.
+ *
+ * <p>The pool starts with a fixed number of buffers, all handed to the camera. Each frame the
+ * camera fills comes back as a {@link FrameBuffer} with one reference; once every reference has
+ * been released the buffer is handed back to the camera. If processors hold on to so many frames
+ * that the camera is about to run dry, the pool allocates additional buffers, up to a configured
+ * maximum.
+ *
+ * <p>Counters are kept for frames received from the camera, frames dropped before processing,
+ * frames processed and buffers recycled back to the camera.
+ */
+public class FrameBufferPool {
+
+  /** Hands a buffer to the camera so it can be filled with a future frame. */
+  public interface Recycler {
+    void recycle(byte[] data);
+  }
+
+  /**
+   * The camera needs at least this many free buffers to keep delivering frames without
+   * complaining.
+   */
+  private static final int MIN_CAMERA_BUFFERS = 2;
+
+  private final int bufferSize;
+  private final int maxBufferCount;
+  private final Recycler recycler;
+
+  /**
+   * Map to convert between a byte array, received from the camera, and its associated frame
+   * buffer.
+   *
+   * <p><b>Note:</b> uses IdentityHashMap here instead of HashMap because the behavior of an array's
+   * equals, hashCode and toString methods is both useless and unexpected. IdentityHashMap enforces
+   * identity ('==') check on the keys.
+   */
+  // @GuardedBy("this")
+  private final Map<byte[], FrameBuffer> buffers = new IdentityHashMap<>();
+
+  // @GuardedBy("this")
+  private int cameraOwnedCount;
+
+  // @GuardedBy("this")
+  private boolean closed;
+
+  private final AtomicLong receivedCount = new AtomicLong();
+  private final AtomicLong droppedCount = new AtomicLong();
+  private final AtomicLong processedCount = new AtomicLong();
+  private final AtomicLong recycledCount = new AtomicLong();
+
+  /**
+   * Creates a pool and hands {@code initialBufferCount} buffers of {@code bufferSize} bytes to
+   * {@code recycler}.
+   */
+  public FrameBufferPool(
+      int bufferSize, int initialBufferCount, int maxBufferCount, Recycler recycler) {
+    if (initialBufferCount < 1 || maxBufferCount < initialBufferCount) {
+      throw new IllegalArgumentException(
+          "Invalid pool size: " + initialBufferCount + " (max " + maxBufferCount + ")");
+    }
+    this.bufferSize = bufferSize;
+    this.maxBufferCount = maxBufferCount;
+    this.recycler = recycler;
+    for (int i = 0; i < initialBufferCount; i++) {
+      addBufferToCamera();
+    }
+  }
+
+  /**
+   * Wraps frame data the camera delivered. Returns null if {@code data} does not belong to this
+   * pool.
+   */
+  @Nullable
+  public FrameBuffer onFrameReceived(byte[] data) {
+    FrameBuffer frame;
+    boolean grow = false;
+    synchronized (this) {
+      frame = buffers.get(data);
+      if (frame == null) {
+        return null;
+      }
+      cameraOwnedCount--;
+      if (!closed && cameraOwnedCount < MIN_CAMERA_BUFFERS && buffers.size() < maxBufferCount) {
+        grow = true;
+      }
+    }
+    receivedCount.incrementAndGet();
+    frame.onFilled(System.nanoTime());
+    if (grow) {
+      addBufferToCamera();
+    }
+    return frame;
+  }
+
+  /** Releases the camera's reference to a frame that is skipped without being processed. */
+  public void drop(FrameBuffer frame) {
+    droppedCount.incrementAndGet();
+    frame.release();
+  }
+
+  /** Releases the camera's reference to a frame that has been passed to the processor. */
+  public void markProcessed(FrameBuffer frame) {
+    processedCount.incrementAndGet();
+    frame.release();
+  }
+
+  /**
+   * Stops handing buffers back to the camera, e.g. because it has been released. Buffers still
+   * referenced by processors are simply discarded once released.
+   */
+  public synchronized void close() {
+    closed = true;
+    buffers.clear();
+  }
+
+  void recycle(FrameBuffer frame) {
+    // The recycler is called while holding the lock so that a concurrent close() can't hand the
+    // buffer to a camera that is being released.
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      cameraOwnedCount++;
+      recycler.recycle(frame.getData());
+    }
+    recycledCount.incrementAndGet();
+  }
+
+  private void addBufferToCamera() {
+    FrameBuffer frame = new FrameBuffer(this, new byte[bufferSize]);
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      buffers.put(frame.getData(), frame);
+      cameraOwnedCount++;
+      recycler.recycle(frame.getData());
+    }
+  }
+
+  /** Returns the number of buffers allocated by this pool. */
+  public synchronized int getBufferCount() {
+    return buffers.size();
+  }
+
+  /** Returns the number of buffers currently waiting to be filled by the camera. */
+  public synchronized int getCameraOwnedCount() {
+    return cameraOwnedCount;
+  }
+
+  public long getReceivedCount() {
+    return receivedCount.get();
+  }
+
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  public long getProcessedCount() {
+    return processedCount.get();
+  }
+
+  public long getRecycledCount() {
+    return recycledCount.get();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        Locale.US,
+        "buffers=%d cameraOwned=%d received=%d dropped=%d processed=%d recycled=%d",
+        getBufferCount(),
+        getCameraOwnedCount(),
+        getReceivedCount(),
+        getDroppedCount(),
+        getProcessedCount(),
+        getRecycledCount());
+  }
+}
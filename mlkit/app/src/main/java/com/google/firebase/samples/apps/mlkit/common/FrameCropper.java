@@ -0,0 +1,118 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import android.graphics.Rect;
+
+/**
+ * Crops regions out of NV21 camera frames.
+ *
+ * <p>Detection results are expressed in the coordinates of the upright image, i.e. after the
+ * frame has been rotated by its {@code FirebaseVisionImageMetadata.ROTATION_*} value, whereas the
+ * frame data is stored as delivered by the sensor. These helpers map rectangles between the two
+ * coordinate systems and copy a sensor region into a smaller NV21 frame that can be handed to a
+ * detector with the same rotation.
+ */
+public class FrameCropper {
+
+  private FrameCropper() {}
+
+  /**
+   * Maps {@code upright}, a rectangle of the upright image, to the sensor frame of size {@code
+   * width} x {@code height}, and stores the result in {@code out}.
+   */
+  public static void uprightToSensor(Rect upright, int width, int height, int rotation, Rect out) {
+    switch (rotation & 3) {
+      case 1: // 90 degrees
+        out.set(upright.top, height - upright.right, upright.bottom, height - upright.left);
+        break;
+      case 2: // 180 degrees
+        out.set(
+            width - upright.right, height - upright.bottom, width - upright.left,
+            height - upright.top);
+        break;
+      case 3: // 270 degrees
+        out.set(width - upright.bottom, upright.left, width - upright.top, upright.right);
+        break;
+      default:
+        out.set(upright);
+        break;
+    }
+  }
+
+  /**
+   * Maps {@code sensor}, a rectangle of the sensor frame of size {@code width} x {@code height}, to
+   * the upright image, and stores the result in {@code out}.
+   */
+  public static void sensorToUpright(Rect sensor, int width, int height, int rotation, Rect out) {
+    switch (rotation & 3) {
+      case 1: // 90 degrees
+        out.set(height - sensor.bottom, sensor.left, height - sensor.top, sensor.right);
+        break;
+      case 2: // 180 degrees
+        out.set(
+            width - sensor.right, height - sensor.bottom, width - sensor.left,
+            height - sensor.top);
+        break;
+      case 3: // 270 degrees
+        out.set(sensor.top, width - sensor.right, sensor.bottom, width - sensor.left);
+        break;
+      default:
+        out.set(sensor);
+        break;
+    }
+  }
+
+  /**
+   * Clamps {@code rect} to a frame of size {@code width} x {@code height} and grows it to even
+   * coordinates, since NV21 chroma samples cover 2x2 pixel blocks.
+   */
+  public static void alignToChroma(Rect rect, int width, int height) {
+    rect.left = Math.max(0, rect.left & ~1);
+    rect.top = Math.max(0, rect.top & ~1);
+    rect.right = Math.min(width & ~1, (rect.right + 1) & ~1);
+    rect.bottom = Math.min(height & ~1, (rect.bottom + 1) & ~1);
+  }
+
+  /**
+   * Copies the chroma-aligned {@code sensorRect} of an NV21 frame into {@code out}, as an NV21
+   * frame of size {@code sensorRect.width()} x {@code sensorRect.height()}.
+   *
+   * @param nv21 the frame data
+   * @param offset index of the first Y sample in {@code nv21}
+   * @param width width of the frame
+   * @param height height of the frame
+   * @param sensorRect the region to copy, see {@link #alignToChroma(Rect, int, int)}
+   * @param out destination buffer of at least {@code sensorRect.width() * sensorRect.height() *
+   *     3 / 2} bytes
+   */
+  public static void crop(
+      byte[] nv21, int offset, int width, int height, Rect sensorRect, byte[] out) {
+    int cropWidth = sensorRect.width();
+    int cropHeight = sensorRect.height();
+    if (out.length < cropWidth * cropHeight * 3 / 2) {
+      throw new IllegalArgumentException("Output buffer is too small: " + out.length);
+    }
+    int outIndex = 0;
+    for (int y = sensorRect.top; y < sensorRect.bottom; y++) {
+      System.arraycopy(nv21, offset + y * width + sensorRect.left, out, outIndex, cropWidth);
+      outIndex += cropWidth;
+    }
+    int uvStart = offset + width * height;
+    for (int y = sensorRect.top / 2; y < sensorRect.bottom / 2; y++) {
+      System.arraycopy(nv21, uvStart + y * width + sensorRect.left, out, outIndex, cropWidth);
+      outIndex += cropWidth;
+    }
+  }
+}
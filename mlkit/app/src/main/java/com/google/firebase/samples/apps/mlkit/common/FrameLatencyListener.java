@@ -0,0 +1,27 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+/** Receives the latency of every frame a processor has finished with. */
+public interface FrameLatencyListener {
+
+  /**
+   * Called once the detection results of a frame have been handed to the processor.
+   *
+   * @param endToEndNanos time from the camera delivering the frame until the results were ready
+   * @param detectionNanos time the processor spent on the frame, from converting it until the
+   *     results were ready
+   */
+  void onFrameLatency(long endToEndNanos, long detectionNanos);
+}
@@ -13,6 +13,8 @@
 // limitations under the License.
 package com.google.firebase.samples.apps.mlkit.common;
 
+import androidx.annotation.Nullable;
+
 /** Describing a frame info. */
 public class FrameMetadata {
 
@@ -20,6 +22,8 @@ public class FrameMetadata {
   private final int height;
   private final int rotation;
   private final int cameraFacing;
+  @Nullable private final FrameBuffer frameBuffer;
+  @Nullable private final FrameTrace frameTrace;
 
   public int getWidth() {
     return width;
@@ -37,11 +41,38 @@ public class FrameMetadata {
     return cameraFacing;
   }
 
-  private FrameMetadata(int width, int height, int rotation, int facing) {
+  /**
+   * Returns the pooled buffer holding the frame data, or null if the frame did not come from a
+   * {@link FrameBufferPool}. Processors that keep using the data after {@code process()} returns
+   * must {@link FrameBuffer#retain()} it and release it when done.
+   */
+  @Nullable
+  public FrameBuffer getFrameBuffer() {
+    return frameBuffer;
+  }
+
+  /**
+   * Returns the trace processors mark as the frame goes through conversion and detection, or null
+   * if the frame is not being measured.
+   */
+  @Nullable
+  public FrameTrace getFrameTrace() {
+    return frameTrace;
+  }
+
+  private FrameMetadata(
+      int width,
+      int height,
+      int rotation,
+      int facing,
+      @Nullable FrameBuffer frameBuffer,
+      @Nullable FrameTrace frameTrace) {
     this.width = width;
     this.height = height;
     this.rotation = rotation;
     cameraFacing = facing;
+    this.frameBuffer = frameBuffer;
+    this.frameTrace = frameTrace;
   }
 
   /** Builder of {@link FrameMetadata}. */
@@ -51,6 +82,8 @@ public class FrameMetadata {
     private int height;
     private int rotation;
     private int cameraFacing;
+    @Nullable private FrameBuffer frameBuffer;
+    @Nullable private FrameTrace frameTrace;
 
     public Builder setWidth(int width) {
       this.width = width;
@@ -72,8 +105,18 @@ public class FrameMetadata {
       return this;
     }
 
+    public Builder setFrameBuffer(@Nullable FrameBuffer frameBuffer) {
+      this.frameBuffer = frameBuffer;
+      return this;
+    }
+
+    public Builder setFrameTrace(@Nullable FrameTrace frameTrace) {
+      this.frameTrace = frameTrace;
+      return this;
+    }
+
     public FrameMetadata build() {
-      return new FrameMetadata(width, height, rotation, cameraFacing);
+      return new FrameMetadata(width, height, rotation, cameraFacing, frameBuffer, frameTrace);
     }
   }
 }
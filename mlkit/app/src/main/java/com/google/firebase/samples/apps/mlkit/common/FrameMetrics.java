@@ -0,0 +1,191 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import com.google.firebase.samples.apps.mlkit.common.FrameTrace.Point;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-stage latency and frame rate of the live preview. The camera source starts a {@link
+ * FrameTrace} for every frame, processors mark the points the frame goes through, and the overlay
+ * finishes the trace when it draws the frame's graphics. The time between consecutive points is
+ * kept in a {@link LatencyHistogram} per {@link Stage}.
+ *
+ * <p>The numbers can be drawn over the preview with a {@link FrameMetricsHud} or logged with
+ * {@link #dumpStats()}.
+ */
+public class FrameMetrics {
+
+  /** The number of recent frames the percentiles and frame rates are computed over. */
+  public static final int DEFAULT_CAPACITY = 256;
+
+  /** A part of the frame's way through the preview, between two {@link Point}s. */
+  public enum Stage {
+    ENQUEUE("enqueue", Point.CAMERA_CALLBACK, Point.FRAME_QUEUED),
+    WAIT("wait", Point.FRAME_QUEUED, Point.CONVERSION_START),
+    CONVERSION("convert", Point.CONVERSION_START, Point.CONVERSION_END),
+    SCHEDULING("schedule", Point.CONVERSION_END, Point.DETECTION_START),
+    DETECTION("detect", Point.DETECTION_START, Point.DETECTION_END),
+    RESULTS("results", Point.DETECTION_END, Point.ON_SUCCESS),
+    DRAW("draw", Point.ON_SUCCESS, Point.DRAWN),
+    TOTAL("total", Point.CAMERA_CALLBACK, Point.DRAWN);
+
+    private final String label;
+    private final Point start;
+    private final Point end;
+
+    Stage(String label, Point start, Point end) {
+      this.label = label;
+      this.start = start;
+      this.end = end;
+    }
+
+    public String getLabel() {
+      return label;
+    }
+  }
+
+  private static final Stage[] STAGES = Stage.values();
+
+  /** Counts events in a ring of their timestamps to tell how often they happen. */
+  private static class RateMeter {
+    private final AtomicLongArray timestamps;
+    private final int mask;
+    private final AtomicLong count = new AtomicLong();
+
+    RateMeter(int capacity) {
+      timestamps = new AtomicLongArray(capacity);
+      mask = capacity - 1;
+    }
+
+    void onEvent(long nanos) {
+      timestamps.set((int) (count.getAndIncrement() & mask), nanos);
+    }
+
+    double getRate() {
+      long total = count.get();
+      int samples = (int) Math.min(total, timestamps.length());
+      if (samples < 2) {
+        return 0;
+      }
+      long newest = timestamps.get((int) ((total - 1) & mask));
+      long oldest = timestamps.get((int) ((total - samples) & mask));
+      return newest > oldest ? (samples - 1) * 1e9 / (newest - oldest) : 0;
+    }
+
+    void reset() {
+      count.set(0);
+    }
+  }
+
+  private final LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+  private final RateMeter cameraRate;
+  private final RateMeter drawnRate;
+  private final AtomicLong startedCount = new AtomicLong();
+  private final AtomicLong finishedCount = new AtomicLong();
+
+  public FrameMetrics() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /** Creates metrics over the last {@code capacity} frames, rounded up to a power of two. */
+  public FrameMetrics(int capacity) {
+    for (int i = 0; i < histograms.length; i++) {
+      histograms[i] = new LatencyHistogram(capacity);
+    }
+    int rateCapacity = Integer.highestOneBit(Math.min(capacity, 64));
+    cameraRate = new RateMeter(rateCapacity);
+    drawnRate = new RateMeter(rateCapacity);
+  }
+
+  /** Starts the trace of a frame the camera delivered at {@code callbackNanos}. */
+  public FrameTrace startFrame(long callbackNanos) {
+    startedCount.incrementAndGet();
+    cameraRate.onEvent(callbackNanos);
+    return new FrameTrace(this, callbackNanos);
+  }
+
+  void record(FrameTrace trace) {
+    finishedCount.incrementAndGet();
+    for (int i = 0; i < STAGES.length; i++) {
+      long start = trace.getTimestampNanos(STAGES[i].start);
+      long end = trace.getTimestampNanos(STAGES[i].end);
+      if (start != 0 && end != 0) {
+        histograms[i].record(end - start);
+      }
+    }
+    long drawnNanos = trace.getTimestampNanos(Point.DRAWN);
+    if (drawnNanos != 0) {
+      drawnRate.onEvent(drawnNanos);
+    }
+  }
+
+  /** Returns the latency percentiles of {@code stage} over the recent frames. */
+  public LatencyHistogram.Snapshot getSnapshot(Stage stage) {
+    return histograms[stage.ordinal()].snapshot();
+  }
+
+  /** Returns the rate at which the camera has recently been delivering frames. */
+  public double getCameraFps() {
+    return cameraRate.getRate();
+  }
+
+  /** Returns the rate at which results have recently been drawn. */
+  public double getDrawnFps() {
+    return drawnRate.getRate();
+  }
+
+  /** Returns the number of frames traced since creation or the last reset. */
+  public long getStartedFrameCount() {
+    return startedCount.get();
+  }
+
+  /** Returns the number of traced frames that made it to the overlay. */
+  public long getFinishedFrameCount() {
+    return finishedCount.get();
+  }
+
+  /** Forgets all frames, e.g. when switching to another processor. */
+  public void reset() {
+    for (LatencyHistogram histogram : histograms) {
+      histogram.reset();
+    }
+    cameraRate.reset();
+    drawnRate.reset();
+    startedCount.set(0);
+    finishedCount.set(0);
+  }
+
+  /** Returns the frame rates and the percentiles of every stage, one line each. */
+  public String dumpStats() {
+    StringBuilder builder = new StringBuilder();
+    builder.append(
+        String.format(
+            Locale.US,
+            "frames: camera %.1f fps, drawn %.1f fps (%d of %d)",
+            getCameraFps(), getDrawnFps(), getFinishedFrameCount(), getStartedFrameCount()));
+    for (Stage stage : STAGES) {
+      builder.append('\n').append(stage.label).append(": ").append(getSnapshot(stage));
+    }
+    return builder.toString();
+  }
+
+  @Override
+  public String toString() {
+    return dumpStats();
+  }
+}
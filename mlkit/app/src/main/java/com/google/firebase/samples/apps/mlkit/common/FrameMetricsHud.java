@@ -0,0 +1,98 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+import java.util.Locale;
+
+/**
+ * Draws the frame rates and the per-stage latency percentiles of a {@link FrameMetrics} in the
+ * corner of a {@link GraphicOverlay}. The text is refreshed at most twice a second, so drawing it
+ * costs next to nothing on the frames in between.
+ */
+public class FrameMetricsHud {
+
+  private static final long REFRESH_INTERVAL_NANOS = 500_000_000L;
+  private static final float TEXT_SIZE = 28.0f;
+  private static final float PADDING = 12.0f;
+
+  private final FrameMetrics metrics;
+  private final Paint textPaint;
+  private final Paint backgroundPaint;
+
+  // Only touched from onDraw, on the UI thread.
+  private String[] lines = new String[0];
+  private float maxLineWidth;
+  private long lastRefreshNanos;
+
+  public FrameMetricsHud(FrameMetrics metrics) {
+    this.metrics = metrics;
+    textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    textPaint.setColor(Color.WHITE);
+    textPaint.setTextSize(TEXT_SIZE);
+    textPaint.setTypeface(Typeface.MONOSPACE);
+    backgroundPaint = new Paint();
+    backgroundPaint.setColor(Color.argb(160, 0, 0, 0));
+  }
+
+  /** Draws the latest numbers in the top left corner of {@code canvas}. */
+  public void draw(Canvas canvas) {
+    long nowNanos = System.nanoTime();
+    if (lines.length == 0 || nowNanos - lastRefreshNanos >= REFRESH_INTERVAL_NANOS) {
+      refresh();
+      lastRefreshNanos = nowNanos;
+    }
+    float lineHeight = textPaint.getFontSpacing();
+    canvas.drawRect(
+        0, 0, maxLineWidth + 2 * PADDING, lines.length * lineHeight + 2 * PADDING, backgroundPaint);
+    float y = PADDING - textPaint.ascent();
+    for (String line : lines) {
+      canvas.drawText(line, PADDING, y, textPaint);
+      y += lineHeight;
+    }
+  }
+
+  private void refresh() {
+    FrameMetrics.Stage[] stages = FrameMetrics.Stage.values();
+    String[] newLines = new String[stages.length + 2];
+    newLines[0] =
+        String.format(
+            Locale.US,
+            "camera %.1f fps  drawn %.1f fps",
+            metrics.getCameraFps(),
+            metrics.getDrawnFps());
+    newLines[1] = "stage      p50    p95    p99 (ms)";
+    for (int i = 0; i < stages.length; i++) {
+      LatencyHistogram.Snapshot snapshot = metrics.getSnapshot(stages[i]);
+      newLines[i + 2] =
+          String.format(
+              Locale.US,
+              "%-8s %6.1f %6.1f %6.1f",
+              stages[i].getLabel(),
+              snapshot.getP50Millis(),
+              snapshot.getP95Millis(),
+              snapshot.getP99Millis());
+    }
+    float width = 0;
+    for (String line : newLines) {
+      width = Math.max(width, textPaint.measureText(line));
+    }
+    lines = newLines;
+    maxLineWidth = width;
+  }
+}
@@ -0,0 +1,116 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import com.google.firebase.samples.apps.mlkit.common.PipelineStage.DropPolicy;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Three {@link PipelineStage}s, each on its own thread, that let consecutive preview frames
+ * overlap: frame N+1 can be converted while frame N is in the detector and frame N-1's overlay
+ * is being built.
+ *
+ * <ol>
+ *   <li>Conversion: turns the camera buffer into the detector input and background bitmap.
+ *   <li>Inference: runs the detector and waits for its result.
+ *   <li>Render prep: builds the overlay graphics from the result.
+ * </ol>
+ */
+public class FramePipeline {
+
+  private final ExecutorService conversionExecutor;
+  private final ExecutorService inferenceExecutor;
+  private final ExecutorService renderExecutor;
+
+  private final PipelineStage conversionStage;
+  private final PipelineStage inferenceStage;
+  private final PipelineStage renderStage;
+
+  private FramePipeline(int queueCapacity, DropPolicy dropPolicy) {
+    conversionExecutor = Executors.newSingleThreadExecutor(namedThreadFactory("Conversion"));
+    inferenceExecutor = Executors.newSingleThreadExecutor(namedThreadFactory("Inference"));
+    renderExecutor = Executors.newSingleThreadExecutor(namedThreadFactory("RenderPrep"));
+    conversionStage =
+        new PipelineStage("conversion", conversionExecutor, queueCapacity, dropPolicy);
+    inferenceStage = new PipelineStage("inference", inferenceExecutor, queueCapacity, dropPolicy);
+    renderStage = new PipelineStage("renderPrep", renderExecutor, queueCapacity, dropPolicy);
+  }
+
+  public PipelineStage getConversionStage() {
+    return conversionStage;
+  }
+
+  public PipelineStage getInferenceStage() {
+    return inferenceStage;
+  }
+
+  public PipelineStage getRenderStage() {
+    return renderStage;
+  }
+
+  /** Drops all queued frames, e.g. before switching to a different processor. */
+  public void clear() {
+    conversionStage.clear();
+    inferenceStage.clear();
+    renderStage.clear();
+  }
+
+  /** Drops all queued frames and stops the stage threads once their current item finishes. */
+  public void shutdown() {
+    clear();
+    conversionExecutor.shutdown();
+    inferenceExecutor.shutdown();
+    renderExecutor.shutdown();
+  }
+
+  /** Returns a human readable summary of the per-stage counters. */
+  public String dumpStats() {
+    return conversionStage + "\n" + inferenceStage + "\n" + renderStage;
+  }
+
+  private static ThreadFactory namedThreadFactory(final String name) {
+    return new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        return new Thread(runnable, "FramePipeline-" + name);
+      }
+    };
+  }
+
+  /** Builder of {@link FramePipeline}. */
+  public static class Builder {
+
+    private int queueCapacity = 1;
+    private DropPolicy dropPolicy = DropPolicy.LATEST_WINS;
+
+    /** Sets how many frames may wait in front of each stage. Defaults to 1. */
+    public Builder setQueueCapacity(int queueCapacity) {
+      this.queueCapacity = queueCapacity;
+      return this;
+    }
+
+    /** Sets what happens to frames that arrive at a full stage. Defaults to latest-wins. */
+    public Builder setDropPolicy(DropPolicy dropPolicy) {
+      this.dropPolicy = dropPolicy;
+      return this;
+    }
+
+    public FramePipeline build() {
+      return new FramePipeline(queueCapacity, dropPolicy);
+    }
+  }
+}
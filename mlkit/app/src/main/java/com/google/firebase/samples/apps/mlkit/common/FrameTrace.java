@@ -0,0 +1,77 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The timestamps of one camera frame on its way from the camera callback to the overlay. A trace
+ * is started by {@link FrameMetrics#startFrame(long)}, marked by whichever thread currently owns
+ * the frame, and handed back to its {@link FrameMetrics} once the frame has been drawn.
+ *
+ * <p>Points that a processor does not go through are left unmarked, and the stages around them are
+ * not recorded for the frame.
+ */
+public class FrameTrace {
+
+  /** The points in the life of a frame that are timed, in the order a frame reaches them. */
+  public enum Point {
+    /** The camera delivered the frame. */
+    CAMERA_CALLBACK,
+    /** The frame is waiting for the processing thread. */
+    FRAME_QUEUED,
+    /** The processor started converting the frame for detection. */
+    CONVERSION_START,
+    /** The frame is ready to be handed to the detector. */
+    CONVERSION_END,
+    /** The detector started on the frame. */
+    DETECTION_START,
+    /** The detector returned its results. */
+    DETECTION_END,
+    /** The processor's {@code onSuccess} built the overlay graphics from the results. */
+    ON_SUCCESS,
+    /** The overlay drew the graphics. */
+    DRAWN
+  }
+
+  static final Point[] POINTS = Point.values();
+
+  private final FrameMetrics metrics;
+  // Zero for points the frame has not been through. Marks are made one after the other by the
+  // threads the frame is handed between, so the hand-offs publish them.
+  private final long[] timestampNanos = new long[POINTS.length];
+  private final AtomicBoolean finished = new AtomicBoolean();
+
+  FrameTrace(FrameMetrics metrics, long callbackNanos) {
+    this.metrics = metrics;
+    timestampNanos[Point.CAMERA_CALLBACK.ordinal()] = callbackNanos;
+  }
+
+  /** Records that the frame reached {@code point} now. */
+  public void mark(Point point) {
+    timestampNanos[point.ordinal()] = System.nanoTime();
+  }
+
+  /** Returns when the frame reached {@code point}, or 0 if it has not been marked. */
+  public long getTimestampNanos(Point point) {
+    return timestampNanos[point.ordinal()];
+  }
+
+  /** Adds the frame to its metrics. Only the first call has an effect. */
+  public void finish() {
+    if (finished.compareAndSet(false, true)) {
+      metrics.record(this);
+    }
+  }
+}
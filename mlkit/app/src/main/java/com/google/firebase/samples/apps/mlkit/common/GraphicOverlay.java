@@ -17,11 +17,16 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.util.AttributeSet;
 import android.view.View;
+import androidx.annotation.Nullable;
 
 import com.google.android.gms.vision.CameraSource;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A view which renders a series of custom graphics to be overlayed on top of an associated preview
@@ -41,28 +46,113 @@ import java.util.List;
  *   <li>{@link Graphic#translateX(float)} and {@link Graphic#translateY(float)} adjust the
  *       coordinate from the preview's coordinate system to the view coordinate system.
  * </ol>
+ *
+ * <p>Processors build the graphics of a frame into a {@link Scene} with {@link #newScene()} and
+ * hand the finished scene over with {@link #publish(Scene)}, which swaps it in atomically. {@link
+ * #onDraw(Canvas)} draws the latest published scene without taking a lock, so a frame is never
+ * drawn half-built, and a scene that was started before the published one is dropped instead of
+ * drawn. {@link #clear()}, {@link #add(Graphic)} and {@link #remove(Graphic)} still work, each
+ * publishing a modified copy of the current scene.
+ *
+ * <p>Graphics obtained from a {@link GraphicPool} go back to it once no published scene refers to
+ * them any more. Scenes that are replaced are only released at the start of the next draw, so a
+ * graphic is never rebound while the UI thread may still be drawing it.
+ *
+ * <p>When detection ran on a region of the frame, or on a scaled copy of it, the scene is started
+ * with {@link #newScene(float, float, float)}, which tells the graphics added to it where that
+ * region starts and how it was scaled, so their coordinates are translated back to the full
+ * preview. Each scene carries its own transform, so processors rendering at the same time do not
+ * disturb each other.
+ *
+ * <p>Processors hand over the {@link FrameTrace} of the frame the graphics were built from with
+ * {@link #setFrameTrace(FrameTrace)}, and the trace is finished when the overlay next draws. A
+ * {@link FrameMetricsHud} set with {@link #setMetricsHud(FrameMetricsHud)} is drawn on top.
  */
 public class GraphicOverlay extends View {
+  // Serializes the camera info updates and the clear(), add() and remove() edits; never taken
+  // while drawing.
   private final Object lock = new Object();
-  private int previewWidth;
+  private volatile int previewWidth;
   private float widthScaleFactor = 1.0f;
-  private int previewHeight;
+  private volatile int previewHeight;
   private float heightScaleFactor = 1.0f;
-  private int facing = CameraSource.CAMERA_FACING_BACK;
-  private final List<Graphic> graphics = new ArrayList<>();
+  private volatile int facing = CameraSource.CAMERA_FACING_BACK;
+  private final AtomicLong sceneSequence = new AtomicLong();
+  private final AtomicReference<Scene> publishedScene =
+      new AtomicReference<>(new Scene(0, Collections.<Graphic>emptyList()));
+  private final AtomicLong droppedSceneCount = new AtomicLong();
+  // Replaced scenes waiting to release their graphics, linked through Scene.nextRetired.
+  private final AtomicReference<Scene> retiredScenes = new AtomicReference<>();
+  private final AtomicReference<FrameTrace> pendingTrace = new AtomicReference<>();
+  @Nullable private volatile FrameMetricsHud metricsHud;
+  private volatile boolean cameraPreviewVisible;
 
   /**
    * Base class for a custom graphics object to be rendered within the graphic overlay. Subclass
    * this and implement the {@link Graphic#draw(Canvas)} method to define the graphics element. Add
    * instances to the overlay using {@link GraphicOverlay#add(Graphic)}.
+   *
+   * <p>Graphics that are drawn for many results per frame can be kept in a {@link GraphicPool}:
+   * they are then bound to a new result after {@link #onObtained(GraphicPool)} and should drop
+   * their result in {@link #onRecycled()}. A pooled graphic goes back to its pool once no scene
+   * refers to it anymore, unless the processor holds it with {@link #retain()} to reuse it in the
+   * scene of a later frame.
    */
-  public abstract static class Graphic {
+  public abstract static class Graphic implements GraphicPool.Poolable {
+    private static final AtomicIntegerFieldUpdater<Graphic> SCENE_REFS =
+        AtomicIntegerFieldUpdater.newUpdater(Graphic.class, "sceneRefs");
+
     private GraphicOverlay overlay;
+    // Set by the scene the graphic was last added to.
+    private float offsetX;
+    private float offsetY;
+    private float resultScale = 1f;
+    // The pool the graphic was obtained from, if any, and the number of scenes it is part of plus
+    // the references taken with retain().
+    private GraphicPool<?> pool;
+    private volatile int sceneRefs;
 
     public Graphic(GraphicOverlay overlay) {
       this.overlay = overlay;
     }
 
+    @Override
+    public void onObtained(GraphicPool<?> pool) {
+      this.pool = pool;
+    }
+
+    /** Sets where the result the graphic draws was detected, see {@link #newScene}. */
+    final void setTransform(float offsetX, float offsetY, float resultScale) {
+      this.offsetX = offsetX;
+      this.offsetY = offsetY;
+      this.resultScale = resultScale;
+    }
+
+    @Override
+    public void onRecycled() {}
+
+    /**
+     * Keeps a pooled graphic from being recycled while it is not part of any scene, so it can be
+     * added to the scenes of later frames as is. Every call must be balanced by {@link
+     * #release()}. A retained graphic must not be bound to a new result, nor added to a scene with
+     * another graphic transform, since the published scene may be drawing it.
+     */
+    public final void retain() {
+      SCENE_REFS.incrementAndGet(this);
+    }
+
+    /**
+     * Drops a reference taken with {@link #retain()}, recycling a pooled graphic if no scene
+     * refers to it anymore.
+     */
+    public final void release() {
+      if (SCENE_REFS.decrementAndGet(this) == 0 && pool != null) {
+        GraphicPool<?> owner = pool;
+        pool = null;
+        owner.recycleObtained(this);
+      }
+    }
+
     /**
      * Draw the graphic on the supplied canvas. Drawing should use the following methods to convert
      * to view coordinates for the graphics that are drawn:
@@ -82,12 +172,12 @@ public class GraphicOverlay extends View {
      * Adjusts a horizontal value of the supplied value from the preview scale to the view scale.
      */
     public float scaleX(float horizontal) {
-      return horizontal * overlay.widthScaleFactor;
+      return horizontal * resultScale * overlay.widthScaleFactor;
     }
 
     /** Adjusts a vertical value of the supplied value from the preview scale to the view scale. */
     public float scaleY(float vertical) {
-      return vertical * overlay.heightScaleFactor;
+      return vertical * resultScale * overlay.heightScaleFactor;
     }
 
     /** Returns the application context of the app. */
@@ -99,10 +189,11 @@ public class GraphicOverlay extends View {
      * Adjusts the x coordinate from the preview's coordinate system to the view coordinate system.
      */
     public float translateX(float x) {
+      float previewX = (x * resultScale + offsetX) * overlay.widthScaleFactor;
       if (overlay.facing == CameraSource.CAMERA_FACING_FRONT) {
-        return overlay.getWidth() - scaleX(x);
+        return overlay.getWidth() - previewX;
       } else {
-        return scaleX(x);
+        return previewX;
       }
     }
 
@@ -110,7 +201,7 @@ public class GraphicOverlay extends View {
      * Adjusts the y coordinate from the preview's coordinate system to the view coordinate system.
      */
     public float translateY(float y) {
-      return scaleY(y);
+      return (y * resultScale + offsetY) * overlay.heightScaleFactor;
     }
 
     public void postInvalidate() {
@@ -118,30 +209,215 @@ public class GraphicOverlay extends View {
     }
   }
 
+  /**
+   * The complete set of graphics for one frame. Scenes are immutable once built, so the UI thread
+   * can draw one while the next is being built on another thread.
+   */
+  public static final class Scene {
+    private final long sequence;
+    private final List<Graphic> graphics;
+    // The scene retired before this one, while both wait to be released.
+    private Scene nextRetired;
+
+    private Scene(long sequence, List<Graphic> graphics) {
+      this.sequence = sequence;
+      this.graphics = graphics;
+      for (int i = 0; i < graphics.size(); i++) {
+        graphics.get(i).retain();
+      }
+    }
+
+    private void release() {
+      for (int i = 0; i < graphics.size(); i++) {
+        graphics.get(i).release();
+      }
+    }
+
+    /** Returns the order in which the scene was started; later scenes have larger numbers. */
+    public long getSequence() {
+      return sequence;
+    }
+
+    /** Returns the graphics of the scene, in drawing order. */
+    public List<Graphic> getGraphics() {
+      return graphics;
+    }
+
+    /** Collects the graphics of a {@link Scene}. Obtain one from {@link #newScene()}. */
+    public static final class Builder {
+      private final long sequence;
+      private final float graphicOffsetX;
+      private final float graphicOffsetY;
+      private final float graphicScale;
+      private final ArrayList<Graphic> graphics = new ArrayList<>();
+
+      private Builder(
+          long sequence, float graphicOffsetX, float graphicOffsetY, float graphicScale) {
+        this.sequence = sequence;
+        this.graphicOffsetX = graphicOffsetX;
+        this.graphicOffsetY = graphicOffsetY;
+        this.graphicScale = graphicScale;
+      }
+
+      /**
+       * Adds a graphic, drawn on top of the ones added before, with the graphic offset and scale
+       * of the scene.
+       */
+      public Builder add(Graphic graphic) {
+        graphic.setTransform(graphicOffsetX, graphicOffsetY, graphicScale);
+        graphics.add(graphic);
+        return this;
+      }
+
+      // Adds a graphic of another scene, keeping the transform it was added to that one with.
+      private Builder addAsIs(Graphic graphic) {
+        graphics.add(graphic);
+        return this;
+      }
+
+      /** Returns the x position, in preview coordinates, of the region the results refer to. */
+      public float getGraphicOffsetX() {
+        return graphicOffsetX;
+      }
+
+      /** Returns the y position, in preview coordinates, of the region the results refer to. */
+      public float getGraphicOffsetY() {
+        return graphicOffsetY;
+      }
+
+      /** Returns the factor from the coordinates of the results to preview coordinates. */
+      public float getGraphicScale() {
+        return graphicScale;
+      }
+
+      /**
+       * Builds the scene. Scenes are meant to be published; pooled graphics in a scene that never
+       * is are not returned to their pool.
+       */
+      public Scene build() {
+        return new Scene(sequence, Collections.unmodifiableList(new ArrayList<>(graphics)));
+      }
+    }
+  }
+
   public GraphicOverlay(Context context, AttributeSet attrs) {
     super(context, attrs);
   }
 
+  /**
+   * Starts building a scene. The scene is ordered by when this is called, not when it is
+   * published, so results that come back out of order do not replace newer ones.
+   */
+  public Scene.Builder newScene() {
+    return newScene(0, 0, 1f);
+  }
+
+  /**
+   * Starts building a scene of results detected in a region of the preview at ({@code offsetX},
+   * {@code offsetY}), in preview coordinates, and in an image scaled by 1 / {@code scale}, e.g. a
+   * scaled down copy. Graphics added to the scene draw their results translated back to the full
+   * preview.
+   */
+  public Scene.Builder newScene(float offsetX, float offsetY, float scale) {
+    return new Scene.Builder(sceneSequence.incrementAndGet(), offsetX, offsetY, scale);
+  }
+
+  /**
+   * Makes {@code scene} the one drawn from now on and invalidates the view. Returns false, and
+   * drops the scene, if a scene started after it has already been published.
+   */
+  public boolean publish(Scene scene) {
+    while (true) {
+      Scene current = publishedScene.get();
+      if (current.sequence > scene.sequence) {
+        droppedSceneCount.incrementAndGet();
+        // Never drawn, so its graphics can go back right away.
+        scene.release();
+        return false;
+      }
+      if (publishedScene.compareAndSet(current, scene)) {
+        retire(current);
+        postInvalidate();
+        return true;
+      }
+    }
+  }
+
+  /** Queues a replaced scene to be released at the start of the next draw. */
+  private void retire(Scene scene) {
+    Scene head;
+    do {
+      head = retiredScenes.get();
+      scene.nextRetired = head;
+    } while (!retiredScenes.compareAndSet(head, scene));
+  }
+
+  /** Returns the scene currently drawn. */
+  public Scene getPublishedScene() {
+    return publishedScene.get();
+  }
+
+  /** Returns the number of scenes dropped by {@link #publish(Scene)} because they were stale. */
+  public long getDroppedSceneCount() {
+    return droppedSceneCount.get();
+  }
+
   /** Removes all graphics from the overlay. */
   public void clear() {
     synchronized (lock) {
-      graphics.clear();
+      publish(newScene().build());
     }
-    postInvalidate();
   }
 
-  /** Adds a graphic to the overlay. */
+  /** Adds a graphic to the overlay. The graphic shows up the next time the overlay draws. */
   public void add(Graphic graphic) {
     synchronized (lock) {
-      graphics.add(graphic);
+      Scene.Builder builder = newScene();
+      for (Graphic existing : publishedScene.get().graphics) {
+        builder.addAsIs(existing);
+      }
+      publish(builder.add(graphic).build());
     }
   }
 
   /** Removes a graphic from the overlay. */
   public void remove(Graphic graphic) {
     synchronized (lock) {
-      graphics.remove(graphic);
+      Scene.Builder builder = newScene();
+      for (Graphic existing : publishedScene.get().graphics) {
+        if (existing != graphic) {
+          builder.addAsIs(existing);
+        }
+      }
+      publish(builder.build());
     }
+  }
+
+  /**
+   * Sets whether the live camera preview is shown behind the overlay, in which case processors
+   * need not draw the camera image as a background graphic.
+   */
+  public void setCameraPreviewVisible(boolean visible) {
+    cameraPreviewVisible = visible;
+  }
+
+  /** Returns whether the live camera preview is shown behind the overlay. */
+  public boolean isCameraPreviewVisible() {
+    return cameraPreviewVisible;
+  }
+
+  /**
+   * Sets the trace of the frame the current graphics were built from. The trace is marked as
+   * drawn and finished the next time the overlay draws; a trace replaced before that is dropped.
+   */
+  public void setFrameTrace(@Nullable FrameTrace trace) {
+    pendingTrace.set(trace);
+    postInvalidate();
+  }
+
+  /** Sets the metrics display drawn over the graphics, or null to hide it. */
+  public void setMetricsHud(@Nullable FrameMetricsHud hud) {
+    metricsHud = hud;
     postInvalidate();
   }
 
@@ -163,15 +439,35 @@ public class GraphicOverlay extends View {
   protected void onDraw(Canvas canvas) {
     super.onDraw(canvas);
 
-    synchronized (lock) {
-      if ((previewWidth != 0) && (previewHeight != 0)) {
-        widthScaleFactor = (float) canvas.getWidth() / (float) previewWidth;
-        heightScaleFactor = (float) canvas.getHeight() / (float) previewHeight;
-      }
+    // Any draw of the scenes retired so far has finished, since draws run on this thread.
+    Scene retired = retiredScenes.getAndSet(null);
+    while (retired != null) {
+      Scene next = retired.nextRetired;
+      retired.nextRetired = null;
+      retired.release();
+      retired = next;
+    }
 
-      for (Graphic graphic : graphics) {
-        graphic.draw(canvas);
-      }
+    int width = previewWidth;
+    int height = previewHeight;
+    if ((width != 0) && (height != 0)) {
+      widthScaleFactor = (float) canvas.getWidth() / (float) width;
+      heightScaleFactor = (float) canvas.getHeight() / (float) height;
+    }
+
+    List<Graphic> graphics = publishedScene.get().graphics;
+    for (int i = 0; i < graphics.size(); i++) {
+      graphics.get(i).draw(canvas);
+    }
+
+    FrameTrace trace = pendingTrace.getAndSet(null);
+    if (trace != null) {
+      trace.mark(FrameTrace.Point.DRAWN);
+      trace.finish();
+    }
+    FrameMetricsHud hud = metricsHud;
+    if (hud != null) {
+      hud.draw(canvas);
     }
   }
 }
@@ -0,0 +1,143 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import java.util.ArrayDeque;
+
+/**
+ * Recycles overlay graphics across frames, so a processor that draws many results per frame does
+ * not allocate a graphic, and its paints, for every one of them. Processors {@link #obtain()} a
+ * graphic, bind it to a result and add it to a {@link GraphicOverlay.Scene}; the overlay hands it
+ * back once no published scene refers to it any more.
+ *
+ * <p>The pool keeps at most {@code maxIdle} graphics; further ones are left to the garbage
+ * collector. It is safe to obtain and recycle from different threads.
+ *
+ * @param <T> the type of graphic in the pool
+ */
+public class GraphicPool<T extends GraphicPool.Poolable> {
+
+  /** The default number of idle graphics a pool keeps. */
+  public static final int DEFAULT_MAX_IDLE = 256;
+
+  /** Something that can be kept in a {@link GraphicPool}. */
+  public interface Poolable {
+    /** Called when the item is handed out by {@code pool}, whether it is new or recycled. */
+    void onObtained(GraphicPool<?> pool);
+
+    /** Called when the item goes back to its pool, to drop references to the bound result. */
+    void onRecycled();
+  }
+
+  /** Creates the items of a pool. */
+  public interface Factory<T> {
+    T create();
+  }
+
+  private final Factory<T> factory;
+  private final int maxIdle;
+
+  private final Object lock = new Object();
+  // @GuardedBy("lock")
+  private final ArrayDeque<T> idle = new ArrayDeque<>();
+  // @GuardedBy("lock")
+  private long createdCount;
+  // @GuardedBy("lock")
+  private long obtainedCount;
+  // @GuardedBy("lock")
+  private long recycledCount;
+
+  public GraphicPool(Factory<T> factory) {
+    this(factory, DEFAULT_MAX_IDLE);
+  }
+
+  public GraphicPool(Factory<T> factory, int maxIdle) {
+    if (maxIdle < 0) {
+      throw new IllegalArgumentException("Invalid pool size: " + maxIdle);
+    }
+    this.factory = factory;
+    this.maxIdle = maxIdle;
+  }
+
+  /** Returns an idle item, or a new one if there is none. */
+  public T obtain() {
+    T item;
+    synchronized (lock) {
+      obtainedCount++;
+      item = idle.pollLast();
+      if (item == null) {
+        createdCount++;
+      }
+    }
+    if (item == null) {
+      item = factory.create();
+    }
+    item.onObtained(this);
+    return item;
+  }
+
+  /** Returns {@code item} to the pool. It must not be used by the caller afterwards. */
+  public void recycle(T item) {
+    item.onRecycled();
+    synchronized (lock) {
+      recycledCount++;
+      if (idle.size() < maxIdle) {
+        idle.addLast(item);
+      }
+    }
+  }
+
+  /** Recycles an item that {@link #obtain()} handed out, as known to the item itself. */
+  @SuppressWarnings("unchecked")
+  void recycleObtained(Poolable item) {
+    recycle((T) item);
+  }
+
+  /** Returns the number of items the factory has been asked to create. */
+  public long getCreatedCount() {
+    synchronized (lock) {
+      return createdCount;
+    }
+  }
+
+  /** Returns the number of items handed out, new or recycled. */
+  public long getObtainedCount() {
+    synchronized (lock) {
+      return obtainedCount;
+    }
+  }
+
+  /** Returns the number of items handed back. */
+  public long getRecycledCount() {
+    synchronized (lock) {
+      return recycledCount;
+    }
+  }
+
+  /** Returns the number of items waiting to be obtained. */
+  public int getIdleCount() {
+    synchronized (lock) {
+      return idle.size();
+    }
+  }
+
+  @Override
+  public String toString() {
+    synchronized (lock) {
+      return String.format(
+          "GraphicPool: created=%d obtained=%d recycled=%d idle=%d",
+          createdCount, obtainedCount, recycledCount, idle.size());
+    }
+  }
+}
@@ -0,0 +1,132 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the most recent latency samples in a fixed-size ring and reports their percentiles.
+ * Recording is lock-free and allocation-free, so it can be called from the camera, detector and
+ * UI threads at frame rate; the percentiles are computed from a copy when a {@link Snapshot} is
+ * taken.
+ *
+ * <p>A snapshot taken while samples are being recorded may mix in a few newer samples, which is
+ * fine for on-device monitoring.
+ */
+public class LatencyHistogram {
+
+  /** Percentiles of the samples in the ring at the time it was taken, in milliseconds. */
+  public static class Snapshot {
+    private final int sampleCount;
+    private final double p50Millis;
+    private final double p95Millis;
+    private final double p99Millis;
+    private final double maxMillis;
+
+    Snapshot(long[] sortedNanos, int sampleCount) {
+      this.sampleCount = sampleCount;
+      p50Millis = percentile(sortedNanos, sampleCount, 50) / 1e6;
+      p95Millis = percentile(sortedNanos, sampleCount, 95) / 1e6;
+      p99Millis = percentile(sortedNanos, sampleCount, 99) / 1e6;
+      maxMillis = sampleCount == 0 ? 0 : sortedNanos[sampleCount - 1] / 1e6;
+    }
+
+    public int getSampleCount() {
+      return sampleCount;
+    }
+
+    public double getP50Millis() {
+      return p50Millis;
+    }
+
+    public double getP95Millis() {
+      return p95Millis;
+    }
+
+    public double getP99Millis() {
+      return p99Millis;
+    }
+
+    public double getMaxMillis() {
+      return maxMillis;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.US,
+          "n=%d p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms",
+          sampleCount, p50Millis, p95Millis, p99Millis, maxMillis);
+    }
+  }
+
+  private final AtomicLongArray samples;
+  private final int mask;
+  private final AtomicLong recordedCount = new AtomicLong();
+
+  /** Creates a histogram over the last {@code capacity} samples, rounded up to a power of two. */
+  public LatencyHistogram(int capacity) {
+    if (capacity < 1 || capacity > (1 << 20)) {
+      throw new IllegalArgumentException("Invalid histogram capacity: " + capacity);
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    samples = new AtomicLongArray(size);
+    mask = size - 1;
+  }
+
+  /** Adds a sample, replacing the oldest one once the ring is full. Negative values are ignored. */
+  public void record(long nanos) {
+    if (nanos < 0) {
+      return;
+    }
+    long index = recordedCount.getAndIncrement();
+    samples.set((int) (index & mask), nanos);
+  }
+
+  /** Returns the number of samples recorded since the histogram was created or reset. */
+  public long getRecordedCount() {
+    return recordedCount.get();
+  }
+
+  /** Returns the percentiles of the samples currently in the ring. */
+  public Snapshot snapshot() {
+    int count = (int) Math.min(recordedCount.get(), samples.length());
+    long[] copy = new long[count];
+    for (int i = 0; i < count; i++) {
+      copy[i] = samples.get(i);
+    }
+    Arrays.sort(copy);
+    return new Snapshot(copy, count);
+  }
+
+  /** Drops all samples. Samples recorded concurrently with the reset may survive it. */
+  public void reset() {
+    recordedCount.set(0);
+  }
+
+  /** Returns the nearest-rank {@code percent} percentile of the first {@code count} values. */
+  static long percentile(long[] sorted, int count, int percent) {
+    if (count == 0) {
+      return 0;
+    }
+    int rank = (int) Math.ceil(percent / 100.0 * count);
+    return sorted[Math.max(rank, 1) - 1];
+  }
+}
@@ -0,0 +1,161 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import android.graphics.ImageFormat;
+import android.media.Image;
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reference counted {@link ImageFormat#YUV_420_888} camera image from an {@link
+ * android.media.ImageReader}.
+ *
+ * <p>Like a {@link FrameBuffer}, the camera source holds one reference while the frame is pending
+ * or being processed, and processors that keep using the image after {@code process()} returns
+ * {@link #retain()} it and {@link #release()} it when done. The image is closed, which hands it
+ * back to the reader, exactly once, when the last reference is released. The reader must stay open
+ * until then; the camera source is told through the frame's close callback.
+ */
+public class MediaImageFrame {
+
+  private final Image image;
+  private final int rotation;
+  private final long timestampNanos;
+  @Nullable private final Runnable onClosed;
+  private final AtomicInteger refCount = new AtomicInteger(1);
+
+  /**
+   * Wraps {@code image} with one reference.
+   *
+   * @param rotation the rotation of the image, as one of the {@code
+   *     FirebaseVisionImageMetadata.ROTATION_*} constants
+   * @param timestampNanos the {@link System#nanoTime()} at which the image was acquired
+   */
+  public MediaImageFrame(Image image, int rotation, long timestampNanos) {
+    this(image, rotation, timestampNanos, null);
+  }
+
+  /** Same as above, running {@code onClosed} once the image has been closed. */
+  public MediaImageFrame(
+      Image image, int rotation, long timestampNanos, @Nullable Runnable onClosed) {
+    this.image = image;
+    this.rotation = rotation;
+    this.timestampNanos = timestampNanos;
+    this.onClosed = onClosed;
+  }
+
+  /** Returns the image. It must not be used once the last reference has been released. */
+  public Image getImage() {
+    return image;
+  }
+
+  public int getRotation() {
+    return rotation;
+  }
+
+  public int getWidth() {
+    return image.getWidth();
+  }
+
+  public int getHeight() {
+    return image.getHeight();
+  }
+
+  /** Returns the {@link System#nanoTime()} at which the image was acquired. */
+  public long getTimestampNanos() {
+    return timestampNanos;
+  }
+
+  /** Returns the number of outstanding references. */
+  public int getRefCount() {
+    return refCount.get();
+  }
+
+  /**
+   * Adds a reference to the frame, which keeps the image open until it is released.
+   *
+   * @throws IllegalStateException if the image has already been closed
+   */
+  public MediaImageFrame retain() {
+    while (true) {
+      int count = refCount.get();
+      if (count <= 0) {
+        throw new IllegalStateException("Image has already been closed.");
+      }
+      if (refCount.compareAndSet(count, count + 1)) {
+        return this;
+      }
+    }
+  }
+
+  /** Drops a reference, closing the image when it was the last one. */
+  public void release() {
+    int count = refCount.decrementAndGet();
+    if (count == 0) {
+      image.close();
+      if (onClosed != null) {
+        onClosed.run();
+      }
+    } else if (count < 0) {
+      refCount.incrementAndGet();
+      throw new IllegalStateException("Image released more often than retained.");
+    }
+  }
+
+  /** Returns the number of bytes {@link #copyToNv21(byte[])} writes. */
+  public int getNv21Size() {
+    return image.getWidth() * image.getHeight() * 3 / 2;
+  }
+
+  /**
+   * Packs the image into {@code out} in NV21 layout, for processors that only take byte buffers.
+   * Handles any row and pixel stride the camera uses.
+   */
+  public void copyToNv21(byte[] out) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    Image.Plane[] planes = image.getPlanes();
+    copyPlane(planes[0], width, height, out, 0, 1);
+    // NV21 interleaves the chroma planes as V, U.
+    int chromaOffset = width * height;
+    copyPlane(planes[2], width / 2, height / 2, out, chromaOffset, 2);
+    copyPlane(planes[1], width / 2, height / 2, out, chromaOffset + 1, 2);
+  }
+
+  private static void copyPlane(
+      Image.Plane plane, int width, int height, byte[] out, int offset, int outPixelStride) {
+    ByteBuffer buffer = plane.getBuffer();
+    int rowStride = plane.getRowStride();
+    int pixelStride = plane.getPixelStride();
+    int position = buffer.position();
+    int outIndex = offset;
+    for (int y = 0; y < height; y++) {
+      int rowStart = position + y * rowStride;
+      if (pixelStride == 1 && outPixelStride == 1) {
+        buffer.position(rowStart);
+        buffer.get(out, outIndex, width);
+        outIndex += width;
+      } else {
+        for (int x = 0; x < width; x++) {
+          out[outIndex] = buffer.get(rowStart + x * pixelStride);
+          outIndex += outPixelStride;
+        }
+      }
+    }
+    buffer.position(position);
+  }
+}
@@ -0,0 +1,31 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import com.google.firebase.ml.common.FirebaseMLException;
+
+/**
+ * A {@link VisionImageProcessor} that can run on the {@link android.media.Image}s delivered by
+ * {@link Camera2Source} directly, without first copying them into an NV21 buffer.
+ */
+public interface MediaImageProcessor extends VisionImageProcessor {
+
+  /**
+   * Processes a camera image. The frame is only guaranteed to stay open until this method returns;
+   * processors that use it for longer, e.g. for asynchronous detection, {@link
+   * MediaImageFrame#retain()} it and release it when done.
+   */
+  void process(MediaImageFrame frame, FrameMetadata frameMetadata, GraphicOverlay graphicOverlay)
+      throws FirebaseMLException;
+}
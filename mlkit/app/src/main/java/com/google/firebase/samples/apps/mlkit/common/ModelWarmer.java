@@ -0,0 +1,313 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import com.google.firebase.ml.common.FirebaseMLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Loads models ahead of time: every registered model is loaded and warmed up with one inference
+ * on a blank input in the background, so that switching to its mode does not stall on loading the
+ * model file and setting up the interpreter.
+ *
+ * <p>A warmed up model is handed to the first processor that {@link #take takes} it, and another
+ * one is loaded in the background right away for the next processor, e.g. after the activity was
+ * recreated. Models are never loaded on the thread that takes them: processors created while
+ * their model is still loading wait for it briefly, and otherwise keep polling and skip frames
+ * until it is ready. Models that were not taken yet are released by {@link #trimMemory()} and
+ * loaded again once they are asked for.
+ */
+public class ModelWarmer {
+
+  // How long a model that failed to load is not tried again.
+  private static final long DEFAULT_RETRY_INTERVAL_MILLIS = 10000;
+
+  /** Loads, warms up and releases one model. */
+  public interface Loader<T> {
+    /** Loads the model, e.g. registers it and creates its interpreter or detector. */
+    T load() throws FirebaseMLException;
+
+    /** Runs one inference on a blank input and blocks until it is done. */
+    void warmUp(T model) throws Exception;
+
+    /** Releases a model that was loaded but never taken. */
+    void release(T model);
+  }
+
+  /** Where a registered model is in its warm-up. */
+  public enum State {
+    /** Not loaded, and not about to be. */
+    IDLE,
+    /** Waits for the models queued before it. */
+    QUEUED,
+    /** Is being loaded or warmed up. */
+    LOADING,
+    /** Is warmed up and waits to be taken. */
+    READY,
+    /** Could not be loaded the last time it was tried. */
+    FAILED,
+  }
+
+  private static class Entry {
+    final String name;
+    final Loader<?> loader;
+
+    State state = State.IDLE;
+    Object model;
+    Exception failure;
+    long failedAtNanos;
+    // Of the last load.
+    long loadNanos;
+    long warmUpNanos;
+    // From start() until the model was first ready.
+    long firstReadyNanos;
+    long waitNanos;
+    int loads;
+    int warmTakes;
+    int missedTakes;
+    int releases;
+
+    Entry(String name, Loader<?> loader) {
+      this.name = name;
+      this.loader = loader;
+    }
+  }
+
+  private final Executor executor;
+  private final long retryIntervalNanos;
+
+  // @GuardedBy("this")
+  private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+  // @GuardedBy("this")
+  private long startNanos;
+
+  /** Creates a warmer that loads models on {@code executor}, one at a time. */
+  public ModelWarmer(Executor executor) {
+    this(executor, DEFAULT_RETRY_INTERVAL_MILLIS);
+  }
+
+  ModelWarmer(Executor executor, long retryIntervalMillis) {
+    this.executor = executor;
+    retryIntervalNanos = retryIntervalMillis * 1000000L;
+  }
+
+  /** Registers the model {@code name}. Returns this warmer, to register more. */
+  public synchronized ModelWarmer register(String name, Loader<?> loader) {
+    if (entries.containsKey(name)) {
+      throw new IllegalArgumentException("Already registered: " + name);
+    }
+    entries.put(name, new Entry(name, loader));
+    return this;
+  }
+
+  /**
+   * Queues the registered models that are not loaded yet, in the order they were registered.
+   * Models that are already loaded or being loaded are left alone.
+   */
+  public synchronized void start() {
+    if (startNanos == 0) {
+      startNanos = System.nanoTime();
+    }
+    for (Entry entry : entries.values()) {
+      if (entry.state == State.IDLE) {
+        queue(entry);
+      }
+    }
+  }
+
+  /**
+   * Returns the warmed up model {@code name} if it is ready within {@code timeoutMillis}, and
+   * starts loading another one for the next caller. Returns null if it is not ready by then, and
+   * makes sure it is being loaded. The caller owns the returned model.
+   */
+  @SuppressWarnings("unchecked")
+  public synchronized <T> T take(String name, long timeoutMillis) {
+    Entry entry = getEntry(name);
+    if (entry.state == State.IDLE
+        || (entry.state == State.FAILED
+            && System.nanoTime() - entry.failedAtNanos >= retryIntervalNanos)) {
+      queue(entry);
+    }
+    long waitStartNanos = System.nanoTime();
+    long deadlineNanos = waitStartNanos + timeoutMillis * 1000000L;
+    boolean interrupted = false;
+    while (isLoading(entry.state) && !interrupted) {
+      long remainingNanos = deadlineNanos - System.nanoTime();
+      if (remainingNanos <= 0) {
+        break;
+      }
+      try {
+        wait(Math.max(1, remainingNanos / 1000000L));
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    entry.waitNanos += System.nanoTime() - waitStartNanos;
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (entry.state != State.READY) {
+      entry.missedTakes++;
+      return null;
+    }
+    Object model = entry.model;
+    entry.model = null;
+    entry.warmTakes++;
+    queue(entry);
+    return (T) model;
+  }
+
+  /** Returns where model {@code name} is in its warm-up. */
+  public synchronized State getState(String name) {
+    return getEntry(name).state;
+  }
+
+  /**
+   * Releases the models that are loaded but not taken, e.g. when the system runs low on memory.
+   * They are loaded again the next time they are taken.
+   */
+  public void trimMemory() {
+    List<Entry> released = new ArrayList<>();
+    List<Object> models = new ArrayList<>();
+    synchronized (this) {
+      for (Entry entry : entries.values()) {
+        if (entry.state == State.READY) {
+          released.add(entry);
+          models.add(entry.model);
+          entry.model = null;
+          entry.state = State.IDLE;
+          entry.releases++;
+        }
+      }
+    }
+    for (int i = 0; i < released.size(); i++) {
+      release(released.get(i), models.get(i));
+    }
+  }
+
+  /**
+   * Returns, for every model, how long after the start it was first ready and how long its last
+   * load took, and how often it was loaded, taken warm, asked for before it was ready, released,
+   * and waited for.
+   */
+  public synchronized String dumpStats() {
+    StringBuilder builder = new StringBuilder();
+    for (Entry entry : entries.values()) {
+      if (builder.length() > 0) {
+        builder.append('\n');
+      }
+      builder.append(String.format(Locale.US, "%s: %s", entry.name, entry.state));
+      if (entry.firstReadyNanos > 0) {
+        builder.append(
+            String.format(
+                Locale.US,
+                ", first ready after %.1f ms, last load %.1f ms + warm-up %.1f ms",
+                entry.firstReadyNanos / 1e6,
+                entry.loadNanos / 1e6,
+                entry.warmUpNanos / 1e6));
+      }
+      if (entry.failure != null) {
+        builder.append(" (").append(entry.failure).append(')');
+      }
+      builder.append(
+          String.format(
+              Locale.US,
+              ", %d loads, %d warm, %d missed, %d released, waited %.1f ms",
+              entry.loads,
+              entry.warmTakes,
+              entry.missedTakes,
+              entry.releases,
+              entry.waitNanos / 1e6));
+    }
+    return builder.toString();
+  }
+
+  // Must be called with the lock held.
+  private void queue(final Entry entry) {
+    entry.state = State.QUEUED;
+    executor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            load(entry);
+          }
+        });
+  }
+
+  @SuppressWarnings("unchecked")
+  private void load(Entry entry) {
+    synchronized (this) {
+      if (entry.state != State.QUEUED) {
+        return;
+      }
+      entry.state = State.LOADING;
+    }
+    Loader<Object> loader = (Loader<Object>) entry.loader;
+    Object model = null;
+    Exception failure = null;
+    long loadNanos = 0;
+    long warmUpNanos = 0;
+    long loadStartNanos = System.nanoTime();
+    try {
+      model = loader.load();
+      loadNanos = System.nanoTime() - loadStartNanos;
+      long warmUpStartNanos = System.nanoTime();
+      loader.warmUp(model);
+      warmUpNanos = System.nanoTime() - warmUpStartNanos;
+    } catch (Exception e) {
+      // A model that loaded but failed to warm up is still usable, it is just slower at first.
+      failure = e;
+    }
+    synchronized (this) {
+      entry.loadNanos = loadNanos;
+      entry.warmUpNanos = warmUpNanos;
+      entry.failure = failure;
+      entry.loads++;
+      if (model != null) {
+        entry.model = model;
+        entry.state = State.READY;
+        if (entry.firstReadyNanos == 0 && startNanos != 0) {
+          entry.firstReadyNanos = System.nanoTime() - startNanos;
+        }
+      } else {
+        entry.state = State.FAILED;
+        entry.failedAtNanos = System.nanoTime();
+      }
+      notifyAll();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void release(Entry entry, Object model) {
+    ((Loader<Object>) entry.loader).release(model);
+  }
+
+  private Entry getEntry(String name) {
+    Entry entry = entries.get(name);
+    if (entry == null) {
+      throw new IllegalArgumentException("Not registered: " + name);
+    }
+    return entry;
+  }
+
+  private static boolean isLoading(State state) {
+    return state == State.QUEUED || state == State.LOADING;
+  }
+}
@@ -0,0 +1,245 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One step of a {@link FramePipeline}. Work items submitted to a stage run one at a time, in
+ * submission order, on the stage's executor. Items waiting to run are held in a bounded queue;
+ * when it is full the {@link DropPolicy} decides which item is discarded.
+ *
+ * <p>The stage keeps counters for submitted, dropped and completed items, the queue depth, and
+ * the time items spend waiting in the queue and running.
+ */
+public class PipelineStage {
+
+  /** What to do when an item is submitted while the queue is full. */
+  public enum DropPolicy {
+    /** Drop the oldest waiting item, so the stage always works on the freshest frame. */
+    LATEST_WINS,
+    /** Keep the waiting items in order and drop the newly submitted one. */
+    FIFO
+  }
+
+  /** A unit of work for a stage. */
+  public interface WorkItem extends Runnable {
+    /** Called instead of {@link #run()} when the item is dropped, to release its resources. */
+    void onDropped();
+  }
+
+  private static class Entry {
+    final WorkItem item;
+    final long enqueueTimeNanos;
+
+    Entry(WorkItem item, long enqueueTimeNanos) {
+      this.item = item;
+      this.enqueueTimeNanos = enqueueTimeNanos;
+    }
+  }
+
+  private final String name;
+  private final Executor executor;
+  private final int capacity;
+  private final DropPolicy dropPolicy;
+
+  private final Object lock = new Object();
+  // @GuardedBy("lock")
+  private final ArrayDeque<Entry> queue;
+  // @GuardedBy("lock")
+  private boolean draining;
+  // @GuardedBy("lock")
+  private int maxQueueDepth;
+
+  private final AtomicLong submittedCount = new AtomicLong();
+  private final AtomicLong droppedCount = new AtomicLong();
+  private final AtomicLong completedCount = new AtomicLong();
+  private final AtomicLong totalWaitNanos = new AtomicLong();
+  private final AtomicLong totalRunNanos = new AtomicLong();
+  private final AtomicLong lastRunNanos = new AtomicLong();
+
+  private final Runnable drainRunnable =
+      new Runnable() {
+        @Override
+        public void run() {
+          drain();
+        }
+      };
+
+  public PipelineStage(String name, Executor executor, int capacity, DropPolicy dropPolicy) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Stage capacity must be at least 1: " + capacity);
+    }
+    this.name = name;
+    this.executor = executor;
+    this.capacity = capacity;
+    this.dropPolicy = dropPolicy;
+    queue = new ArrayDeque<>(capacity);
+  }
+
+  /**
+   * Queues {@code item} for execution. Returns false if the item itself was dropped because the
+   * queue is full under the {@link DropPolicy#FIFO} policy.
+   */
+  public boolean submit(WorkItem item) {
+    submittedCount.incrementAndGet();
+    Entry dropped = null;
+    boolean accepted = true;
+    boolean startDrain = false;
+    synchronized (lock) {
+      if (queue.size() >= capacity) {
+        if (dropPolicy == DropPolicy.LATEST_WINS) {
+          dropped = queue.pollFirst();
+        } else {
+          accepted = false;
+        }
+      }
+      if (accepted) {
+        queue.addLast(new Entry(item, System.nanoTime()));
+        maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+        if (!draining) {
+          draining = true;
+          startDrain = true;
+        }
+      }
+    }
+
+    if (dropped != null) {
+      droppedCount.incrementAndGet();
+      dropped.item.onDropped();
+    }
+    if (!accepted) {
+      droppedCount.incrementAndGet();
+      item.onDropped();
+      return false;
+    }
+    if (startDrain) {
+      try {
+        executor.execute(drainRunnable);
+      } catch (RejectedExecutionException e) {
+        // The pipeline has been shut down.
+        synchronized (lock) {
+          draining = false;
+        }
+        clear();
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Drops every waiting item. Items that are already running are not affected. */
+  public void clear() {
+    while (true) {
+      Entry entry;
+      synchronized (lock) {
+        entry = queue.pollFirst();
+      }
+      if (entry == null) {
+        return;
+      }
+      droppedCount.incrementAndGet();
+      entry.item.onDropped();
+    }
+  }
+
+  private void drain() {
+    while (true) {
+      Entry entry;
+      synchronized (lock) {
+        entry = queue.pollFirst();
+        if (entry == null) {
+          draining = false;
+          return;
+        }
+      }
+      long startNanos = System.nanoTime();
+      totalWaitNanos.addAndGet(startNanos - entry.enqueueTimeNanos);
+      try {
+        entry.item.run();
+      } finally {
+        long runNanos = System.nanoTime() - startNanos;
+        totalRunNanos.addAndGet(runNanos);
+        lastRunNanos.set(runNanos);
+        completedCount.incrementAndGet();
+      }
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public long getSubmittedCount() {
+    return submittedCount.get();
+  }
+
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  public long getCompletedCount() {
+    return completedCount.get();
+  }
+
+  /** Returns the number of items currently waiting to run. */
+  public int getQueueDepth() {
+    synchronized (lock) {
+      return queue.size();
+    }
+  }
+
+  /** Returns the largest number of items that have been waiting at the same time. */
+  public int getMaxQueueDepth() {
+    synchronized (lock) {
+      return maxQueueDepth;
+    }
+  }
+
+  /** Returns the average time completed items spent waiting in the queue. */
+  public double getAverageWaitMillis() {
+    long completed = completedCount.get();
+    return completed == 0 ? 0 : totalWaitNanos.get() / 1e6 / completed;
+  }
+
+  /** Returns the average time completed items spent running. */
+  public double getAverageRunMillis() {
+    long completed = completedCount.get();
+    return completed == 0 ? 0 : totalRunNanos.get() / 1e6 / completed;
+  }
+
+  /** Returns how long the most recently completed item ran. */
+  public double getLastRunMillis() {
+    return lastRunNanos.get() / 1e6;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        Locale.US,
+        "%s: submitted=%d dropped=%d completed=%d queue=%d (max %d) wait=%.1fms run=%.1fms",
+        name,
+        getSubmittedCount(),
+        getDroppedCount(),
+        getCompletedCount(),
+        getQueueDepth(),
+        getMaxQueueDepth(),
+        getAverageWaitMillis(),
+        getAverageRunMillis());
+  }
+}
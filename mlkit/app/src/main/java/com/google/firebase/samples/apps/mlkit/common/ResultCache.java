@@ -0,0 +1,142 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import androidx.annotation.Nullable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Keeps detection results by the content of the image they were detected in, so that detecting
+ * in the same image again, e.g. after switching back to a feature, needs no round trip to the
+ * detector.
+ *
+ * <p>Keys are chosen by the caller and should name the detector, its options and the image, e.g.
+ * by a hash of its file. Results are kept in memory, least recently used first out, and dropped
+ * once they are older than the time to live.
+ */
+public class ResultCache<V> {
+
+  private static class Entry<V> {
+    final V value;
+    final long writtenMillis;
+
+    Entry(V value, long writtenMillis) {
+      this.value = value;
+      this.writtenMillis = writtenMillis;
+    }
+  }
+
+  private final int maxEntries;
+  private final long ttlMillis;
+
+  // @GuardedBy("this")
+  private final LinkedHashMap<String, Entry<V>> entries =
+      new LinkedHashMap<>(16, 0.75f, /* accessOrder= */ true);
+
+  // @GuardedBy("this")
+  private int hitCount;
+
+  // @GuardedBy("this")
+  private int missCount;
+
+  // @GuardedBy("this")
+  private int expiredCount;
+
+  /** Creates a cache of up to {@code maxEntries} results. */
+  public ResultCache(int maxEntries, long ttlMillis) {
+    if (maxEntries < 1 || ttlMillis <= 0) {
+      throw new IllegalArgumentException(
+          "Invalid size or time to live: " + maxEntries + ", " + ttlMillis);
+    }
+    this.maxEntries = maxEntries;
+    this.ttlMillis = ttlMillis;
+  }
+
+  /** Returns the result kept for {@code key}, or null if there is none or it expired. */
+  @Nullable
+  public V get(String key) {
+    return get(key, System.currentTimeMillis());
+  }
+
+  /** Keeps {@code value} as the result for {@code key}. */
+  public void put(String key, V value) {
+    put(key, value, System.currentTimeMillis());
+  }
+
+  @Nullable
+  synchronized V get(String key, long nowMillis) {
+    Entry<V> entry = entries.get(key);
+    if (entry == null) {
+      missCount++;
+      return null;
+    }
+    if (nowMillis - entry.writtenMillis >= ttlMillis) {
+      entries.remove(key);
+      expiredCount++;
+      missCount++;
+      return null;
+    }
+    hitCount++;
+    return entry.value;
+  }
+
+  synchronized void put(String key, V value, long nowMillis) {
+    entries.put(key, new Entry<>(value, nowMillis));
+    Iterator<Map.Entry<String, Entry<V>>> eldest = entries.entrySet().iterator();
+    while (entries.size() > maxEntries) {
+      eldest.next();
+      eldest.remove();
+    }
+  }
+
+  /** Drops all the results. */
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  public synchronized int getHitCount() {
+    return hitCount;
+  }
+
+  public synchronized int getMissCount() {
+    return missCount;
+  }
+
+  /** Returns how many results were dropped on a lookup because they had expired. */
+  public synchronized int getExpiredCount() {
+    return expiredCount;
+  }
+
+  /** Returns the number of results kept. */
+  public synchronized int getSize() {
+    return entries.size();
+  }
+
+  /** Returns a line with the hits and misses so far, e.g. to log. */
+  public synchronized String dumpStats() {
+    int lookups = hitCount + missCount;
+    return String.format(
+        Locale.US,
+        "%d lookups, %d hits, %d misses (%d expired), hit rate %.0f%%, %d kept",
+        lookups,
+        hitCount,
+        missCount,
+        expiredCount,
+        lookups == 0 ? 0 : 100.0 * hitCount / lookups,
+        entries.size());
+  }
+}
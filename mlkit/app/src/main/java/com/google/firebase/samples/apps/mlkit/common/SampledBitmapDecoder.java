@@ -0,0 +1,248 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.net.Uri;
+import android.util.Log;
+import androidx.exifinterface.media.ExifInterface;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+/**
+ * Decodes images at about the size they are shown at rather than at full resolution. The bounds
+ * of the image are read first, so that it can be subsampled and scaled while being decoded, into
+ * a bitmap from a {@link BitmapPool} when there is one. The EXIF orientation of the image is
+ * applied, so the bitmaps are always upright.
+ */
+public final class SampledBitmapDecoder {
+
+  private static final String TAG = "SampledBitmapDecoder";
+
+  private final ContentResolver resolver;
+  private final BitmapPool pool;
+  private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+  public SampledBitmapDecoder(ContentResolver resolver, BitmapPool pool) {
+    this.resolver = resolver;
+    this.pool = pool;
+  }
+
+  /**
+   * Decodes the image at {@code uri}, upright and scaled, up or down, to fit in {@code maxWidth}
+   * x {@code maxHeight}. The bitmap can be put back into the pool once it is no longer used.
+   */
+  public Bitmap decode(Uri uri, int maxWidth, int maxHeight) throws IOException {
+    return decode(uri, maxWidth, maxHeight, /* upscale= */ true);
+  }
+
+  /**
+   * Decodes the image at {@code uri}, upright and scaled to fit in {@code maxWidth} x {@code
+   * maxHeight}. Unless {@code upscale} is set, images that already fit are decoded at their own
+   * size rather than scaled up.
+   */
+  public Bitmap decode(Uri uri, int maxWidth, int maxHeight, boolean upscale)
+      throws IOException {
+    int orientation = readOrientation(uri);
+    boolean transposed = isTransposed(orientation);
+
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    decodeStream(uri, options);
+    int width = options.outWidth;
+    int height = options.outHeight;
+    if (width <= 0 || height <= 0) {
+      throw new IOException("Can not decode " + uri);
+    }
+
+    // The image is scaled to fit once upright, but decoded in its stored orientation.
+    int uprightWidth = transposed ? height : width;
+    int uprightHeight = transposed ? width : height;
+    float scaleFactor =
+        Math.max((float) uprightWidth / maxWidth, (float) uprightHeight / maxHeight);
+    if (!upscale) {
+      scaleFactor = Math.max(scaleFactor, 1f);
+    }
+    int targetWidth = Math.max(1, (int) (width / scaleFactor));
+    int targetHeight = Math.max(1, (int) (height / scaleFactor));
+
+    // Subsampling gets close to the target size cheaply, and the density scaling the rest of the
+    // way while decoding.
+    options.inJustDecodeBounds = false;
+    options.inSampleSize =
+        BitmapUtils.calculateInSampleSize(width, height, targetWidth, targetHeight);
+    options.inScaled = targetWidth * options.inSampleSize != width;
+    if (options.inScaled) {
+      options.inDensity = width;
+      options.inTargetDensity = targetWidth * options.inSampleSize;
+    }
+    options.inMutable = true;
+    // One more pixel each way, as the decoder rounds the scaled size.
+    options.inBitmap = pool.get(targetWidth + 1, targetHeight + 1, Bitmap.Config.ARGB_8888);
+    Bitmap decoded = decodeIntoPooledBitmap(uri, options);
+    if (decoded == null) {
+      throw new IOException("Can not decode " + uri);
+    }
+    long peakBytes = decoded.getAllocationByteCount();
+
+    Bitmap upright = decoded;
+    if (orientation != ExifInterface.ORIENTATION_NORMAL
+        && orientation != ExifInterface.ORIENTATION_UNDEFINED) {
+      upright = transform(decoded, orientation);
+      peakBytes += upright.getAllocationByteCount();
+      pool.put(decoded);
+    }
+    Log.d(
+        TAG,
+        String.format(
+            Locale.US,
+            "Decoded %dx%d image to %dx%d (1/%d): %.1f MB at peak instead of %.1f MB",
+            width,
+            height,
+            upright.getWidth(),
+            upright.getHeight(),
+            options.inSampleSize,
+            peakBytes / (float) (1 << 20),
+            4f * width * height / (1 << 20)));
+    return upright;
+  }
+
+  private Bitmap decodeIntoPooledBitmap(Uri uri, BitmapFactory.Options options)
+      throws IOException {
+    if (options.inBitmap != null) {
+      try {
+        return decodeStream(uri, options);
+      } catch (IllegalArgumentException e) {
+        // The pooled bitmap is too small after all, decode into a new one instead.
+        pool.put(options.inBitmap);
+        options.inBitmap = null;
+      }
+    }
+    return decodeStream(uri, options);
+  }
+
+  /**
+   * Returns a hash of the file at {@code uri}, which names the image whatever size it is decoded
+   * at. Reads the whole file, so should be called off the main thread.
+   */
+  public long contentHash(Uri uri) throws IOException {
+    InputStream in = open(uri);
+    try {
+      return BitmapUtils.contentHash(in);
+    } finally {
+      in.close();
+    }
+  }
+
+  private Bitmap decodeStream(Uri uri, BitmapFactory.Options options) throws IOException {
+    InputStream in = open(uri);
+    try {
+      return BitmapFactory.decodeStream(in, null, options);
+    } finally {
+      in.close();
+    }
+  }
+
+  private int readOrientation(Uri uri) {
+    try {
+      InputStream in = open(uri);
+      try {
+        return new ExifInterface(in)
+            .getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Can not read the orientation of " + uri, e);
+      return ExifInterface.ORIENTATION_NORMAL;
+    }
+  }
+
+  private InputStream open(Uri uri) throws IOException {
+    InputStream in = resolver.openInputStream(uri);
+    if (in == null) {
+      throw new FileNotFoundException("Can not open " + uri);
+    }
+    return in;
+  }
+
+  // Draws the bitmap turned upright into a pooled bitmap.
+  private Bitmap transform(Bitmap bitmap, int orientation) {
+    int width = bitmap.getWidth();
+    int height = bitmap.getHeight();
+    boolean transposed = isTransposed(orientation);
+    int uprightWidth = transposed ? height : width;
+    int uprightHeight = transposed ? width : height;
+
+    Matrix matrix = new Matrix();
+    switch (orientation) {
+      case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+        matrix.setScale(-1, 1);
+        break;
+      case ExifInterface.ORIENTATION_ROTATE_180:
+        matrix.setRotate(180);
+        break;
+      case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+        matrix.setScale(1, -1);
+        break;
+      case ExifInterface.ORIENTATION_TRANSPOSE:
+        matrix.setRotate(90);
+        matrix.postScale(-1, 1);
+        break;
+      case ExifInterface.ORIENTATION_ROTATE_90:
+        matrix.setRotate(90);
+        break;
+      case ExifInterface.ORIENTATION_TRANSVERSE:
+        matrix.setRotate(-90);
+        matrix.postScale(-1, 1);
+        break;
+      case ExifInterface.ORIENTATION_ROTATE_270:
+        matrix.setRotate(-90);
+        break;
+      default:
+        break;
+    }
+    // Rotates and flips around the center, then moves the result back into view.
+    matrix.preTranslate(-width / 2f, -height / 2f);
+    matrix.postTranslate(uprightWidth / 2f, uprightHeight / 2f);
+
+    Bitmap upright = pool.get(uprightWidth, uprightHeight, Bitmap.Config.ARGB_8888);
+    if (upright == null) {
+      upright = Bitmap.createBitmap(uprightWidth, uprightHeight, Bitmap.Config.ARGB_8888);
+    } else {
+      upright.eraseColor(0);
+    }
+    new Canvas(upright).drawBitmap(bitmap, matrix, paint);
+    return upright;
+  }
+
+  private static boolean isTransposed(int orientation) {
+    switch (orientation) {
+      case ExifInterface.ORIENTATION_TRANSPOSE:
+      case ExifInterface.ORIENTATION_ROTATE_90:
+      case ExifInterface.ORIENTATION_TRANSVERSE:
+      case ExifInterface.ORIENTATION_ROTATE_270:
+        return true;
+      default:
+        return false;
+    }
+  }
+}
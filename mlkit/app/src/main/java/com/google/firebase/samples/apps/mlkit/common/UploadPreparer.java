@@ -0,0 +1,310 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Shrinks images before they are sent to a cloud detector: every feature has a {@link Profile}
+ * with the largest side it still detects well at, and images are scaled down to that side on a
+ * background thread.
+ *
+ * <p>ML Kit encodes the image it uploads itself, so neither the quality nor the size of the upload
+ * is known or controlled here. The size is estimated by compressing every {@value
+ * #ESTIMATE_INTERVAL}th prepared image at {@value #ESTIMATE_JPEG_QUALITY}% JPEG quality on a
+ * background thread of its own, while the image is being detected in, and the estimate is
+ * averaged in {@link #dumpStats()}.
+ *
+ * <p>Results detected in a prepared image are in its coordinates, which are {@link
+ * Prepared#getResultScale()} times smaller than those of the original image.
+ */
+public class UploadPreparer {
+
+  private static final String TAG = "UploadPreparer";
+
+  /** Every how many prepared images the upload size is estimated. */
+  static final int ESTIMATE_INTERVAL = 4;
+
+  /** The JPEG quality upload sizes are estimated at. */
+  static final int ESTIMATE_JPEG_QUALITY = 90;
+
+  /** How far a feature's images can be shrunk. */
+  public static final class Profile {
+    private final int maxDimension;
+
+    public Profile(int maxDimension) {
+      if (maxDimension < 1) {
+        throw new IllegalArgumentException("Invalid upload profile: " + maxDimension);
+      }
+      this.maxDimension = maxDimension;
+    }
+
+    public int getMaxDimension() {
+      return maxDimension;
+    }
+
+    /**
+     * Returns the factor an image of {@code width} x {@code height} is scaled by, at most 1 since
+     * images are never scaled up.
+     */
+    public float getScale(int width, int height) {
+      int longSide = Math.max(width, height);
+      return longSide <= maxDimension ? 1f : (float) maxDimension / longSide;
+    }
+
+    /** Returns the width an image of {@code width} x {@code height} is prepared at. */
+    public int getPreparedWidth(int width, int height) {
+      return Math.max(1, Math.round(width * getScale(width, height)));
+    }
+
+    /** Returns the height an image of {@code width} x {@code height} is prepared at. */
+    public int getPreparedHeight(int width, int height) {
+      return Math.max(1, Math.round(height * getScale(width, height)));
+    }
+
+    /**
+     * Returns the factor from the coordinates of an image of {@code width} x {@code height} as
+     * prepared to the original ones, which accounts for the prepared size being rounded.
+     */
+    public float getResultScale(int width, int height) {
+      return width / (float) getPreparedWidth(width, height);
+    }
+
+    @Override
+    public String toString() {
+      return maxDimension + "px";
+    }
+  }
+
+  /** An image as it is sent to the detector. */
+  public static final class Prepared {
+    private final Bitmap bitmap;
+    private final boolean scaled;
+    private final float resultScale;
+
+    Prepared(Bitmap bitmap, boolean scaled, float resultScale) {
+      this.bitmap = bitmap;
+      this.scaled = scaled;
+      this.resultScale = resultScale;
+    }
+
+    /**
+     * Returns the image to detect in: a new bitmap owned by the caller if it {@link #isScaled() was
+     * scaled}, or else the original one.
+     */
+    public Bitmap getBitmap() {
+      return bitmap;
+    }
+
+    /** Returns whether the image was scaled down into a new bitmap. */
+    public boolean isScaled() {
+      return scaled;
+    }
+
+    /** Returns the factor from the coordinates of the prepared image to the original ones. */
+    public float getResultScale() {
+      return resultScale;
+    }
+  }
+
+  /** Counts the bytes written to it and drops them. */
+  private static final class CountingOutputStream extends OutputStream {
+    private long count;
+
+    @Override
+    public void write(int b) {
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      count += len;
+    }
+  }
+
+  private final ExecutorService executor;
+
+  // Compresses the sampled images, so estimating never holds up preparing the next image.
+  private final ExecutorService estimateExecutor;
+
+  // @GuardedBy("this")
+  private int imageCount;
+
+  // @GuardedBy("this")
+  private int sampledCount;
+
+  // @GuardedBy("this")
+  private int estimatedCount;
+
+  // @GuardedBy("this")
+  private long originalPixels;
+
+  // @GuardedBy("this")
+  private long preparedPixels;
+
+  // @GuardedBy("this")
+  private long estimatedBytes;
+
+  // @GuardedBy("this")
+  private long prepareNanos;
+
+  /** Creates a preparer that works on up to {@code threadCount} images at a time. */
+  public UploadPreparer(int threadCount) {
+    executor =
+        Executors.newFixedThreadPool(
+            threadCount,
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "UploadPreparer");
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+              }
+            });
+    estimateExecutor =
+        Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "UploadEstimate");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+              }
+            });
+  }
+
+  /**
+   * Scales {@code bitmap} down as {@code profile} says, in the background. {@code bitmap} must not
+   * change until it is done.
+   */
+  public Task<Prepared> prepare(final Bitmap bitmap, final Profile profile) {
+    return Tasks.call(
+        executor,
+        new Callable<Prepared>() {
+          @Override
+          public Prepared call() throws Exception {
+            return prepareNow(bitmap, profile);
+          }
+        });
+  }
+
+  /**
+   * Estimates the upload size of {@code prepared} in the background if it is one of the sampled
+   * images, and returns the estimate's task, or null if it is not sampled. The bitmap of {@code
+   * prepared} must not change or be recycled until the task is done.
+   */
+  @Nullable
+  public Task<Void> sampleUploadSize(final Prepared prepared) {
+    synchronized (this) {
+      if (sampledCount++ % ESTIMATE_INTERVAL != 0) {
+        return null;
+      }
+    }
+    return Tasks.call(
+        estimateExecutor,
+        new Callable<Void>() {
+          @Override
+          public Void call() {
+            estimateNow(prepared.getBitmap());
+            return null;
+          }
+        });
+  }
+
+  /** Returns a line with the images prepared so far and what they cost to send, e.g. to log. */
+  public synchronized String dumpStats() {
+    double bytesPerImage = estimatedCount == 0 ? 0 : (double) estimatedBytes / estimatedCount;
+    return String.format(
+        Locale.US,
+        "%d images, est. %.1f KB sent, est. %.1f KB per image (%d sampled), %.0f%% of the pixels,"
+            + " %.1f ms per image",
+        imageCount,
+        bytesPerImage * imageCount / 1024.0,
+        bytesPerImage / 1024.0,
+        estimatedCount,
+        originalPixels == 0 ? 100 : 100.0 * preparedPixels / originalPixels,
+        imageCount == 0 ? 0 : prepareNanos / 1e6 / imageCount);
+  }
+
+  /** Stops the background threads once the images being prepared are done. */
+  public void shutdown() {
+    executor.shutdown();
+    estimateExecutor.shutdown();
+  }
+
+  private Prepared prepareNow(Bitmap bitmap, Profile profile) {
+    long startNanos = System.nanoTime();
+    int width = bitmap.getWidth();
+    int height = bitmap.getHeight();
+    Bitmap prepared = bitmap;
+    if (profile.getScale(width, height) < 1) {
+      prepared =
+          Bitmap.createScaledBitmap(
+              bitmap,
+              profile.getPreparedWidth(width, height),
+              profile.getPreparedHeight(width, height),
+              true);
+    }
+
+    long elapsedNanos = System.nanoTime() - startNanos;
+    synchronized (this) {
+      imageCount++;
+      originalPixels += (long) width * height;
+      preparedPixels += (long) prepared.getWidth() * prepared.getHeight();
+      prepareNanos += elapsedNanos;
+    }
+    Log.d(
+        TAG,
+        String.format(
+            Locale.US,
+            "%dx%d -> %dx%d at %s in %.1f ms",
+            width,
+            height,
+            prepared.getWidth(),
+            prepared.getHeight(),
+            profile,
+            elapsedNanos / 1e6));
+    return new Prepared(prepared, prepared != bitmap, width / (float) prepared.getWidth());
+  }
+
+  private void estimateNow(Bitmap prepared) {
+    CountingOutputStream jpeg = new CountingOutputStream();
+    if (!prepared.compress(Bitmap.CompressFormat.JPEG, ESTIMATE_JPEG_QUALITY, jpeg)) {
+      Log.w(TAG, "Could not compress image for the upload size estimate");
+      return;
+    }
+    synchronized (this) {
+      estimatedCount++;
+      estimatedBytes += jpeg.count;
+    }
+    Log.d(
+        TAG,
+        String.format(
+            Locale.US,
+            "%dx%d: est. %.1f KB",
+            prepared.getWidth(),
+            prepared.getHeight(),
+            jpeg.count / 1024.0));
+  }
+}
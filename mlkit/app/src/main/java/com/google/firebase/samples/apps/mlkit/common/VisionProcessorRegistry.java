@@ -0,0 +1,215 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import com.google.firebase.ml.common.FirebaseMLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Creates the processors of a screen lazily and keeps them, and with them their detectors and
+ * loaded models, for when the same mode is selected again. Every processor is registered with an
+ * estimate of the memory it holds on to; once the live processors add up to more than the budget,
+ * the least recently used ones are stopped and dropped, and created anew when needed again.
+ *
+ * <p>Processors handed out by the registry are owned by it: callers must not stop them, e.g. they
+ * are given to a {@link CameraFrameSource} with {@code owned} set to false, and {@link #close()}
+ * stops them all.
+ */
+public class VisionProcessorRegistry {
+
+  /** Creates the processors of one or more modes. */
+  public interface Factory {
+    VisionImageProcessor create(String key) throws FirebaseMLException;
+  }
+
+  private static class Entry {
+    final String key;
+    final long estimatedBytes;
+    final Factory factory;
+
+    VisionImageProcessor processor;
+    int getCount;
+    int createCount;
+    long createNanos;
+
+    Entry(String key, long estimatedBytes, Factory factory) {
+      this.key = key;
+      this.estimatedBytes = estimatedBytes;
+      this.factory = factory;
+    }
+  }
+
+  private final long memoryBudgetBytes;
+
+  // @GuardedBy("this")
+  private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+  // The entries with a live processor, least recently used first.
+  // @GuardedBy("this")
+  private final LinkedHashMap<String, Entry> live =
+      new LinkedHashMap<>(16, 0.75f, /* accessOrder= */ true);
+
+  // @GuardedBy("this")
+  private long liveBytes;
+
+  // @GuardedBy("this")
+  private int evictionCount;
+
+  /** Creates a registry that keeps processors of up to {@code memoryBudgetBytes} in total. */
+  public VisionProcessorRegistry(long memoryBudgetBytes) {
+    this.memoryBudgetBytes = memoryBudgetBytes;
+  }
+
+  /**
+   * Registers the processor of mode {@code key}, created by {@code factory} and holding on to
+   * about {@code estimatedBytes}. Returns this registry, to register more.
+   */
+  public synchronized VisionProcessorRegistry register(
+      String key, long estimatedBytes, Factory factory) {
+    if (entries.containsKey(key)) {
+      throw new IllegalArgumentException("Already registered: " + key);
+    }
+    entries.put(key, new Entry(key, estimatedBytes, factory));
+    return this;
+  }
+
+  /**
+   * Returns the processor of mode {@code key}, creating it if it is not live, and stops the least
+   * recently used processors that no longer fit in the memory budget. The returned processor is
+   * never stopped by this call, even if it does not fit in the budget on its own.
+   */
+  public synchronized VisionImageProcessor get(String key) throws FirebaseMLException {
+    Entry entry = getEntry(key);
+    entry.getCount++;
+    if (entry.processor == null) {
+      entry.processor = create(entry);
+      live.put(key, entry);
+      liveBytes += entry.estimatedBytes;
+    } else {
+      // Marks it as the most recently used.
+      live.get(key);
+    }
+    evictOverBudget(entry);
+    return entry.processor;
+  }
+
+  /**
+   * Creates a processor for mode {@code key} that is not cached, e.g. for a background job that
+   * should not be stopped by a mode switch. The caller owns it and stops it when done.
+   */
+  public synchronized VisionImageProcessor create(String key) throws FirebaseMLException {
+    return create(getEntry(key));
+  }
+
+  /** Returns whether the processor of mode {@code key} is live, i.e. {@link #get} is cheap. */
+  public synchronized boolean isLive(String key) {
+    return live.containsKey(key);
+  }
+
+  /** Returns the estimated memory held on to by the live processors. */
+  public synchronized long getLiveBytes() {
+    return liveBytes;
+  }
+
+  /** Returns how many processors were stopped to stay within the memory budget. */
+  public synchronized int getEvictionCount() {
+    return evictionCount;
+  }
+
+  /** Stops all the live processors. They are created again if asked for. */
+  public synchronized void close() {
+    for (Entry entry : live.values()) {
+      stop(entry);
+    }
+    live.clear();
+    liveBytes = 0;
+  }
+
+  /**
+   * Returns, for every mode, how often its processor was asked for and created, and the time
+   * spent creating it both in total and amortized over every time it was asked for.
+   */
+  public synchronized String dumpStats() {
+    StringBuilder builder = new StringBuilder();
+    builder.append(
+        String.format(
+            Locale.US,
+            "live: %d processors, %.1f of %.1f MB, %d evicted",
+            live.size(),
+            liveBytes / (double) (1 << 20),
+            memoryBudgetBytes / (double) (1 << 20),
+            evictionCount));
+    for (Entry entry : entries.values()) {
+      if (entry.getCount == 0) {
+        continue;
+      }
+      double createMillis = entry.createNanos / 1e6;
+      builder.append(
+          String.format(
+              Locale.US,
+              "\n%s: %d gets, %d creates, init %.1f ms total, %.2f ms per get%s",
+              entry.key,
+              entry.getCount,
+              entry.createCount,
+              createMillis,
+              createMillis / entry.getCount,
+              entry.processor != null ? ", live" : ""));
+    }
+    return builder.toString();
+  }
+
+  private Entry getEntry(String key) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      throw new IllegalArgumentException("Not registered: " + key);
+    }
+    return entry;
+  }
+
+  private static VisionImageProcessor create(Entry entry) throws FirebaseMLException {
+    long startNanos = System.nanoTime();
+    VisionImageProcessor processor = entry.factory.create(entry.key);
+    entry.createNanos += System.nanoTime() - startNanos;
+    entry.createCount++;
+    return processor;
+  }
+
+  private void evictOverBudget(Entry current) {
+    List<Entry> evicted = new ArrayList<>();
+    Iterator<Entry> iterator = live.values().iterator();
+    while (liveBytes > memoryBudgetBytes && iterator.hasNext()) {
+      Entry entry = iterator.next();
+      if (entry == current) {
+        continue;
+      }
+      iterator.remove();
+      liveBytes -= entry.estimatedBytes;
+      evicted.add(entry);
+    }
+    for (Entry entry : evicted) {
+      stop(entry);
+      evictionCount++;
+    }
+  }
+
+  private static void stop(Entry entry) {
+    entry.processor.stop();
+    entry.processor = null;
+  }
+}
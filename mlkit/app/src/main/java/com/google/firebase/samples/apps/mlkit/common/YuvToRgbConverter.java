@@ -0,0 +1,185 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Converts NV21 camera frames straight into ARGB_8888 pixels, without going through a JPEG
+ * encode/decode round-trip.
+ *
+ * <p>Rotation and front-camera mirroring are applied in the same pass as the color conversion, so
+ * the output is already upright and matches what {@link BitmapUtils#getBitmap} used to produce.
+ * Rotation values are the {@code FirebaseVisionImageMetadata.ROTATION_*} constants (0 to 3, in
+ * 90 degree clockwise steps).
+ *
+ * <p>Output buffers are pooled per resolution. Callers obtain a buffer with {@link
+ * #obtainPixels(int)} and hand it back with {@link #recyclePixels(int[])} once they are done with
+ * it, so steady-state conversion does not allocate.
+ */
+public class YuvToRgbConverter {
+
+  /** Maximum number of spare pixel buffers kept around for any single resolution. */
+  private static final int MAX_POOLED_BUFFERS_PER_SIZE = 3;
+
+  private final Map<Integer, ArrayDeque<int[]>> pixelPool = new HashMap<>();
+
+  /**
+   * Returns an ARGB buffer with exactly {@code pixelCount} entries, reusing a recycled one if
+   * possible.
+   */
+  public int[] obtainPixels(int pixelCount) {
+    synchronized (pixelPool) {
+      ArrayDeque<int[]> buffers = pixelPool.get(pixelCount);
+      if (buffers != null && !buffers.isEmpty()) {
+        return buffers.pop();
+      }
+    }
+    return new int[pixelCount];
+  }
+
+  /** Returns a buffer obtained from {@link #obtainPixels(int)} to the pool. */
+  public void recyclePixels(int[] pixels) {
+    synchronized (pixelPool) {
+      ArrayDeque<int[]> buffers = pixelPool.get(pixels.length);
+      if (buffers == null) {
+        buffers = new ArrayDeque<>(MAX_POOLED_BUFFERS_PER_SIZE);
+        pixelPool.put(pixels.length, buffers);
+      }
+      if (buffers.size() < MAX_POOLED_BUFFERS_PER_SIZE) {
+        buffers.push(pixels);
+      }
+    }
+  }
+
+  /** Drops all pooled buffers, e.g. after the preview resolution changed. */
+  public void clearPool() {
+    synchronized (pixelPool) {
+      pixelPool.clear();
+    }
+  }
+
+  /** Returns the width of the converted image for the given source size and rotation. */
+  public static int getOutputWidth(int width, int height, int rotation) {
+    return (rotation & 1) == 0 ? width : height;
+  }
+
+  /** Returns the height of the converted image for the given source size and rotation. */
+  public static int getOutputHeight(int width, int height, int rotation) {
+    return (rotation & 1) == 0 ? height : width;
+  }
+
+  /**
+   * Converts an NV21 frame into ARGB_8888 pixels.
+   *
+   * @param nv21 the frame data, a full-resolution Y plane followed by interleaved V/U samples
+   * @param offset index of the first Y sample in {@code nv21}
+   * @param width width of the frame as delivered by the camera
+   * @param height height of the frame as delivered by the camera
+   * @param rotation one of the {@code FirebaseVisionImageMetadata.ROTATION_*} constants
+   * @param mirror whether to flip the upright image horizontally, as for the front camera
+   * @param out destination buffer of at least {@code width * height} entries, written row by row
+   *     using the rotated width as stride
+   */
+  public static void convert(
+      byte[] nv21, int offset, int width, int height, int rotation, boolean mirror, int[] out) {
+    if (out.length < width * height) {
+      throw new IllegalArgumentException("Output buffer is too small: " + out.length);
+    }
+    int outWidth = getOutputWidth(width, height, rotation);
+
+    // For a source pixel (x, y), the destination pixel is (x0 + x * dxPerX + y * dxPerY,
+    // y0 + x * dyPerX + y * dyPerY). Mirroring flips the destination x coordinate afterwards.
+    int x0;
+    int y0;
+    int dxPerX;
+    int dxPerY;
+    int dyPerX;
+    int dyPerY;
+    switch (rotation & 3) {
+      case 1: // 90 degrees
+        x0 = height - 1;
+        y0 = 0;
+        dxPerX = 0;
+        dxPerY = -1;
+        dyPerX = 1;
+        dyPerY = 0;
+        break;
+      case 2: // 180 degrees
+        x0 = width - 1;
+        y0 = height - 1;
+        dxPerX = -1;
+        dxPerY = 0;
+        dyPerX = 0;
+        dyPerY = -1;
+        break;
+      case 3: // 270 degrees
+        x0 = 0;
+        y0 = width - 1;
+        dxPerX = 0;
+        dxPerY = 1;
+        dyPerX = -1;
+        dyPerY = 0;
+        break;
+      default:
+        x0 = 0;
+        y0 = 0;
+        dxPerX = 1;
+        dxPerY = 0;
+        dyPerX = 0;
+        dyPerY = 1;
+        break;
+    }
+    if (mirror) {
+      x0 = outWidth - 1 - x0;
+      dxPerX = -dxPerX;
+      dxPerY = -dxPerY;
+    }
+    int stepPerX = dyPerX * outWidth + dxPerX;
+
+    int frameSize = width * height;
+    for (int y = 0; y < height; y++) {
+      int yIndex = offset + y * width;
+      int uvIndex = offset + frameSize + (y >> 1) * width;
+      int outIndex = (y0 + y * dyPerY) * outWidth + x0 + y * dxPerY;
+      int u = 0;
+      int v = 0;
+      for (int x = 0; x < width; x++) {
+        if ((x & 1) == 0) {
+          v = (nv21[uvIndex++] & 0xff) - 128;
+          u = (nv21[uvIndex++] & 0xff) - 128;
+        }
+        out[outIndex] = yuvToArgb(nv21[yIndex++] & 0xff, u, v);
+        outIndex += stepPerX;
+      }
+    }
+  }
+
+  /**
+   * Converts one BT.601 video-range YUV sample to an opaque ARGB pixel using 10-bit fixed point
+   * arithmetic. {@code u} and {@code v} are expected to be already centered around zero.
+   */
+  public static int yuvToArgb(int y, int u, int v) {
+    int y1192 = 1192 * Math.max(0, y - 16);
+    int r = y1192 + 1634 * v;
+    int g = y1192 - 833 * v - 400 * u;
+    int b = y1192 + 2066 * u;
+    r = r < 0 ? 0 : (r > 262143 ? 262143 : r);
+    g = g < 0 ? 0 : (g > 262143 ? 262143 : g);
+    b = b < 0 ? 0 : (b > 262143 ? 262143 : b);
+    return 0xff000000 | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff);
+  }
+}
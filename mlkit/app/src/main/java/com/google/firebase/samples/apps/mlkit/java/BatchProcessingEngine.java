@@ -0,0 +1,515 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.provider.DocumentsContract;
+import android.provider.DocumentsContract.Document;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.ml.vision.common.FirebaseVisionImage;
+import com.google.firebase.samples.apps.mlkit.common.BatchResultLog;
+import com.google.firebase.samples.apps.mlkit.common.BitmapUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs a {@link VisionProcessorBase} over a large number of images, e.g. all the images of a
+ * folder, and writes one result per image to a {@link BatchResultLog}.
+ *
+ * <p>Images are decoded subsampled to about the target size, by a fixed number of workers, so
+ * that no more than that many bitmaps are in memory at once. Images that already have a result in
+ * the log are skipped, so a run that was cancelled or killed picks up where it stopped. An image
+ * that fails to decode, makes the processor throw or takes too long to detect in is logged as an
+ * error, and the run goes on with the next one.
+ */
+public class BatchProcessingEngine {
+
+    private static final String TAG = "BatchProcessingEngine";
+
+    // How often the progress of a run is logged, in images.
+    private static final int PROGRESS_LOG_INTERVAL = 100;
+
+    // How long detection may take on one image before it is logged as failed.
+    private static final long DETECTION_TIMEOUT_SECONDS = 30;
+
+    // Recycles the bitmap of a timed out detection on the thread the detection completes on.
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            command.run();
+        }
+    };
+
+    private static final String[] CHILD_DOCUMENT_COLUMNS =
+            new String[] {Document.COLUMN_DOCUMENT_ID, Document.COLUMN_MIME_TYPE};
+
+    /** An encoded image to run the detector on. */
+    public interface ImageSource {
+
+        /** Returns the id the result of the image is logged under. */
+        String getId();
+
+        /** Opens the encoded image. */
+        InputStream open() throws IOException;
+    }
+
+    /** Throughput and memory use of a batch run. */
+    public static final class Stats {
+
+        private final int imageCount;
+        private final int skippedCount;
+        private int processedCount;
+        private int failedCount;
+        private long elapsedMillis;
+        private long peakJavaHeapBytes;
+        private long peakNativeHeapBytes;
+
+        Stats(int imageCount, int skippedCount) {
+            this.imageCount = imageCount;
+            this.skippedCount = skippedCount;
+        }
+
+        /** Returns the number of images in the batch. */
+        public int getImageCount() {
+            return imageCount;
+        }
+
+        /** Returns the number of images that had a result from an earlier run. */
+        public int getSkippedCount() {
+            return skippedCount;
+        }
+
+        /** Returns the number of images that were processed, including those that failed. */
+        public synchronized int getProcessedCount() {
+            return processedCount;
+        }
+
+        /** Returns the number of images that could not be decoded or detected in. */
+        public synchronized int getFailedCount() {
+            return failedCount;
+        }
+
+        /** Returns the number of images processed per second of the run. */
+        public synchronized float getImagesPerSecond() {
+            return elapsedMillis == 0 ? 0 : processedCount * 1000f / elapsedMillis;
+        }
+
+        /** Returns the most memory the Java heap had in use during the run. */
+        public synchronized long getPeakJavaHeapBytes() {
+            return peakJavaHeapBytes;
+        }
+
+        /**
+         * Returns the most memory the native heap had in use during the run, which is where the
+         * pixels of bitmaps live from Android O on.
+         */
+        public synchronized long getPeakNativeHeapBytes() {
+            return peakNativeHeapBytes;
+        }
+
+        synchronized void onProcessed(boolean failed, long elapsedMillis) {
+            processedCount++;
+            if (failed) {
+                failedCount++;
+            }
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        synchronized void sampleMemory() {
+            Runtime runtime = Runtime.getRuntime();
+            peakJavaHeapBytes =
+                    Math.max(peakJavaHeapBytes, runtime.totalMemory() - runtime.freeMemory());
+            peakNativeHeapBytes =
+                    Math.max(peakNativeHeapBytes, Debug.getNativeHeapAllocatedSize());
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format(
+                    Locale.US,
+                    "%d of %d images in %.1f s (%d failed, %d done before), %.1f images/s, "
+                            + "peak heap %d MB Java / %d MB native",
+                    processedCount,
+                    imageCount,
+                    elapsedMillis / 1000f,
+                    failedCount,
+                    skippedCount,
+                    getImagesPerSecond(),
+                    peakJavaHeapBytes >> 20,
+                    peakNativeHeapBytes >> 20);
+        }
+    }
+
+    private final int targetWidth;
+    private final int targetHeight;
+    private final int concurrency;
+
+    private volatile boolean cancelled;
+
+    /**
+     * Creates an engine that decodes images to no less than {@code targetWidth} x {@code
+     * targetHeight}, in either orientation, and processes {@code concurrency} of them at a time.
+     */
+    public BatchProcessingEngine(int targetWidth, int targetHeight, int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be positive: " + concurrency);
+        }
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Runs {@code processor} over the images listed by {@code lister}, appending the results to
+     * the log in {@code output}. The images are listed on a background thread. The returned task
+     * completes once every image has a result, or once the images being processed when {@link
+     * #cancel()} was called are done.
+     */
+    public <T> Task<Stats> run(
+            final VisionProcessorBase<T> processor,
+            final Callable<List<ImageSource>> lister,
+            final File output) {
+        cancelled = false;
+        final ExecutorService coordinator = Executors.newSingleThreadExecutor();
+        return Tasks.call(coordinator, new Callable<Stats>() {
+            @Override
+            public Stats call() throws Exception {
+                try {
+                    return runBatch(processor, lister.call(), output);
+                } finally {
+                    coordinator.shutdown();
+                }
+            }
+        });
+    }
+
+    /** Stops the current run once the images being processed are done. */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    private <T> Stats runBatch(
+            final VisionProcessorBase<T> processor, List<ImageSource> images, File output)
+            throws IOException, InterruptedException {
+        final BatchResultLog log = BatchResultLog.open(output);
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        try {
+            List<ImageSource> pending = new ArrayList<>(images.size());
+            for (ImageSource image : images) {
+                if (!log.isDone(image.getId())) {
+                    pending.add(image);
+                }
+            }
+            final Stats stats = new Stats(images.size(), images.size() - pending.size());
+            final long startMillis = SystemClock.elapsedRealtime();
+            Log.i(TAG, "Processing " + pending.size() + " of " + images.size() + " images");
+            for (final ImageSource image : pending) {
+                workers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!cancelled) {
+                            processImage(processor, image, log, stats, startMillis);
+                        }
+                    }
+                });
+            }
+            workers.shutdown();
+            while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                // Keep waiting for the workers, the images they process are in the log.
+            }
+            Log.i(TAG, "Batch " + (cancelled ? "cancelled" : "done") + ": " + stats);
+            return stats;
+        } finally {
+            workers.shutdownNow();
+            log.close();
+        }
+    }
+
+    private <T> void processImage(
+            VisionProcessorBase<T> processor,
+            ImageSource image,
+            BatchResultLog log,
+            Stats stats,
+            long startMillis) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        Bitmap bitmap = null;
+        Task<T> detection = null;
+        String error = null;
+        String result = null;
+        long detectionMillis = 0;
+        try {
+            bitmap = decode(image, options);
+            if (bitmap == null) {
+                error = "Can not decode image";
+            } else {
+                long detectionStart = SystemClock.elapsedRealtime();
+                FirebaseVisionImage visionImage = FirebaseVisionImage.fromBitmap(bitmap);
+                detection = processor.detectInImage(visionImage);
+                T results = Tasks.await(detection, DETECTION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                detectionMillis = SystemClock.elapsedRealtime() - detectionStart;
+                result = processor.describeResults(results);
+            }
+        } catch (IOException e) {
+            error = "Can not read image: " + e.getMessage();
+        } catch (ExecutionException e) {
+            error = "Detection failed: " + e.getCause();
+        } catch (TimeoutException e) {
+            error = "Detection timed out after " + DETECTION_TIMEOUT_SECONDS + "s";
+        } catch (RuntimeException e) {
+            // E.g. a decoder or processor bug on an odd image; one image must not end the run.
+            error = "Processing failed: " + e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            // Sampled while the bitmap is still in memory, which is when the most is in use.
+            stats.sampleMemory();
+            if (bitmap != null) {
+                recycleAfter(detection, bitmap);
+            }
+        }
+
+        try {
+            if (error == null) {
+                log.writeResult(
+                        image.getId(), options.outWidth, options.outHeight, options.inSampleSize,
+                        detectionMillis, result);
+            } else {
+                Log.w(TAG, error + ": " + image.getId());
+                log.writeError(image.getId(), error);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Can not write the result of " + image.getId(), e);
+        }
+        stats.onProcessed(error != null, SystemClock.elapsedRealtime() - startMillis);
+        if (stats.getProcessedCount() % PROGRESS_LOG_INTERVAL == 0) {
+            Log.i(TAG, stats.toString());
+        }
+    }
+
+    // A detection that timed out or was interrupted may still be reading the bitmap, e.g. a cloud
+    // detector or the tile workers of a TiledTextRecognizer, so it is only recycled once done.
+    private static <T> void recycleAfter(@Nullable Task<T> detection, final Bitmap bitmap) {
+        if (detection == null || detection.isComplete()) {
+            bitmap.recycle();
+            return;
+        }
+        detection.addOnCompleteListener(DIRECT_EXECUTOR, new OnCompleteListener<T>() {
+            @Override
+            public void onComplete(@NonNull Task<T> task) {
+                bitmap.recycle();
+            }
+        });
+    }
+
+    // Decodes the image twice, first only its size to pick the subsampling and then its pixels.
+    private Bitmap decode(ImageSource image, BitmapFactory.Options options) throws IOException {
+        options.inJustDecodeBounds = true;
+        decodeStream(image, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inSampleSize = BitmapUtils.calculateInSampleSize(
+                options.outWidth, options.outHeight, targetWidth, targetHeight);
+        options.inJustDecodeBounds = false;
+        return decodeStream(image, options);
+    }
+
+    private static Bitmap decodeStream(ImageSource image, BitmapFactory.Options options)
+            throws IOException {
+        InputStream in = image.open();
+        try {
+            return BitmapFactory.decodeStream(in, null, options);
+        } finally {
+            in.close();
+        }
+    }
+
+    /** Lists the images in {@code directory} and, recursively, its subdirectories. */
+    public static Callable<List<ImageSource>> listDirectory(final File directory) {
+        return new Callable<List<ImageSource>>() {
+            @Override
+            public List<ImageSource> call() {
+                List<ImageSource> images = new ArrayList<>();
+                ArrayDeque<File> directories = new ArrayDeque<>();
+                directories.add(directory);
+                while (!directories.isEmpty()) {
+                    File[] files = directories.poll().listFiles();
+                    if (files == null) {
+                        continue;
+                    }
+                    for (File file : files) {
+                        if (file.isDirectory()) {
+                            directories.add(file);
+                        } else if (isImageFileName(file.getName())) {
+                            images.add(new FileImageSource(file));
+                        }
+                    }
+                }
+                return sortById(images);
+            }
+        };
+    }
+
+    /**
+     * Lists the images in the document tree {@code treeUri}, e.g. a folder picked with {@link
+     * android.content.Intent#ACTION_OPEN_DOCUMENT_TREE}, and recursively in its subfolders.
+     */
+    public static Callable<List<ImageSource>> listDocumentTree(
+            final ContentResolver resolver, final Uri treeUri) {
+        return new Callable<List<ImageSource>>() {
+            @Override
+            public List<ImageSource> call() {
+                List<ImageSource> images = new ArrayList<>();
+                ArrayDeque<String> folderIds = new ArrayDeque<>();
+                folderIds.add(DocumentsContract.getTreeDocumentId(treeUri));
+                while (!folderIds.isEmpty()) {
+                    Uri childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(
+                            treeUri, folderIds.poll());
+                    Cursor cursor =
+                            resolver.query(childrenUri, CHILD_DOCUMENT_COLUMNS, null, null, null);
+                    if (cursor == null) {
+                        continue;
+                    }
+                    try {
+                        while (cursor.moveToNext()) {
+                            String documentId = cursor.getString(0);
+                            String mimeType = cursor.getString(1);
+                            if (Document.MIME_TYPE_DIR.equals(mimeType)) {
+                                folderIds.add(documentId);
+                            } else if (mimeType != null && mimeType.startsWith("image/")) {
+                                images.add(new UriImageSource(resolver,
+                                        DocumentsContract.buildDocumentUriUsingTree(
+                                                treeUri, documentId)));
+                            }
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                }
+                return sortById(images);
+            }
+        };
+    }
+
+    /** Lists the images at {@code uris}, e.g. the ones picked with a chooser. */
+    public static Callable<List<ImageSource>> listUris(
+            final ContentResolver resolver, final List<Uri> uris) {
+        return new Callable<List<ImageSource>>() {
+            @Override
+            public List<ImageSource> call() {
+                List<ImageSource> images = new ArrayList<>(uris.size());
+                for (Uri uri : uris) {
+                    images.add(new UriImageSource(resolver, uri));
+                }
+                return images;
+            }
+        };
+    }
+
+    private static boolean isImageFileName(String name) {
+        String lowerCaseName = name.toLowerCase(Locale.US);
+        return lowerCaseName.endsWith(".jpg")
+                || lowerCaseName.endsWith(".jpeg")
+                || lowerCaseName.endsWith(".png")
+                || lowerCaseName.endsWith(".webp")
+                || lowerCaseName.endsWith(".bmp");
+    }
+
+    // Runs go through the images in the same order every time, so the log of a resumed run reads
+    // in order as well.
+    private static List<ImageSource> sortById(List<ImageSource> images) {
+        Collections.sort(images, new Comparator<ImageSource>() {
+            @Override
+            public int compare(ImageSource a, ImageSource b) {
+                return a.getId().compareTo(b.getId());
+            }
+        });
+        return images;
+    }
+
+    private static final class FileImageSource implements ImageSource {
+
+        private final File file;
+
+        FileImageSource(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public String getId() {
+            return file.getAbsolutePath();
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            return new FileInputStream(file);
+        }
+    }
+
+    private static final class UriImageSource implements ImageSource {
+
+        private final ContentResolver resolver;
+        private final Uri uri;
+
+        UriImageSource(ContentResolver resolver, Uri uri) {
+            this.resolver = resolver;
+            this.uri = uri;
+        }
+
+        @Override
+        public String getId() {
+            return uri.toString();
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            InputStream in = resolver.openInputStream(uri);
+            if (in == null) {
+                throw new FileNotFoundException("Can not open " + uri);
+            }
+            return in;
+        }
+    }
+}
@@ -62,6 +62,9 @@ public final class ChooserActivity extends AppCompatActivity
 
     setContentView(R.layout.activity_chooser);
 
+    // Load the slowest models while the user picks a demo.
+    ModelPreloader.start(this);
+
     // Set up ListView and Adapter
     ListView listView = findViewById(R.id.testActivityListView);
 
@@ -0,0 +1,156 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java;
+
+import android.graphics.Rect;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.Locale;
+
+/**
+ * Decides, frame by frame, whether a {@link VisionProcessorBase} runs its detector on the full
+ * frame, on a region of it, or not at all. A skipped frame is drawn with the results of the last
+ * detection, so the overlay keeps up with the camera while the detector only runs as often as
+ * the {@link Policy} asks for.
+ *
+ * <p>Regions are expressed in the coordinates of the upright frame. Results always come with the
+ * region they were detected in, so a policy can derive the next region from them.
+ *
+ * @param <T> The type of the detected feature.
+ */
+public class DetectionScheduler<T> {
+
+    private static final String TAG = "DetectionScheduler";
+
+    /** Number of frames between two statistics log lines. */
+    private static final int LOG_INTERVAL_FRAMES = 300;
+
+    /** Chooses what to do with the next frame. */
+    public interface Policy<T> {
+        /**
+         * Returns the region of the upright frame to detect in, {@code fullFrame} for the whole
+         * frame, or null to skip detection and reuse the last results.
+         *
+         * @param fullFrame the bounds of the upright frame
+         * @param lastResults the results of the last detection, or null if there is none yet
+         * @param lastRegion the region {@code lastResults} were detected in
+         * @param framesSinceDetection number of frames skipped since the last detection
+         */
+        @Nullable
+        Rect selectRegion(
+                Rect fullFrame,
+                @Nullable T lastResults,
+                @Nullable Rect lastRegion,
+                int framesSinceDetection);
+    }
+
+    /** Extracts the bounding box of the interesting part of some results. */
+    public interface RegionExtractor<T> {
+        /**
+         * Returns the bounds of {@code results} relative to the region they were detected in,
+         * or null if there is nothing to track.
+         */
+        @Nullable
+        Rect getBounds(T results);
+    }
+
+    /** What to do with one frame. */
+    static final class Decision<T> {
+        /** Null if detection is skipped for this frame. */
+        @Nullable final Rect region;
+        /** The results to draw a skipped frame with. */
+        @Nullable final T lastResults;
+        /** The region {@link #lastResults} were detected in. */
+        @Nullable final Rect lastRegion;
+
+        Decision(@Nullable Rect region, @Nullable T lastResults, @Nullable Rect lastRegion) {
+            this.region = region;
+            this.lastResults = lastResults;
+            this.lastRegion = lastRegion;
+        }
+
+        boolean isSkipped() {
+            return region == null;
+        }
+    }
+
+    private final Policy<T> policy;
+
+    // Guarded by this.
+    @Nullable private T lastResults;
+    @Nullable private Rect lastRegion;
+    private int framesSinceDetection;
+    private long frameCount;
+    private long skippedCount;
+    private long regionCount;
+    private double detectedAreaFraction;
+
+    public DetectionScheduler(Policy<T> policy) {
+        this.policy = policy;
+    }
+
+    /** Decides what to do with the next frame, of upright size {@code width} x {@code height}. */
+    synchronized Decision<T> next(int width, int height) {
+        Rect fullFrame = new Rect(0, 0, width, height);
+        Rect region = lastResults == null
+                ? fullFrame
+                : policy.selectRegion(fullFrame, lastResults, lastRegion, framesSinceDetection);
+        frameCount++;
+        if (region == null) {
+            skippedCount++;
+            framesSinceDetection++;
+        } else {
+            if (!region.intersect(fullFrame)) {
+                region = fullFrame;
+            }
+            if (!region.equals(fullFrame)) {
+                regionCount++;
+            }
+            detectedAreaFraction +=
+                    (double) region.width() * region.height() / ((double) width * height);
+            framesSinceDetection = 0;
+        }
+        if (frameCount % LOG_INTERVAL_FRAMES == 0) {
+            Log.d(TAG, toString());
+        }
+        return new Decision<>(region, lastResults, lastRegion);
+    }
+
+    /** Records the results of a detection that ran on {@code region}. */
+    synchronized void onResults(T results, Rect region) {
+        lastResults = results;
+        lastRegion = region;
+    }
+
+    /** Forgets the last results, so the next frame is detected in full. */
+    public synchronized void reset() {
+        lastResults = null;
+        lastRegion = null;
+        framesSinceDetection = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long detected = frameCount - skippedCount;
+        return String.format(
+                Locale.US,
+                "frames=%d skipped=%d regions=%d avgDetectedArea=%.0f%%",
+                frameCount,
+                skippedCount,
+                regionCount,
+                detected == 0 ? 0 : 100 * detectedAreaFraction / detected);
+    }
+}
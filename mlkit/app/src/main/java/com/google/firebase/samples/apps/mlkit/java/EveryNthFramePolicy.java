@@ -0,0 +1,46 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java;
+
+import android.graphics.Rect;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Runs detection on the full frame every {@code n}th frame and reuses the last results for the
+ * frames in between.
+ *
+ * @param <T> The type of the detected feature.
+ */
+public class EveryNthFramePolicy<T> implements DetectionScheduler.Policy<T> {
+
+    private final int n;
+
+    public EveryNthFramePolicy(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("Invalid frame interval: " + n);
+        }
+        this.n = n;
+    }
+
+    @Nullable
+    @Override
+    public Rect selectRegion(
+            Rect fullFrame,
+            @Nullable T lastResults,
+            @Nullable Rect lastRegion,
+            int framesSinceDetection) {
+        return framesSinceDetection + 1 >= n ? fullFrame : null;
+    }
+}
@@ -35,13 +35,26 @@ import androidx.core.app.ActivityCompat.OnRequestPermissionsResultCallback;
 import androidx.core.content.ContextCompat;
 
 import com.google.android.gms.common.annotation.KeepName;
+import com.google.firebase.ml.common.FirebaseMLException;
 import com.google.firebase.ml.vision.objects.FirebaseVisionObjectDetectorOptions;
 import com.google.firebase.samples.apps.mlkit.R;
+import com.google.firebase.samples.apps.mlkit.common.AdaptiveCaptureController;
+import com.google.firebase.samples.apps.mlkit.common.AdaptiveCaptureController.CaptureSettings;
+import com.google.firebase.samples.apps.mlkit.common.Camera2Source;
+import com.google.firebase.samples.apps.mlkit.common.CameraFrameSource;
 import com.google.firebase.samples.apps.mlkit.common.CameraSource;
 import com.google.firebase.samples.apps.mlkit.common.CameraSourcePreview;
+import com.google.firebase.samples.apps.mlkit.common.FrameMetrics;
+import com.google.firebase.samples.apps.mlkit.common.FrameMetricsHud;
+import com.google.firebase.samples.apps.mlkit.common.FramePipeline;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
+import com.google.firebase.samples.apps.mlkit.common.PipelineStage.DropPolicy;
+import com.google.firebase.samples.apps.mlkit.common.VisionImageProcessor;
+import com.google.firebase.samples.apps.mlkit.common.VisionProcessorRegistry;
 import com.google.firebase.samples.apps.mlkit.java.automl.AutoMLImageLabelerProcessor;
 import com.google.firebase.samples.apps.mlkit.java.barcodescanning.BarcodeScanningProcessor;
+import com.google.firebase.samples.apps.mlkit.java.barcodescanning.BarcodeSession;
+import com.google.firebase.samples.apps.mlkit.java.custommodel.ClassifierAutoSelector;
 import com.google.firebase.samples.apps.mlkit.java.custommodel.CustomImageClassifierProcessor;
 import com.google.firebase.samples.apps.mlkit.java.facedetection.FaceContourDetectorProcessor;
 import com.google.firebase.samples.apps.mlkit.java.facedetection.FaceDetectionProcessor;
@@ -52,6 +65,7 @@ import com.google.firebase.samples.apps.mlkit.java.textrecognition.TextRecogniti
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Demo app showing the various features of ML Kit for Firebase. This class is used to
@@ -70,28 +84,52 @@ public final class LivePreviewActivity extends AppCompatActivity
     private static final String IMAGE_LABEL_DETECTION = "Label Detection";
     private static final String CLASSIFICATION_QUANT = "Classification (quantized)";
     private static final String CLASSIFICATION_FLOAT = "Classification (float)";
+    private static final String CLASSIFICATION_AUTO = "Classification (auto)";
     private static final String FACE_CONTOUR = "Face Contour";
+    private static final String MULTI_DETECTION = "Barcode + Text + Object";
     private static final String TAG = "LivePreviewActivity";
     private static final int PERMISSION_REQUESTS = 1;
+    // Processors of modes used recently are kept, along with their models, up to this budget.
+    private static final long PROCESSOR_MEMORY_BUDGET_BYTES = 48L << 20;
 
-    private CameraSource cameraSource = null;
+    private CameraFrameSource cameraSource = null;
+    // Whether frames come from the camera2 API rather than android.hardware.Camera.
+    private boolean useCamera2 = false;
     private CameraSourcePreview preview;
     private GraphicOverlay graphicOverlay;
     private String selectedModel = FACE_CONTOUR;
+    // Overlaps conversion, inference and overlay construction of consecutive frames.
+    private final FramePipeline framePipeline =
+            new FramePipeline.Builder()
+                    .setQueueCapacity(1)
+                    .setDropPolicy(DropPolicy.LATEST_WINS)
+                    .build();
+    // Adapts the preview frame rate and size to the latency of the selected detector.
+    private AdaptiveCaptureController captureController;
+    // Per-stage latency of the selected processor, shown over the preview.
+    private final FrameMetrics frameMetrics = new FrameMetrics();
+    // The processors of the modes, owned by the registry rather than by the camera source.
+    private VisionProcessorRegistry processors;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         Log.d(TAG, "onCreate");
         setContentView(R.layout.activity_live_preview);
+        processors = createProcessorRegistry();
 
         preview = findViewById(R.id.firePreview);
         if (preview == null) {
             Log.d(TAG, "Preview is null");
+        } else {
+            // Show the camera frames directly rather than as bitmaps drawn by the processors.
+            preview.setDirectPreview(true);
         }
         graphicOverlay = findViewById(R.id.fireFaceOverlay);
         if (graphicOverlay == null) {
             Log.d(TAG, "graphicOverlay is null");
+        } else {
+            graphicOverlay.setMetricsHud(new FrameMetricsHud(frameMetrics));
         }
 
         Spinner spinner = findViewById(R.id.spinner);
@@ -105,6 +143,8 @@ public final class LivePreviewActivity extends AppCompatActivity
         options.add(IMAGE_LABEL_DETECTION);
         options.add(CLASSIFICATION_QUANT);
         options.add(CLASSIFICATION_FLOAT);
+        options.add(CLASSIFICATION_AUTO);
+        options.add(MULTI_DETECTION);
         // Creating adapter for spinner
         ArrayAdapter<String> dataAdapter = new ArrayAdapter<>(this, R.layout.spinner_style,
                 options);
@@ -120,6 +160,8 @@ public final class LivePreviewActivity extends AppCompatActivity
         if (Camera.getNumberOfCameras() == 1) {
             facingSwitch.setVisibility(View.GONE);
         }
+        ToggleButton cameraApiSwitch = findViewById(R.id.cameraApiSwitch);
+        cameraApiSwitch.setOnCheckedChangeListener(this);
 
         if (allPermissionsGranted()) {
             createCameraSource(selectedModel);
@@ -150,6 +192,24 @@ public final class LivePreviewActivity extends AppCompatActivity
 
     @Override
     public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+        if (buttonView.getId() == R.id.cameraApiSwitch) {
+            Log.d(TAG, "Set camera API");
+            useCamera2 = isChecked;
+            // The processor outlives the source, as it is kept by the registry.
+            preview.stop();
+            if (cameraSource == null || !allPermissionsGranted()) {
+                return;
+            }
+            int facing = cameraSource.getCameraFacing();
+            cameraSource.release();
+            cameraSource = null;
+            // The new camera starts out with the default capture settings.
+            captureController = null;
+            createCameraSource(selectedModel);
+            cameraSource.setFacing(facing);
+            startCameraSource();
+            return;
+        }
         Log.d(TAG, "Set facing");
         if (cameraSource != null) {
             if (isChecked) {
@@ -165,54 +225,39 @@ public final class LivePreviewActivity extends AppCompatActivity
     private void createCameraSource(String model) {
         // If there's no existing cameraSource, create one.
         if (cameraSource == null) {
-            cameraSource = new CameraSource(this, graphicOverlay);
+            if (useCamera2) {
+                cameraSource = new Camera2Source(this, graphicOverlay);
+            } else {
+                cameraSource = new CameraSource(this, graphicOverlay);
+            }
+            cameraSource.setFrameMetrics(frameMetrics);
         }
 
         try {
-            switch (model) {
-                case CLASSIFICATION_QUANT:
-                    Log.i(TAG, "Using Custom Image Classifier (quant) Processor");
-                    cameraSource.setMachineLearningFrameProcessor(new CustomImageClassifierProcessor(this, true));
-                    break;
-                case CLASSIFICATION_FLOAT:
-                    Log.i(TAG, "Using Custom Image Classifier (float) Processor");
-                    cameraSource.setMachineLearningFrameProcessor(new CustomImageClassifierProcessor(this, false));
-                    break;
-                case TEXT_DETECTION:
-                    Log.i(TAG, "Using Text Detector Processor");
-                    cameraSource.setMachineLearningFrameProcessor(new TextRecognitionProcessor());
-                    break;
-                case FACE_DETECTION:
-                    Log.i(TAG, "Using Face Detector Processor");
-                    cameraSource.setMachineLearningFrameProcessor(new FaceDetectionProcessor(getResources()));
-                    break;
-                case AUTOML_IMAGE_LABELING:
-                    cameraSource.setMachineLearningFrameProcessor(new AutoMLImageLabelerProcessor(this));
-                    break;
-                case OBJECT_DETECTION:
-                    Log.i(TAG, "Using Object Detector Processor");
-                    FirebaseVisionObjectDetectorOptions objectDetectorOptions =
-                            new FirebaseVisionObjectDetectorOptions.Builder()
-                                    .setDetectorMode(FirebaseVisionObjectDetectorOptions.STREAM_MODE)
-                                    .enableClassification().build();
-                    cameraSource.setMachineLearningFrameProcessor(
-                            new ObjectDetectorProcessor(objectDetectorOptions));
-                    break;
-                case BARCODE_DETECTION:
-                    Log.i(TAG, "Using Barcode Detector Processor");
-                    cameraSource.setMachineLearningFrameProcessor(new BarcodeScanningProcessor());
-                    break;
-                case IMAGE_LABEL_DETECTION:
-                    Log.i(TAG, "Using Image Label Detector Processor");
-                    cameraSource.setMachineLearningFrameProcessor(new ImageLabelingProcessor());
-                    break;
-                case FACE_CONTOUR:
-                    Log.i(TAG, "Using Face Contour Detector Processor");
-                    cameraSource.setMachineLearningFrameProcessor(new FaceContourDetectorProcessor());
-                    break;
-                default:
-                    Log.e(TAG, "Unknown model: " + model);
+            long startNanos = System.nanoTime();
+            String key = CLASSIFICATION_AUTO.equals(model) ? getAutoClassifierModel() : model;
+            boolean live = processors.isLive(key);
+            VisionImageProcessor processor = processors.get(key);
+            Log.i(TAG, String.format(Locale.US, "Switched to %s in %.2f ms (%s)", key,
+                    (System.nanoTime() - startNanos) / 1e6, live ? "cached" : "created"));
+            // Frames queued for the previous processor would run against its stopped detector.
+            framePipeline.clear();
+            if (processor instanceof VisionProcessorBase) {
+                ((VisionProcessorBase<?>) processor).setPipeline(framePipeline);
+                // Only android.hardware.Camera previews can be resized on the fly.
+                if (cameraSource instanceof CameraSource) {
+                    captureController = createCaptureController((CameraSource) cameraSource);
+                    ((VisionProcessorBase<?>) processor)
+                            .setFrameLatencyListener(captureController);
+                } else {
+                    // A cached processor may still hold the controller of an earlier camera.
+                    captureController = null;
+                    ((VisionProcessorBase<?>) processor).setFrameLatencyListener(null);
+                }
             }
+            cameraSource.setMachineLearningFrameProcessor(processor, /* owned= */ false);
+            // Start over so the numbers only cover the newly selected processor.
+            frameMetrics.reset();
         } catch (Exception e) {
             Log.e(TAG, "Can not create image processor: " + model, e);
             Toast.makeText(
@@ -223,6 +268,148 @@ public final class LivePreviewActivity extends AppCompatActivity
         }
     }
 
+    /**
+     * Returns the classifier mode the automatic classifier mode runs. Until both classifiers were
+     * benchmarked on this device, that is the bundled quantized one. The benchmark waits for the
+     * preview to stop, so the float one is picked up the next time the mode is selected.
+     */
+    private String getAutoClassifierModel() {
+        ClassifierAutoSelector selector = ModelPreloader.getClassifierSelector(this);
+        Boolean quantized = selector.getChoice();
+        if (quantized == null) {
+            selector.select();
+            quantized = true;
+        }
+        return quantized ? CLASSIFICATION_QUANT : CLASSIFICATION_FLOAT;
+    }
+
+    /**
+     * Registers the processor of every mode with a rough estimate of the memory it holds on to,
+     * mostly for its model.
+     */
+    private VisionProcessorRegistry createProcessorRegistry() {
+        VisionProcessorRegistry.Factory factory = new VisionProcessorRegistry.Factory() {
+            @Override
+            public VisionImageProcessor create(String model) throws FirebaseMLException {
+                return createProcessor(model);
+            }
+        };
+        return new VisionProcessorRegistry(PROCESSOR_MEMORY_BUDGET_BYTES)
+                .register(FACE_CONTOUR, 4L << 20, factory)
+                .register(FACE_DETECTION, 4L << 20, factory)
+                .register(AUTOML_IMAGE_LABELING, 8L << 20, factory)
+                .register(OBJECT_DETECTION, 6L << 20, factory)
+                .register(TEXT_DETECTION, 8L << 20, factory)
+                .register(BARCODE_DETECTION, 2L << 20, factory)
+                .register(IMAGE_LABEL_DETECTION, 8L << 20, factory)
+                .register(CLASSIFICATION_QUANT, 6L << 20, factory)
+                .register(CLASSIFICATION_FLOAT, 20L << 20, factory)
+                .register(MULTI_DETECTION, 16L << 20, factory);
+    }
+
+    private VisionImageProcessor createProcessor(String model) throws FirebaseMLException {
+        switch (model) {
+            case CLASSIFICATION_QUANT:
+                Log.i(TAG, "Using Custom Image Classifier (quant) Processor");
+                return new CustomImageClassifierProcessor(
+                        this, ModelPreloader.getWarmer(this), ModelPreloader.CLASSIFIER_QUANT);
+            case CLASSIFICATION_FLOAT:
+                Log.i(TAG, "Using Custom Image Classifier (float) Processor");
+                return new CustomImageClassifierProcessor(
+                        this, ModelPreloader.getWarmer(this), ModelPreloader.CLASSIFIER_FLOAT);
+            case TEXT_DETECTION:
+                Log.i(TAG, "Using Text Detector Processor");
+                return new TextRecognitionProcessor();
+            case FACE_DETECTION:
+                Log.i(TAG, "Using Face Detector Processor");
+                return new FaceDetectionProcessor(getResources());
+            case AUTOML_IMAGE_LABELING:
+                return new AutoMLImageLabelerProcessor(this, ModelPreloader.getWarmer(this),
+                        ModelPreloader.AUTOML_IMAGE_LABELER);
+            case OBJECT_DETECTION:
+                Log.i(TAG, "Using Object Detector Processor");
+                return new ObjectDetectorProcessor(newObjectDetectorOptions());
+            case BARCODE_DETECTION:
+                Log.i(TAG, "Using Barcode Detector Processor");
+                return createBarcodeProcessor();
+            case IMAGE_LABEL_DETECTION:
+                Log.i(TAG, "Using Image Label Detector Processor");
+                return new ImageLabelingProcessor();
+            case FACE_CONTOUR:
+                Log.i(TAG, "Using Face Contour Detector Processor");
+                return new FaceContourDetectorProcessor();
+            case MULTI_DETECTION:
+                Log.i(TAG, "Using Multi Detector Processor");
+                return new MultiDetectorProcessor.Builder()
+                        .add("Barcode", new BarcodeScanningProcessor())
+                        .add("Text", new TextRecognitionProcessor())
+                        .add("Object", new ObjectDetectorProcessor(newObjectDetectorOptions()))
+                        .build();
+            default:
+                throw new IllegalArgumentException("Unknown model: " + model);
+        }
+    }
+
+    /**
+     * Creates a barcode processor that only looks for the formats of the barcodes in view and
+     * shows each barcode once, when it first comes into view.
+     */
+    private BarcodeScanningProcessor createBarcodeProcessor() {
+        BarcodeScanningProcessor processor = new BarcodeScanningProcessor();
+        processor.setAdaptiveFormats(true);
+        final BarcodeSession session = processor.getSession();
+        session.setListener(new BarcodeSession.Listener() {
+            @Override
+            public void onNewBarcode(final BarcodeSession.Barcode barcode) {
+                final int scansPerSecond = session.getUniqueScansPerSecond(System.nanoTime());
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Toast.makeText(
+                                LivePreviewActivity.this,
+                                String.format(Locale.US, "%s (%d scans/s)",
+                                        barcode.getRawValue(), scansPerSecond),
+                                Toast.LENGTH_SHORT)
+                                .show();
+                    }
+                });
+            }
+        });
+        return processor;
+    }
+
+    private static FirebaseVisionObjectDetectorOptions newObjectDetectorOptions() {
+        return new FirebaseVisionObjectDetectorOptions.Builder()
+                .setDetectorMode(FirebaseVisionObjectDetectorOptions.STREAM_MODE)
+                .enableClassification().build();
+    }
+
+    /**
+     * Creates a capture controller for a newly selected detector, starting from the settings the
+     * camera currently runs with.
+     */
+    private AdaptiveCaptureController createCaptureController(final CameraSource camera) {
+        CaptureSettings initial = captureController != null
+                ? captureController.getCurrentSettings()
+                : new CaptureSettings(20, 480, 360);
+        return new AdaptiveCaptureController.Builder()
+                .setFpsRange(5, 30, 5)
+                .addPreviewSize(320, 240)
+                .addPreviewSize(480, 360)
+                .addPreviewSize(640, 480)
+                .setInitialSettings(initial.getFps(), initial.getWidth(), initial.getHeight())
+                .setTargetUtilization(0.8f)
+                .setListener(new AdaptiveCaptureController.Listener() {
+                    @Override
+                    public void onCaptureSettingsChanged(CaptureSettings settings) {
+                        Log.i(TAG, "Capture settings changed: " + settings);
+                        camera.setCaptureSettings(
+                                settings.getFps(), settings.getWidth(), settings.getHeight());
+                    }
+                })
+                .build();
+    }
+
     /**
      * Starts or restarts the camera source, if it exists. If the camera source doesn't exist yet
      * (e.g., because onResume was called before the camera source was created), this will be called
@@ -250,6 +437,7 @@ public final class LivePreviewActivity extends AppCompatActivity
     public void onResume() {
         super.onResume();
         Log.d(TAG, "onResume");
+        ModelPreloader.getClassifierSelector(this).setPreviewRunning(true);
         startCameraSource();
     }
 
@@ -260,6 +448,16 @@ public final class LivePreviewActivity extends AppCompatActivity
     protected void onPause() {
         super.onPause();
         preview.stop();
+        ClassifierAutoSelector selector = ModelPreloader.getClassifierSelector(this);
+        selector.setPreviewRunning(false);
+        Log.d(TAG, "Frame pipeline stats:\n" + framePipeline.dumpStats());
+        Log.d(TAG, "Frame metrics:\n" + frameMetrics.dumpStats());
+        Log.d(TAG, "Processors:\n" + processors.dumpStats());
+        Log.d(TAG, "Model warm-up:\n" + ModelPreloader.getWarmer(this).dumpStats());
+        Log.d(TAG, "Classifier benchmark:\n" + selector.dumpStats());
+        if (captureController != null) {
+            Log.d(TAG, "Capture controller: " + captureController);
+        }
     }
 
     @Override
@@ -268,6 +466,8 @@ public final class LivePreviewActivity extends AppCompatActivity
         if (cameraSource != null) {
             cameraSource.release();
         }
+        processors.close();
+        framePipeline.shutdown();
     }
 
     private String[] getRequiredPermissions() {
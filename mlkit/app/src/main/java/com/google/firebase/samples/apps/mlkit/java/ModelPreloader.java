@@ -0,0 +1,122 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Process;
+
+import com.google.firebase.samples.apps.mlkit.common.ModelWarmer;
+import com.google.firebase.samples.apps.mlkit.java.automl.AutoMLImageLabelerProcessor;
+import com.google.firebase.samples.apps.mlkit.java.custommodel.ClassifierAutoSelector;
+import com.google.firebase.samples.apps.mlkit.java.custommodel.CustomImageClassifier;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Holds the process wide {@link ModelWarmer} for the models of {@link LivePreviewActivity} that
+ * take long to load: the custom classifiers and the AutoML image labeler. It is started by {@link
+ * ChooserActivity}, so the models are warm by the time their mode is picked. Once they are, the
+ * classifiers are benchmarked for the automatic classifier mode, unless that was done before.
+ * Models not taken yet are released when the system runs low on memory.
+ */
+public final class ModelPreloader {
+
+    public static final String CLASSIFIER_QUANT = "classifier-quant";
+    public static final String AUTOML_IMAGE_LABELER = "automl-image-labeler";
+    public static final String CLASSIFIER_FLOAT = "classifier-float";
+
+    /**
+     * How long a processor created while its model is still warming up waits for it before it
+     * skips frames instead.
+     */
+    public static final long TAKE_TIMEOUT_MILLIS = 300;
+
+    private static ModelWarmer warmer;
+    private static ClassifierAutoSelector classifierSelector;
+
+    // Runs the warm-up and then the benchmark, so they do not skew each other's timings.
+    private static ExecutorService executor;
+
+    private ModelPreloader() {}
+
+    /** Returns the warmer, with the models registered smallest first. */
+    public static synchronized ModelWarmer getWarmer(Context context) {
+        if (warmer == null) {
+            Context applicationContext = context.getApplicationContext();
+            warmer = new ModelWarmer(getExecutor())
+                    .register(CLASSIFIER_QUANT,
+                            CustomImageClassifier.newLoader(applicationContext, true))
+                    .register(AUTOML_IMAGE_LABELER, AutoMLImageLabelerProcessor.newLoader())
+                    .register(CLASSIFIER_FLOAT,
+                            CustomImageClassifier.newLoader(applicationContext, false));
+            applicationContext.registerComponentCallbacks(new ComponentCallbacks2() {
+                @Override
+                public void onTrimMemory(int level) {
+                    if (level >= TRIM_MEMORY_RUNNING_LOW) {
+                        warmer.trimMemory();
+                    }
+                }
+
+                @Override
+                public void onLowMemory() {
+                    warmer.trimMemory();
+                }
+
+                @Override
+                public void onConfigurationChanged(Configuration newConfig) {}
+            });
+        }
+        return warmer;
+    }
+
+    /** Returns the selector of the automatic classifier mode. */
+    public static synchronized ClassifierAutoSelector getClassifierSelector(Context context) {
+        if (classifierSelector == null) {
+            classifierSelector = new ClassifierAutoSelector(context, getExecutor());
+        }
+        return classifierSelector;
+    }
+
+    /**
+     * Starts warming up the models and then benchmarking the classifiers on a background priority
+     * thread, unless that was done before. The benchmark is held back while a preview runs.
+     */
+    public static void start(Context context) {
+        getWarmer(context).start();
+        getClassifierSelector(context).select();
+    }
+
+    private static synchronized Executor getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "ModelPreloader");
+                }
+            });
+        }
+        return executor;
+    }
+}
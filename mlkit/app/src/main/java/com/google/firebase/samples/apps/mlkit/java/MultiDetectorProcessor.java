@@ -0,0 +1,377 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.ml.vision.common.FirebaseVisionImage;
+import com.google.firebase.samples.apps.mlkit.common.BitmapUtils;
+import com.google.firebase.samples.apps.mlkit.common.CameraImageGraphic;
+import com.google.firebase.samples.apps.mlkit.common.FrameBuffer;
+import com.google.firebase.samples.apps.mlkit.common.FrameMetadata;
+import com.google.firebase.samples.apps.mlkit.common.FrameTrace;
+import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
+import com.google.firebase.samples.apps.mlkit.common.LatencyHistogram;
+import com.google.firebase.samples.apps.mlkit.common.MediaImageFrame;
+import com.google.firebase.samples.apps.mlkit.common.MediaImageProcessor;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs several detectors on the same camera frames, e.g. barcode, text and object detection, and
+ * draws their results together.
+ *
+ * <p>Every frame is converted once: all detectors share one {@link FirebaseVisionImage} and, when
+ * the camera preview is not visible, one bitmap. Each detector has its own latest-frame-wins slot,
+ * so a slow detector only skips frames itself and never holds back the fast ones. Whenever a
+ * detector returns, the latest results of all detectors are published as one overlay scene.
+ *
+ * <p>The children are only used for {@link VisionProcessorBase#detectInImage} and {@link
+ * VisionProcessorBase#addGraphics}; their pipeline and detection policy do not apply here. The
+ * latency of each detector is kept in a {@link LatencyHistogram}, see {@link #dumpStats()}.
+ */
+public class MultiDetectorProcessor implements MediaImageProcessor {
+
+    private static final String TAG = "MultiDetectorProcessor";
+
+    // Latency samples kept per detector.
+    private static final int LATENCY_SAMPLES = 128;
+
+    /** Builds a {@link MultiDetectorProcessor}. */
+    public static class Builder {
+        private final List<String> names = new ArrayList<>();
+        private final List<VisionProcessorBase<?>> processors = new ArrayList<>();
+
+        /**
+         * Adds a detector, which is run on every frame it is free for and drawn with {@link
+         * VisionProcessorBase#addGraphics}. {@code name} identifies it in the stats.
+         */
+        public Builder add(String name, VisionProcessorBase<?> processor) {
+            names.add(name);
+            processors.add(processor);
+            return this;
+        }
+
+        public MultiDetectorProcessor build() {
+            if (processors.isEmpty()) {
+                throw new IllegalStateException("No detectors added.");
+            }
+            return new MultiDetectorProcessor(this);
+        }
+    }
+
+    private final List<Child<?>> children;
+
+    // Reused to convert camera2 images for drawing, only touched on the camera thread.
+    @Nullable
+    private byte[] nv21Scratch;
+
+    private MultiDetectorProcessor(Builder builder) {
+        List<Child<?>> children = new ArrayList<>();
+        for (int i = 0; i < builder.processors.size(); i++) {
+            children.add(createChild(builder.names.get(i), builder.processors.get(i)));
+        }
+        this.children = Collections.unmodifiableList(children);
+    }
+
+    private <T> Child<T> createChild(String name, VisionProcessorBase<T> processor) {
+        return new Child<>(name, processor);
+    }
+
+    @Override
+    public void process(
+            ByteBuffer data, FrameMetadata frameMetadata, GraphicOverlay graphicOverlay) {
+        VisionProcessorBase.mark(frameMetadata, FrameTrace.Point.CONVERSION_START);
+        // The camera reuses its buffer as soon as this method returns, so the detectors either
+        // hold a reference to the pooled frame or work on a copy.
+        FrameBuffer frameBuffer = frameMetadata.getFrameBuffer();
+        ByteBuffer buffer;
+        if (frameBuffer != null) {
+            frameBuffer.retain();
+            buffer = data;
+        } else {
+            byte[] copy = new byte[data.limit()];
+            data.rewind();
+            data.get(copy);
+            data.rewind();
+            buffer = ByteBuffer.wrap(copy);
+        }
+        Bitmap cameraImage = null;
+        if (!graphicOverlay.isCameraPreviewVisible()) {
+            cameraImage = BitmapUtils.getBitmap(buffer, frameMetadata);
+        }
+        FirebaseVisionImage image = FirebaseVisionImage.fromByteBuffer(
+                buffer, VisionProcessorBase.toVisionMetadata(frameMetadata));
+        dispatch(new SharedFrame(image, frameMetadata, cameraImage, frameBuffer, null),
+                graphicOverlay);
+    }
+
+    @Override
+    public void process(
+            MediaImageFrame frame, FrameMetadata frameMetadata, GraphicOverlay graphicOverlay) {
+        VisionProcessorBase.mark(frameMetadata, FrameTrace.Point.CONVERSION_START);
+        frame.retain();
+        Bitmap cameraImage = null;
+        if (!graphicOverlay.isCameraPreviewVisible()) {
+            int length = frame.getNv21Size();
+            if (nv21Scratch == null || nv21Scratch.length < length) {
+                nv21Scratch = new byte[length];
+            }
+            frame.copyToNv21(nv21Scratch);
+            cameraImage = BitmapUtils.getBitmap(
+                    ByteBuffer.wrap(nv21Scratch, 0, length), frameMetadata);
+        }
+        FirebaseVisionImage image =
+                FirebaseVisionImage.fromMediaImage(frame.getImage(), frame.getRotation());
+        dispatch(new SharedFrame(image, frameMetadata, cameraImage, null, frame), graphicOverlay);
+    }
+
+    // Bitmap version
+    @Override
+    public void process(Bitmap bitmap, GraphicOverlay graphicOverlay) {
+        dispatch(new SharedFrame(FirebaseVisionImage.fromBitmap(bitmap), null, null, null, null),
+                graphicOverlay);
+    }
+
+    private void dispatch(SharedFrame frame, GraphicOverlay graphicOverlay) {
+        VisionProcessorBase.mark(frame.metadata, FrameTrace.Point.CONVERSION_END);
+        VisionProcessorBase.mark(frame.metadata, FrameTrace.Point.DETECTION_START);
+        for (int i = 0; i < children.size(); i++) {
+            children.get(i).offer(frame, graphicOverlay);
+        }
+        // Drop the reference of the caller; the detectors hold their own.
+        frame.release();
+    }
+
+    /**
+     * Publishes the latest results of all detectors as one scene, drawn over the frame a detector
+     * just returned for. Called on the main thread.
+     */
+    private void publishScene(SharedFrame frame, GraphicOverlay graphicOverlay) {
+        GraphicOverlay.Scene.Builder scene = graphicOverlay.newScene();
+        if (frame.cameraImage != null) {
+            scene.add(new CameraImageGraphic(graphicOverlay, frame.cameraImage));
+        }
+        for (int i = 0; i < children.size(); i++) {
+            children.get(i).addGraphics(graphicOverlay, scene);
+        }
+        graphicOverlay.publish(scene.build());
+
+        // The trace covers the first results shown for the frame.
+        FrameTrace trace = frame.metadata == null ? null : frame.metadata.getFrameTrace();
+        if (trace != null && !frame.traced) {
+            frame.traced = true;
+            trace.mark(FrameTrace.Point.DETECTION_END);
+            trace.mark(FrameTrace.Point.ON_SUCCESS);
+            graphicOverlay.setFrameTrace(trace);
+        }
+    }
+
+    @Override
+    public void stop() {
+        for (int i = 0; i < children.size(); i++) {
+            children.get(i).stop();
+        }
+        Log.i(TAG, "Detector stats:\n" + dumpStats());
+    }
+
+    /** Returns the latency of the detector added as {@code name}, or null if there is none. */
+    @Nullable
+    public LatencyHistogram.Snapshot getLatency(String name) {
+        for (int i = 0; i < children.size(); i++) {
+            if (children.get(i).name.equals(name)) {
+                return children.get(i).latency.snapshot();
+            }
+        }
+        return null;
+    }
+
+    /** Returns the detection latency and frame counts of every detector, one per line. */
+    public String dumpStats() {
+        StringBuilder stats = new StringBuilder();
+        for (int i = 0; i < children.size(); i++) {
+            Child<?> child = children.get(i);
+            stats.append(child.name)
+                    .append(": detected=").append(child.latency.getRecordedCount())
+                    .append(", skipped=").append(child.skippedCount.get())
+                    .append(", failed=").append(child.failedCount.get())
+                    .append(", latency ").append(child.latency.snapshot())
+                    .append('\n');
+        }
+        return stats.toString();
+    }
+
+    /** A converted frame, held until the last detector that picked it up is done with it. */
+    private static final class SharedFrame {
+        final FirebaseVisionImage image;
+        @Nullable final FrameMetadata metadata;
+        @Nullable final Bitmap cameraImage;
+        @Nullable private final FrameBuffer frameBuffer;
+        @Nullable private final MediaImageFrame mediaImage;
+        private final AtomicInteger refCount = new AtomicInteger(1);
+        // Whether the trace has been handed to the overlay, only accessed on the main thread.
+        boolean traced;
+
+        SharedFrame(
+                FirebaseVisionImage image,
+                @Nullable FrameMetadata metadata,
+                @Nullable Bitmap cameraImage,
+                @Nullable FrameBuffer frameBuffer,
+                @Nullable MediaImageFrame mediaImage) {
+            this.image = image;
+            this.metadata = metadata;
+            this.cameraImage = cameraImage;
+            this.frameBuffer = frameBuffer;
+            this.mediaImage = mediaImage;
+        }
+
+        void retain() {
+            refCount.incrementAndGet();
+        }
+
+        void release() {
+            if (refCount.decrementAndGet() != 0) {
+                return;
+            }
+            if (frameBuffer != null) {
+                frameBuffer.release();
+            }
+            if (mediaImage != null) {
+                mediaImage.release();
+            }
+        }
+    }
+
+    /** One detector, running on the latest frame whenever it is done with the previous one. */
+    private final class Child<T> {
+        final String name;
+        final VisionProcessorBase<T> processor;
+        final LatencyHistogram latency = new LatencyHistogram(LATENCY_SAMPLES);
+        final AtomicLong skippedCount = new AtomicLong();
+        final AtomicLong failedCount = new AtomicLong();
+
+        // The frame to detect on next, waiting while the detector is busy.
+        @GuardedBy("this")
+        @Nullable
+        private SharedFrame pendingFrame;
+
+        @GuardedBy("this")
+        private boolean busy;
+
+        @GuardedBy("this")
+        private boolean stopped;
+
+        // The results drawn for this detector, only accessed on the main thread.
+        @Nullable
+        private T latestResults;
+
+        Child(String name, VisionProcessorBase<T> processor) {
+            this.name = name;
+            this.processor = processor;
+        }
+
+        void offer(SharedFrame frame, GraphicOverlay graphicOverlay) {
+            synchronized (this) {
+                if (stopped) {
+                    return;
+                }
+                frame.retain();
+                if (busy) {
+                    // Latest frame wins: the one waiting is skipped by this detector only.
+                    if (pendingFrame != null) {
+                        skippedCount.incrementAndGet();
+                        pendingFrame.release();
+                    }
+                    pendingFrame = frame;
+                    return;
+                }
+                busy = true;
+            }
+            detect(frame, graphicOverlay);
+        }
+
+        private void detect(final SharedFrame frame, final GraphicOverlay graphicOverlay) {
+            final long startNanos = System.nanoTime();
+            Task<T> task;
+            try {
+                task = processor.detectInImage(frame.image);
+            } catch (RuntimeException e) {
+                task = Tasks.forException(e);
+            }
+            task.addOnSuccessListener(
+                    new OnSuccessListener<T>() {
+                        @Override
+                        public void onSuccess(T results) {
+                            latency.record(System.nanoTime() - startNanos);
+                            latestResults = results;
+                            publishScene(frame, graphicOverlay);
+                            detectNext(frame, graphicOverlay);
+                        }
+                    })
+                    .addOnFailureListener(
+                            new OnFailureListener() {
+                                @Override
+                                public void onFailure(@NonNull Exception e) {
+                                    failedCount.incrementAndGet();
+                                    processor.onFailure(e);
+                                    detectNext(frame, graphicOverlay);
+                                }
+                            });
+        }
+
+        private void detectNext(SharedFrame done, GraphicOverlay graphicOverlay) {
+            done.release();
+            SharedFrame next;
+            synchronized (this) {
+                next = pendingFrame;
+                pendingFrame = null;
+                busy = next != null;
+            }
+            if (next != null) {
+                detect(next, graphicOverlay);
+            }
+        }
+
+        void addGraphics(GraphicOverlay graphicOverlay, GraphicOverlay.Scene.Builder scene) {
+            if (latestResults != null) {
+                processor.addGraphics(latestResults, graphicOverlay, scene);
+            }
+        }
+
+        void stop() {
+            synchronized (this) {
+                stopped = true;
+                if (pendingFrame != null) {
+                    pendingFrame.release();
+                    pendingFrame = null;
+                }
+            }
+            processor.stop();
+        }
+    }
+}
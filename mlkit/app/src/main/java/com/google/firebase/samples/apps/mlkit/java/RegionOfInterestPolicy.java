@@ -0,0 +1,81 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java;
+
+import android.graphics.Rect;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Runs detection around the bounds of the last results, grown by a margin so moving objects stay
+ * inside. The full frame is scanned whenever nothing was found, and periodically so new objects
+ * are picked up.
+ *
+ * @param <T> The type of the detected feature.
+ */
+public class RegionOfInterestPolicy<T> implements DetectionScheduler.Policy<T> {
+
+    /** Regions smaller than this, in pixels per side, are not worth cropping for. */
+    private static final int MIN_REGION_SIZE = 64;
+
+    private final DetectionScheduler.RegionExtractor<T> extractor;
+    private final float margin;
+    private final int fullFrameInterval;
+
+    // Number of region detections since the last full frame scan.
+    private int regionDetections;
+
+    /**
+     * @param extractor returns the bounds of the results to track
+     * @param margin how much to grow the bounds on every side, relative to their size
+     * @param fullFrameInterval scan the full frame after this many region detections
+     */
+    public RegionOfInterestPolicy(
+            DetectionScheduler.RegionExtractor<T> extractor, float margin, int fullFrameInterval) {
+        this.extractor = extractor;
+        this.margin = margin;
+        this.fullFrameInterval = fullFrameInterval;
+    }
+
+    @Nullable
+    @Override
+    public Rect selectRegion(
+            Rect fullFrame,
+            @Nullable T lastResults,
+            @Nullable Rect lastRegion,
+            int framesSinceDetection) {
+        Rect bounds = lastResults == null ? null : extractor.getBounds(lastResults);
+        if (bounds == null || bounds.isEmpty() || regionDetections >= fullFrameInterval) {
+            regionDetections = 0;
+            return fullFrame;
+        }
+
+        // The bounds are relative to the region the results were detected in.
+        Rect region = new Rect(bounds);
+        if (lastRegion != null) {
+            region.offset(lastRegion.left, lastRegion.top);
+        }
+        int growX = Math.max((int) (region.width() * margin), MIN_REGION_SIZE / 2);
+        int growY = Math.max((int) (region.height() * margin), MIN_REGION_SIZE / 2);
+        region.inset(-growX, -growY);
+        if (!region.intersect(fullFrame)
+                || region.width() < MIN_REGION_SIZE
+                || region.height() < MIN_REGION_SIZE) {
+            regionDetections = 0;
+            return fullFrame;
+        }
+        regionDetections++;
+        return region;
+    }
+}
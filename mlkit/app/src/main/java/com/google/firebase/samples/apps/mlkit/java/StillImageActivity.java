@@ -13,13 +13,18 @@
 // limitations under the License.
 package com.google.firebase.samples.apps.mlkit.java;
 
+import android.content.ClipData;
 import android.content.ContentValues;
 import android.content.Intent;
 import android.content.res.Configuration;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.provider.MediaStore;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import android.util.Log;
 import android.util.Pair;
@@ -35,19 +40,41 @@ import android.widget.ImageView;
 import android.widget.PopupMenu;
 import android.widget.PopupMenu.OnMenuItemClickListener;
 import android.widget.Spinner;
+import android.widget.Toast;
 
 import com.google.android.gms.common.annotation.KeepName;
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.SuccessContinuation;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.ml.common.FirebaseMLException;
 import com.google.firebase.samples.apps.mlkit.R;
+import com.google.firebase.samples.apps.mlkit.common.BitmapPool;
+import com.google.firebase.samples.apps.mlkit.common.BitmapUtils;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
+import com.google.firebase.samples.apps.mlkit.common.ResultCache;
+import com.google.firebase.samples.apps.mlkit.common.SampledBitmapDecoder;
+import com.google.firebase.samples.apps.mlkit.common.UploadPreparer;
 import com.google.firebase.samples.apps.mlkit.common.VisionImageProcessor;
+import com.google.firebase.samples.apps.mlkit.common.VisionProcessorRegistry;
 import com.google.firebase.samples.apps.mlkit.java.cloudimagelabeling.CloudImageLabelingProcessor;
 import com.google.firebase.samples.apps.mlkit.java.cloudlandmarkrecognition.CloudLandmarkRecognitionProcessor;
 import com.google.firebase.samples.apps.mlkit.java.cloudtextrecognition.CloudDocumentTextRecognitionProcessor;
 import com.google.firebase.samples.apps.mlkit.java.cloudtextrecognition.CloudTextRecognitionProcessor;
+import com.google.firebase.samples.apps.mlkit.java.custommodel.CustomImageClassifier;
+import com.google.firebase.samples.apps.mlkit.java.textrecognition.TiledTextRecognitionProcessor;
 
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 /** Activity demonstrating different image detector features with a still image from camera. */
 @KeepName
@@ -59,6 +86,8 @@ public final class StillImageActivity extends AppCompatActivity {
   private static final String CLOUD_LANDMARK_DETECTION = "Landmark";
   private static final String CLOUD_TEXT_DETECTION = "Cloud Text";
   private static final String CLOUD_DOCUMENT_TEXT_DETECTION = "Doc Text";
+  private static final String TILED_TEXT_DETECTION = "Text (tiled)";
+  private static final String TILED_DOCUMENT_TEXT_DETECTION = "Doc Text (tiled)";
 
   private static final String SIZE_PREVIEW = "w:max"; // Available on-screen width.
   private static final String SIZE_1024_768 = "w:1024"; // ~1024*768 in a normal ratio
@@ -74,6 +103,34 @@ public final class StillImageActivity extends AppCompatActivity {
 
   private static final int REQUEST_IMAGE_CAPTURE = 1001;
   private static final int REQUEST_CHOOSE_IMAGE = 1002;
+  private static final int REQUEST_CHOOSE_BATCH = 1003;
+  private static final int REQUEST_CHOOSE_FOLDER = 1004;
+
+  // Batched images are scaled so their shorter side is about the classifier input size.
+  private static final int BATCH_IMAGE_MIN_SIDE = 299;
+
+  // Images of a folder are sent to the cloud detectors a few at a time, as each mostly waits for
+  // the network.
+  private static final int FOLDER_CONCURRENCY = 4;
+
+  private static final long BITMAP_POOL_BYTES = 24 << 20;
+
+  private static final long PROCESSOR_MEMORY_BUDGET_BYTES = 12L << 20;
+
+  // The tiled modes recognize text in the image at up to this size rather than as shown.
+  private static final int TILED_IMAGE_MAX_SIDE = 4096;
+
+  private static final int RESULT_CACHE_ENTRIES = 32;
+
+  private static final long RESULT_CACHE_TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  // Images are shown one at a time, so a second thread only helps when switching quickly.
+  private static final int UPLOAD_PREPARER_THREADS = 2;
+
+  // The cloud results of the images seen in this process, shared by all the activity instances.
+  // The results of the cloud detectors cannot be rebuilt outside of ML Kit, so they are kept in
+  // memory only.
+  private static ResultCache<Object> resultCache;
 
   private Button getImageButton;
   private ImageView preview;
@@ -89,7 +146,19 @@ public final class StillImageActivity extends AppCompatActivity {
   // Max height (portrait mode)
   private Integer imageMaxHeight;
   private Bitmap bitmapForDetection;
+  // The detection running on bitmapForDetection, if any.
+  @Nullable private Task<?> detection;
+  private BitmapPool bitmapPool;
+  private SampledBitmapDecoder bitmapDecoder;
+  private UploadPreparer uploadPreparer;
   private VisionImageProcessor imageProcessor;
+  // The processors of the modes, kept across mode switches.
+  private VisionProcessorRegistry processors;
+  private CustomImageClassifier batchClassifier;
+  // The running or last batch classification, which the classifier is closed after.
+  @Nullable private Task<String> batchRun;
+  @Nullable private BatchProcessingEngine folderEngine;
+  @Nullable private Task<BatchProcessingEngine.Stats> folderRun;
 
   @Override
   protected void onCreate(Bundle savedInstanceState) {
@@ -115,6 +184,12 @@ public final class StillImageActivity extends AppCompatActivity {
                       case R.id.take_photo_using_camera:
                         startCameraIntentForResult();
                         return true;
+                      case R.id.classify_images_in_batch:
+                        startChooseBatchIntentForResult();
+                        return true;
+                      case R.id.detect_in_image_folder:
+                        startChooseFolderIntentForResult();
+                        return true;
                       default:
                         return false;
                     }
@@ -135,6 +210,16 @@ public final class StillImageActivity extends AppCompatActivity {
       Log.d(TAG, "graphicOverlay is null");
     }
 
+    // Holds on to a couple of decoded images at most, so they can be decoded into again.
+    bitmapPool = new BitmapPool(Math.min(BITMAP_POOL_BYTES, Runtime.getRuntime().maxMemory() / 8));
+    bitmapDecoder = new SampledBitmapDecoder(getContentResolver(), bitmapPool);
+
+    if (resultCache == null) {
+      resultCache = new ResultCache<>(RESULT_CACHE_ENTRIES, RESULT_CACHE_TTL_MILLIS);
+    }
+    uploadPreparer = new UploadPreparer(UPLOAD_PREPARER_THREADS);
+    processors = createProcessorRegistry();
+
     populateFeatureSelector();
     populateSizeSelector();
 
@@ -162,6 +247,8 @@ public final class StillImageActivity extends AppCompatActivity {
     options.add(CLOUD_LANDMARK_DETECTION);
     options.add(CLOUD_TEXT_DETECTION);
     options.add(CLOUD_DOCUMENT_TEXT_DETECTION);
+    options.add(TILED_TEXT_DETECTION);
+    options.add(TILED_DOCUMENT_TEXT_DETECTION);
     // Creating adapter for featureSpinner
     ArrayAdapter<String> dataAdapter = new ArrayAdapter<>(this, R.layout.spinner_style, options);
     // Drop down layout style - list view with radio button
@@ -212,6 +299,24 @@ public final class StillImageActivity extends AppCompatActivity {
         });
   }
 
+  @Override
+  protected void onDestroy() {
+    super.onDestroy();
+    // Whatever is done is in the log, and the next run over the folder picks up from there.
+    if (folderEngine != null) {
+      folderEngine.cancel();
+    }
+    if (batchClassifier != null) {
+      closeAfterBatchRun(batchClassifier);
+      batchClassifier = null;
+    }
+    bitmapPool.clear();
+    processors.close();
+    Log.d(TAG, "Result cache: " + resultCache.dumpStats());
+    Log.d(TAG, "Uploads: " + uploadPreparer.dumpStats());
+    uploadPreparer.shutdown();
+  }
+
   @Override
   public void onSaveInstanceState(Bundle outState) {
     super.onSaveInstanceState(outState);
@@ -249,6 +354,19 @@ public final class StillImageActivity extends AppCompatActivity {
     startActivityForResult(Intent.createChooser(intent, "Select Picture"), REQUEST_CHOOSE_IMAGE);
   }
 
+  private void startChooseBatchIntentForResult() {
+    Intent intent = new Intent();
+    intent.setType("image/*");
+    intent.setAction(Intent.ACTION_GET_CONTENT);
+    intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
+    startActivityForResult(Intent.createChooser(intent, "Select Pictures"), REQUEST_CHOOSE_BATCH);
+  }
+
+  private void startChooseFolderIntentForResult() {
+    Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT_TREE);
+    startActivityForResult(intent, REQUEST_CHOOSE_FOLDER);
+  }
+
   @Override
   protected void onActivityResult(int requestCode, int resultCode, Intent data) {
     if (requestCode == REQUEST_IMAGE_CAPTURE && resultCode == RESULT_OK) {
@@ -257,6 +375,233 @@ public final class StillImageActivity extends AppCompatActivity {
       // In this case, imageUri is returned by the chooser, save it.
       imageUri = data.getData();
       tryReloadAndDetectInImage();
+    } else if (requestCode == REQUEST_CHOOSE_BATCH && resultCode == RESULT_OK) {
+      List<Uri> uris = new ArrayList<>();
+      ClipData clipData = data.getClipData();
+      if (clipData != null) {
+        for (int i = 0; i < clipData.getItemCount(); i++) {
+          uris.add(clipData.getItemAt(i).getUri());
+        }
+      } else if (data.getData() != null) {
+        uris.add(data.getData());
+      }
+      classifyBatch(uris);
+    } else if (requestCode == REQUEST_CHOOSE_FOLDER && resultCode == RESULT_OK) {
+      detectInFolder(data.getData());
+    }
+  }
+
+  /**
+   * Runs the selected detector over every image in the folder {@code treeUri}, writing the results
+   * to a JSON lines file per detector and folder. Running it again over the same folder resumes
+   * where the last run stopped.
+   */
+  private void detectInFolder(Uri treeUri) {
+    if (treeUri == null) {
+      return;
+    }
+    if (folderRun != null && !folderRun.isComplete()) {
+      Toast.makeText(this, "A folder is still being processed", Toast.LENGTH_SHORT).show();
+      return;
+    }
+    // A processor of its own, which switching modes while the folder is processed does not stop.
+    final VisionImageProcessor folderProcessor;
+    try {
+      folderProcessor = processors.create(selectedMode);
+    } catch (FirebaseMLException e) {
+      Log.e(TAG, "Can not create image processor: " + selectedMode, e);
+      return;
+    }
+    // Decoded at the selected size, like a single image.
+    Pair<Integer, Integer> targetedSize = getTargetedWidthHeight();
+    folderEngine =
+        new BatchProcessingEngine(targetedSize.first, targetedSize.second, FOLDER_CONCURRENCY);
+    File outputDir = getExternalFilesDir(null);
+    if (outputDir == null) {
+      outputDir = getFilesDir();
+    }
+    final File output =
+        new File(
+            outputDir,
+            String.format(
+                Locale.US,
+                "batch-%s-%08x.jsonl",
+                selectedMode.replace(' ', '_'),
+                treeUri.toString().hashCode()));
+    Toast.makeText(this, "Processing folder into " + output.getName(), Toast.LENGTH_SHORT).show();
+    folderRun =
+        folderEngine
+            .run(
+                (VisionProcessorBase<?>) folderProcessor,
+                BatchProcessingEngine.listDocumentTree(getContentResolver(), treeUri),
+                output)
+            .addOnCompleteListener(
+                new OnCompleteListener<BatchProcessingEngine.Stats>() {
+                  @Override
+                  public void onComplete(@NonNull Task<BatchProcessingEngine.Stats> task) {
+                    folderProcessor.stop();
+                  }
+                })
+            .addOnSuccessListener(
+                this,
+                new OnSuccessListener<BatchProcessingEngine.Stats>() {
+                  @Override
+                  public void onSuccess(BatchProcessingEngine.Stats stats) {
+                    Toast.makeText(StillImageActivity.this, stats.toString(), Toast.LENGTH_LONG)
+                        .show();
+                  }
+                })
+            .addOnFailureListener(
+                this,
+                new OnFailureListener() {
+                  @Override
+                  public void onFailure(Exception e) {
+                    Log.e(TAG, "Processing " + output + " failed", e);
+                  }
+                });
+  }
+
+  /**
+   * Classifies the images at {@code uris} with the custom model, one at a time and in batches,
+   * and shows the throughput of both modes.
+   */
+  private void classifyBatch(final List<Uri> uris) {
+    if (uris.isEmpty()) {
+      return;
+    }
+    if (batchRun != null && !batchRun.isComplete()) {
+      Toast.makeText(this, "Batch classification is already running", Toast.LENGTH_SHORT).show();
+      return;
+    }
+    if (batchClassifier == null) {
+      try {
+        batchClassifier = new CustomImageClassifier(this, /* useQuantizedModel= */ true);
+      } catch (FirebaseMLException e) {
+        Log.e(TAG, "Can not create image classifier", e);
+        return;
+      }
+    }
+    Toast.makeText(this, "Classifying " + uris.size() + " images...", Toast.LENGTH_SHORT).show();
+    final CustomImageClassifier classifier = batchClassifier;
+    batchRun =
+        Tasks.call(
+                AsyncTask.THREAD_POOL_EXECUTOR,
+                new Callable<List<Bitmap>>() {
+                  @Override
+                  public List<Bitmap> call() throws IOException {
+                    List<Bitmap> images = new ArrayList<>(uris.size());
+                    try {
+                      for (Uri uri : uris) {
+                        images.add(loadBatchImage(uri));
+                      }
+                    } catch (IOException | RuntimeException e) {
+                      recycleAll(images);
+                      throw e;
+                    }
+                    return images;
+                  }
+                })
+            .onSuccessTask(
+                new SuccessContinuation<List<Bitmap>, String>() {
+                  @Override
+                  public Task<String> then(final List<Bitmap> images) {
+                    // Not scoped to the activity, so the images are freed even if it is gone.
+                    return classifier
+                        .measureBatchThroughput(images)
+                        .addOnCompleteListener(
+                            new OnCompleteListener<String>() {
+                              @Override
+                              public void onComplete(@NonNull Task<String> task) {
+                                recycleAll(images);
+                              }
+                            });
+                  }
+                });
+    batchRun
+        .addOnSuccessListener(
+            this,
+            new OnSuccessListener<String>() {
+              @Override
+              public void onSuccess(String summary) {
+                Toast.makeText(StillImageActivity.this, summary, Toast.LENGTH_LONG).show();
+              }
+            })
+        .addOnFailureListener(
+            this,
+            new OnFailureListener() {
+              @Override
+              public void onFailure(Exception e) {
+                Log.e(TAG, "Batch classification failed", e);
+              }
+            });
+  }
+
+  private static void recycleAll(List<Bitmap> images) {
+    for (int i = 0; i < images.size(); i++) {
+      images.get(i).recycle();
+    }
+  }
+
+  // Closes the classifier once the batch run that may still be using it completes.
+  private void closeAfterBatchRun(final CustomImageClassifier classifier) {
+    if (batchRun == null || batchRun.isComplete()) {
+      classifier.close();
+      return;
+    }
+    batchRun.addOnCompleteListener(
+        new OnCompleteListener<String>() {
+          @Override
+          public void onComplete(@NonNull Task<String> task) {
+            classifier.close();
+          }
+        });
+  }
+
+  /**
+   * Decodes the image at {@code uri} with its short side scaled down to about {@link
+   * #BATCH_IMAGE_MIN_SIDE}. The image is subsampled while it is decoded, so a large photo is never
+   * held at full resolution.
+   */
+  private Bitmap loadBatchImage(Uri uri) throws IOException {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    decodeStream(uri, options);
+    if (options.outWidth <= 0 || options.outHeight <= 0) {
+      throw new IOException("Can not decode " + uri);
+    }
+    options.inJustDecodeBounds = false;
+    options.inSampleSize =
+        BitmapUtils.calculateInSampleSize(
+            options.outWidth, options.outHeight, BATCH_IMAGE_MIN_SIDE, BATCH_IMAGE_MIN_SIDE);
+    Bitmap bitmap = decodeStream(uri, options);
+    if (bitmap == null) {
+      throw new IOException("Can not decode " + uri);
+    }
+    float scale =
+        (float) BATCH_IMAGE_MIN_SIDE / Math.min(bitmap.getWidth(), bitmap.getHeight());
+    if (scale >= 1) {
+      return bitmap;
+    }
+    Bitmap scaled =
+        Bitmap.createScaledBitmap(
+            bitmap,
+            Math.round(bitmap.getWidth() * scale),
+            Math.round(bitmap.getHeight() * scale),
+            true);
+    bitmap.recycle();
+    return scaled;
+  }
+
+  @Nullable
+  private Bitmap decodeStream(Uri uri, BitmapFactory.Options options) throws IOException {
+    InputStream stream = getContentResolver().openInputStream(uri);
+    if (stream == null) {
+      throw new FileNotFoundException("Can not open " + uri);
+    }
+    try {
+      return BitmapFactory.decodeStream(stream, null, options);
+    } finally {
+      stream.close();
     }
   }
 
@@ -269,36 +614,74 @@ public final class StillImageActivity extends AppCompatActivity {
       // Clear the overlay first
       graphicOverlay.clear();
 
-      Bitmap imageBitmap = MediaStore.Images.Media.getBitmap(getContentResolver(), imageUri);
-
       // Get the dimensions of the View
       Pair<Integer, Integer> targetedSize = getTargetedWidthHeight();
 
-      int targetWidth = targetedSize.first;
-      int maxHeight = targetedSize.second;
-
-      // Determine how much to scale down the image
-      float scaleFactor =
-          Math.max(
-              (float) imageBitmap.getWidth() / (float) targetWidth,
-              (float) imageBitmap.getHeight() / (float) maxHeight);
-
+      // Decoded straight to the targeted size, rather than at full size and scaled down.
       Bitmap resizedBitmap =
-          Bitmap.createScaledBitmap(
-              imageBitmap,
-              (int) (imageBitmap.getWidth() / scaleFactor),
-              (int) (imageBitmap.getHeight() / scaleFactor),
-              true);
+          bitmapDecoder.decode(imageUri, targetedSize.first, targetedSize.second);
 
       preview.setImageBitmap(resizedBitmap);
+      recycleBitmapForDetection();
       bitmapForDetection = resizedBitmap;
 
-      imageProcessor.process(bitmapForDetection, graphicOverlay);
+      VisionProcessorBase<?> processor = (VisionProcessorBase<?>) imageProcessor;
+      Callable<String> sourceKey = newSourceKey(imageUri);
+      if (isTiledMode(selectedMode)) {
+        // Recognized in a larger copy, which goes back to the pool once it is done. Small images
+        // are not scaled up, which would only add tiles of interpolated pixels.
+        Bitmap largeBitmap =
+            bitmapDecoder.decode(
+                imageUri, TILED_IMAGE_MAX_SIDE, TILED_IMAGE_MAX_SIDE, /* upscale= */ false);
+        float displayScale = (float) resizedBitmap.getWidth() / largeBitmap.getWidth();
+        putBackWhenDone(
+            processor.processBitmap(largeBitmap, displayScale, sourceKey, graphicOverlay),
+            largeBitmap);
+        detection = null;
+      } else {
+        detection = processor.processBitmap(bitmapForDetection, 1f, sourceKey, graphicOverlay);
+      }
     } catch (IOException e) {
       Log.e(TAG, "Error retrieving saved image");
     }
   }
 
+  // Names the image at uri by its file content, so cached results are found at every size it is
+  // decoded at.
+  private Callable<String> newSourceKey(final Uri uri) {
+    return new Callable<String>() {
+      @Override
+      public String call() throws IOException {
+        return "file/" + Long.toHexString(bitmapDecoder.contentHash(uri));
+      }
+    };
+  }
+
+  // Puts the bitmap that is no longer shown back into the pool, once the detector is done with it.
+  private void recycleBitmapForDetection() {
+    final Bitmap bitmap = bitmapForDetection;
+    if (bitmap == null) {
+      return;
+    }
+    bitmapForDetection = null;
+    if (detection == null || detection.isComplete()) {
+      bitmapPool.put(bitmap);
+    } else {
+      putBackWhenDone(detection, bitmap);
+    }
+  }
+
+  private <T> void putBackWhenDone(Task<T> detection, final Bitmap bitmap) {
+    detection.addOnCompleteListener(
+        this,
+        new OnCompleteListener<T>() {
+          @Override
+          public void onComplete(@NonNull Task<T> task) {
+            bitmapPool.put(bitmap);
+          }
+        });
+  }
+
   // Returns max image width, always for portrait mode. Caller needs to swap width / height for
   // landscape mode.
   private Integer getImageMaxWidth() {
@@ -361,21 +744,55 @@ public final class StillImageActivity extends AppCompatActivity {
   }
 
   private void createImageProcessor() {
-    switch (selectedMode) {
+    try {
+      imageProcessor = processors.get(selectedMode);
+      VisionProcessorBase<?> processor = (VisionProcessorBase<?>) imageProcessor;
+      processor.setResultCache(resultCache);
+      processor.setUploadPreparer(uploadPreparer);
+    } catch (FirebaseMLException e) {
+      Log.e(TAG, "Can not create image processor: " + selectedMode, e);
+    }
+  }
+
+  private VisionProcessorRegistry createProcessorRegistry() {
+    VisionProcessorRegistry.Factory factory =
+        new VisionProcessorRegistry.Factory() {
+          @Override
+          public VisionImageProcessor create(String mode) {
+            return createProcessor(mode);
+          }
+        };
+    // The cloud detectors have no model on the device, so all of them fit along with the
+    // on-device text model.
+    return new VisionProcessorRegistry(PROCESSOR_MEMORY_BUDGET_BYTES)
+        .register(CLOUD_LABEL_DETECTION, 1L << 20, factory)
+        .register(CLOUD_LANDMARK_DETECTION, 1L << 20, factory)
+        .register(CLOUD_TEXT_DETECTION, 1L << 20, factory)
+        .register(CLOUD_DOCUMENT_TEXT_DETECTION, 1L << 20, factory)
+        .register(TILED_TEXT_DETECTION, 4L << 20, factory)
+        .register(TILED_DOCUMENT_TEXT_DETECTION, 1L << 20, factory);
+  }
+
+  private static boolean isTiledMode(String mode) {
+    return mode.equals(TILED_TEXT_DETECTION) || mode.equals(TILED_DOCUMENT_TEXT_DETECTION);
+  }
+
+  private static VisionImageProcessor createProcessor(String mode) {
+    switch (mode) {
       case CLOUD_LABEL_DETECTION:
-        imageProcessor = new CloudImageLabelingProcessor();
-        break;
+        return new CloudImageLabelingProcessor();
       case CLOUD_LANDMARK_DETECTION:
-        imageProcessor = new CloudLandmarkRecognitionProcessor();
-        break;
+        return new CloudLandmarkRecognitionProcessor();
       case CLOUD_TEXT_DETECTION:
-        imageProcessor = new CloudTextRecognitionProcessor();
-        break;
+        return new CloudTextRecognitionProcessor();
       case CLOUD_DOCUMENT_TEXT_DETECTION:
-        imageProcessor = new CloudDocumentTextRecognitionProcessor();
-        break;
+        return new CloudDocumentTextRecognitionProcessor();
+      case TILED_TEXT_DETECTION:
+        return TiledTextRecognitionProcessor.onDevice();
+      case TILED_DOCUMENT_TEXT_DETECTION:
+        return TiledTextRecognitionProcessor.cloudDocument();
       default:
-        throw new IllegalStateException("Unknown selectedMode: " + selectedMode);
+        throw new IllegalStateException("Unknown selectedMode: " + mode);
     }
   }
 }
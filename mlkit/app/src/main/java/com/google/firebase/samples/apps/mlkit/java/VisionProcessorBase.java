@@ -14,22 +14,43 @@
 package com.google.firebase.samples.apps.mlkit.java;
 
 import android.graphics.Bitmap;
+import android.graphics.Rect;
 
 import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.google.android.gms.tasks.Continuation;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.ml.vision.common.FirebaseVisionImage;
 import com.google.firebase.ml.vision.common.FirebaseVisionImageMetadata;
 import com.google.firebase.samples.apps.mlkit.common.BitmapUtils;
+import com.google.firebase.samples.apps.mlkit.common.FrameBuffer;
+import com.google.firebase.samples.apps.mlkit.common.FrameCropper;
+import com.google.firebase.samples.apps.mlkit.common.FrameLatencyListener;
 import com.google.firebase.samples.apps.mlkit.common.FrameMetadata;
+import com.google.firebase.samples.apps.mlkit.common.FramePipeline;
+import com.google.firebase.samples.apps.mlkit.common.FrameTrace;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
-import com.google.firebase.samples.apps.mlkit.common.VisionImageProcessor;
+import com.google.firebase.samples.apps.mlkit.common.MediaImageFrame;
+import com.google.firebase.samples.apps.mlkit.common.MediaImageProcessor;
+import com.google.firebase.samples.apps.mlkit.common.PipelineStage;
+import com.google.firebase.samples.apps.mlkit.common.ResultCache;
+import com.google.firebase.samples.apps.mlkit.common.UploadPreparer;
+import com.google.firebase.samples.apps.mlkit.common.YuvToRgbConverter;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Abstract base class for ML Kit frame processors. Subclasses need to implement {@link
@@ -37,36 +58,172 @@ import java.nio.ByteBuffer;
  * the detection results and {@link #detectInImage(FirebaseVisionImage)} to specify the detector
  * object.
  *
+ * <p>By default frames are handled one at a time: the next frame is only looked at once the
+ * detector returned a result for the previous one. With {@link #setPipeline(FramePipeline)},
+ * frame conversion, inference and overlay construction run as separate {@link FramePipeline}
+ * stages instead, so consecutive frames overlap.
+ *
+ * <p>Without a pipeline, {@code onSuccess} and {@code onFailure} are called on the main thread.
+ * With one, {@code onSuccess} runs on the pipeline's render stage thread and {@code onFailure} on
+ * its inference stage thread. Either way they are never called concurrently for one processor, so
+ * state only they use needs no locking, but state shared with {@link #stop()}, which runs on the
+ * main thread, does. They must not touch views other than through {@link GraphicOverlay#publish},
+ * and anything else for the UI has to be posted to the main thread.
+ *
+ * <p>Frames that come from a {@link com.google.firebase.samples.apps.mlkit.common.FrameBufferPool}
+ * are retained for as long as detection needs them rather than copied; other frames are copied
+ * when they have to outlive {@code process()}.
+ *
+ * <p>With {@link #setDetectionPolicy(DetectionScheduler.Policy)}, the detector can skip frames,
+ * which are then drawn with the previous results, or run on a region of the frame only.
+ *
+ * <p>Frames are only converted to a {@link Bitmap} for {@code onSuccess} when the camera preview
+ * is not already visible behind the overlay, or when {@link #needsCameraImage()} says the
+ * processor uses the pixels.
+ *
+ * <p>Camera images from a {@link com.google.firebase.samples.apps.mlkit.common.Camera2Source} are
+ * passed to the detector as they are. A detection policy can still skip them, but regions are not
+ * cropped out of them, since that would need a copy: the detector runs on the whole image instead.
+ *
+ * <p>Processors that name their detector with {@link #getResultCacheKey()} can be given a {@link
+ * ResultCache}, which bitmaps are then looked up in before they are sent to the detector. Bitmaps
+ * are keyed by the image they were decoded from when the caller names it, e.g. by a hash of its
+ * file, and by a hash of their pixels otherwise, computed on a background thread. Results are
+ * kept with the width of the image they were detected in and scaled to the bitmap they are found
+ * for, so the same image decoded at another size, e.g. after the size spinner of {@link
+ * StillImageActivity} changed, still hits the cache.
+ *
+ * <p>Processors with an {@link #getUploadProfile() upload profile} can be given an {@link
+ * UploadPreparer}, which then shrinks bitmaps before they are sent.
+ *
+ * <p>Frames that carry a {@link FrameTrace} are marked as they are converted, detected and
+ * rendered, and the trace is handed to the overlay to be finished when it draws.
+ *
  * @param <T> The type of the detected feature.
  */
-public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
+public abstract class VisionProcessorBase<T> implements MediaImageProcessor {
 
-    // To keep the latest images and its metadata.
+    // To keep the latest frame.
     @GuardedBy("this")
-    private ByteBuffer latestImage;
+    private Frame latestFrame;
 
+    // To keep the frame in process.
     @GuardedBy("this")
-    private FrameMetadata latestImageMetaData;
+    private Frame processingFrame;
 
-    // To keep the images and metadata in process.
-    @GuardedBy("this")
-    private ByteBuffer processingImage;
+    // Set when frames should flow through the staged pipeline instead.
+    @Nullable
+    private volatile FramePipeline pipeline;
 
-    @GuardedBy("this")
+    // Told how long each camera frame took, e.g. to adapt the capture settings.
+    @Nullable
+    private volatile FrameLatencyListener frameLatencyListener;
+
+    // Decides which frames, and which part of them, the detector runs on.
+    @Nullable
+    private volatile DetectionScheduler<T> detectionScheduler;
+
+    // Results of earlier bitmaps, looked up by their content.
+    @Nullable
+    private volatile ResultCache<Object> resultCache;
 
-    private FrameMetadata processingMetaData;
+    // Shrinks bitmaps before they are sent to a cloud detector.
+    @Nullable
+    private volatile UploadPreparer uploadPreparer;
+
+    // Computes result cache keys off the main thread, shared by all processors.
+    @GuardedBy("VisionProcessorBase.class")
+    private static ExecutorService cacheKeyExecutor;
+
+    // The detection whose results onSuccess is drawing on this thread, see newScene.
+    private final ThreadLocal<ScheduledDetection> renderingDetection = new ThreadLocal<>();
+
+    // Recycled frame copies and crops that are still referenced by pipeline stages or detectors.
+    @GuardedBy("frameCopies")
+    private final ArrayDeque<byte[]> frameCopies = new ArrayDeque<>();
 
     public VisionProcessorBase() {
     }
 
+    /**
+     * Runs frames through the stages of {@code pipeline} rather than one at a time, or goes back
+     * to one frame at a time if {@code pipeline} is null. The pipeline is owned by the caller,
+     * which is responsible for shutting it down.
+     */
+    public void setPipeline(@Nullable FramePipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /** Sets the listener told about the latency of every camera frame, or null to remove it. */
+    public void setFrameLatencyListener(@Nullable FrameLatencyListener listener) {
+        frameLatencyListener = listener;
+    }
+
+    /**
+     * Lets {@code policy} decide which frames, and which part of them, the detector runs on, or
+     * runs it on every full frame again if {@code policy} is null.
+     */
+    public void setDetectionPolicy(@Nullable DetectionScheduler.Policy<T> policy) {
+        detectionScheduler = policy == null ? null : new DetectionScheduler<>(policy);
+    }
+
+    /**
+     * Looks up the results of bitmaps in {@code cache}, keeping the results of those sent to the
+     * detector, or stops caching if {@code cache} is null. Only processors that override {@link
+     * #getResultCacheKey()} are cached. The cache can be shared by processors of different types.
+     */
+    public void setResultCache(@Nullable ResultCache<Object> cache) {
+        resultCache = cache;
+    }
+
+    /**
+     * Scales bitmaps down with {@code preparer} before they are sent to the detector, as the
+     * processor's {@link #getUploadProfile()} says, or sends them as they are if {@code preparer}
+     * is null. The preparer is owned by the caller.
+     */
+    public void setUploadPreparer(@Nullable UploadPreparer preparer) {
+        uploadPreparer = preparer;
+    }
+
     @Override
     public synchronized void process(
             ByteBuffer data, final FrameMetadata frameMetadata, final GraphicOverlay
             graphicOverlay) {
-        latestImage = data;
-        latestImageMetaData = frameMetadata;
-        if (processingImage == null && processingMetaData == null) {
-            processLatestImage(graphicOverlay);
+        FramePipeline currentPipeline = pipeline;
+        if (currentPipeline == null) {
+            FrameBuffer frameBuffer = frameMetadata.getFrameBuffer();
+            if (frameBuffer != null) {
+                frameBuffer.retain();
+            }
+            enqueue(new BufferFrame(data, frameMetadata, frameBuffer, null), graphicOverlay);
+            return;
+        }
+        // The camera reuses its buffer as soon as this method returns, so the stages either hold
+        // a reference to the pooled frame or work on a copy.
+        FrameBuffer frameBuffer = frameMetadata.getFrameBuffer();
+        BufferFrame frame;
+        if (frameBuffer != null) {
+            frameBuffer.retain();
+            frame = new BufferFrame(data, frameMetadata, frameBuffer, null);
+        } else {
+            byte[] frameCopy = obtainFrameCopy(data);
+            frame = new BufferFrame(
+                    ByteBuffer.wrap(frameCopy, 0, data.limit()), frameMetadata, null, frameCopy);
+        }
+        submitToPipeline(currentPipeline, frame, graphicOverlay);
+    }
+
+    // Camera2 version
+    @Override
+    public synchronized void process(
+            MediaImageFrame image, FrameMetadata frameMetadata, GraphicOverlay graphicOverlay) {
+        // The image goes back to the camera once detection is done with it.
+        Frame frame = new MediaFrame(image.retain(), frameMetadata);
+        FramePipeline currentPipeline = pipeline;
+        if (currentPipeline == null) {
+            enqueue(frame, graphicOverlay);
+        } else {
+            submitToPipeline(currentPipeline, frame, graphicOverlay);
         }
     }
 
@@ -74,50 +231,245 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
     @Override
     public void process(Bitmap bitmap, final GraphicOverlay
             graphicOverlay) {
-        detectInVisionImage(null /* bitmap */, FirebaseVisionImage.fromBitmap(bitmap), null,
-                graphicOverlay);
+        processBitmap(bitmap, graphicOverlay);
     }
 
-    private synchronized void processLatestImage(final GraphicOverlay graphicOverlay) {
-        processingImage = latestImage;
-        processingMetaData = latestImageMetaData;
-        latestImage = null;
-        latestImageMetaData = null;
-        if (processingImage != null && processingMetaData != null) {
-            processImage(processingImage, processingMetaData, graphicOverlay);
-        }
+    /**
+     * Same as {@link #process(Bitmap, GraphicOverlay)}, but returns the detection, which tells
+     * when the detector is done with {@code bitmap} and it can be reused.
+     */
+    public Task<T> processBitmap(Bitmap bitmap, GraphicOverlay graphicOverlay) {
+        return processBitmap(bitmap, 1f, graphicOverlay);
     }
 
-    private void processImage(
-            ByteBuffer data, final FrameMetadata frameMetadata,
+    /**
+     * Same as {@link #processBitmap(Bitmap, GraphicOverlay)}, for a bitmap that is a different
+     * size than the image shown on the overlay, e.g. a full resolution copy: results are drawn
+     * scaled by {@code displayScale}.
+     */
+    public Task<T> processBitmap(
+            Bitmap bitmap, float displayScale, GraphicOverlay graphicOverlay) {
+        return processBitmap(bitmap, displayScale, null, graphicOverlay);
+    }
+
+    /**
+     * Same as {@link #processBitmap(Bitmap, float, GraphicOverlay)}, for a bitmap decoded from an
+     * image that {@code sourceKey} names, e.g. by a hash of its file: results cached for the image
+     * are found whatever size it was decoded at. {@code sourceKey} is called on a background
+     * thread.
+     */
+    public Task<T> processBitmap(
+            final Bitmap bitmap,
+            final float displayScale,
+            @Nullable final Callable<String> sourceKey,
             final GraphicOverlay graphicOverlay) {
-        FirebaseVisionImageMetadata metadata =
-                new FirebaseVisionImageMetadata.Builder()
-                        .setFormat(FirebaseVisionImageMetadata.IMAGE_FORMAT_NV21)
-                        .setWidth(frameMetadata.getWidth())
-                        .setHeight(frameMetadata.getHeight())
-                        .setRotation(frameMetadata.getRotation())
-                        .build();
+        final long startNanos = System.nanoTime();
+        final UploadPreparer preparer = uploadPreparer;
+        final UploadPreparer.Profile profile = preparer == null ? null : getUploadProfile();
 
-        Bitmap bitmap = BitmapUtils.getBitmap(data, frameMetadata);
-        detectInVisionImage(
-                bitmap, FirebaseVisionImage.fromByteBuffer(data, metadata), frameMetadata,
-                graphicOverlay);
+        final ResultCache<Object> cache = resultCache;
+        final String detectorKey = getResultCacheKey();
+        if (cache == null || detectorKey == null) {
+            return detectOrPrepare(bitmap, displayScale, preparer, profile, null, null,
+                    graphicOverlay, startNanos);
+        }
+        // Hashing a file or the pixels of a large bitmap takes too long for the main thread, so
+        // the key is computed and looked up in the background, and detection goes on back on this
+        // thread. Results of prepared bitmaps depend on how they were prepared.
+        final String keyPrefix = detectorKey + (profile == null ? "" : "/" + profile) + '/';
+        return Tasks.call(getCacheKeyExecutor(), new Callable<CacheLookup>() {
+            @Override
+            public CacheLookup call() throws Exception {
+                String key = keyPrefix + (sourceKey != null
+                        ? sourceKey.call()
+                        : "pixels/" + Long.toHexString(BitmapUtils.contentHash(bitmap)));
+                return new CacheLookup(key, (CachedResults) cache.get(key));
+            }
+        }).continueWithTask(new Continuation<CacheLookup, Task<T>>() {
+            @Override
+            public Task<T> then(@NonNull Task<CacheLookup> task) {
+                if (!task.isSuccessful()) {
+                    onFailure(task.getException());
+                    return detectOrPrepare(bitmap, displayScale, preparer, profile,
+                            null, null, graphicOverlay, startNanos);
+                }
+                CacheLookup lookup = task.getResult();
+                if (lookup.results != null) {
+                    // The key names the processor, so the result is of its type.
+                    @SuppressWarnings("unchecked")
+                    T cachedResults = (T) lookup.results.results;
+                    // Scaled from the image they were detected in, which can be a different size.
+                    float resultScale =
+                            displayScale * bitmap.getWidth() / lookup.results.imageWidth;
+                    return detectInVisionImage(null /* bitmap */,
+                            new ScheduledDetection(null, null, cachedResults, null, null)
+                                    .withResultScale(resultScale),
+                            null, graphicOverlay, startNanos);
+                }
+                return detectOrPrepare(bitmap, displayScale, preparer, profile,
+                        cache, lookup.key, graphicOverlay, startNanos);
+            }
+        });
+    }
+
+    /** Cached results, and the width of the image they were detected in. */
+    private static final class CachedResults {
+        final Object results;
+        final int imageWidth;
+
+        CachedResults(Object results, int imageWidth) {
+            this.results = results;
+            this.imageWidth = imageWidth;
+        }
+    }
+
+    /** A result cache key and the results found under it, if any. */
+    private static final class CacheLookup {
+        final String key;
+        @Nullable final CachedResults results;
+
+        CacheLookup(String key, @Nullable CachedResults results) {
+            this.key = key;
+            this.results = results;
+        }
+    }
+
+    private static synchronized Executor getCacheKeyExecutor() {
+        if (cacheKeyExecutor == null) {
+            cacheKeyExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ResultCacheKey");
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                }
+            });
+        }
+        return cacheKeyExecutor;
+    }
+
+    // Sends bitmap to the detector, prepared for upload first if there is a profile.
+    private Task<T> detectOrPrepare(
+            final Bitmap bitmap,
+            final float displayScale,
+            @Nullable final UploadPreparer preparer,
+            @Nullable UploadPreparer.Profile profile,
+            @Nullable final ResultCache<Object> cache,
+            @Nullable final String key,
+            final GraphicOverlay graphicOverlay,
+            final long startNanos) {
+        if (profile == null) {
+            return detectInBitmap(bitmap, displayScale, cache, key, graphicOverlay, startNanos);
+        }
+        return preparer.prepare(bitmap, profile).continueWithTask(
+                new Continuation<UploadPreparer.Prepared, Task<T>>() {
+                    @Override
+                    public Task<T> then(@NonNull Task<UploadPreparer.Prepared> task) {
+                        if (!task.isSuccessful()) {
+                            // Sent as it is then, but not cached as if it had been prepared.
+                            onFailure(task.getException());
+                            return detectInBitmap(
+                                    bitmap, displayScale, null, null, graphicOverlay, startNanos);
+                        }
+                        final UploadPreparer.Prepared prepared = task.getResult();
+                        final Task<T> detection = detectInBitmap(prepared.getBitmap(),
+                                prepared.getResultScale() * displayScale, cache, key,
+                                graphicOverlay, startNanos);
+                        // The upload size of some images is estimated next to the detection,
+                        // which must not hold it up.
+                        Task<Void> estimate = preparer.sampleUploadSize(prepared);
+                        if (estimate == null && !prepared.isScaled()) {
+                            return detection;
+                        }
+                        // The prepared bitmap is only let go of once both are done with it.
+                        return Tasks.whenAllComplete(detection,
+                                estimate == null ? Tasks.<Void>forResult(null) : estimate)
+                                .continueWithTask(new Continuation<List<Task<?>>, Task<T>>() {
+                                    @Override
+                                    public Task<T> then(@NonNull Task<List<Task<?>>> done) {
+                                        if (prepared.isScaled()) {
+                                            prepared.getBitmap().recycle();
+                                        }
+                                        return detection;
+                                    }
+                                });
+                    }
+                });
     }
 
-    private void detectInVisionImage(
+    private Task<T> detectInBitmap(
+            final Bitmap bitmap,
+            float resultScale,
+            @Nullable final ResultCache<Object> cache,
+            @Nullable final String key,
+            GraphicOverlay graphicOverlay,
+            long startNanos) {
+        Task<T> detection = detectInVisionImage(null /* bitmap */,
+                new ScheduledDetection(FirebaseVisionImage.fromBitmap(bitmap))
+                        .withResultScale(resultScale),
+                null, graphicOverlay, startNanos);
+        if (cache == null || key == null) {
+            return detection;
+        }
+        return detection.addOnSuccessListener(new OnSuccessListener<T>() {
+            @Override
+            public void onSuccess(T results) {
+                cache.put(key, new CachedResults(results, bitmap.getWidth()));
+            }
+        });
+    }
+
+    private synchronized void enqueue(Frame frame, GraphicOverlay graphicOverlay) {
+        // The frame replaces a waiting one that was never processed.
+        if (latestFrame != null) {
+            latestFrame.release();
+        }
+        latestFrame = frame;
+        if (processingFrame == null) {
+            processLatestImage(graphicOverlay);
+        }
+    }
+
+    private synchronized void processLatestImage(final GraphicOverlay graphicOverlay) {
+        processingFrame = latestFrame;
+        latestFrame = null;
+        if (processingFrame != null) {
+            processImage(processingFrame, graphicOverlay);
+        }
+    }
+
+    private void processImage(Frame frame, final GraphicOverlay graphicOverlay) {
+        long startNanos = System.nanoTime();
+        mark(frame.metadata, FrameTrace.Point.CONVERSION_START);
+        Bitmap bitmap = frame.getCameraImage(graphicOverlay);
+        ScheduledDetection detection = frame.scheduleDetection();
+        mark(frame.metadata, FrameTrace.Point.CONVERSION_END);
+        detectInVisionImage(bitmap, detection, frame, graphicOverlay, startNanos);
+    }
+
+    private Task<T> detectInVisionImage(
             final Bitmap originalCameraImage,
-            FirebaseVisionImage image,
-            final FrameMetadata metadata,
-            final GraphicOverlay graphicOverlay) {
-        detectInImage(image)
+            final ScheduledDetection detection,
+            @Nullable final Frame frame,
+            final GraphicOverlay graphicOverlay,
+            final long startNanos) {
+        final FrameMetadata metadata = frame == null ? null : frame.metadata;
+        mark(metadata, FrameTrace.Point.DETECTION_START);
+        return detection.detect()
                 .addOnSuccessListener(
                         new OnSuccessListener<T>() {
                             @Override
                             public void onSuccess(T results) {
-                                VisionProcessorBase.this.onSuccess(originalCameraImage, results,
+                                mark(metadata, FrameTrace.Point.DETECTION_END);
+                                detection.onResults(results);
+                                detection.release();
+                                reportLatency(frame, startNanos);
+                                detection.render(originalCameraImage, results,
                                         metadata,
                                         graphicOverlay);
+                                if (frame != null) {
+                                    frame.release();
+                                }
                                 processLatestImage(graphicOverlay);
                             }
                         })
@@ -125,19 +477,483 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
                         new OnFailureListener() {
                             @Override
                             public void onFailure(@NonNull Exception e) {
+                                detection.release();
                                 VisionProcessorBase.this.onFailure(e);
+                                // Move on to the next frame, otherwise a single failure would
+                                // stop processing for good.
+                                if (frame != null) {
+                                    frame.release();
+                                    processLatestImage(graphicOverlay);
+                                }
                             }
                         });
     }
 
+    private void submitToPipeline(
+            final FramePipeline pipeline, final Frame frame, final GraphicOverlay graphicOverlay) {
+        final FrameMetadata frameMetadata = frame.metadata;
+        pipeline.getConversionStage().submit(new PipelineStage.WorkItem() {
+            @Override
+            public void run() {
+                mark(frameMetadata, FrameTrace.Point.CONVERSION_START);
+                final Bitmap bitmap = frame.getCameraImage(graphicOverlay);
+                final ScheduledDetection detection = frame.scheduleDetection();
+                mark(frameMetadata, FrameTrace.Point.CONVERSION_END);
+                pipeline.getInferenceStage().submit(new PipelineStage.WorkItem() {
+                    @Override
+                    public void run() {
+                        final T results;
+                        long startNanos = System.nanoTime();
+                        mark(frameMetadata, FrameTrace.Point.DETECTION_START);
+                        try {
+                            results = Tasks.await(detection.detect());
+                            mark(frameMetadata, FrameTrace.Point.DETECTION_END);
+                            detection.onResults(results);
+                            reportLatency(frame, startNanos);
+                        } catch (ExecutionException e) {
+                            onFailure(e.getCause() instanceof Exception
+                                    ? (Exception) e.getCause() : e);
+                            return;
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        } finally {
+                            detection.release();
+                            frame.release();
+                        }
+                        pipeline.getRenderStage().submit(new PipelineStage.WorkItem() {
+                            @Override
+                            public void run() {
+                                detection.render(bitmap, results, frameMetadata, graphicOverlay);
+                            }
+
+                            @Override
+                            public void onDropped() {
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onDropped() {
+                        detection.release();
+                        frame.release();
+                    }
+                });
+            }
+
+            @Override
+            public void onDropped() {
+                frame.release();
+            }
+        });
+    }
+
+    /** A camera frame held until detection is done with it. */
+    private abstract class Frame {
+        final FrameMetadata metadata;
+
+        Frame(FrameMetadata metadata) {
+            this.metadata = metadata;
+        }
+
+        /** Returns the bitmap passed to {@code onSuccess}, or null if it is not needed. */
+        @Nullable
+        abstract Bitmap getCameraImage(GraphicOverlay graphicOverlay);
+
+        abstract ScheduledDetection scheduleDetection();
+
+        /**
+         * Returns the {@link System#nanoTime()} at which the camera delivered the frame, or
+         * {@code defaultNanos} if unknown.
+         */
+        abstract long getCaptureNanos(long defaultNanos);
+
+        abstract void release();
+    }
+
+    /** An NV21 frame, either in a pooled camera buffer, a copy or a buffer of the caller. */
+    private final class BufferFrame extends Frame {
+        private final ByteBuffer data;
+        @Nullable private final FrameBuffer frameBuffer;
+        @Nullable private final byte[] frameCopy;
+
+        BufferFrame(
+                ByteBuffer data,
+                FrameMetadata metadata,
+                @Nullable FrameBuffer frameBuffer,
+                @Nullable byte[] frameCopy) {
+            super(metadata);
+            this.data = data;
+            this.frameBuffer = frameBuffer;
+            this.frameCopy = frameCopy;
+        }
+
+        @Nullable
+        @Override
+        Bitmap getCameraImage(GraphicOverlay graphicOverlay) {
+            return VisionProcessorBase.this.getCameraImage(data, metadata, graphicOverlay);
+        }
+
+        @Override
+        ScheduledDetection scheduleDetection() {
+            return VisionProcessorBase.this.scheduleDetection(data, metadata);
+        }
+
+        @Override
+        long getCaptureNanos(long defaultNanos) {
+            return frameBuffer != null ? frameBuffer.getTimestampNanos() : defaultNanos;
+        }
+
+        @Override
+        void release() {
+            if (frameBuffer != null) {
+                frameBuffer.release();
+            } else if (frameCopy != null) {
+                recycleFrameCopy(frameCopy);
+            }
+        }
+    }
+
+    /** A camera image from the camera2 API, passed to the detector without a copy. */
+    private final class MediaFrame extends Frame {
+        private final MediaImageFrame image;
+
+        MediaFrame(MediaImageFrame image, FrameMetadata metadata) {
+            super(metadata);
+            this.image = image;
+        }
+
+        @Nullable
+        @Override
+        Bitmap getCameraImage(GraphicOverlay graphicOverlay) {
+            if (graphicOverlay.isCameraPreviewVisible() && !needsCameraImage()) {
+                return null;
+            }
+            int length = image.getNv21Size();
+            byte[] nv21 = obtainBuffer(length, length);
+            try {
+                image.copyToNv21(nv21);
+                return BitmapUtils.getBitmap(ByteBuffer.wrap(nv21, 0, length), metadata);
+            } finally {
+                recycleFrameCopy(nv21);
+            }
+        }
+
+        @Override
+        ScheduledDetection scheduleDetection() {
+            DetectionScheduler<T> scheduler = detectionScheduler;
+            if (scheduler == null) {
+                return new ScheduledDetection(toVisionImage());
+            }
+            int width = metadata.getWidth();
+            int height = metadata.getHeight();
+            int rotation = metadata.getRotation();
+            int uprightWidth = YuvToRgbConverter.getOutputWidth(width, height, rotation);
+            int uprightHeight = YuvToRgbConverter.getOutputHeight(width, height, rotation);
+            DetectionScheduler.Decision<T> decision = scheduler.next(uprightWidth, uprightHeight);
+            if (decision.isSkipped()) {
+                return new ScheduledDetection(
+                        scheduler, null, decision.lastResults, decision.lastRegion, null);
+            }
+            return new ScheduledDetection(
+                    scheduler,
+                    toVisionImage(),
+                    null,
+                    new Rect(0, 0, uprightWidth, uprightHeight),
+                    null);
+        }
+
+        private FirebaseVisionImage toVisionImage() {
+            return FirebaseVisionImage.fromMediaImage(image.getImage(), image.getRotation());
+        }
+
+        @Override
+        long getCaptureNanos(long defaultNanos) {
+            return image.getTimestampNanos();
+        }
+
+        @Override
+        void release() {
+            image.release();
+        }
+    }
+
+    /**
+     * Converts a camera frame to the bitmap passed to {@code onSuccess}, or returns null if it is
+     * neither drawn nor used by the processor.
+     */
+    @Nullable
+    private Bitmap getCameraImage(
+            ByteBuffer data, FrameMetadata frameMetadata, GraphicOverlay graphicOverlay) {
+        if (graphicOverlay.isCameraPreviewVisible() && !needsCameraImage()) {
+            return null;
+        }
+        return BitmapUtils.getBitmap(data, frameMetadata);
+    }
+
+    /**
+     * Prepares a camera frame for detection as the detection scheduler, if any, decides: the full
+     * frame, a crop of it, or no detection at all.
+     */
+    private ScheduledDetection scheduleDetection(ByteBuffer data, FrameMetadata frameMetadata) {
+        DetectionScheduler<T> scheduler = detectionScheduler;
+        if (scheduler == null) {
+            return new ScheduledDetection(
+                    FirebaseVisionImage.fromByteBuffer(data, toVisionMetadata(frameMetadata)));
+        }
+
+        int width = frameMetadata.getWidth();
+        int height = frameMetadata.getHeight();
+        int rotation = frameMetadata.getRotation();
+        int uprightWidth = YuvToRgbConverter.getOutputWidth(width, height, rotation);
+        int uprightHeight = YuvToRgbConverter.getOutputHeight(width, height, rotation);
+        DetectionScheduler.Decision<T> decision = scheduler.next(uprightWidth, uprightHeight);
+        if (decision.isSkipped()) {
+            return new ScheduledDetection(
+                    scheduler, null, decision.lastResults, decision.lastRegion, null);
+        }
+
+        Rect sensorRegion = new Rect();
+        FrameCropper.uprightToSensor(decision.region, width, height, rotation, sensorRegion);
+        FrameCropper.alignToChroma(sensorRegion, width, height);
+        if ((sensorRegion.width() == width && sensorRegion.height() == height)
+                || !data.hasArray()) {
+            return new ScheduledDetection(
+                    scheduler,
+                    FirebaseVisionImage.fromByteBuffer(data, toVisionMetadata(frameMetadata)),
+                    null,
+                    new Rect(0, 0, uprightWidth, uprightHeight),
+                    null);
+        }
+
+        int cropLength = sensorRegion.width() * sensorRegion.height() * 3 / 2;
+        byte[] crop = obtainBuffer(cropLength, width * height * 3 / 2);
+        FrameCropper.crop(data.array(), data.arrayOffset(), width, height, sensorRegion, crop);
+        Rect region = new Rect();
+        FrameCropper.sensorToUpright(sensorRegion, width, height, rotation, region);
+        FirebaseVisionImageMetadata metadata = new FirebaseVisionImageMetadata.Builder()
+                .setFormat(FirebaseVisionImageMetadata.IMAGE_FORMAT_NV21)
+                .setWidth(sensorRegion.width())
+                .setHeight(sensorRegion.height())
+                .setRotation(rotation)
+                .build();
+        return new ScheduledDetection(
+                scheduler,
+                FirebaseVisionImage.fromByteBuffer(ByteBuffer.wrap(crop, 0, cropLength), metadata),
+                null,
+                region,
+                crop);
+    }
+
+    /** A frame prepared for detection by {@link #scheduleDetection(ByteBuffer, FrameMetadata)}. */
+    private final class ScheduledDetection {
+        @Nullable private final DetectionScheduler<T> scheduler;
+        // Null if detection is skipped and the last results are reused.
+        @Nullable private final FirebaseVisionImage image;
+        @Nullable private final T lastResults;
+        // The region of the upright frame the results refer to, null for the whole frame.
+        @Nullable private final Rect region;
+        // The buffer holding the cropped frame, recycled once detection is done.
+        @Nullable private byte[] cropBuffer;
+        // The factor from the coordinates of the detected image to the frame's, if it was scaled.
+        private float resultScale = 1f;
+
+        ScheduledDetection(FirebaseVisionImage image) {
+            this(null, image, null, null, null);
+        }
+
+        ScheduledDetection(
+                @Nullable DetectionScheduler<T> scheduler,
+                @Nullable FirebaseVisionImage image,
+                @Nullable T lastResults,
+                @Nullable Rect region,
+                @Nullable byte[] cropBuffer) {
+            this.scheduler = scheduler;
+            this.image = image;
+            this.lastResults = lastResults;
+            this.region = region;
+            this.cropBuffer = cropBuffer;
+        }
+
+        ScheduledDetection withResultScale(float resultScale) {
+            this.resultScale = resultScale;
+            return this;
+        }
+
+        Task<T> detect() {
+            return image == null ? Tasks.forResult(lastResults) : detectInImage(image);
+        }
+
+        void onResults(T results) {
+            if (scheduler != null && image != null) {
+                scheduler.onResults(results, region);
+            }
+        }
+
+        /**
+         * Draws {@code results}, translated from the detected region to the full frame and scaled
+         * back from a scaled down image, and hands the frame's trace to the overlay.
+         */
+        void render(
+                @Nullable Bitmap originalCameraImage,
+                T results,
+                @Nullable FrameMetadata frameMetadata,
+                GraphicOverlay graphicOverlay) {
+            renderingDetection.set(this);
+            try {
+                onSuccess(originalCameraImage, results, frameMetadata, graphicOverlay);
+            } finally {
+                renderingDetection.remove();
+            }
+            FrameTrace trace = frameMetadata == null ? null : frameMetadata.getFrameTrace();
+            if (trace != null) {
+                trace.mark(FrameTrace.Point.ON_SUCCESS);
+                graphicOverlay.setFrameTrace(trace);
+            }
+        }
+
+        GraphicOverlay.Scene.Builder newScene(GraphicOverlay graphicOverlay) {
+            return region == null
+                    ? graphicOverlay.newScene(0, 0, resultScale)
+                    : graphicOverlay.newScene(region.left, region.top, resultScale);
+        }
+
+        void release() {
+            if (cropBuffer != null) {
+                recycleFrameCopy(cropBuffer);
+                cropBuffer = null;
+            }
+        }
+    }
+
+    private byte[] obtainFrameCopy(ByteBuffer data) {
+        byte[] copy = obtainBuffer(data.limit(), data.limit());
+        data.rewind();
+        data.get(copy, 0, data.limit());
+        data.rewind();
+        return copy;
+    }
+
+    /**
+     * Returns a recycled buffer of at least {@code minLength} bytes, or a new one of {@code
+     * allocateLength} bytes.
+     */
+    private byte[] obtainBuffer(int minLength, int allocateLength) {
+        byte[] buffer;
+        synchronized (frameCopies) {
+            buffer = frameCopies.poll();
+        }
+        if (buffer == null || buffer.length < minLength) {
+            buffer = new byte[Math.max(minLength, allocateLength)];
+        }
+        return buffer;
+    }
+
+    private void recycleFrameCopy(byte[] copy) {
+        synchronized (frameCopies) {
+            // A copy and a crop per stage plus one waiting in each queue is all a pipeline can
+            // hold.
+            if (frameCopies.size() < 8) {
+                frameCopies.push(copy);
+            }
+        }
+    }
+
+    /**
+     * Tells the latency listener about a camera frame whose processing started at {@code
+     * startNanos}.
+     */
+    private void reportLatency(@Nullable Frame frame, long startNanos) {
+        FrameLatencyListener listener = frameLatencyListener;
+        if (listener == null || frame == null) {
+            return;
+        }
+        long endNanos = System.nanoTime();
+        long captureNanos = frame.getCaptureNanos(startNanos);
+        listener.onFrameLatency(endNanos - captureNanos, endNanos - startNanos);
+    }
+
+    static void mark(@Nullable FrameMetadata frameMetadata, FrameTrace.Point point) {
+        FrameTrace trace = frameMetadata == null ? null : frameMetadata.getFrameTrace();
+        if (trace != null) {
+            trace.mark(point);
+        }
+    }
+
+    static FirebaseVisionImageMetadata toVisionMetadata(FrameMetadata frameMetadata) {
+        return new FirebaseVisionImageMetadata.Builder()
+                .setFormat(FirebaseVisionImageMetadata.IMAGE_FORMAT_NV21)
+                .setWidth(frameMetadata.getWidth())
+                .setHeight(frameMetadata.getHeight())
+                .setRotation(frameMetadata.getRotation())
+                .build();
+    }
+
     @Override
     public void stop() {
     }
 
+    /**
+     * Returns whether {@code onSuccess} needs the camera image even when the camera preview is
+     * visible behind the overlay, e.g. to read its pixels. Defaults to false.
+     */
+    protected boolean needsCameraImage() {
+        return false;
+    }
+
+    /**
+     * Starts building the scene for the results {@code onSuccess} is called with. When they were
+     * detected in a region of the frame or in a scaled down image, the graphics added to the scene
+     * are translated and scaled back to the full frame.
+     */
+    protected GraphicOverlay.Scene.Builder newScene(@NonNull GraphicOverlay graphicOverlay) {
+        ScheduledDetection detection = renderingDetection.get();
+        return detection == null ? graphicOverlay.newScene() : detection.newScene(graphicOverlay);
+    }
+
+    /**
+     * Adds the graphics for {@code results} to {@code scene}. Processors that override this can
+     * have their results drawn together with those of others by a {@link MultiDetectorProcessor}.
+     * Does nothing by default.
+     */
+    protected void addGraphics(
+            @NonNull T results,
+            @NonNull GraphicOverlay graphicOverlay,
+            @NonNull GraphicOverlay.Scene.Builder scene) {
+    }
+
+    /**
+     * Returns a key naming the detector and its options, under which the results of bitmaps are
+     * kept in a {@link ResultCache}, or null if they should not be cached. Defaults to null.
+     */
+    @Nullable
+    protected String getResultCacheKey() {
+        return null;
+    }
+
+    /**
+     * Returns how far bitmaps can be scaled down before they are sent to the detector, or null to
+     * always send them as they are. Defaults to null.
+     */
+    @Nullable
+    protected UploadPreparer.Profile getUploadProfile() {
+        return null;
+    }
+
+    /**
+     * Returns a short text summary of {@code results}, e.g. to log them for every image of a
+     * {@link BatchProcessingEngine} run. Defaults to their {@code toString()}.
+     */
+    @NonNull
+    protected String describeResults(@NonNull T results) {
+        return String.valueOf(results);
+    }
+
     protected abstract Task<T> detectInImage(FirebaseVisionImage image);
 
     /**
-     * Callback that executes with a successful detection result.
+     * Callback that executes with a successful detection result, on the main thread or on the
+     * render stage thread of the pipeline, see the threading notes of the class.
      *
      * @param originalCameraImage hold the original image from camera, used to draw the background
      *                            image.
@@ -9,6 +9,7 @@ import android.util.Log;
 import android.widget.Toast;
 import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.ml.common.FirebaseMLException;
 import com.google.firebase.ml.common.modeldownload.FirebaseLocalModel;
 import com.google.firebase.ml.common.modeldownload.FirebaseModelManager;
@@ -21,10 +22,13 @@ import com.google.firebase.ml.vision.label.FirebaseVisionOnDeviceAutoMLImageLabe
 import com.google.firebase.samples.apps.mlkit.common.CameraImageGraphic;
 import com.google.firebase.samples.apps.mlkit.common.FrameMetadata;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
+import com.google.firebase.samples.apps.mlkit.common.ModelWarmer;
+import com.google.firebase.samples.apps.mlkit.java.ModelPreloader;
 import com.google.firebase.samples.apps.mlkit.java.VisionProcessorBase;
 import com.google.firebase.samples.apps.mlkit.java.labeldetector.LabelGraphic;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -38,9 +42,68 @@ public class AutoMLImageLabelerProcessor
   private static final String LOCAL_MODEL_NAME = "automl_image_labeling_model";
   private static final String REMOTE_MODEL_NAME = "mlkit_flowers";
 
-  private final FirebaseVisionImageLabeler detector;
+  // Size of the blank image the labeler is warmed up with.
+  private static final int WARM_UP_IMAGE_SIZE = 224;
+
+  private final ModelWarmer warmer;
+  private final String modelName;
+
+  // Null while the labeler is still being warmed up.
+  private FirebaseVisionImageLabeler detector;
 
   public AutoMLImageLabelerProcessor(final Context context) throws FirebaseMLException {
+    warmer = null;
+    modelName = null;
+    detector = createLabeler();
+    downloadRemoteModel(context);
+  }
+
+  /**
+   * Creates a processor that takes its labeler {@code modelName} from {@code warmer}. If it is
+   * still being warmed up, frames are not labeled until it is ready.
+   */
+  public AutoMLImageLabelerProcessor(Context context, ModelWarmer warmer, String modelName) {
+    this.warmer = warmer;
+    this.modelName = modelName;
+    detector = warmer.take(modelName, ModelPreloader.TAKE_TIMEOUT_MILLIS);
+    if (detector == null) {
+      Log.i(TAG, "Waiting for " + modelName + " to warm up.");
+    }
+    downloadRemoteModel(context);
+  }
+
+  /** Returns a loader that creates the labeler and warms it up, for a {@link ModelWarmer}. */
+  public static ModelWarmer.Loader<FirebaseVisionImageLabeler> newLoader() {
+    return new ModelWarmer.Loader<FirebaseVisionImageLabeler>() {
+      @Override
+      public FirebaseVisionImageLabeler load() throws FirebaseMLException {
+        return createLabeler();
+      }
+
+      @Override
+      public void warmUp(FirebaseVisionImageLabeler labeler) throws Exception {
+        Bitmap blank =
+            Bitmap.createBitmap(WARM_UP_IMAGE_SIZE, WARM_UP_IMAGE_SIZE, Bitmap.Config.ARGB_8888);
+        try {
+          Tasks.await(labeler.processImage(FirebaseVisionImage.fromBitmap(blank)));
+        } finally {
+          blank.recycle();
+        }
+      }
+
+      @Override
+      public void release(FirebaseVisionImageLabeler labeler) {
+        try {
+          labeler.close();
+        } catch (IOException e) {
+          Log.e(TAG, "Exception thrown while trying to close the image labeler: " + e);
+        }
+      }
+    };
+  }
+
+  /** Registers the local and remote models and creates a labeler for them. */
+  private static FirebaseVisionImageLabeler createLabeler() throws FirebaseMLException {
     FirebaseRemoteModel remoteModel = new FirebaseRemoteModel.Builder(REMOTE_MODEL_NAME).build();
     FirebaseModelManager.getInstance()
         .registerRemoteModel(remoteModel);
@@ -56,9 +119,11 @@ public class AutoMLImageLabelerProcessor
 
     optionsBuilder.setLocalModelName(LOCAL_MODEL_NAME).setRemoteModelName(REMOTE_MODEL_NAME);
 
-    detector =
-        FirebaseVision.getInstance().getOnDeviceAutoMLImageLabeler(optionsBuilder.build());
+    return FirebaseVision.getInstance().getOnDeviceAutoMLImageLabeler(optionsBuilder.build());
+  }
 
+  private static void downloadRemoteModel(final Context context) {
+    FirebaseRemoteModel remoteModel = new FirebaseRemoteModel.Builder(REMOTE_MODEL_NAME).build();
     Toast.makeText(context, "Begin downloading the remote AutoML model.", Toast.LENGTH_SHORT)
         .show();
     // To track the download and get notified when the download completes, call
@@ -78,11 +143,20 @@ public class AutoMLImageLabelerProcessor
             }
           }
         });
+  }
 
+  private synchronized FirebaseVisionImageLabeler getDetector() {
+    if (detector == null) {
+      detector = warmer.take(modelName, 0);
+    }
+    return detector;
   }
 
   @Override
-  public void stop() {
+  public synchronized void stop() {
+    if (detector == null) {
+      return;
+    }
     try {
       detector.close();
     } catch (IOException e) {
@@ -92,7 +166,12 @@ public class AutoMLImageLabelerProcessor
 
   @Override
   protected Task<List<FirebaseVisionImageLabel>> detectInImage(FirebaseVisionImage image) {
-    return detector.processImage(image);
+    FirebaseVisionImageLabeler labeler = getDetector();
+    if (labeler == null) {
+      // No labels until the labeler is warmed up.
+      return Tasks.forResult(Collections.<FirebaseVisionImageLabel>emptyList());
+    }
+    return labeler.processImage(image);
   }
 
   @Override
@@ -101,15 +180,15 @@ public class AutoMLImageLabelerProcessor
       @NonNull List<FirebaseVisionImageLabel> labels,
       @NonNull FrameMetadata frameMetadata,
       @NonNull GraphicOverlay graphicOverlay) {
-    graphicOverlay.clear();
+    GraphicOverlay.Scene.Builder scene = newScene(graphicOverlay);
     if (originalCameraImage != null) {
       CameraImageGraphic imageGraphic = new CameraImageGraphic(graphicOverlay,
           originalCameraImage);
-      graphicOverlay.add(imageGraphic);
+      scene.add(imageGraphic);
     }
     LabelGraphic labelGraphic = new LabelGraphic(graphicOverlay, labels);
-    graphicOverlay.add(labelGraphic);
-    graphicOverlay.postInvalidate();
+    scene.add(labelGraphic);
+    graphicOverlay.publish(scene.build());
   }
 
   @Override
@@ -21,6 +21,7 @@ import android.graphics.RectF;
 import com.google.firebase.ml.vision.barcode.FirebaseVisionBarcode;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay.Graphic;
+import com.google.firebase.samples.apps.mlkit.common.GraphicPool;
 
 /** Graphic instance for rendering Barcode position and content information in an overlay view. */
 public class BarcodeGraphic extends Graphic {
@@ -31,13 +32,12 @@ public class BarcodeGraphic extends Graphic {
 
   private final Paint rectPaint;
   private final Paint barcodePaint;
-  private final FirebaseVisionBarcode barcode;
+  private final RectF rect = new RectF();
+  private FirebaseVisionBarcode barcode;
 
-  BarcodeGraphic(GraphicOverlay overlay, FirebaseVisionBarcode barcode) {
+  private BarcodeGraphic(GraphicOverlay overlay) {
     super(overlay);
 
-    this.barcode = barcode;
-
     rectPaint = new Paint();
     rectPaint.setColor(TEXT_COLOR);
     rectPaint.setStyle(Paint.Style.STROKE);
@@ -48,6 +48,28 @@ public class BarcodeGraphic extends Graphic {
     barcodePaint.setTextSize(TEXT_SIZE);
   }
 
+  /** Returns a pool of barcode graphics for {@code overlay}, to be bound with {@link #bind}. */
+  static GraphicPool<BarcodeGraphic> newPool(final GraphicOverlay overlay) {
+    return new GraphicPool<>(
+        new GraphicPool.Factory<BarcodeGraphic>() {
+          @Override
+          public BarcodeGraphic create() {
+            return new BarcodeGraphic(overlay);
+          }
+        });
+  }
+
+  /** Sets the barcode to draw. */
+  BarcodeGraphic bind(FirebaseVisionBarcode barcode) {
+    this.barcode = barcode;
+    return this;
+  }
+
+  @Override
+  public void onRecycled() {
+    barcode = null;
+  }
+
   /**
    * Draws the barcode block annotations for position, size, and raw value on the supplied canvas.
    */
@@ -58,7 +80,7 @@ public class BarcodeGraphic extends Graphic {
     }
 
     // Draws the bounding box around the BarcodeBlock.
-    RectF rect = new RectF(barcode.getBoundingBox());
+    rect.set(barcode.getBoundingBox());
     rect.left = translateX(rect.left);
     rect.top = translateY(rect.top);
     rect.right = translateX(rect.right);
@@ -14,31 +14,76 @@
 package com.google.firebase.samples.apps.mlkit.java.barcodescanning;
 
 import android.graphics.Bitmap;
+import android.graphics.Rect;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import android.util.Log;
 
+import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.Task;
 import com.google.firebase.ml.vision.FirebaseVision;
 import com.google.firebase.ml.vision.barcode.FirebaseVisionBarcode;
 import com.google.firebase.ml.vision.barcode.FirebaseVisionBarcodeDetector;
+import com.google.firebase.ml.vision.barcode.FirebaseVisionBarcodeDetectorOptions;
 import com.google.firebase.ml.vision.common.FirebaseVisionImage;
 import com.google.firebase.samples.apps.mlkit.common.CameraImageGraphic;
 import com.google.firebase.samples.apps.mlkit.common.FrameMetadata;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
+import com.google.firebase.samples.apps.mlkit.common.GraphicPool;
 import com.google.firebase.samples.apps.mlkit.java.VisionProcessorBase;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * Barcode Detector Demo.
+ *
+ * <p>Detected barcodes are recorded in a {@link BarcodeSession}, which tells new barcodes apart
+ * from ones that stay in front of the camera. Each detection result is recorded once, even when
+ * it is drawn again, e.g. for a skipped frame or by a {@link
+ * com.google.firebase.samples.apps.mlkit.java.MultiDetectorProcessor} whenever another detector
+ * completes. A barcode the detector reports twice in one frame is drawn once. With {@link
+ * #setAdaptiveFormats} the detector only looks for the formats of the barcodes in view, and for
+ * all formats again once they have gone.
  */
 public class BarcodeScanningProcessor extends VisionProcessorBase<List<FirebaseVisionBarcode>> {
 
     private static final String TAG = "BarcodeScanProc";
 
-    private final FirebaseVisionBarcodeDetector detector;
+    // @GuardedBy("this")
+    private FirebaseVisionBarcodeDetector detector;
+    // @GuardedBy("this")
+    private int formats = FirebaseVisionBarcode.FORMAT_ALL_FORMATS;
+    // @GuardedBy("this")
+    private boolean adaptiveFormats;
+    // @GuardedBy("this")
+    private boolean stopped;
+
+    // Detections still running, per detector. A replaced detector is closed when its count drops
+    // to zero, as closing it earlier would fail the detection.
+    // @GuardedBy("this")
+    private final Map<FirebaseVisionBarcodeDetector, Integer> inFlight = new HashMap<>();
+    // @GuardedBy("this")
+    private final List<FirebaseVisionBarcodeDetector> retiredDetectors = new ArrayList<>();
+
+    private final BarcodeSession session = new BarcodeSession();
+
+    // The results last recorded in the session, which are drawn again without being recorded.
+    @Nullable
+    private List<FirebaseVisionBarcode> recordedResults;
+
+    // The barcodes of recordedResults to draw, without duplicate detections.
+    private final List<FirebaseVisionBarcode> toDraw = new ArrayList<>();
+
+    // The session barcodes recorded for the current results, to skip duplicate detections.
+    private final List<BarcodeSession.Barcode> drawn = new ArrayList<>();
+
+    // Recycles the graphics of earlier frames, created for the first overlay drawn on.
+    private GraphicPool<BarcodeGraphic> barcodeGraphics;
 
     public BarcodeScanningProcessor() {
         // Note that if you know which format of barcode your app is dealing with, detection will be
@@ -49,10 +94,70 @@ public class BarcodeScanningProcessor extends VisionProcessorBase<List<FirebaseV
         detector = FirebaseVision.getInstance().getVisionBarcodeDetector();
     }
 
+    /** Returns the session the detected barcodes are recorded in. */
+    public BarcodeSession getSession() {
+        return session;
+    }
+
+    /**
+     * Sets whether the detector only looks for the formats of the barcodes in view. Detection is
+     * faster the fewer formats it looks for, but a barcode of another format is only found once the
+     * ones in view have been gone for the session window.
+     */
+    public synchronized void setAdaptiveFormats(boolean adaptiveFormats) {
+        this.adaptiveFormats = adaptiveFormats;
+        if (!adaptiveFormats) {
+            setBarcodeFormats(FirebaseVisionBarcode.FORMAT_ALL_FORMATS);
+        }
+    }
+
+    // Replaces the detector with one for formats, a mask of FirebaseVisionBarcode.FORMAT_* flags.
+    // @GuardedBy("this")
+    private void setBarcodeFormats(int formats) {
+        if (formats == this.formats || stopped) {
+            return;
+        }
+        Log.d(TAG, String.format(Locale.US, "Barcode formats 0x%x -> 0x%x", this.formats, formats));
+        retire(detector);
+        this.formats = formats;
+        detector = FirebaseVision.getInstance().getVisionBarcodeDetector(
+                new FirebaseVisionBarcodeDetectorOptions.Builder()
+                        .setBarcodeFormats(formats)
+                        .build());
+    }
+
     @Override
-    public void stop() {
+    public synchronized void stop() {
+        Log.i(TAG, "Barcode session: " + session);
+        stopped = true;
+        retire(detector);
+    }
+
+    // Closes detector now if no detection is using it, or else when the last one completes.
+    // @GuardedBy("this")
+    private void retire(FirebaseVisionBarcodeDetector retired) {
+        if (inFlight.containsKey(retired)) {
+            retiredDetectors.add(retired);
+        } else {
+            close(retired);
+        }
+    }
+
+    private synchronized void onDetectionComplete(FirebaseVisionBarcodeDetector used) {
+        int remaining = inFlight.get(used) - 1;
+        if (remaining > 0) {
+            inFlight.put(used, remaining);
+            return;
+        }
+        inFlight.remove(used);
+        if (retiredDetectors.remove(used)) {
+            close(used);
+        }
+    }
+
+    private static void close(FirebaseVisionBarcodeDetector retired) {
         try {
-            detector.close();
+            retired.close();
         } catch (IOException e) {
             Log.e(TAG, "Exception thrown while trying to close Barcode Detector: " + e);
         }
@@ -60,7 +165,50 @@ public class BarcodeScanningProcessor extends VisionProcessorBase<List<FirebaseV
 
     @Override
     protected Task<List<FirebaseVisionBarcode>> detectInImage(FirebaseVisionImage image) {
-        return detector.detectInImage(image);
+        final FirebaseVisionBarcodeDetector used;
+        synchronized (this) {
+            used = detector;
+            Integer running = inFlight.get(used);
+            inFlight.put(used, running == null ? 1 : running + 1);
+        }
+        Task<List<FirebaseVisionBarcode>> task = used.detectInImage(image);
+        task.addOnCompleteListener(
+                new OnCompleteListener<List<FirebaseVisionBarcode>>() {
+                    @Override
+                    public void onComplete(@NonNull Task<List<FirebaseVisionBarcode>> task) {
+                        onDetectionComplete(used);
+                    }
+                });
+        return task;
+    }
+
+    // Records barcode in the session, returning null if it was already recorded for these results.
+    @Nullable
+    private BarcodeSession.Barcode recordInSession(FirebaseVisionBarcode barcode, long nowNanos) {
+        Rect box = barcode.getBoundingBox();
+        BarcodeSession.Barcode recorded;
+        if (box == null) {
+            recorded = session.onBarcode(
+                    barcode.getRawValue(), barcode.getFormat(), 0, 0, 0, 0, nowNanos);
+        } else {
+            recorded = session.onBarcode(barcode.getRawValue(), barcode.getFormat(),
+                    box.left, box.top, box.right, box.bottom, nowNanos);
+        }
+        if (drawn.contains(recorded)) {
+            return null;
+        }
+        drawn.add(recorded);
+        return recorded;
+    }
+
+    // Looks for the formats of the barcodes in view only, or for all formats if there are none.
+    private synchronized void adaptFormats() {
+        if (!adaptiveFormats) {
+            return;
+        }
+        int activeFormats = session.getActiveFormats();
+        setBarcodeFormats(
+                activeFormats == 0 ? FirebaseVisionBarcode.FORMAT_ALL_FORMATS : activeFormats);
     }
 
     @Override
@@ -69,17 +217,46 @@ public class BarcodeScanningProcessor extends VisionProcessorBase<List<FirebaseV
             @NonNull List<FirebaseVisionBarcode> barcodes,
             @NonNull FrameMetadata frameMetadata,
             @NonNull GraphicOverlay graphicOverlay) {
-        graphicOverlay.clear();
+        GraphicOverlay.Scene.Builder scene = newScene(graphicOverlay);
         if (originalCameraImage != null) {
             CameraImageGraphic imageGraphic = new CameraImageGraphic(graphicOverlay, originalCameraImage);
-            graphicOverlay.add(imageGraphic);
+            scene.add(imageGraphic);
+        }
+        addGraphics(barcodes, graphicOverlay, scene);
+        graphicOverlay.publish(scene.build());
+    }
+
+    @Override
+    protected void addGraphics(
+            @NonNull List<FirebaseVisionBarcode> barcodes,
+            @NonNull GraphicOverlay graphicOverlay,
+            @NonNull GraphicOverlay.Scene.Builder scene) {
+        if (barcodeGraphics == null) {
+            barcodeGraphics = BarcodeGraphic.newPool(graphicOverlay);
+        }
+        if (barcodes != recordedResults) {
+            recordedResults = barcodes;
+            record(barcodes);
+        }
+        for (int i = 0; i < toDraw.size(); ++i) {
+            BarcodeGraphic barcodeGraphic = barcodeGraphics.obtain().bind(toDraw.get(i));
+            scene.add(barcodeGraphic);
         }
+    }
+
+    // Records the barcodes of a new detection result in the session and picks the ones to draw.
+    private void record(List<FirebaseVisionBarcode> barcodes) {
+        long nowNanos = System.nanoTime();
+        session.expire(nowNanos);
+        drawn.clear();
+        toDraw.clear();
         for (int i = 0; i < barcodes.size(); ++i) {
             FirebaseVisionBarcode barcode = barcodes.get(i);
-            BarcodeGraphic barcodeGraphic = new BarcodeGraphic(graphicOverlay, barcode);
-            graphicOverlay.add(barcodeGraphic);
+            if (recordInSession(barcode, nowNanos) != null) {
+                toDraw.add(barcode);
+            }
         }
-        graphicOverlay.postInvalidate();
+        adaptFormats();
     }
 
     @Override
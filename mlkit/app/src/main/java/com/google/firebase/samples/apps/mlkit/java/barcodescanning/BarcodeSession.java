@@ -0,0 +1,294 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.barcodescanning;
+
+import androidx.annotation.Nullable;
+
+import com.google.firebase.samples.apps.mlkit.common.BoundingBoxes;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the barcodes seen over a time window so that a barcode held in front of the camera is
+ * reported once rather than on every frame.
+ *
+ * <p>A sighting belongs to a known barcode when it has the same format and raw value and its
+ * bounding box overlaps the barcode's last one by at least the minimum intersection over union.
+ * A sighting with a known raw value also belongs to a barcode that moved too far for the boxes to
+ * overlap, as long as that barcode has not already been seen in the same frame, which keeps two
+ * copies of the same code apart. Barcodes not seen for the window are forgotten, and seeing them
+ * again is a new scan.
+ *
+ * <p>Only the first sighting of a barcode is passed to the {@link Listener}. The formats of the
+ * barcodes in view are returned as a mask of {@code FirebaseVisionBarcode.FORMAT_*} flags, so
+ * callers can restrict the detector to them.
+ */
+public class BarcodeSession {
+
+    /** Told about every barcode the first time it is seen. */
+    public interface Listener {
+        void onNewBarcode(Barcode barcode);
+    }
+
+    /** A barcode seen in the current window. */
+    public static final class Barcode {
+        private final long id;
+        @Nullable private final String rawValue;
+        private final int format;
+        private final long firstSeenNanos;
+        private int left;
+        private int top;
+        private int right;
+        private int bottom;
+        private long lastSeenNanos;
+        private int sightingCount;
+
+        Barcode(long id, @Nullable String rawValue, int format, long nowNanos) {
+            this.id = id;
+            this.rawValue = rawValue;
+            this.format = format;
+            this.firstSeenNanos = nowNanos;
+        }
+
+        /** Returns the id of the barcode, unique within its session. */
+        public long getId() {
+            return id;
+        }
+
+        @Nullable
+        public String getRawValue() {
+            return rawValue;
+        }
+
+        public int getFormat() {
+            return format;
+        }
+
+        public long getFirstSeenNanos() {
+            return firstSeenNanos;
+        }
+
+        public long getLastSeenNanos() {
+            return lastSeenNanos;
+        }
+
+        /** Returns how many frames the barcode has been seen in. */
+        public int getSightingCount() {
+            return sightingCount;
+        }
+
+        /** Returns whether this is the first time the barcode has been seen. */
+        public boolean isNew() {
+            return sightingCount == 1;
+        }
+
+        void onSeen(int left, int top, int right, int bottom, long nowNanos) {
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+            lastSeenNanos = nowNanos;
+            sightingCount++;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "Barcode#%d(%s, format=%d, seen %d times)",
+                    id, rawValue, format, sightingCount);
+        }
+    }
+
+    /** How long a barcode is remembered after it was last seen, by default. */
+    public static final long DEFAULT_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    /** The bounding box overlap needed to match a sighting to a barcode, by default. */
+    public static final float DEFAULT_MIN_IOU = 0.3f;
+
+    // The window unique scans per second are counted over.
+    private static final long RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long windowNanos;
+    private final float minIou;
+
+    // @GuardedBy("this")
+    private final List<Barcode> barcodes = new ArrayList<>();
+    // Times at which new barcodes were seen within the rate window.
+    // @GuardedBy("this")
+    private final ArrayDeque<Long> recentScans = new ArrayDeque<>();
+    // @GuardedBy("this")
+    private int seenFormats;
+    // @GuardedBy("this")
+    private long nextId = 1;
+    // @GuardedBy("this")
+    private long sightingCount;
+    // @GuardedBy("this")
+    private long uniqueCount;
+
+    @Nullable private volatile Listener listener;
+
+    public BarcodeSession() {
+        this(DEFAULT_WINDOW_NANOS, DEFAULT_MIN_IOU);
+    }
+
+    public BarcodeSession(long windowNanos, float minIou) {
+        if (windowNanos <= 0 || minIou <= 0 || minIou > 1) {
+            throw new IllegalArgumentException(
+                    "Invalid session: window " + windowNanos + "ns, IoU " + minIou);
+        }
+        this.windowNanos = windowNanos;
+        this.minIou = minIou;
+    }
+
+    /** Sets the listener told about new barcodes, or null to remove it. */
+    public void setListener(@Nullable Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Records a barcode seen in the frame taken at {@code nowNanos} and returns the barcode it
+     * belongs to, which {@link Barcode#isNew() is new} if it has not been seen within the window.
+     * All barcodes of a frame are passed with the same {@code nowNanos}.
+     */
+    public Barcode onBarcode(
+            @Nullable String rawValue, int format, int left, int top, int right, int bottom,
+            long nowNanos) {
+        Barcode barcode;
+        synchronized (this) {
+            expire(nowNanos);
+            barcode = findMatch(rawValue, format, left, top, right, bottom, nowNanos);
+            if (barcode == null) {
+                barcode = new Barcode(nextId++, rawValue, format, nowNanos);
+                barcodes.add(barcode);
+                uniqueCount++;
+                recentScans.add(nowNanos);
+                seenFormats |= format;
+            }
+            barcode.onSeen(left, top, right, bottom, nowNanos);
+            sightingCount++;
+        }
+        Listener currentListener = listener;
+        if (barcode.isNew() && currentListener != null) {
+            currentListener.onNewBarcode(barcode);
+        }
+        return barcode;
+    }
+
+    // @GuardedBy("this")
+    @Nullable
+    private Barcode findMatch(
+            @Nullable String rawValue, int format, int left, int top, int right, int bottom,
+            long nowNanos) {
+        Barcode bestOverlap = null;
+        float bestIou = minIou;
+        Barcode moved = null;
+        for (int i = 0; i < barcodes.size(); i++) {
+            Barcode barcode = barcodes.get(i);
+            if (barcode.format != format || !equals(barcode.rawValue, rawValue)) {
+                continue;
+            }
+            float iou = intersectionOverUnion(barcode, left, top, right, bottom);
+            if (iou >= bestIou) {
+                bestOverlap = barcode;
+                bestIou = iou;
+            } else if (rawValue != null && moved == null && barcode.lastSeenNanos != nowNanos) {
+                moved = barcode;
+            }
+        }
+        return bestOverlap != null ? bestOverlap : moved;
+    }
+
+    /** Forgets the barcodes not seen for the window before {@code nowNanos}. */
+    public synchronized void expire(long nowNanos) {
+        for (int i = barcodes.size() - 1; i >= 0; i--) {
+            if (nowNanos - barcodes.get(i).lastSeenNanos > windowNanos) {
+                barcodes.remove(i);
+            }
+        }
+        while (!recentScans.isEmpty() && nowNanos - recentScans.peek() > RATE_WINDOW_NANOS) {
+            recentScans.poll();
+        }
+    }
+
+    /** Returns the number of barcodes currently remembered. */
+    public synchronized int getActiveCount() {
+        return barcodes.size();
+    }
+
+    /**
+     * Returns the formats of the barcodes currently remembered, as a mask of
+     * {@code FirebaseVisionBarcode.FORMAT_*} flags, or 0 if there are none.
+     */
+    public synchronized int getActiveFormats() {
+        int formats = 0;
+        for (int i = 0; i < barcodes.size(); i++) {
+            formats |= barcodes.get(i).format;
+        }
+        return formats;
+    }
+
+    /**
+     * Returns the formats of all barcodes seen since the session was created or reset, as a mask
+     * of {@code FirebaseVisionBarcode.FORMAT_*} flags, or 0 if none has been seen.
+     */
+    public synchronized int getSeenFormats() {
+        return seenFormats;
+    }
+
+    /** Returns the number of sightings recorded, including repeated ones. */
+    public synchronized long getSightingCount() {
+        return sightingCount;
+    }
+
+    /** Returns the number of unique scans, i.e. sightings of new barcodes. */
+    public synchronized long getUniqueCount() {
+        return uniqueCount;
+    }
+
+    /** Returns the number of unique scans during the second before {@code nowNanos}. */
+    public synchronized int getUniqueScansPerSecond(long nowNanos) {
+        expire(nowNanos);
+        return recentScans.size();
+    }
+
+    /** Forgets all barcodes and formats and clears the counters. */
+    public synchronized void reset() {
+        barcodes.clear();
+        recentScans.clear();
+        seenFormats = 0;
+        sightingCount = 0;
+        uniqueCount = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US,
+                "BarcodeSession(active=%d, unique=%d, sightings=%d, formats=0x%x)",
+                barcodes.size(), uniqueCount, sightingCount, seenFormats);
+    }
+
+    private static float intersectionOverUnion(
+            Barcode barcode, int left, int top, int right, int bottom) {
+        return BoundingBoxes.intersectionOverUnion(
+                barcode.left, barcode.top, barcode.right, barcode.bottom,
+                left, top, right, bottom);
+    }
+
+    private static boolean equals(@Nullable String a, @Nullable String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
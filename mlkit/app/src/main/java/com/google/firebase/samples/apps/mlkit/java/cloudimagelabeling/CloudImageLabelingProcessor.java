@@ -26,6 +26,7 @@ import com.google.firebase.ml.vision.label.FirebaseVisionImageLabeler;
 import com.google.firebase.ml.vision.common.FirebaseVisionImage;
 import com.google.firebase.samples.apps.mlkit.common.FrameMetadata;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
+import com.google.firebase.samples.apps.mlkit.common.UploadPreparer;
 import com.google.firebase.samples.apps.mlkit.java.VisionProcessorBase;
 
 import java.util.ArrayList;
@@ -38,6 +39,9 @@ public class CloudImageLabelingProcessor
         extends VisionProcessorBase<List<FirebaseVisionImageLabel>> {
     private static final String TAG = "CloudImgLabelProc";
 
+    // Labels describe the whole scene, which survives a small and lossy image.
+    private static final UploadPreparer.Profile UPLOAD_PROFILE = new UploadPreparer.Profile(640);
+
     private final FirebaseVisionImageLabeler detector;
 
     public CloudImageLabelingProcessor() {
@@ -52,13 +56,23 @@ public class CloudImageLabelingProcessor
         return detector.processImage(image);
     }
 
+    @Override
+    protected String getResultCacheKey() {
+        return "cloud-label/default";
+    }
+
+    @Override
+    protected UploadPreparer.Profile getUploadProfile() {
+        return UPLOAD_PROFILE;
+    }
+
     @Override
     protected void onSuccess(
             @Nullable Bitmap originalCameraImage,
             @NonNull List<FirebaseVisionImageLabel> labels,
             @NonNull FrameMetadata frameMetadata,
             @NonNull GraphicOverlay graphicOverlay) {
-        graphicOverlay.clear();
+        GraphicOverlay.Scene.Builder scene = newScene(graphicOverlay);
         Log.d(TAG, "cloud label size: " + labels.size());
         List<String> labelsStr = new ArrayList<>();
         for (int i = 0; i < labels.size(); ++i) {
@@ -69,8 +83,22 @@ public class CloudImageLabelingProcessor
             }
         }
         CloudLabelGraphic cloudLabelGraphic = new CloudLabelGraphic(graphicOverlay, labelsStr);
-        graphicOverlay.add(cloudLabelGraphic);
-        graphicOverlay.postInvalidate();
+        scene.add(cloudLabelGraphic);
+        graphicOverlay.publish(scene.build());
+    }
+
+    @NonNull
+    @Override
+    protected String describeResults(@NonNull List<FirebaseVisionImageLabel> labels) {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < labels.size(); ++i) {
+            FirebaseVisionImageLabel label = labels.get(i);
+            if (i > 0) {
+                description.append(", ");
+            }
+            description.append(label.getText()).append(':').append(label.getConfidence());
+        }
+        return description.toString();
     }
 
     @Override
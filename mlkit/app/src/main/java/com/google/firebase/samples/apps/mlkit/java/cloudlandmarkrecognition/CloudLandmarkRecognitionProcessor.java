@@ -26,6 +26,7 @@ import com.google.firebase.ml.vision.cloud.landmark.FirebaseVisionCloudLandmarkD
 import com.google.firebase.ml.vision.common.FirebaseVisionImage;
 import com.google.firebase.samples.apps.mlkit.common.FrameMetadata;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
+import com.google.firebase.samples.apps.mlkit.common.UploadPreparer;
 import com.google.firebase.samples.apps.mlkit.java.VisionProcessorBase;
 
 import java.util.List;
@@ -37,6 +38,9 @@ public class CloudLandmarkRecognitionProcessor
         extends VisionProcessorBase<List<FirebaseVisionCloudLandmark>> {
     private static final String TAG = "CloudLmkRecProc";
 
+    // Landmarks are large structures, recognized from their outline more than their detail.
+    private static final UploadPreparer.Profile UPLOAD_PROFILE = new UploadPreparer.Profile(640);
+
     private final FirebaseVisionCloudLandmarkDetector detector;
 
     public CloudLandmarkRecognitionProcessor() {
@@ -55,22 +59,46 @@ public class CloudLandmarkRecognitionProcessor
         return detector.detectInImage(image);
     }
 
+    @Override
+    protected String getResultCacheKey() {
+        return "cloud-landmark/stable/10";
+    }
+
+    @Override
+    protected UploadPreparer.Profile getUploadProfile() {
+        return UPLOAD_PROFILE;
+    }
+
     @Override
     protected void onSuccess(
             @Nullable Bitmap originalCameraImage,
             @NonNull List<FirebaseVisionCloudLandmark> landmarks,
             @NonNull FrameMetadata frameMetadata,
             @NonNull GraphicOverlay graphicOverlay) {
-        graphicOverlay.clear();
+        GraphicOverlay.Scene.Builder scene = newScene(graphicOverlay);
         Log.d(TAG, "cloud landmark size: " + landmarks.size());
         for (int i = 0; i < landmarks.size(); ++i) {
             FirebaseVisionCloudLandmark landmark = landmarks.get(i);
             Log.d(TAG, "cloud landmark: " + landmark);
             CloudLandmarkGraphic cloudLandmarkGraphic = new CloudLandmarkGraphic(graphicOverlay,
                     landmark);
-            graphicOverlay.add(cloudLandmarkGraphic);
+            scene.add(cloudLandmarkGraphic);
+        }
+        graphicOverlay.publish(scene.build());
+    }
+
+    @NonNull
+    @Override
+    protected String describeResults(@NonNull List<FirebaseVisionCloudLandmark> landmarks) {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < landmarks.size(); ++i) {
+            FirebaseVisionCloudLandmark landmark = landmarks.get(i);
+            if (i > 0) {
+                description.append(", ");
+            }
+            description.append(landmark.getLandmark()).append(':').append(landmark.getConfidence());
         }
-        graphicOverlay.postInvalidate();
+        return description.toString();
     }
 
     @Override
@@ -25,6 +25,7 @@ import com.google.firebase.ml.vision.document.FirebaseVisionDocumentText;
 import com.google.firebase.ml.vision.document.FirebaseVisionDocumentTextRecognizer;
 import com.google.firebase.samples.apps.mlkit.common.FrameMetadata;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
+import com.google.firebase.samples.apps.mlkit.common.UploadPreparer;
 import com.google.firebase.samples.apps.mlkit.java.VisionProcessorBase;
 
 import java.util.List;
@@ -37,6 +38,9 @@ public class CloudDocumentTextRecognitionProcessor
 
     private static final String TAG = "CloudDocTextRecProc";
 
+    // Dense pages lose small print when scaled down, so only very large images are.
+    private static final UploadPreparer.Profile UPLOAD_PROFILE = new UploadPreparer.Profile(2048);
+
     private final FirebaseVisionDocumentTextRecognizer detector;
 
     public CloudDocumentTextRecognitionProcessor() {
@@ -49,13 +53,23 @@ public class CloudDocumentTextRecognitionProcessor
         return detector.processImage(image);
     }
 
+    @Override
+    protected String getResultCacheKey() {
+        return "cloud-document-text/default";
+    }
+
+    @Override
+    protected UploadPreparer.Profile getUploadProfile() {
+        return UPLOAD_PROFILE;
+    }
+
     @Override
     protected void onSuccess(
             @Nullable Bitmap originalCameraImage,
             @NonNull FirebaseVisionDocumentText text,
             @NonNull FrameMetadata frameMetadata,
             @NonNull GraphicOverlay graphicOverlay) {
-        graphicOverlay.clear();
+        GraphicOverlay.Scene.Builder scene = newScene(graphicOverlay);
         Log.d(TAG, "detected text is: " + text.getText());
         List<FirebaseVisionDocumentText.Block> blocks = text.getBlocks();
         for (int i = 0; i < blocks.size(); i++) {
@@ -68,12 +82,18 @@ public class CloudDocumentTextRecognitionProcessor
                         CloudDocumentTextGraphic cloudDocumentTextGraphic =
                                 new CloudDocumentTextGraphic(graphicOverlay,
                                 symbols.get(m));
-                        graphicOverlay.add(cloudDocumentTextGraphic);
+                        scene.add(cloudDocumentTextGraphic);
                     }
                 }
             }
         }
-        graphicOverlay.postInvalidate();
+        graphicOverlay.publish(scene.build());
+    }
+
+    @NonNull
+    @Override
+    protected String describeResults(@NonNull FirebaseVisionDocumentText text) {
+        return text.getText();
     }
 
     @Override
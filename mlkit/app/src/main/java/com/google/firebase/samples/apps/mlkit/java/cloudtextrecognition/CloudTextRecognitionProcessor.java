@@ -25,6 +25,7 @@ import com.google.firebase.ml.vision.text.FirebaseVisionText;
 import com.google.firebase.ml.vision.text.FirebaseVisionTextRecognizer;
 import com.google.firebase.samples.apps.mlkit.common.FrameMetadata;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
+import com.google.firebase.samples.apps.mlkit.common.UploadPreparer;
 import com.google.firebase.samples.apps.mlkit.java.VisionProcessorBase;
 
 import java.util.List;
@@ -36,6 +37,9 @@ public class CloudTextRecognitionProcessor extends VisionProcessorBase<FirebaseV
 
     private static final String TAG = "CloudTextRecProc";
 
+    // Sparse text is read well at a moderate size.
+    private static final UploadPreparer.Profile UPLOAD_PROFILE = new UploadPreparer.Profile(1280);
+
     private final FirebaseVisionTextRecognizer detector;
 
     public CloudTextRecognitionProcessor() {
@@ -48,14 +52,25 @@ public class CloudTextRecognitionProcessor extends VisionProcessorBase<FirebaseV
         return detector.processImage(image);
     }
 
+    @Override
+    protected String getResultCacheKey() {
+        return "cloud-text/default";
+    }
+
+    @Override
+    protected UploadPreparer.Profile getUploadProfile() {
+        return UPLOAD_PROFILE;
+    }
+
     @Override
     protected void onSuccess(
             @Nullable Bitmap originalCameraImage,
             @NonNull FirebaseVisionText text,
             @NonNull FrameMetadata frameMetadata,
             @NonNull GraphicOverlay graphicOverlay) {
-        graphicOverlay.clear();
+        GraphicOverlay.Scene.Builder scene = newScene(graphicOverlay);
         if (text == null) {
+            graphicOverlay.publish(scene.build());
             return; // TODO: investigate why this is needed
         }
         List<FirebaseVisionText.TextBlock> blocks = text.getTextBlocks();
@@ -66,11 +81,17 @@ public class CloudTextRecognitionProcessor extends VisionProcessorBase<FirebaseV
                 for (int l = 0; l < elements.size(); l++) {
                     CloudTextGraphic cloudTextGraphic = new CloudTextGraphic(graphicOverlay,
                             elements.get(l));
-                    graphicOverlay.add(cloudTextGraphic);
+                    scene.add(cloudTextGraphic);
                 }
             }
         }
-        graphicOverlay.postInvalidate();
+        graphicOverlay.publish(scene.build());
+    }
+
+    @NonNull
+    @Override
+    protected String describeResults(@NonNull FirebaseVisionText text) {
+        return text.getText();
     }
 
     @Override
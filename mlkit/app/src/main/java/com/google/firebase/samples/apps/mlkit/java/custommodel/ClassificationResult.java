@@ -0,0 +1,92 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.custommodel;
+
+import java.util.List;
+
+/**
+ * The top-K labels of one classification, as label indices and scores ordered from the best
+ * match down.
+ *
+ * <p>Instances are reused from frame to frame. Display strings are only built the first time
+ * {@link #getDisplayText(int)} is called for a rank after the result was filled.
+ */
+public class ClassificationResult {
+
+    private final List<String> labels;
+    private final int[] labelIndices;
+    private final float[] scores;
+    private final String[] displayTexts;
+    private int size;
+
+    ClassificationResult(List<String> labels, int capacity) {
+        this.labels = labels;
+        labelIndices = new int[capacity];
+        scores = new float[capacity];
+        displayTexts = new String[capacity];
+    }
+
+    /** Returns the number of labels in this result. */
+    public int size() {
+        return size;
+    }
+
+    /** Returns the index into the label list of the label at {@code rank}. */
+    public int getLabelIndex(int rank) {
+        return labelIndices[rank];
+    }
+
+    /** Returns the score of the label at {@code rank}. */
+    public float getScore(int rank) {
+        return scores[rank];
+    }
+
+    /** Returns the "label:score" text shown in the UI for the label at {@code rank}. */
+    public String getDisplayText(int rank) {
+        String text = displayTexts[rank];
+        if (text == null) {
+            int index = labelIndices[rank];
+            String label = index < labels.size() ? labels.get(index) : String.valueOf(index);
+            text = label + ":" + scores[rank];
+            displayTexts[rank] = text;
+        }
+        return text;
+    }
+
+    void reset() {
+        for (int i = 0; i < size; i++) {
+            displayTexts[i] = null;
+        }
+        size = 0;
+    }
+
+    boolean isFull() {
+        return size == scores.length;
+    }
+
+    /** Inserts a candidate if it ranks among the best {@code capacity} seen since the reset. */
+    void offer(int labelIndex, float score) {
+        if (isFull() && (size == 0 || score <= scores[size - 1])) {
+            return;
+        }
+        int position = isFull() ? size - 1 : size++;
+        while (position > 0 && scores[position - 1] < score) {
+            scores[position] = scores[position - 1];
+            labelIndices[position] = labelIndices[position - 1];
+            position--;
+        }
+        scores[position] = score;
+        labelIndices[position] = labelIndex;
+    }
+}
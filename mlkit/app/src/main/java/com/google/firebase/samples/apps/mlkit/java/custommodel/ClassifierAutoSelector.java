@@ -0,0 +1,316 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.custommodel;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.os.Build;
+import androidx.annotation.Nullable;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+
+/**
+ * Chooses between the quantized and the float classifier by benchmarking both on this device, see
+ * {@link ClassifierBenchmark}. The choice is stored along with the versions of the app and the
+ * models and the build of the device, and the classifiers are benchmarked again once any of them
+ * changes.
+ *
+ * <p>The benchmark only runs while no camera preview is, see {@link #setPreviewRunning}, since the
+ * two would skew each other. A measurement during which a preview started is thrown away, and the
+ * benchmark starts over once the preview stops.
+ */
+public class ClassifierAutoSelector {
+
+    private static final String TAG = "ClassifierAutoSelector";
+
+    private static final String PREFERENCES_NAME = "classifier_benchmark";
+    private static final String KEY_FINGERPRINT = "fingerprint";
+    private static final String KEY_QUANTIZED = "quantized";
+    private static final String KEY_QUANT_MEASUREMENT = "quant";
+    private static final String KEY_FLOAT_MEASUREMENT = "float";
+
+    /**
+     * Largest fraction of benchmark images the quantized classifier may disagree with the float
+     * one on and still be chosen.
+     */
+    private static final double ACCURACY_BUDGET = 0.1;
+
+    /** Number of times every benchmark image is classified on its own. */
+    private static final int LATENCY_RUNS = 3;
+
+    /** The benchmark images are crops of this image. */
+    private static final String BENCHMARK_IMAGE_PATH = "DandelionFlower.jpg";
+
+    private static final int BENCHMARK_IMAGE_SIZE = 299;
+
+    private final Context context;
+    private final Executor executor;
+    private final SharedPreferences preferences;
+    private final String fingerprint;
+
+    // Completed by the benchmark once it has run without a preview, if one was asked for.
+    // @GuardedBy("this")
+    private TaskCompletionSource<Boolean> selection;
+    // @GuardedBy("this")
+    private boolean benchmarkQueued;
+    // @GuardedBy("this")
+    private boolean previewRunning;
+    // Counts the previews started, so a benchmark can tell that one ran during a measurement.
+    // @GuardedBy("this")
+    private int previewStarts;
+
+    // Chosen without the float classifier, which may be downloaded later, so it is not stored.
+    private Boolean sessionChoice;
+
+    /** Creates a selector that benchmarks the classifiers on {@code executor}. */
+    public ClassifierAutoSelector(Context context, Executor executor) {
+        this.context = context.getApplicationContext();
+        this.executor = executor;
+        preferences = this.context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        fingerprint = getFingerprint(this.context);
+    }
+
+    /**
+     * Returns whether the quantized classifier was chosen for the current app and model versions,
+     * or null if the classifiers were not benchmarked yet.
+     */
+    @Nullable
+    public synchronized Boolean getChoice() {
+        if (sessionChoice != null) {
+            return sessionChoice;
+        }
+        if (!fingerprint.equals(preferences.getString(KEY_FINGERPRINT, null))) {
+            return null;
+        }
+        return preferences.getBoolean(KEY_QUANTIZED, true);
+    }
+
+    /**
+     * Returns whether to use the quantized classifier, benchmarking both classifiers in the
+     * background first unless that was done for the current app and model versions. The benchmark
+     * waits for the camera preview to stop.
+     */
+    public synchronized Task<Boolean> select() {
+        Boolean choice = getChoice();
+        if (choice != null) {
+            return Tasks.forResult(choice);
+        }
+        if (selection == null) {
+            selection = new TaskCompletionSource<>();
+            queueBenchmark();
+        }
+        return selection.getTask();
+    }
+
+    /**
+     * Tells the selector whether a camera preview is running. While one is, no benchmark starts,
+     * and one that is running starts over once the preview stops.
+     */
+    public synchronized void setPreviewRunning(boolean running) {
+        if (running && !previewRunning) {
+            previewStarts++;
+        }
+        previewRunning = running;
+        if (!running) {
+            queueBenchmark();
+        }
+    }
+
+    // @GuardedBy("this")
+    private void queueBenchmark() {
+        if (selection == null || previewRunning || benchmarkQueued) {
+            return;
+        }
+        benchmarkQueued = true;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                runBenchmark();
+            }
+        });
+    }
+
+    private void runBenchmark() {
+        Boolean quantized;
+        try {
+            quantized = benchmark();
+        } catch (Exception e) {
+            synchronized (this) {
+                benchmarkQueued = false;
+                selection.setException(e);
+                selection = null;
+            }
+            return;
+        }
+        synchronized (this) {
+            benchmarkQueued = false;
+            if (quantized == null) {
+                Log.i(TAG, "Benchmark interrupted by the camera preview, waiting for it to stop.");
+                queueBenchmark();
+            } else {
+                selection.setResult(quantized);
+                selection = null;
+            }
+        }
+    }
+
+    // Returns null, without storing anything, if a preview ran during the benchmark.
+    @Nullable
+    private Boolean benchmark() throws Exception {
+        int previewStartsBefore;
+        synchronized (this) {
+            if (previewRunning) {
+                return null;
+            }
+            previewStartsBefore = previewStarts;
+        }
+        List<Bitmap> images = createBenchmarkImages();
+        try {
+            ClassifierBenchmark.Measurement quant = measure(true, images);
+            ClassifierBenchmark.Measurement floatModel = null;
+            if (!isUndisturbed(previewStartsBefore)) {
+                return null;
+            }
+            try {
+                floatModel = measure(false, images);
+            } catch (Exception e) {
+                Log.w(TAG, "Could not benchmark the float classifier.", e);
+            }
+            if (!isUndisturbed(previewStartsBefore)) {
+                return null;
+            }
+            boolean quantized =
+                    ClassifierBenchmark.chooseQuantized(quant, floatModel, ACCURACY_BUDGET);
+            String floatSummary = floatModel == null
+                    ? "float: not available"
+                    : String.format(Locale.US, "%s, %.0f%% same top labels", floatModel,
+                            100 * ClassifierBenchmark.agreement(quant, floatModel));
+            Log.i(TAG, "Benchmarked " + quant + "; " + floatSummary + "; chose "
+                    + (quantized ? "quantized" : "float"));
+            synchronized (this) {
+                if (floatModel == null) {
+                    sessionChoice = quantized;
+                } else {
+                    preferences.edit()
+                            .putString(KEY_FINGERPRINT, fingerprint)
+                            .putBoolean(KEY_QUANTIZED, quantized)
+                            .putString(KEY_QUANT_MEASUREMENT, quant.encode())
+                            .putString(KEY_FLOAT_MEASUREMENT, floatModel.encode())
+                            .apply();
+                }
+            }
+            return quantized;
+        } finally {
+            for (Bitmap image : images) {
+                image.recycle();
+            }
+        }
+    }
+
+    // Returns whether no preview has run since previewStarts was taken.
+    private synchronized boolean isUndisturbed(int previewStartsBefore) {
+        return !previewRunning && previewStarts == previewStartsBefore;
+    }
+
+    private ClassifierBenchmark.Measurement measure(boolean quantized, List<Bitmap> images)
+            throws Exception {
+        CustomImageClassifier classifier = new CustomImageClassifier(context, quantized);
+        try {
+            return classifier.benchmark(images, LATENCY_RUNS);
+        } finally {
+            classifier.close();
+        }
+    }
+
+    /** Returns the stored choice and the measurements it was made from, one per line. */
+    public synchronized String dumpStats() {
+        Boolean choice = getChoice();
+        if (choice == null) {
+            return "not benchmarked" + (selection != null ? ", waiting to run" : "");
+        }
+        if (sessionChoice != null) {
+            return "quantized, float classifier not available";
+        }
+        return (choice ? "quantized" : "float") + "\n"
+                + ClassifierBenchmark.Measurement.decode(
+                        preferences.getString(KEY_QUANT_MEASUREMENT, null)) + "\n"
+                + ClassifierBenchmark.Measurement.decode(
+                        preferences.getString(KEY_FLOAT_MEASUREMENT, null));
+    }
+
+    /**
+     * Returns the benchmark images: the center square of the benchmark image and its four corners,
+     * each also mirrored, scaled to the classifier's input size.
+     */
+    private List<Bitmap> createBenchmarkImages() throws IOException {
+        Bitmap source;
+        try (InputStream stream = context.getAssets().open(BENCHMARK_IMAGE_PATH)) {
+            source = BitmapFactory.decodeStream(stream);
+        }
+        if (source == null) {
+            throw new IOException("Cannot decode " + BENCHMARK_IMAGE_PATH);
+        }
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int side = Math.min(width, height);
+        int corner = side * 3 / 4;
+        int[][] crops = {
+                {(width - side) / 2, (height - side) / 2, side},
+                {0, 0, corner},
+                {width - corner, 0, corner},
+                {0, height - corner, corner},
+                {width - corner, height - corner, corner},
+        };
+        List<Bitmap> images = new ArrayList<>(2 * crops.length);
+        for (int[] crop : crops) {
+            float scale = (float) BENCHMARK_IMAGE_SIZE / crop[2];
+            for (int mirror = 1; mirror >= -1; mirror -= 2) {
+                Matrix matrix = new Matrix();
+                matrix.postScale(mirror * scale, scale);
+                images.add(Bitmap.createBitmap(
+                        source, crop[0], crop[1], crop[2], crop[2], matrix, true));
+            }
+        }
+        source.recycle();
+        return images;
+    }
+
+    /** Returns what the choice depends on: the app and model versions and the device build. */
+    private static String getFingerprint(Context context) {
+        String appVersion;
+        try {
+            PackageInfo info =
+                    context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            appVersion = info.versionCode + "/" + info.versionName;
+        } catch (PackageManager.NameNotFoundException e) {
+            appVersion = "unknown";
+        }
+        return appVersion + ";" + CustomImageClassifier.getModelVersion() + ";" + Build.FINGERPRINT;
+    }
+}
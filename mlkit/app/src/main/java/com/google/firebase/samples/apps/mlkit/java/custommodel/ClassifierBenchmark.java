@@ -0,0 +1,167 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.custommodel;
+
+import androidx.annotation.Nullable;
+
+import java.util.Locale;
+
+/**
+ * Picks the quantized or the float classifier from how both did on this device: the one with the
+ * lower median latency wins, unless that is the quantized one and its top labels agree with the
+ * float model's on fewer of the benchmark images than the accuracy budget allows. The float model
+ * serves as the reference since it is the more accurate of the two.
+ */
+public class ClassifierBenchmark {
+
+    /** How one variant did on the benchmark images. */
+    public static final class Measurement {
+        private final boolean quantized;
+        private final double p50LatencyMillis;
+        private final double p95LatencyMillis;
+        private final double imagesPerSecond;
+        private final int[] topLabels;
+
+        /**
+         * @param quantized whether this is the quantized variant
+         * @param p50LatencyMillis median latency of classifying one image
+         * @param p95LatencyMillis 95th percentile latency of classifying one image
+         * @param imagesPerSecond throughput when classifying the images in batches
+         * @param topLabels the index of the top label of every benchmark image
+         */
+        public Measurement(
+                boolean quantized,
+                double p50LatencyMillis,
+                double p95LatencyMillis,
+                double imagesPerSecond,
+                int[] topLabels) {
+            this.quantized = quantized;
+            this.p50LatencyMillis = p50LatencyMillis;
+            this.p95LatencyMillis = p95LatencyMillis;
+            this.imagesPerSecond = imagesPerSecond;
+            this.topLabels = topLabels;
+        }
+
+        public boolean isQuantized() {
+            return quantized;
+        }
+
+        public double getP50LatencyMillis() {
+            return p50LatencyMillis;
+        }
+
+        public double getP95LatencyMillis() {
+            return p95LatencyMillis;
+        }
+
+        public double getImagesPerSecond() {
+            return imagesPerSecond;
+        }
+
+        /** Returns this measurement as a single line, to be read back by {@link #decode}. */
+        public String encode() {
+            StringBuilder builder = new StringBuilder(String.format(
+                    Locale.US,
+                    "%s;%.3f;%.3f;%.3f;",
+                    quantized ? "quant" : "float",
+                    p50LatencyMillis,
+                    p95LatencyMillis,
+                    imagesPerSecond));
+            for (int i = 0; i < topLabels.length; i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(topLabels[i]);
+            }
+            return builder.toString();
+        }
+
+        /** Reads a measurement written by {@link #encode()}, or returns null if it is malformed. */
+        @Nullable
+        public static Measurement decode(@Nullable String encoded) {
+            if (encoded == null) {
+                return null;
+            }
+            String[] fields = encoded.split(";", -1);
+            if (fields.length != 5
+                    || !(fields[0].equals("quant") || fields[0].equals("float"))) {
+                return null;
+            }
+            try {
+                String[] labels = fields[4].isEmpty() ? new String[0] : fields[4].split(",");
+                int[] topLabels = new int[labels.length];
+                for (int i = 0; i < labels.length; i++) {
+                    topLabels[i] = Integer.parseInt(labels[i]);
+                }
+                return new Measurement(
+                        fields[0].equals("quant"),
+                        Double.parseDouble(fields[1]),
+                        Double.parseDouble(fields[2]),
+                        Double.parseDouble(fields[3]),
+                        topLabels);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    Locale.US,
+                    "%s: p50 %.1f ms, p95 %.1f ms, %.1f images/s",
+                    quantized ? "quantized" : "float",
+                    p50LatencyMillis,
+                    p95LatencyMillis,
+                    imagesPerSecond);
+        }
+    }
+
+    private ClassifierBenchmark() {}
+
+    /**
+     * Returns the fraction of benchmark images {@code a} and {@code b} have the same top label
+     * for, or 0 if they were not measured on the same images.
+     */
+    public static double agreement(Measurement a, Measurement b) {
+        if (a.topLabels.length != b.topLabels.length || a.topLabels.length == 0) {
+            return 0;
+        }
+        int agreed = 0;
+        for (int i = 0; i < a.topLabels.length; i++) {
+            if (a.topLabels[i] == b.topLabels[i]) {
+                agreed++;
+            }
+        }
+        return agreed / (double) a.topLabels.length;
+    }
+
+    /**
+     * Returns whether to use the quantized variant, given the measurements of both variants. The
+     * float one is null if it could not be measured, e.g. because it was not downloaded yet, in
+     * which case the quantized variant is used.
+     *
+     * @param accuracyBudget the largest fraction of benchmark images the quantized variant may
+     *     disagree with the float one on
+     */
+    public static boolean chooseQuantized(
+            Measurement quantized, @Nullable Measurement floatModel, double accuracyBudget) {
+        if (floatModel == null) {
+            return true;
+        }
+        if (floatModel.p50LatencyMillis < quantized.p50LatencyMillis) {
+            return false;
+        }
+        return 1 - agreement(quantized, floatModel) <= accuracyBudget;
+    }
+}
@@ -0,0 +1,287 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.custommodel;
+
+import com.google.firebase.samples.apps.mlkit.common.YuvToRgbConverter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Turns NV21 preview frames into the input tensor of the image classifier.
+ *
+ * <p>The center square of the frame is cropped and resized with bilinear sampling straight into
+ * a preallocated, native-order direct buffer, one row at a time. Quantized models get one byte per
+ * channel in [0, 255]; float models get one float per channel in [0, 1], written through a {@link
+ * FloatBuffer} view of the same buffer.
+ *
+ * <p>ARGB images, e.g. decoded bitmaps, can be written the same way into a caller-provided
+ * buffer, which lets several images be packed into one batched input.
+ *
+ * <p>Nothing is allocated once the sampling tables for a resolution have been built; {@link
+ * #getAllocationCount()} reports how many allocations the preprocessor has made so far. Instances
+ * are not thread-safe and the returned buffer is overwritten by the next call.
+ */
+class ClassifierInputPreprocessor {
+
+    private static final int CHANNELS = 3;
+
+    /** Number of fractional bits used for the bilinear sampling weights. */
+    private static final int FRACTION_BITS = 8;
+    private static final int FRACTION_ONE = 1 << FRACTION_BITS;
+    private static final int FRACTION_MASK = FRACTION_ONE - 1;
+
+    private final int inputSize;
+    private final boolean quantized;
+    // Allocated on first use, since batched inputs are written to the caller's buffer instead.
+    private ByteBuffer inputBuffer;
+    private FloatBuffer floatView;
+    private final byte[] byteRow;
+    private final float[] floatRow;
+
+    // Sampling tables, rebuilt whenever the frame resolution changes.
+    private int tableWidth;
+    private int tableHeight;
+    private int[] sampleX;
+    private int[] sampleY;
+
+    // Only used when frames are not backed by an accessible array.
+    private byte[] frameCopy;
+
+    // A float view of the whole of the last batched input written to, for float models.
+    private ByteBuffer batchBuffer;
+    private FloatBuffer batchFloatView;
+
+    private long allocationCount;
+
+    ClassifierInputPreprocessor(int inputSize, boolean quantized) {
+        this.inputSize = inputSize;
+        this.quantized = quantized;
+        if (quantized) {
+            floatRow = null;
+            byteRow = new byte[inputSize * CHANNELS];
+        } else {
+            floatRow = new float[inputSize * CHANNELS];
+            byteRow = null;
+        }
+        allocationCount++;
+    }
+
+    /** Returns the size of the model input for one image, in bytes. */
+    int getImageInputSize() {
+        return (quantized ? 1 : 4) * inputSize * inputSize * CHANNELS;
+    }
+
+    /** Returns the number of allocations this preprocessor has made since it was created. */
+    long getAllocationCount() {
+        return allocationCount;
+    }
+
+    /** Returns the preallocated model input buffer. */
+    ByteBuffer getInputBuffer() {
+        if (inputBuffer == null) {
+            inputBuffer = ByteBuffer.allocateDirect(getImageInputSize());
+            inputBuffer.order(ByteOrder.nativeOrder());
+            allocationCount++;
+            if (!quantized) {
+                floatView = inputBuffer.asFloatBuffer();
+                allocationCount++;
+            }
+        }
+        return inputBuffer;
+    }
+
+    /**
+     * Writes the model input for an NV21 frame and returns the rewound input buffer.
+     */
+    ByteBuffer preprocess(ByteBuffer frame, int width, int height) {
+        if (frame.hasArray()) {
+            return preprocess(frame.array(), frame.arrayOffset(), width, height);
+        }
+        int length = width * height * 3 / 2;
+        if (frameCopy == null || frameCopy.length < length) {
+            frameCopy = new byte[length];
+            allocationCount++;
+        }
+        frame.rewind();
+        frame.get(frameCopy, 0, length);
+        return preprocess(frameCopy, 0, width, height);
+    }
+
+    /**
+     * Writes the model input for an NV21 frame stored in {@code nv21} starting at {@code offset}
+     * and returns the rewound input buffer.
+     */
+    ByteBuffer preprocess(byte[] nv21, int offset, int width, int height) {
+        getInputBuffer();
+        ensureTables(width, height);
+        int frameSize = width * height;
+        if (quantized) {
+            inputBuffer.rewind();
+        } else {
+            floatView.rewind();
+        }
+        for (int row = 0; row < inputSize; row++) {
+            int fy = sampleY[row];
+            int y0 = fy >> FRACTION_BITS;
+            int y1 = Math.min(y0 + 1, height - 1);
+            int wy = fy & FRACTION_MASK;
+            int rowOffset0 = offset + y0 * width;
+            int rowOffset1 = offset + y1 * width;
+            int uvRowOffset = offset + frameSize + (y0 >> 1) * width;
+
+            int out = 0;
+            for (int col = 0; col < inputSize; col++) {
+                int fx = sampleX[col];
+                int x0 = fx >> FRACTION_BITS;
+                int x1 = Math.min(x0 + 1, width - 1);
+                int wx = fx & FRACTION_MASK;
+
+                // Bilinear luma; chroma is stored at half resolution so the nearest sample is
+                // used.
+                int top = (nv21[rowOffset0 + x0] & 0xff) * (FRACTION_ONE - wx)
+                        + (nv21[rowOffset0 + x1] & 0xff) * wx;
+                int bottom = (nv21[rowOffset1 + x0] & 0xff) * (FRACTION_ONE - wx)
+                        + (nv21[rowOffset1 + x1] & 0xff) * wx;
+                int luma = (top * (FRACTION_ONE - wy) + bottom * wy)
+                        >> (2 * FRACTION_BITS);
+                int uvIndex = uvRowOffset + (x0 & ~1);
+                int v = (nv21[uvIndex] & 0xff) - 128;
+                int u = (nv21[uvIndex + 1] & 0xff) - 128;
+                int argb = YuvToRgbConverter.yuvToArgb(luma, u, v);
+
+                // Normalize the values according to the model used:
+                // Quantized model expects a [0, 255] scale while a float model expects [0, 1].
+                if (quantized) {
+                    byteRow[out++] = (byte) (argb >> 16);
+                    byteRow[out++] = (byte) (argb >> 8);
+                    byteRow[out++] = (byte) argb;
+                } else {
+                    floatRow[out++] = ((argb >> 16) & 0xFF) / 255.0f;
+                    floatRow[out++] = ((argb >> 8) & 0xFF) / 255.0f;
+                    floatRow[out++] = (argb & 0xFF) / 255.0f;
+                }
+            }
+            if (quantized) {
+                inputBuffer.put(byteRow);
+            } else {
+                floatView.put(floatRow);
+            }
+        }
+        inputBuffer.rewind();
+        return inputBuffer;
+    }
+
+    /**
+     * Writes the model input for an ARGB image of {@code width} x {@code height} pixels into
+     * {@code out}, a native-order buffer, starting at its current position. The position is
+     * advanced past the written input, so consecutive calls pack a batch.
+     */
+    void preprocess(int[] argb, int width, int height, ByteBuffer out) {
+        ensureTables(width, height);
+        int start = out.position();
+        if (!quantized) {
+            ensureBatchFloatView(out);
+            batchFloatView.position(start / 4);
+        }
+        for (int row = 0; row < inputSize; row++) {
+            int fy = sampleY[row];
+            int y0 = fy >> FRACTION_BITS;
+            int y1 = Math.min(y0 + 1, height - 1);
+            int wy = fy & FRACTION_MASK;
+            int rowOffset0 = y0 * width;
+            int rowOffset1 = y1 * width;
+
+            int index = 0;
+            for (int col = 0; col < inputSize; col++) {
+                int fx = sampleX[col];
+                int x0 = fx >> FRACTION_BITS;
+                int x1 = Math.min(x0 + 1, width - 1);
+                int wx = fx & FRACTION_MASK;
+                int p00 = argb[rowOffset0 + x0];
+                int p01 = argb[rowOffset0 + x1];
+                int p10 = argb[rowOffset1 + x0];
+                int p11 = argb[rowOffset1 + x1];
+                for (int shift = 16; shift >= 0; shift -= 8) {
+                    int top = ((p00 >> shift) & 0xff) * (FRACTION_ONE - wx)
+                            + ((p01 >> shift) & 0xff) * wx;
+                    int bottom = ((p10 >> shift) & 0xff) * (FRACTION_ONE - wx)
+                            + ((p11 >> shift) & 0xff) * wx;
+                    int value = (top * (FRACTION_ONE - wy) + bottom * wy) >> (2 * FRACTION_BITS);
+                    if (quantized) {
+                        byteRow[index++] = (byte) value;
+                    } else {
+                        floatRow[index++] = value / 255.0f;
+                    }
+                }
+            }
+            if (quantized) {
+                out.put(byteRow);
+            } else {
+                batchFloatView.put(floatRow);
+            }
+        }
+        if (!quantized) {
+            out.position(start + getImageInputSize());
+        }
+    }
+
+    /**
+     * Creates the float view of {@code out} unless it is the buffer last written to. The view
+     * covers the whole buffer, in its byte order, so one view serves every image of the batch.
+     */
+    private void ensureBatchFloatView(ByteBuffer out) {
+        if (out == batchBuffer) {
+            return;
+        }
+        ByteBuffer whole = out.duplicate();
+        whole.order(out.order());
+        whole.clear();
+        batchBuffer = out;
+        batchFloatView = whole.asFloatBuffer();
+        allocationCount += 2;
+    }
+
+    /**
+     * Builds the fixed point source coordinates that map each model input pixel to the center
+     * square of a {@code width} x {@code height} frame.
+     */
+    private void ensureTables(int width, int height) {
+        if (width == tableWidth && height == tableHeight) {
+            return;
+        }
+        int side = Math.min(width, height);
+        if (sampleX == null) {
+            sampleX = new int[inputSize];
+            sampleY = new int[inputSize];
+            allocationCount += 2;
+        }
+        fillTable(sampleX, (width - side) / 2, side, width);
+        fillTable(sampleY, (height - side) / 2, side, height);
+        tableWidth = width;
+        tableHeight = height;
+    }
+
+    private void fillTable(int[] table, int cropStart, int cropSize, int limit) {
+        float scale = (float) cropSize / inputSize;
+        int max = (limit - 1) << FRACTION_BITS;
+        for (int i = 0; i < inputSize; i++) {
+            // Sample at the center of each output pixel.
+            float source = cropStart + (i + 0.5f) * scale - 0.5f;
+            int fixed = Math.round(source * FRACTION_ONE);
+            table[i] = fixed < 0 ? 0 : (fixed > max ? max : fixed);
+        }
+    }
+}
@@ -15,15 +15,13 @@ package com.google.firebase.samples.apps.mlkit.java.custommodel;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.ImageFormat;
-import android.graphics.Rect;
-import android.graphics.YuvImage;
+import android.os.AsyncTask;
 import android.os.SystemClock;
 import androidx.annotation.NonNull;
 import android.util.Log;
 
 import com.google.android.gms.tasks.Continuation;
+import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.Tasks;
@@ -38,19 +36,21 @@ import com.google.firebase.ml.custom.FirebaseModelInputs;
 import com.google.firebase.ml.custom.FirebaseModelInterpreter;
 import com.google.firebase.ml.custom.FirebaseModelOptions;
 import com.google.firebase.ml.custom.FirebaseModelOutputs;
+import com.google.firebase.samples.apps.mlkit.common.LatencyHistogram;
+import com.google.firebase.samples.apps.mlkit.common.ModelWarmer;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.AbstractMap;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A {@code FirebaseModelInterpreter} based image classifier.
@@ -103,20 +103,29 @@ public class CustomImageClassifier {
     private static final int RESULTS_TO_SHOW = 3;
 
     /**
-     * Dimensions of inputs.
+     * Dimensions of inputs. Preview frames are classified one at a time; offline images are
+     * packed into batches of {@link #batchSize}.
      */
     private static final int DIM_BATCH_SIZE = 1;
 
+    private static final int DEFAULT_BATCH_SIZE = 8;
+
     private static final int DIM_PIXEL_SIZE = 3;
 
     private static final int DIM_IMG_SIZE_X = 299;
     private static final int DIM_IMG_SIZE_Y = 299;
-    private static final int QUANT_NUM_OF_BYTES_PER_CHANNEL = 1;
-    private static final int FLOAT_NUM_OF_BYTES_PER_CHANNEL = 4;
     private Boolean mUseQuantizedModel;
 
-    /* Preallocated buffers for storing image data in. */
-    private final int[] intValues = new int[DIM_IMG_SIZE_X * DIM_IMG_SIZE_Y];
+    /**
+     * Writes preview frames into the preallocated model input buffer.
+     */
+    private final ClassifierInputPreprocessor preprocessor;
+
+    /**
+     * Set while the interpreter reads from the input buffer, so the next frame does not
+     * overwrite it.
+     */
+    private final AtomicBoolean inferenceInFlight = new AtomicBoolean();
 
     /**
      * An instance of the driver class to run model inference with Firebase.
@@ -133,21 +142,40 @@ public class CustomImageClassifier {
      */
     private final List<String> labelList;
 
-    private final PriorityQueue<Map.Entry<String, Float>> sortedLabels =
-            new PriorityQueue<>(
-                    RESULTS_TO_SHOW,
-                    new Comparator<Map.Entry<String, Float>>() {
-                        @Override
-                        public int compare(Map.Entry<String, Float> o1,
-                                           Map.Entry<String, Float> o2) {
-                            return (o1.getValue()).compareTo(o2.getValue());
-                        }
-                    });
+    /**
+     * Two reusable results: one is displayed while the next inference fills the other. Both are
+     * only written by the result continuation on the main thread.
+     */
+    private final ClassificationResult[] results = new ClassificationResult[2];
+
+    private int nextResult;
+
+    /**
+     * Number of images packed into one interpreter run by {@link #classifyBatch(List)}.
+     */
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * Writes batched images into the batch input buffers; only used on the batch thread.
+     */
+    private ClassifierInputPreprocessor batchPreprocessor;
+
+    /**
+     * Batch input buffers and input/output options, keyed by the number of images in a batch.
+     */
+    private final Map<Integer, ByteBuffer> batchInputs = new HashMap<>();
+    private final Map<Integer, FirebaseModelInputOutputOptions> batchOptions = new HashMap<>();
+
+    /**
+     * Scratch space for the pixels of one batched image.
+     */
+    private int[] batchPixels;
 
     /**
      * Initializes an {@code CustomImageClassifier}.
      */
-    CustomImageClassifier(Context context, boolean useQuantizedModel) throws FirebaseMLException {
+    public CustomImageClassifier(Context context, boolean useQuantizedModel)
+            throws FirebaseMLException {
         mUseQuantizedModel = useQuantizedModel;
         String localModelName = mUseQuantizedModel ? LOCAL_QUANT_MODEL_NAME :
                 LOCAL_FLOAT_MODEL_NAME;
@@ -178,38 +206,299 @@ public class CustomImageClassifier {
         manager.registerRemoteModel(remoteModel);
         interpreter = FirebaseModelInterpreter.getInstance(modelOptions);
         labelList = loadLabelList(context.getApplicationContext());
+        preprocessor = new ClassifierInputPreprocessor(DIM_IMG_SIZE_X, mUseQuantizedModel);
+        results[0] = new ClassificationResult(labelList, RESULTS_TO_SHOW);
+        results[1] = new ClassificationResult(labelList, RESULTS_TO_SHOW);
         Log.d(TAG, "Created a Custom Image Classifier.");
-        int[] inputDims = {DIM_BATCH_SIZE, DIM_IMG_SIZE_X, DIM_IMG_SIZE_Y, DIM_PIXEL_SIZE};
-        int[] outputDims = {1, labelList.size()};
+        dataOptions = createDataOptions(DIM_BATCH_SIZE);
+        Log.d(TAG, "Configured input & output data for the custom image classifier.");
+    }
+
+    /**
+     * Returns a loader that creates a classifier and warms it up, for a {@link ModelWarmer}.
+     */
+    public static ModelWarmer.Loader<CustomImageClassifier> newLoader(
+            final Context context, final boolean useQuantizedModel) {
+        return new ModelWarmer.Loader<CustomImageClassifier>() {
+            @Override
+            public CustomImageClassifier load() throws FirebaseMLException {
+                return new CustomImageClassifier(context, useQuantizedModel);
+            }
+
+            @Override
+            public void warmUp(CustomImageClassifier classifier) throws Exception {
+                classifier.warmUp();
+            }
+
+            @Override
+            public void release(CustomImageClassifier classifier) {
+                classifier.close();
+            }
+        };
+    }
+
+    /**
+     * Classifies a blank frame and blocks until it is done, so the first preview frame does not
+     * pay for loading the model and setting up the interpreter.
+     */
+    public void warmUp() throws Exception {
+        if (interpreter == null || !inferenceInFlight.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long startTime = SystemClock.elapsedRealtime();
+            byte[] blankFrame = new byte[DIM_IMG_SIZE_X * DIM_IMG_SIZE_Y * 3 / 2];
+            ByteBuffer imgData =
+                    preprocessor.preprocess(blankFrame, 0, DIM_IMG_SIZE_X, DIM_IMG_SIZE_Y);
+            FirebaseModelInputs inputs = new FirebaseModelInputs.Builder().add(imgData).build();
+            Tasks.await(interpreter.run(inputs, dataOptions));
+            Log.d(TAG, "Warmed up in " + (SystemClock.elapsedRealtime() - startTime) + " ms");
+        } finally {
+            inferenceInFlight.set(false);
+        }
+    }
+
+    /**
+     * Closes the interpreter. The classifier can not be used any more afterwards.
+     */
+    public void close() {
+        if (interpreter == null) {
+            return;
+        }
+        try {
+            interpreter.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to close the interpreter.", e);
+        }
+    }
+
+    /**
+     * Creates the input & output configuration for a batch of {@code count} images.
+     */
+    private FirebaseModelInputOutputOptions createDataOptions(int count)
+            throws FirebaseMLException {
+        int[] inputDims = {count, DIM_IMG_SIZE_X, DIM_IMG_SIZE_Y, DIM_PIXEL_SIZE};
+        int[] outputDims = {count, labelList.size()};
 
         int dataType = mUseQuantizedModel ? FirebaseModelDataType.BYTE :
                 FirebaseModelDataType.FLOAT32;
-        dataOptions =
-                new FirebaseModelInputOutputOptions.Builder()
-                        .setInputFormat(0, dataType, inputDims)
-                        .setOutputFormat(0, dataType, outputDims)
-                        .build();
-        Log.d(TAG, "Configured input & output data for the custom image classifier.");
+        return new FirebaseModelInputOutputOptions.Builder()
+                .setInputFormat(0, dataType, inputDims)
+                .setOutputFormat(0, dataType, outputDims)
+                .build();
+    }
+
+    /**
+     * Sets the number of images {@link #classifyBatch(List)} packs into one interpreter run.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
     }
 
     /**
-     * Classifies a frame from the preview stream.
+     * Classifies {@code images} on a background thread, {@link #getBatchSize()} images per
+     * interpreter run, and returns the top results of each image in the same order.
      */
-    Task<List<String>> classifyFrame(ByteBuffer buffer, int width, int height)
+    public Task<List<ClassificationResult>> classifyBatch(final List<Bitmap> images) {
+        final int size = batchSize;
+        return Tasks.call(
+                AsyncTask.THREAD_POOL_EXECUTOR,
+                new Callable<List<ClassificationResult>>() {
+                    @Override
+                    public List<ClassificationResult> call() throws Exception {
+                        List<ClassificationResult> results = new ArrayList<>(images.size());
+                        runBatches(images, size, results);
+                        return results;
+                    }
+                });
+    }
+
+    /**
+     * Classifies {@code images} once one at a time and once in batches of {@link
+     * #getBatchSize()}, and returns a summary of the throughput of both modes.
+     */
+    public Task<String> measureBatchThroughput(final List<Bitmap> images) {
+        final int size = batchSize;
+        return Tasks.call(
+                AsyncTask.THREAD_POOL_EXECUTOR,
+                new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        if (images.isEmpty()) {
+                            return "No images to classify.";
+                        }
+                        List<ClassificationResult> results = new ArrayList<>(images.size());
+                        // Warm up the interpreter so neither mode pays for loading the model.
+                        runBatches(images.subList(0, 1), 1, results);
+                        results.clear();
+                        double single = runBatches(images, 1, results);
+                        results.clear();
+                        double batched = runBatches(images, size, results);
+                        String summary = String.format(
+                                Locale.US,
+                                "%d images: %.1f images/s single, %.1f images/s in batches of %d"
+                                        + " (%.2fx)",
+                                images.size(), single, batched, size, batched / single);
+                        Log.i(TAG, "Batch throughput: " + summary);
+                        return summary;
+                    }
+                });
+    }
+
+    /**
+     * Returns the names of the models of both variants, which change along with the models.
+     */
+    public static String getModelVersion() {
+        return LOCAL_QUANT_MODEL_NAME + "+" + HOSTED_QUANT_MODEL_NAME + "/"
+                + LOCAL_FLOAT_MODEL_NAME + "+" + HOSTED_FLOAT_MODEL_NAME;
+    }
+
+    /**
+     * Classifies each of {@code images} {@code runs} times one at a time, and then all of them
+     * in batches of {@link #getBatchSize()}, and returns the latency and throughput and the top
+     * label of every image. Blocks until done.
+     */
+    ClassifierBenchmark.Measurement benchmark(List<Bitmap> images, int runs) throws Exception {
+        List<ClassificationResult> results = new ArrayList<>(images.size());
+        // Warm up the interpreter so the first run does not pay for loading the model.
+        runBatches(images.subList(0, 1), 1, results);
+        LatencyHistogram latencies = new LatencyHistogram(images.size() * runs);
+        int[] topLabels = new int[images.size()];
+        for (int run = 0; run < runs; run++) {
+            for (int i = 0; i < images.size(); i++) {
+                results.clear();
+                long startNanos = System.nanoTime();
+                runBatches(images.subList(i, i + 1), 1, results);
+                latencies.record(System.nanoTime() - startNanos);
+                ClassificationResult result = results.get(0);
+                topLabels[i] = result.size() > 0 ? result.getLabelIndex(0) : -1;
+            }
+        }
+        results.clear();
+        double imagesPerSecond = runBatches(images, batchSize, results);
+        LatencyHistogram.Snapshot snapshot = latencies.snapshot();
+        return new ClassifierBenchmark.Measurement(mUseQuantizedModel, snapshot.getP50Millis(),
+                snapshot.getP95Millis(), imagesPerSecond, topLabels);
+    }
+
+    /**
+     * Classifies {@code images} in batches of {@code size}, adding the results to {@code
+     * results}. Blocks until all batches ran and returns the throughput in images per second.
+     */
+    private synchronized double runBatches(
+            List<Bitmap> images, int size, List<ClassificationResult> results)
+            throws Exception {
+        if (interpreter == null) {
+            throw new IllegalStateException("Image classifier has not been initialized.");
+        }
+        if (batchPreprocessor == null) {
+            batchPreprocessor = new ClassifierInputPreprocessor(DIM_IMG_SIZE_X, mUseQuantizedModel);
+        }
+        long startTime = SystemClock.elapsedRealtime();
+        for (int first = 0; first < images.size(); first += size) {
+            int count = Math.min(size, images.size() - first);
+            ByteBuffer input = getBatchInput(count);
+            for (int i = 0; i < count; i++) {
+                Bitmap image = images.get(first + i);
+                int pixelCount = image.getWidth() * image.getHeight();
+                if (batchPixels == null || batchPixels.length < pixelCount) {
+                    batchPixels = new int[pixelCount];
+                }
+                image.getPixels(batchPixels, 0, image.getWidth(), 0, 0, image.getWidth(),
+                        image.getHeight());
+                batchPreprocessor.preprocess(
+                        batchPixels, image.getWidth(), image.getHeight(), input);
+            }
+            input.rewind();
+
+            FirebaseModelInputs inputs = new FirebaseModelInputs.Builder().add(input).build();
+            FirebaseModelOutputs outputs =
+                    Tasks.await(interpreter.run(inputs, getBatchOptions(count)));
+            // Split the [count, labels] output back into one result per image.
+            for (int i = 0; i < count; i++) {
+                ClassificationResult result = new ClassificationResult(labelList, RESULTS_TO_SHOW);
+                if (mUseQuantizedModel) {
+                    byte[][] labelProbArray = outputs.<byte[][]>getOutput(0);
+                    TopKSelector.select(labelProbArray[i], labelList.size(), result);
+                } else {
+                    float[][] labelProbArray = outputs.<float[][]>getOutput(0);
+                    TopKSelector.select(labelProbArray[i], labelList.size(), result);
+                }
+                results.add(result);
+            }
+        }
+        long elapsed = Math.max(1, SystemClock.elapsedRealtime() - startTime);
+        double imagesPerSecond = images.size() * 1000.0 / elapsed;
+        Log.d(TAG, String.format(Locale.US, "Classified %d images in batches of %d: %.1f images/s",
+                images.size(), size, imagesPerSecond));
+        return imagesPerSecond;
+    }
+
+    private ByteBuffer getBatchInput(int count) {
+        ByteBuffer input = batchInputs.get(count);
+        if (input == null) {
+            input = ByteBuffer.allocateDirect(count * batchPreprocessor.getImageInputSize());
+            input.order(ByteOrder.nativeOrder());
+            batchInputs.put(count, input);
+        }
+        input.clear();
+        return input;
+    }
+
+    private FirebaseModelInputOutputOptions getBatchOptions(int count)
+            throws FirebaseMLException {
+        FirebaseModelInputOutputOptions options = batchOptions.get(count);
+        if (options == null) {
+            options = createDataOptions(count);
+            batchOptions.put(count, options);
+        }
+        return options;
+    }
+
+    /**
+     * Classifies a frame from the preview stream. Returns a canceled task if the previous frame
+     * is still being classified, since its input buffer is still in use.
+     */
+    Task<ClassificationResult> classifyFrame(ByteBuffer buffer, int width, int height)
             throws FirebaseMLException {
         if (interpreter == null) {
             Log.e(TAG, "Image classifier has not been initialized; Skipped.");
             List<String> uninitialized = new ArrayList<>();
             uninitialized.add("Uninitialized Classifier.");
-            Tasks.forResult(uninitialized);
+            ClassificationResult result = new ClassificationResult(uninitialized, 1);
+            result.offer(0, 0f);
+            return Tasks.forResult(result);
         }
-        // Create input data.
-        ByteBuffer imgData = convertBitmapToByteBuffer(buffer, width, height);
-
-        FirebaseModelInputs inputs = new FirebaseModelInputs.Builder().add(imgData).build();
-        // Here's where the magic happens!!
-        return interpreter
-                .run(inputs, dataOptions)
+        if (!inferenceInFlight.compareAndSet(false, true)) {
+            return Tasks.forCanceled();
+        }
+        Task<FirebaseModelOutputs> inference = null;
+        try {
+            // Create input data.
+            ByteBuffer imgData = convertFrameToByteBuffer(buffer, width, height);
+            FirebaseModelInputs inputs = new FirebaseModelInputs.Builder().add(imgData).build();
+            // Here's where the magic happens!!
+            inference = interpreter.run(inputs, dataOptions);
+        } finally {
+            // Without a task, nothing else would ever let the next frame through.
+            if (inference == null) {
+                inferenceInFlight.set(false);
+            }
+        }
+        return inference
+                .addOnCompleteListener(new OnCompleteListener<FirebaseModelOutputs>() {
+                    @Override
+                    public void onComplete(@NonNull Task<FirebaseModelOutputs> task) {
+                        inferenceInFlight.set(false);
+                    }
+                })
                 .addOnFailureListener(new OnFailureListener() {
                     @Override
                     public void onFailure(@NonNull Exception e) {
@@ -218,19 +507,24 @@ public class CustomImageClassifier {
                     }
                 })
                 .continueWith(
-                        new Continuation<FirebaseModelOutputs, List<String>>() {
+                        new Continuation<FirebaseModelOutputs, ClassificationResult>() {
                             @Override
-                            public List<String> then(Task<FirebaseModelOutputs> task) throws Exception {
+                            public ClassificationResult then(Task<FirebaseModelOutputs> task)
+                                    throws Exception {
+                                ClassificationResult result = results[nextResult];
+                                nextResult = 1 - nextResult;
                                 if (mUseQuantizedModel) {
                                     byte[][] labelProbArray =
                                             task.getResult().<byte[][]>getOutput(0);
-                                    return getTopLabels(labelProbArray);
+                                    TopKSelector.select(
+                                            labelProbArray[0], labelList.size(), result);
                                 } else {
                                     float[][] labelProbArray =
                                             task.getResult().<float[][]>getOutput(0);
-                                    return getTopLabels(labelProbArray);
-
+                                    TopKSelector.select(
+                                            labelProbArray[0], labelList.size(), result);
                                 }
+                                return result;
                             }
                         });
     }
@@ -253,89 +547,21 @@ public class CustomImageClassifier {
     }
 
     /**
-     * Writes Image data into a {@code ByteBuffer}.
-     */
-    private synchronized ByteBuffer convertBitmapToByteBuffer(
-            ByteBuffer buffer, int width, int height) {
-        int bytesPerChannel = mUseQuantizedModel ? QUANT_NUM_OF_BYTES_PER_CHANNEL :
-                FLOAT_NUM_OF_BYTES_PER_CHANNEL;
-        ByteBuffer imgData =
-                ByteBuffer.allocateDirect(
-                        bytesPerChannel * DIM_BATCH_SIZE * DIM_IMG_SIZE_X * DIM_IMG_SIZE_Y * DIM_PIXEL_SIZE);
-        imgData.order(ByteOrder.nativeOrder());
-        Bitmap bitmap = createResizedBitmap(buffer, width, height);
-        imgData.rewind();
-        bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(),
-                bitmap.getHeight());
-        // Convert the image to int points.
-        int pixel = 0;
+     * Writes Image data into the preallocated input {@code ByteBuffer}.
+     */
+    private ByteBuffer convertFrameToByteBuffer(ByteBuffer buffer, int width, int height) {
         long startTime = SystemClock.uptimeMillis();
-        for (int i = 0; i < DIM_IMG_SIZE_X; ++i) {
-            for (int j = 0; j < DIM_IMG_SIZE_Y; ++j) {
-                final int val = intValues[pixel++];
-                // Normalize the values according to the model used:
-                // Quantized model expects a [0, 255] scale while a float model expects [0, 1].
-                if (mUseQuantizedModel) {
-                    imgData.put((byte) ((val >> 16) & 0xFF));
-                    imgData.put((byte) ((val >> 8) & 0xFF));
-                    imgData.put((byte) (val & 0xFF));
-                } else {
-                    imgData.putFloat(((val >> 16) & 0xFF) / 255.0f);
-                    imgData.putFloat(((val >> 8) & 0xFF) / 255.0f);
-                    imgData.putFloat((val & 0xFF) / 255.0f);
-                }
-            }
-        }
+        ByteBuffer imgData = preprocessor.preprocess(buffer, width, height);
         long endTime = SystemClock.uptimeMillis();
         Log.d(TAG, "Timecost to put values into ByteBuffer: " + (endTime - startTime));
         return imgData;
     }
 
     /**
-     * Resizes image data from {@code ByteBuffer}.
-     */
-    private Bitmap createResizedBitmap(ByteBuffer buffer, int width, int height) {
-        YuvImage img = new YuvImage(buffer.array(), ImageFormat.NV21, width, height, null);
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        img.compressToJpeg(new Rect(0, 0, img.getWidth(), img.getHeight()), 50, out);
-        byte[] imageBytes = out.toByteArray();
-        Bitmap bitmap = BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length);
-        return Bitmap.createScaledBitmap(bitmap, DIM_IMG_SIZE_X, DIM_IMG_SIZE_Y, true);
-    }
-
-    private synchronized List<String> getTopLabels(byte[][] labelProbArray) {
-        for (int i = 0; i < labelList.size(); ++i) {
-            sortedLabels.add(
-                    new AbstractMap.SimpleEntry<>(labelList.get(i),
-                            (labelProbArray[0][i] & 0xff) / 255.0f));
-            if (sortedLabels.size() > RESULTS_TO_SHOW) {
-                sortedLabels.poll();
-            }
-        }
-        return getTopKLabels();
-    }
-
-    private synchronized List<String> getTopLabels(float[][] labelProbArray) {
-        for (int i = 0; i < labelList.size(); ++i) {
-            sortedLabels.add(
-                    new AbstractMap.SimpleEntry<>(labelList.get(i), labelProbArray[0][i]));
-            if (sortedLabels.size() > RESULTS_TO_SHOW) {
-                sortedLabels.poll();
-            }
-        }
-        return getTopKLabels();
-    }
-
-    /**
-     * Gets the top-K labels, to be shown in UI as the results.
+     * Returns the number of buffers the input preprocessor has allocated so far. This stays
+     * constant once the first frame of a given resolution has been classified.
      */
-    private synchronized List<String> getTopKLabels() {
-        List<String> result = new ArrayList<>();
-        final int size = sortedLabels.size();
-        for (int i = 0; i < size; ++i) {
-            Map.Entry<String, Float> label = sortedLabels.poll();
-            result.add(label.getKey() + ":" + label.getValue());
-        }
-        return result;
+    long getPreprocessorAllocationCount() {
+        return preprocessor.getAllocationCount();
     }
 }
@@ -18,19 +18,24 @@ import android.graphics.Bitmap;
 import androidx.annotation.NonNull;
 import android.util.Log;
 
+import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.Task;
 import com.google.firebase.ml.common.FirebaseMLException;
 import com.google.firebase.samples.apps.mlkit.common.BitmapUtils;
 import com.google.firebase.samples.apps.mlkit.common.CameraImageGraphic;
+import com.google.firebase.samples.apps.mlkit.common.FrameBuffer;
 import com.google.firebase.samples.apps.mlkit.common.FrameMetadata;
+import com.google.firebase.samples.apps.mlkit.common.FrameTrace;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
+import com.google.firebase.samples.apps.mlkit.common.ModelWarmer;
 import com.google.firebase.samples.apps.mlkit.common.VisionImageProcessor;
+import com.google.firebase.samples.apps.mlkit.java.ModelPreloader;
 
 import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
-import java.util.List;
 
 /**
  * Custom Image Classifier Demo.
@@ -38,12 +43,40 @@ import java.util.List;
 public class CustomImageClassifierProcessor implements VisionImageProcessor {
 
     private static final String TAG = "Custom";
-    private final CustomImageClassifier classifier;
     private final Reference<Activity> activityRef;
+    private final ModelWarmer warmer;
+    private final String modelName;
+
+    // Null while the classifier is still being warmed up.
+    private CustomImageClassifier classifier;
 
     public CustomImageClassifierProcessor(Activity activity, boolean useQuantizedModel) throws FirebaseMLException {
         activityRef = new WeakReference<>(activity);
         classifier = new CustomImageClassifier(activity.getApplicationContext(), useQuantizedModel);
+        warmer = null;
+        modelName = null;
+    }
+
+    /**
+     * Creates a processor that takes its classifier {@code modelName} from {@code warmer}. If it
+     * is still being warmed up, preview frames are skipped until it is ready.
+     */
+    public CustomImageClassifierProcessor(
+            Activity activity, ModelWarmer warmer, String modelName) {
+        activityRef = new WeakReference<>(activity);
+        this.warmer = warmer;
+        this.modelName = modelName;
+        classifier = warmer.take(modelName, ModelPreloader.TAKE_TIMEOUT_MILLIS);
+        if (classifier == null) {
+            Log.i(TAG, "Waiting for " + modelName + " to warm up.");
+        }
+    }
+
+    private synchronized CustomImageClassifier getClassifier() {
+        if (classifier == null) {
+            classifier = warmer.take(modelName, 0);
+        }
+        return classifier;
     }
 
     @Override
@@ -56,23 +89,47 @@ public class CustomImageClassifierProcessor implements VisionImageProcessor {
         if (activity == null) {
             return;
         }
+        CustomImageClassifier classifier = getClassifier();
+        if (classifier == null) {
+            return;
+        }
 
-        classifier
-                .classifyFrame(data, frameMetadata.getWidth(), frameMetadata.getHeight())
+        // The classifier converts the frame as part of classifying it, so both count as detection.
+        final FrameTrace trace = frameMetadata.getFrameTrace();
+        if (trace != null) {
+            trace.mark(FrameTrace.Point.DETECTION_START);
+        }
+        Task<ClassificationResult> task =
+                classifier.classifyFrame(data, frameMetadata.getWidth(), frameMetadata.getHeight());
+        // Unless the camera preview is visible, the frame is drawn as the background once the
+        // result is in, so keep the camera from reusing its buffer until then.
+        final boolean drawFrame = !graphicOverlay.isCameraPreviewVisible();
+        final FrameBuffer frameBuffer = drawFrame ? frameMetadata.getFrameBuffer() : null;
+        if (frameBuffer != null) {
+            frameBuffer.retain();
+        }
+        task
                 .addOnSuccessListener(
                         activity,
-                        new OnSuccessListener<List<String>>() {
+                        new OnSuccessListener<ClassificationResult>() {
                             @Override
-                            public void onSuccess(List<String> result) {
+                            public void onSuccess(ClassificationResult result) {
+                                if (trace != null) {
+                                    trace.mark(FrameTrace.Point.DETECTION_END);
+                                }
                                 LabelGraphic labelGraphic = new LabelGraphic(graphicOverlay,
                                         result);
-                                Bitmap bitmap = BitmapUtils.getBitmap(data, frameMetadata);
-                                CameraImageGraphic imageGraphic =
-                                        new CameraImageGraphic(graphicOverlay, bitmap);
-                                graphicOverlay.clear();
-                                graphicOverlay.add(imageGraphic);
-                                graphicOverlay.add(labelGraphic);
-                                graphicOverlay.postInvalidate();
+                                GraphicOverlay.Scene.Builder scene = graphicOverlay.newScene();
+                                if (drawFrame) {
+                                    Bitmap bitmap = BitmapUtils.getBitmap(data, frameMetadata);
+                                    scene.add(new CameraImageGraphic(graphicOverlay, bitmap));
+                                }
+                                scene.add(labelGraphic);
+                                graphicOverlay.publish(scene.build());
+                                if (trace != null) {
+                                    trace.mark(FrameTrace.Point.ON_SUCCESS);
+                                    graphicOverlay.setFrameTrace(trace);
+                                }
                             }
                         })
                 .addOnFailureListener(
@@ -82,6 +139,17 @@ public class CustomImageClassifierProcessor implements VisionImageProcessor {
                                 Log.d(TAG, "Custom classifier failed: " + e);
                                 e.printStackTrace();
                             }
+                        })
+                // Not scoped to the activity, so the buffer goes back to the camera even if the
+                // activity stops before the classification completes.
+                .addOnCompleteListener(
+                        new OnCompleteListener<ClassificationResult>() {
+                            @Override
+                            public void onComplete(@NonNull Task<ClassificationResult> task) {
+                                if (frameBuffer != null) {
+                                    frameBuffer.release();
+                                }
+                            }
                         });
     }
 
@@ -91,6 +159,9 @@ public class CustomImageClassifierProcessor implements VisionImageProcessor {
     }
 
     @Override
-    public void stop() {
+    public synchronized void stop() {
+        if (classifier != null) {
+            classifier.close();
+        }
     }
 }
@@ -20,20 +20,18 @@ import android.graphics.Paint;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay.Graphic;
 
-import java.util.List;
-
 /** Graphic instance for rendering image labels. */
 public class LabelGraphic extends Graphic {
 
   private final Paint textPaint;
   private final GraphicOverlay overlay;
 
-  private List<String> labels;
+  private final ClassificationResult result;
 
-  LabelGraphic(GraphicOverlay overlay, List<String> labels) {
+  LabelGraphic(GraphicOverlay overlay, ClassificationResult result) {
     super(overlay);
     this.overlay = overlay;
-    this.labels = labels;
+    this.result = result;
     textPaint = new Paint();
     textPaint.setColor(Color.WHITE);
     textPaint.setTextSize(60.0f);
@@ -44,8 +42,9 @@ public class LabelGraphic extends Graphic {
     float x = overlay.getWidth() / 4.0f;
     float y = overlay.getHeight() / 4.0f;
 
-    for (String label : labels) {
-      canvas.drawText(label, x, y, textPaint);
+    // Draws the best match on top, with the lower ranked labels below it.
+    for (int rank = result.size() - 1; rank >= 0; rank--) {
+      canvas.drawText(result.getDisplayText(rank), x, y, textPaint);
       y = y - 62.0f;
     }
   }
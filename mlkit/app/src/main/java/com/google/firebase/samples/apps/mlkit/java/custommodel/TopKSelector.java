@@ -0,0 +1,54 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.custommodel;
+
+/**
+ * Picks the highest scoring labels straight from a model's raw output array.
+ *
+ * <p>Selection keeps a fixed-size, score-sorted window of K entries and only inserts scores that
+ * beat the current K-th best, so nothing is boxed or allocated per label. The selector holds no
+ * state of its own; all writes go to the caller-supplied {@link ClassificationResult}, so
+ * classifiers running concurrently only need their own result objects.
+ */
+class TopKSelector {
+
+    private TopKSelector() {}
+
+    /** Selects the top entries of a float model output row. */
+    static void select(float[] scores, int count, ClassificationResult out) {
+        out.reset();
+        for (int i = 0; i < count; i++) {
+            out.offer(i, scores[i]);
+        }
+    }
+
+    /**
+     * Selects the top entries of a quantized model output row, whose scores are bytes in
+     * [0, 255].
+     */
+    static void select(byte[] scores, int count, ClassificationResult out) {
+        out.reset();
+        int threshold = -1;
+        for (int i = 0; i < count; i++) {
+            int score = scores[i] & 0xff;
+            // Cheap integer pre-check before converting to float.
+            if (score > threshold || !out.isFull()) {
+                out.offer(i, score / 255.0f);
+                if (out.isFull() && out.size() > 0) {
+                    threshold = Math.round(out.getScore(out.size() - 1) * 255.0f);
+                }
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.google.firebase.samples.apps.mlkit.java.facedetection;
 
 import android.graphics.Bitmap;
+import android.graphics.Rect;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import android.util.Log;
@@ -14,6 +15,9 @@ import com.google.firebase.ml.vision.face.FirebaseVisionFaceDetectorOptions;
 import com.google.firebase.samples.apps.mlkit.common.CameraImageGraphic;
 import com.google.firebase.samples.apps.mlkit.common.FrameMetadata;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
+import com.google.firebase.samples.apps.mlkit.common.GraphicPool;
+import com.google.firebase.samples.apps.mlkit.java.DetectionScheduler;
+import com.google.firebase.samples.apps.mlkit.java.RegionOfInterestPolicy;
 import com.google.firebase.samples.apps.mlkit.java.VisionProcessorBase;
 
 import java.io.IOException;
@@ -28,6 +32,11 @@ public class FaceContourDetectorProcessor extends VisionProcessorBase<List<Fireb
 
     private final FirebaseVisionFaceDetector detector;
 
+    // Recycles the graphics of earlier frames, created for the first overlay drawn on.
+    private GraphicPool<FaceContourGraphic> faceGraphics;
+
+    private final FaceSmoother smoother = new FaceSmoother(true /* withContours */);
+
     public FaceContourDetectorProcessor() {
         FirebaseVisionFaceDetectorOptions options =
                 new FirebaseVisionFaceDetectorOptions.Builder()
@@ -36,6 +45,25 @@ public class FaceContourDetectorProcessor extends VisionProcessorBase<List<Fireb
                         .build();
 
         detector = FirebaseVision.getInstance().getVisionFaceDetector(options);
+
+        // Look for faces around the last ones, and scan the whole frame every tenth time.
+        setDetectionPolicy(new RegionOfInterestPolicy<>(
+                new DetectionScheduler.RegionExtractor<List<FirebaseVisionFace>>() {
+                    @Nullable
+                    @Override
+                    public Rect getBounds(List<FirebaseVisionFace> faces) {
+                        if (faces.isEmpty()) {
+                            return null;
+                        }
+                        Rect bounds = new Rect(faces.get(0).getBoundingBox());
+                        for (int i = 1; i < faces.size(); ++i) {
+                            bounds.union(faces.get(i).getBoundingBox());
+                        }
+                        return bounds;
+                    }
+                },
+                0.5f /* margin */,
+                10 /* fullFrameInterval */));
     }
 
     @Override
@@ -58,17 +86,22 @@ public class FaceContourDetectorProcessor extends VisionProcessorBase<List<Fireb
             @NonNull List<FirebaseVisionFace> faces,
             @NonNull FrameMetadata frameMetadata,
             @NonNull GraphicOverlay graphicOverlay) {
-        graphicOverlay.clear();
+        smoother.onResults(faces);
+        GraphicOverlay.Scene.Builder scene = newScene(graphicOverlay);
+        if (faceGraphics == null) {
+            faceGraphics = FaceContourGraphic.newPool(graphicOverlay);
+        }
         if (originalCameraImage != null) {
             CameraImageGraphic imageGraphic = new CameraImageGraphic(graphicOverlay, originalCameraImage);
-            graphicOverlay.add(imageGraphic);
+            scene.add(imageGraphic);
         }
         for (int i = 0; i < faces.size(); ++i) {
             FirebaseVisionFace face = faces.get(i);
-            FaceContourGraphic faceGraphic = new FaceContourGraphic(graphicOverlay, face);
-            graphicOverlay.add(faceGraphic);
+            FaceContourGraphic faceGraphic = faceGraphics.obtain()
+                    .bind(smoother.getTracker(), face, FaceSmoother.getTrackingId(face, i));
+            scene.add(faceGraphic);
         }
-        graphicOverlay.postInvalidate();
+        graphicOverlay.publish(scene.build());
     }
 
     @Override
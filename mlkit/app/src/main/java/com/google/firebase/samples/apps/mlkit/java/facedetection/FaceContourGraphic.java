@@ -4,12 +4,17 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import com.google.firebase.ml.vision.face.FirebaseVisionFace;
-import com.google.firebase.ml.vision.face.FirebaseVisionFaceContour;
 import com.google.firebase.ml.vision.face.FirebaseVisionFaceLandmark;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay.Graphic;
+import com.google.firebase.samples.apps.mlkit.common.GraphicPool;
 
-/** Graphic instance for rendering face contours graphic overlay view. */
+import java.util.Locale;
+
+/**
+ * Graphic instance for rendering face contours graphic overlay view. The face is drawn where its
+ * {@link FaceTracker} predicts it to be at the time of the draw, redrawing until the face is lost.
+ */
 public class FaceContourGraphic extends Graphic {
 
   private static final float FACE_POSITION_RADIUS = 4.0f;
@@ -18,16 +23,31 @@ public class FaceContourGraphic extends Graphic {
   private static final float ID_X_OFFSET = -70.0f;
   private static final float BOX_STROKE_WIDTH = 5.0f;
 
+  private static final int[] DRAWN_LANDMARKS = {
+    FirebaseVisionFaceLandmark.LEFT_EYE,
+    FirebaseVisionFaceLandmark.RIGHT_EYE,
+    FirebaseVisionFaceLandmark.LEFT_CHEEK,
+    FirebaseVisionFaceLandmark.RIGHT_CHEEK
+  };
+
   private final Paint facePositionPaint;
   private final Paint idPaint;
   private final Paint boxPaint;
 
-  private volatile FirebaseVisionFace firebaseVisionFace;
+  // Filled with the predicted positions on every draw.
+  private final float[] positions = new float[FaceSmoother.CAPACITY];
 
-  public FaceContourGraphic(GraphicOverlay overlay, FirebaseVisionFace face) {
+  private volatile FaceTracker tracker;
+  private volatile int trackingId;
+  private volatile int landmarkMask;
+  private volatile String idText;
+  private volatile String happinessText;
+  private volatile String rightEyeText;
+  private volatile String leftEyeText;
+
+  private FaceContourGraphic(GraphicOverlay overlay) {
     super(overlay);
 
-    this.firebaseVisionFace = face;
     final int selectedColor = Color.WHITE;
 
     facePositionPaint = new Paint();
@@ -43,91 +63,114 @@ public class FaceContourGraphic extends Graphic {
     boxPaint.setStrokeWidth(BOX_STROKE_WIDTH);
   }
 
+  /** Returns a pool of face graphics for {@code overlay}, to be bound with {@link #bind}. */
+  public static GraphicPool<FaceContourGraphic> newPool(final GraphicOverlay overlay) {
+    return new GraphicPool<>(
+        new GraphicPool.Factory<FaceContourGraphic>() {
+          @Override
+          public FaceContourGraphic create() {
+            return new FaceContourGraphic(overlay);
+          }
+        });
+  }
+
+  /**
+   * Sets the face to draw, whose positions are tracked by {@code tracker} under {@code
+   * trackingId}. The texts are formatted here, so that drawing allocates nothing.
+   */
+  public FaceContourGraphic bind(FaceTracker tracker, FirebaseVisionFace face, int trackingId) {
+    idText = "id: " + face.getTrackingId();
+    happinessText =
+        face.getSmilingProbability() >= 0
+            ? "happiness: " + String.format(Locale.US, "%.2f", face.getSmilingProbability())
+            : null;
+    rightEyeText =
+        face.getRightEyeOpenProbability() >= 0
+            ? "right eye: " + String.format(Locale.US, "%.2f", face.getRightEyeOpenProbability())
+            : null;
+    leftEyeText =
+        face.getLeftEyeOpenProbability() >= 0
+            ? "left eye: " + String.format(Locale.US, "%.2f", face.getLeftEyeOpenProbability())
+            : null;
+    landmarkMask = FaceSmoother.getLandmarkMask(face);
+    this.trackingId = trackingId;
+    this.tracker = tracker;
+    return this;
+  }
+
+  @Override
+  public void onRecycled() {
+    tracker = null;
+    idText = null;
+    happinessText = null;
+    rightEyeText = null;
+    leftEyeText = null;
+  }
+
   /** Draws the face annotations for position on the supplied canvas. */
   @Override
   public void draw(Canvas canvas) {
-    FirebaseVisionFace face = firebaseVisionFace;
-    if (face == null) {
+    FaceTracker faceTracker = tracker;
+    if (faceTracker == null) {
+      return;
+    }
+    int count = faceTracker.predict(trackingId, System.nanoTime(), positions);
+    if (count < 0) {
       return;
     }
 
     // Draws a circle at the position of the detected face, with the face's track id below.
-    float x = translateX(face.getBoundingBox().centerX());
-    float y = translateY(face.getBoundingBox().centerY());
+    float boxLeft = positions[FaceSmoother.BOX_LEFT];
+    float boxTop = positions[FaceSmoother.BOX_TOP];
+    float boxRight = positions[FaceSmoother.BOX_RIGHT];
+    float boxBottom = positions[FaceSmoother.BOX_BOTTOM];
+    float x = translateX((boxLeft + boxRight) / 2.0f);
+    float y = translateY((boxTop + boxBottom) / 2.0f);
     canvas.drawCircle(x, y, FACE_POSITION_RADIUS, facePositionPaint);
-    canvas.drawText("id: " + face.getTrackingId(), x + ID_X_OFFSET, y + ID_Y_OFFSET, idPaint);
+    canvas.drawText(idText, x + ID_X_OFFSET, y + ID_Y_OFFSET, idPaint);
 
     // Draws a bounding box around the face.
-    float xOffset = scaleX(face.getBoundingBox().width() / 2.0f);
-    float yOffset = scaleY(face.getBoundingBox().height() / 2.0f);
+    float xOffset = scaleX((boxRight - boxLeft) / 2.0f);
+    float yOffset = scaleY((boxBottom - boxTop) / 2.0f);
     float left = x - xOffset;
     float top = y - yOffset;
     float right = x + xOffset;
     float bottom = y + yOffset;
     canvas.drawRect(left, top, right, bottom, boxPaint);
 
-    FirebaseVisionFaceContour contour = face.getContour(FirebaseVisionFaceContour.ALL_POINTS);
-    for (com.google.firebase.ml.vision.common.FirebaseVisionPoint point : contour.getPoints()) {
-      float px = translateX(point.getX());
-      float py = translateY(point.getY());
+    for (int i = FaceSmoother.CONTOUR_START; i + 1 < count; i += 2) {
+      float px = translateX(positions[i]);
+      float py = translateY(positions[i + 1]);
       canvas.drawCircle(px, py, FACE_POSITION_RADIUS, facePositionPaint);
     }
 
-    if (face.getSmilingProbability() >= 0) {
-      canvas.drawText(
-          "happiness: " + String.format("%.2f", face.getSmilingProbability()),
-          x + ID_X_OFFSET * 3,
-          y - ID_Y_OFFSET,
-          idPaint);
+    String happiness = happinessText;
+    if (happiness != null) {
+      canvas.drawText(happiness, x + ID_X_OFFSET * 3, y - ID_Y_OFFSET, idPaint);
     }
 
-    if (face.getRightEyeOpenProbability() >= 0) {
-      canvas.drawText(
-          "right eye: " + String.format("%.2f", face.getRightEyeOpenProbability()),
-          x - ID_X_OFFSET,
-          y,
-          idPaint);
+    String rightEye = rightEyeText;
+    if (rightEye != null) {
+      canvas.drawText(rightEye, x - ID_X_OFFSET, y, idPaint);
     }
-    if (face.getLeftEyeOpenProbability() >= 0) {
-      canvas.drawText(
-          "left eye: " + String.format("%.2f", face.getLeftEyeOpenProbability()),
-          x + ID_X_OFFSET * 6,
-          y,
-          idPaint);
-    }
-    FirebaseVisionFaceLandmark leftEye = face.getLandmark(FirebaseVisionFaceLandmark.LEFT_EYE);
-    if (leftEye != null && leftEye.getPosition() != null) {
-      canvas.drawCircle(
-          translateX(leftEye.getPosition().getX()),
-          translateY(leftEye.getPosition().getY()),
-          FACE_POSITION_RADIUS,
-          facePositionPaint);
-    }
-    FirebaseVisionFaceLandmark rightEye = face.getLandmark(FirebaseVisionFaceLandmark.RIGHT_EYE);
-    if (rightEye != null && rightEye.getPosition() != null) {
-      canvas.drawCircle(
-          translateX(rightEye.getPosition().getX()),
-          translateY(rightEye.getPosition().getY()),
-          FACE_POSITION_RADIUS,
-          facePositionPaint);
+    String leftEye = leftEyeText;
+    if (leftEye != null) {
+      canvas.drawText(leftEye, x + ID_X_OFFSET * 6, y, idPaint);
     }
 
-    FirebaseVisionFaceLandmark leftCheek = face.getLandmark(FirebaseVisionFaceLandmark.LEFT_CHEEK);
-    if (leftCheek != null && leftCheek.getPosition() != null) {
-      canvas.drawCircle(
-          translateX(leftCheek.getPosition().getX()),
-          translateY(leftCheek.getPosition().getY()),
-          FACE_POSITION_RADIUS,
-          facePositionPaint);
-    }
-    FirebaseVisionFaceLandmark rightCheek =
-        face.getLandmark(FirebaseVisionFaceLandmark.RIGHT_CHEEK);
-    if (rightCheek != null && rightCheek.getPosition() != null) {
-      canvas.drawCircle(
-          translateX(rightCheek.getPosition().getX()),
-          translateY(rightCheek.getPosition().getY()),
-          FACE_POSITION_RADIUS,
-          facePositionPaint);
+    int mask = landmarkMask;
+    for (int landmark : DRAWN_LANDMARKS) {
+      if (FaceSmoother.hasLandmark(mask, landmark)) {
+        int index = FaceSmoother.getLandmarkIndex(landmark);
+        canvas.drawCircle(
+            translateX(positions[index]),
+            translateY(positions[index + 1]),
+            FACE_POSITION_RADIUS,
+            facePositionPaint);
+      }
     }
+
+    // Keeps moving the face along its prediction between detections.
+    postInvalidate();
   }
 }
@@ -31,6 +31,7 @@ import com.google.firebase.samples.apps.mlkit.R;
 import com.google.firebase.samples.apps.mlkit.common.CameraImageGraphic;
 import com.google.firebase.samples.apps.mlkit.common.FrameMetadata;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
+import com.google.firebase.samples.apps.mlkit.java.EveryNthFramePolicy;
 import com.google.firebase.samples.apps.mlkit.java.VisionProcessorBase;
 
 import java.io.IOException;
@@ -47,16 +48,22 @@ public class FaceDetectionProcessor extends VisionProcessorBase<List<FirebaseVis
 
     private final Bitmap overlayBitmap;
 
+    private final FaceSmoother smoother = new FaceSmoother(false /* withContours */);
+
     public FaceDetectionProcessor(Resources resources) {
         FirebaseVisionFaceDetectorOptions options =
                 new FirebaseVisionFaceDetectorOptions.Builder()
                         .setClassificationMode(FirebaseVisionFaceDetectorOptions.ALL_CLASSIFICATIONS)
                         .setLandmarkMode(FirebaseVisionFaceDetectorOptions.ALL_LANDMARKS)
+                        .enableTracking()
                         .build();
 
         detector = FirebaseVision.getInstance().getVisionFaceDetector(options);
 
         overlayBitmap = BitmapFactory.decodeResource(resources, R.drawable.clown_nose);
+
+        // The faces are smoothed and extrapolated in between, so every other frame is enough.
+        setDetectionPolicy(new EveryNthFramePolicy<List<FirebaseVisionFace>>(2));
     }
 
     @Override
@@ -79,10 +86,11 @@ public class FaceDetectionProcessor extends VisionProcessorBase<List<FirebaseVis
             @NonNull List<FirebaseVisionFace> faces,
             @NonNull FrameMetadata frameMetadata,
             @NonNull GraphicOverlay graphicOverlay) {
-        graphicOverlay.clear();
+        smoother.onResults(faces);
+        GraphicOverlay.Scene.Builder scene = newScene(graphicOverlay);
         if (originalCameraImage != null) {
             CameraImageGraphic imageGraphic = new CameraImageGraphic(graphicOverlay, originalCameraImage);
-            graphicOverlay.add(imageGraphic);
+            scene.add(imageGraphic);
         }
         for (int i = 0; i < faces.size(); ++i) {
             FirebaseVisionFace face = faces.get(i);
@@ -90,10 +98,11 @@ public class FaceDetectionProcessor extends VisionProcessorBase<List<FirebaseVis
             int cameraFacing =
                     frameMetadata != null ? frameMetadata.getCameraFacing() :
                             Camera.CameraInfo.CAMERA_FACING_BACK;
-            FaceGraphic faceGraphic = new FaceGraphic(graphicOverlay, face, cameraFacing, overlayBitmap);
-            graphicOverlay.add(faceGraphic);
+            FaceGraphic faceGraphic = new FaceGraphic(graphicOverlay, smoother.getTracker(), face,
+                    FaceSmoother.getTrackingId(face, i), cameraFacing, overlayBitmap);
+            scene.add(faceGraphic);
         }
-        graphicOverlay.postInvalidate();
+        graphicOverlay.publish(scene.build());
     }
 
     @Override
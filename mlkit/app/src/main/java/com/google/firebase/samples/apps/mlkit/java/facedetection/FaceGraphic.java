@@ -21,15 +21,17 @@ import android.graphics.Paint;
 import android.graphics.Rect;
 
 import com.google.android.gms.vision.CameraSource;
-import com.google.firebase.ml.vision.common.FirebaseVisionPoint;
 import com.google.firebase.ml.vision.face.FirebaseVisionFace;
 import com.google.firebase.ml.vision.face.FirebaseVisionFaceLandmark;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay.Graphic;
 
+import java.util.Locale;
+
 /**
  * Graphic instance for rendering face position, orientation, and landmarks within an associated
- * graphic overlay view.
+ * graphic overlay view. The face is drawn where its {@link FaceTracker} predicts it to be at the
+ * time of the draw, redrawing until the face is lost.
  */
 public class FaceGraphic extends Graphic {
     private static final float FACE_POSITION_RADIUS = 4.0f;
@@ -44,16 +46,41 @@ public class FaceGraphic extends Graphic {
     private final Paint idPaint;
     private final Paint boxPaint;
 
-    private volatile FirebaseVisionFace firebaseVisionFace;
+    private final FaceTracker tracker;
+    private final int trackingId;
+    private final int landmarkMask;
+    private final String idText;
+    private final String happinessText;
+    private final String leftEyeText;
+    private final String rightEyeText;
+
+    // Filled with the predicted positions on every draw.
+    private final float[] positions = new float[FaceSmoother.CAPACITY];
+    private final Rect bitmapBounds = new Rect();
 
     private final Bitmap overlayBitmap;
 
-    public FaceGraphic(GraphicOverlay overlay, FirebaseVisionFace face, int facing, Bitmap overlayBitmap) {
+    public FaceGraphic(
+            GraphicOverlay overlay,
+            FaceTracker tracker,
+            FirebaseVisionFace face,
+            int trackingId,
+            int facing,
+            Bitmap overlayBitmap) {
         super(overlay);
 
-        firebaseVisionFace = face;
+        this.tracker = tracker;
+        this.trackingId = trackingId;
         this.facing = facing;
         this.overlayBitmap = overlayBitmap;
+        idText = "id: " + face.getTrackingId();
+        happinessText =
+                "happiness: " + String.format(Locale.US, "%.2f", face.getSmilingProbability());
+        leftEyeText =
+                "left eye: " + String.format(Locale.US, "%.2f", face.getLeftEyeOpenProbability());
+        rightEyeText =
+                "right eye: " + String.format(Locale.US, "%.2f", face.getRightEyeOpenProbability());
+        landmarkMask = FaceSmoother.getLandmarkMask(face);
         final int selectedColor = Color.WHITE;
 
         facePositionPaint = new Paint();
@@ -74,50 +101,33 @@ public class FaceGraphic extends Graphic {
      */
     @Override
     public void draw(Canvas canvas) {
-        FirebaseVisionFace face = firebaseVisionFace;
-        if (face == null) {
+        if (tracker.predict(trackingId, System.nanoTime(), positions) < 0) {
             return;
         }
+        float boxLeft = positions[FaceSmoother.BOX_LEFT];
+        float boxTop = positions[FaceSmoother.BOX_TOP];
+        float boxRight = positions[FaceSmoother.BOX_RIGHT];
+        float boxBottom = positions[FaceSmoother.BOX_BOTTOM];
 
         // Draws a circle at the position of the detected face, with the face's track id below.
         // An offset is used on the Y axis in order to draw the circle, face id and happiness level in the top area
         // of the face's bounding box
-        float x = translateX(face.getBoundingBox().centerX());
-        float y = translateY(face.getBoundingBox().centerY());
+        float x = translateX((boxLeft + boxRight) / 2.0f);
+        float y = translateY((boxTop + boxBottom) / 2.0f);
         canvas.drawCircle(x, y - 4 * ID_Y_OFFSET, FACE_POSITION_RADIUS, facePositionPaint);
-        canvas.drawText("id: " + face.getTrackingId(), x + ID_X_OFFSET, y - 3 * ID_Y_OFFSET, idPaint);
-        canvas.drawText(
-                "happiness: " + String.format("%.2f", face.getSmilingProbability()),
-                x + ID_X_OFFSET * 3,
-                y - 2 * ID_Y_OFFSET,
-                idPaint);
+        canvas.drawText(idText, x + ID_X_OFFSET, y - 3 * ID_Y_OFFSET, idPaint);
+        canvas.drawText(happinessText, x + ID_X_OFFSET * 3, y - 2 * ID_Y_OFFSET, idPaint);
         if (facing == CameraSource.CAMERA_FACING_FRONT) {
-            canvas.drawText(
-                    "right eye: " + String.format("%.2f", face.getRightEyeOpenProbability()),
-                    x - ID_X_OFFSET,
-                    y,
-                    idPaint);
-            canvas.drawText(
-                    "left eye: " + String.format("%.2f", face.getLeftEyeOpenProbability()),
-                    x + ID_X_OFFSET * 6,
-                    y,
-                    idPaint);
+            canvas.drawText(rightEyeText, x - ID_X_OFFSET, y, idPaint);
+            canvas.drawText(leftEyeText, x + ID_X_OFFSET * 6, y, idPaint);
         } else {
-            canvas.drawText(
-                    "left eye: " + String.format("%.2f", face.getLeftEyeOpenProbability()),
-                    x - ID_X_OFFSET,
-                    y,
-                    idPaint);
-            canvas.drawText(
-                    "right eye: " + String.format("%.2f", face.getRightEyeOpenProbability()),
-                    x + ID_X_OFFSET * 6,
-                    y,
-                    idPaint);
+            canvas.drawText(leftEyeText, x - ID_X_OFFSET, y, idPaint);
+            canvas.drawText(rightEyeText, x + ID_X_OFFSET * 6, y, idPaint);
         }
 
         // Draws a bounding box around the face.
-        float xOffset = scaleX(face.getBoundingBox().width() / 2.0f);
-        float yOffset = scaleY(face.getBoundingBox().height() / 2.0f);
+        float xOffset = scaleX((boxRight - boxLeft) / 2.0f);
+        float yOffset = scaleY((boxBottom - boxTop) / 2.0f);
         float left = x - xOffset;
         float top = y - yOffset;
         float right = x + xOffset;
@@ -125,48 +135,51 @@ public class FaceGraphic extends Graphic {
         canvas.drawRect(left, top, right, bottom, boxPaint);
 
         // draw landmarks
-        drawLandmarkPosition(canvas, face, FirebaseVisionFaceLandmark.MOUTH_BOTTOM);
-        drawLandmarkPosition(canvas, face, FirebaseVisionFaceLandmark.LEFT_CHEEK);
-        drawLandmarkPosition(canvas, face, FirebaseVisionFaceLandmark.LEFT_EAR);
-        drawLandmarkPosition(canvas, face, FirebaseVisionFaceLandmark.MOUTH_LEFT);
-        drawLandmarkPosition(canvas, face, FirebaseVisionFaceLandmark.LEFT_EYE);
-        drawBitmapOverLandmarkPosition(canvas, face, FirebaseVisionFaceLandmark.NOSE_BASE);
-        drawLandmarkPosition(canvas, face, FirebaseVisionFaceLandmark.RIGHT_CHEEK);
-        drawLandmarkPosition(canvas, face, FirebaseVisionFaceLandmark.RIGHT_EAR);
-        drawLandmarkPosition(canvas, face, FirebaseVisionFaceLandmark.RIGHT_EYE);
-        drawLandmarkPosition(canvas, face, FirebaseVisionFaceLandmark.MOUTH_RIGHT);
+        drawLandmarkPosition(canvas, FirebaseVisionFaceLandmark.MOUTH_BOTTOM);
+        drawLandmarkPosition(canvas, FirebaseVisionFaceLandmark.LEFT_CHEEK);
+        drawLandmarkPosition(canvas, FirebaseVisionFaceLandmark.LEFT_EAR);
+        drawLandmarkPosition(canvas, FirebaseVisionFaceLandmark.MOUTH_LEFT);
+        drawLandmarkPosition(canvas, FirebaseVisionFaceLandmark.LEFT_EYE);
+        drawBitmapOverLandmarkPosition(
+                canvas, FirebaseVisionFaceLandmark.NOSE_BASE, boxRight - boxLeft);
+        drawLandmarkPosition(canvas, FirebaseVisionFaceLandmark.RIGHT_CHEEK);
+        drawLandmarkPosition(canvas, FirebaseVisionFaceLandmark.RIGHT_EAR);
+        drawLandmarkPosition(canvas, FirebaseVisionFaceLandmark.RIGHT_EYE);
+        drawLandmarkPosition(canvas, FirebaseVisionFaceLandmark.MOUTH_RIGHT);
+
+        // Keeps moving the face along its prediction between detections.
+        postInvalidate();
     }
 
-    private void drawLandmarkPosition(Canvas canvas, FirebaseVisionFace face, int landmarkID) {
-        FirebaseVisionFaceLandmark landmark = face.getLandmark(landmarkID);
-        if (landmark != null) {
-            FirebaseVisionPoint point = landmark.getPosition();
+    private void drawLandmarkPosition(Canvas canvas, int landmarkID) {
+        if (FaceSmoother.hasLandmark(landmarkMask, landmarkID)) {
+            int index = FaceSmoother.getLandmarkIndex(landmarkID);
             canvas.drawCircle(
-                    translateX(point.getX()),
-                    translateY(point.getY()),
+                    translateX(positions[index]),
+                    translateY(positions[index + 1]),
                     10f, idPaint);
         }
     }
 
-    private void drawBitmapOverLandmarkPosition(Canvas canvas, FirebaseVisionFace face, int landmarkID) {
-        FirebaseVisionFaceLandmark landmark = face.getLandmark(landmarkID);
-        if (landmark == null) {
+    private void drawBitmapOverLandmarkPosition(Canvas canvas, int landmarkID, float faceWidth) {
+        if (!FaceSmoother.hasLandmark(landmarkMask, landmarkID)) {
             return;
         }
 
-        FirebaseVisionPoint point = landmark.getPosition();
+        int index = FaceSmoother.getLandmarkIndex(landmarkID);
 
         if (overlayBitmap != null) {
-            float imageEdgeSizeBasedOnFaceSize = (face.getBoundingBox().width() / 4.0f);
+            float imageEdgeSizeBasedOnFaceSize = (faceWidth / 4.0f);
 
-            int left = (int) (translateX(point.getX()) - imageEdgeSizeBasedOnFaceSize);
-            int top = (int) (translateY(point.getY()) - imageEdgeSizeBasedOnFaceSize);
-            int right = (int) (translateX(point.getX()) + imageEdgeSizeBasedOnFaceSize);
-            int bottom = (int) (translateY(point.getY()) + imageEdgeSizeBasedOnFaceSize);
+            bitmapBounds.set(
+                    (int) (translateX(positions[index]) - imageEdgeSizeBasedOnFaceSize),
+                    (int) (translateY(positions[index + 1]) - imageEdgeSizeBasedOnFaceSize),
+                    (int) (translateX(positions[index]) + imageEdgeSizeBasedOnFaceSize),
+                    (int) (translateY(positions[index + 1]) + imageEdgeSizeBasedOnFaceSize));
 
             canvas.drawBitmap(overlayBitmap,
                     null,
-                    new Rect(left, top, right, bottom),
+                    bitmapBounds,
                     null);
         }
 
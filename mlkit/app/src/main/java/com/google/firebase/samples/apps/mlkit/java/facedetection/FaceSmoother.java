@@ -0,0 +1,171 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.facedetection;
+
+import android.graphics.Rect;
+import androidx.annotation.Nullable;
+
+import com.google.firebase.ml.vision.common.FirebaseVisionPoint;
+import com.google.firebase.ml.vision.face.FirebaseVisionFace;
+import com.google.firebase.ml.vision.face.FirebaseVisionFaceContour;
+import com.google.firebase.ml.vision.face.FirebaseVisionFaceLandmark;
+
+import java.util.List;
+
+/**
+ * Feeds the faces of every detection to a {@link FaceTracker}, smoothed by a {@link
+ * OneEuroFilter}, so that the face graphics can draw their positions as predicted for the time of
+ * the draw rather than as detected.
+ *
+ * <p>The positions of a face are laid out as its bounding box, then the {@link #LANDMARKS}, then
+ * the points of its contour, all in the coordinates the detector returned them in; the graphics
+ * translate them with the offset and scale of the frame they draw. Landmarks that were not
+ * detected are placed at the center of the bounding box.
+ */
+class FaceSmoother {
+
+    static final int BOX_LEFT = 0;
+    static final int BOX_TOP = 1;
+    static final int BOX_RIGHT = 2;
+    static final int BOX_BOTTOM = 3;
+
+    /** The landmarks in the positions, in order. */
+    static final int[] LANDMARKS = {
+            FirebaseVisionFaceLandmark.MOUTH_BOTTOM,
+            FirebaseVisionFaceLandmark.LEFT_CHEEK,
+            FirebaseVisionFaceLandmark.LEFT_EAR,
+            FirebaseVisionFaceLandmark.MOUTH_LEFT,
+            FirebaseVisionFaceLandmark.LEFT_EYE,
+            FirebaseVisionFaceLandmark.NOSE_BASE,
+            FirebaseVisionFaceLandmark.RIGHT_CHEEK,
+            FirebaseVisionFaceLandmark.RIGHT_EAR,
+            FirebaseVisionFaceLandmark.RIGHT_EYE,
+            FirebaseVisionFaceLandmark.MOUTH_RIGHT
+    };
+
+    private static final int LANDMARKS_START = 4;
+
+    /** Where the contour points start in the positions, x and y alternating. */
+    static final int CONTOUR_START = LANDMARKS_START + 2 * LANDMARKS.length;
+
+    // ML Kit finds 133 points on a face, the rest is headroom.
+    private static final int MAX_CONTOUR_POINTS = 160;
+
+    /** The most positions a face has. */
+    static final int CAPACITY = CONTOUR_START + 2 * MAX_CONTOUR_POINTS;
+
+    private final FaceTracker tracker;
+    private final boolean withContours;
+    private final float[] positions = new float[CAPACITY];
+
+    // The results last added, as skipped frames draw the same results again.
+    @Nullable private List<FirebaseVisionFace> lastFaces;
+
+    FaceSmoother(boolean withContours) {
+        this.withContours = withContours;
+        tracker = new FaceTracker(CAPACITY, FaceTracker.DEFAULT_HISTORY_SIZE,
+                OneEuroFilter.factory(
+                        OneEuroFilter.DEFAULT_MIN_CUTOFF,
+                        OneEuroFilter.DEFAULT_BETA,
+                        OneEuroFilter.DEFAULT_DERIVATIVE_CUTOFF));
+    }
+
+    FaceTracker getTracker() {
+        return tracker;
+    }
+
+    /** Adds {@code faces} to the tracker, unless they were added already. */
+    void onResults(List<FirebaseVisionFace> faces) {
+        if (faces == lastFaces) {
+            return;
+        }
+        lastFaces = faces;
+        // Results are timed when they arrive, on the clock the graphics predict with.
+        tracker.beginFrame(System.nanoTime());
+        for (int i = 0; i < faces.size(); i++) {
+            FirebaseVisionFace face = faces.get(i);
+            int count = writePositions(face);
+            tracker.update(getTrackingId(face, i), positions, count);
+        }
+        tracker.endFrame();
+    }
+
+    /**
+     * Returns the id {@code face}, the {@code index}th of its frame, is tracked under. Faces found
+     * with contours have no tracking id, but only the most prominent face is found then.
+     */
+    static int getTrackingId(FirebaseVisionFace face, int index) {
+        int trackingId = face.getTrackingId();
+        return trackingId == FirebaseVisionFace.INVALID_ID ? index : trackingId;
+    }
+
+    /** Returns where the x coordinate of {@code landmark} is in the positions. */
+    static int getLandmarkIndex(int landmark) {
+        for (int i = 0; i < LANDMARKS.length; i++) {
+            if (LANDMARKS[i] == landmark) {
+                return LANDMARKS_START + 2 * i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown landmark: " + landmark);
+    }
+
+    /** Returns a bit mask of the {@link #LANDMARKS} that were detected on {@code face}. */
+    static int getLandmarkMask(FirebaseVisionFace face) {
+        int mask = 0;
+        for (int i = 0; i < LANDMARKS.length; i++) {
+            FirebaseVisionFaceLandmark landmark = face.getLandmark(LANDMARKS[i]);
+            if (landmark != null && landmark.getPosition() != null) {
+                mask |= 1 << i;
+            }
+        }
+        return mask;
+    }
+
+    /** Returns whether {@code landmark} is in {@code landmarkMask}. */
+    static boolean hasLandmark(int landmarkMask, int landmark) {
+        return (landmarkMask & (1 << ((getLandmarkIndex(landmark) - LANDMARKS_START) / 2))) != 0;
+    }
+
+    private int writePositions(FirebaseVisionFace face) {
+        Rect box = face.getBoundingBox();
+        positions[BOX_LEFT] = box.left;
+        positions[BOX_TOP] = box.top;
+        positions[BOX_RIGHT] = box.right;
+        positions[BOX_BOTTOM] = box.bottom;
+        for (int i = 0; i < LANDMARKS.length; i++) {
+            FirebaseVisionFaceLandmark landmark = face.getLandmark(LANDMARKS[i]);
+            FirebaseVisionPoint point = landmark == null ? null : landmark.getPosition();
+            int index = LANDMARKS_START + 2 * i;
+            if (point != null) {
+                positions[index] = point.getX();
+                positions[index + 1] = point.getY();
+            } else {
+                positions[index] = box.exactCenterX();
+                positions[index + 1] = box.exactCenterY();
+            }
+        }
+        int count = CONTOUR_START;
+        if (withContours) {
+            List<FirebaseVisionPoint> points =
+                    face.getContour(FirebaseVisionFaceContour.ALL_POINTS).getPoints();
+            int pointCount = Math.min(points.size(), MAX_CONTOUR_POINTS);
+            for (int i = 0; i < pointCount; i++) {
+                FirebaseVisionPoint point = points.get(i);
+                positions[count++] = point.getX();
+                positions[count++] = point.getY();
+            }
+        }
+        return count;
+    }
+}
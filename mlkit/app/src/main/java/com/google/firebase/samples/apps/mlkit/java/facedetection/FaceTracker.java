@@ -0,0 +1,249 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.facedetection;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the recent positions of every face, keyed by its tracking id, to draw the faces smoothly
+ * and at the display rate while detection runs at a lower rate.
+ *
+ * <p>The positions of a face are a flat array of coordinates, e.g. its bounding box, landmarks
+ * and contour points. Every detection runs them through a temporal {@link Filter}, such as a
+ * {@link OneEuroFilter}, and keeps the filtered positions in a ring buffer. {@link #predict}
+ * extrapolates from the buffer to the time a frame is drawn.
+ *
+ * <p>Faces and their buffers are recycled, so tracking a steady set of faces allocates nothing.
+ * Every method may be called from any thread; detection results are usually added on the main
+ * thread, and predictions read while drawing.
+ */
+public class FaceTracker {
+
+    /** Smooths the positions of one face over time. */
+    public interface Filter {
+
+        /**
+         * Filters the {@code count} {@code values} starting at {@code offset} in place, {@code
+         * dtSeconds} after the previous values, or with no previous values if it is 0.
+         */
+        void filter(float[] values, int offset, int count, float dtSeconds);
+
+        /** Forgets the previous values, e.g. when the face has a different number of points. */
+        void reset();
+    }
+
+    /** Creates the filter of a newly tracked face. */
+    public interface FilterFactory {
+        Filter create(int capacity);
+    }
+
+    /** The number of detections whose positions are kept for every face by default. */
+    public static final int DEFAULT_HISTORY_SIZE = 4;
+
+    /** How far ahead of the latest detection positions are extrapolated by default. */
+    public static final long DEFAULT_MAX_EXTRAPOLATION_NANOS = 100_000_000L;
+
+    private static final class TrackedFace {
+        final float[] history;
+        final long[] timestamps;
+        @Nullable final Filter filter;
+
+        int trackingId;
+        int count;
+        // The index of the newest sample in the ring, and the number of samples in it.
+        int newest;
+        int size;
+        int missedFrames;
+        boolean seen;
+
+        TrackedFace(int capacity, int historySize, @Nullable Filter filter) {
+            history = new float[capacity * historySize];
+            timestamps = new long[historySize];
+            this.filter = filter;
+        }
+
+        void reset(int trackingId) {
+            this.trackingId = trackingId;
+            count = 0;
+            size = 0;
+            missedFrames = 0;
+            if (filter != null) {
+                filter.reset();
+            }
+        }
+    }
+
+    private final int capacity;
+    private final int historySize;
+    @Nullable private final FilterFactory filterFactory;
+
+    private final List<TrackedFace> faces = new ArrayList<>();
+    private final ArrayDeque<TrackedFace> freeFaces = new ArrayDeque<>();
+
+    private long maxExtrapolationNanos = DEFAULT_MAX_EXTRAPOLATION_NANOS;
+    private int maxMissedFrames = 1;
+    private long frameNanos;
+
+    /**
+     * Creates a tracker for faces of up to {@code capacity} coordinates, keeping the positions of
+     * the last {@code historySize} detections, filtered by filters from {@code filterFactory} or
+     * not at all if it is null.
+     */
+    public FaceTracker(int capacity, int historySize, @Nullable FilterFactory filterFactory) {
+        if (capacity < 1 || historySize < 1) {
+            throw new IllegalArgumentException(
+                    "Invalid capacity or history size: " + capacity + ", " + historySize);
+        }
+        this.capacity = capacity;
+        this.historySize = historySize;
+        this.filterFactory = filterFactory;
+    }
+
+    /**
+     * Sets how far past the latest detection of a face its positions are extrapolated, beyond
+     * which they stay where they were predicted to be.
+     */
+    public synchronized void setMaxExtrapolationNanos(long maxExtrapolationNanos) {
+        this.maxExtrapolationNanos = maxExtrapolationNanos;
+    }
+
+    /** Sets how many detections in a row a face may be missing from before it is dropped. */
+    public synchronized void setMaxMissedFrames(int maxMissedFrames) {
+        this.maxMissedFrames = maxMissedFrames;
+    }
+
+    /** Starts adding the faces of a detection on a frame captured at {@code timestampNanos}. */
+    public synchronized void beginFrame(long timestampNanos) {
+        frameNanos = timestampNanos;
+        for (int i = 0; i < faces.size(); i++) {
+            faces.get(i).seen = false;
+        }
+    }
+
+    /**
+     * Adds the first {@code count} {@code values}, the positions of the face {@code trackingId}
+     * in the current frame. A face whose number of positions changed starts over.
+     */
+    public synchronized void update(int trackingId, float[] values, int count) {
+        if (count > capacity) {
+            throw new IllegalArgumentException("Too many values: " + count + " > " + capacity);
+        }
+        TrackedFace face = find(trackingId);
+        if (face == null) {
+            face = freeFaces.poll();
+            if (face == null) {
+                face = new TrackedFace(capacity, historySize,
+                        filterFactory == null ? null : filterFactory.create(capacity));
+            }
+            face.reset(trackingId);
+            faces.add(face);
+        } else if (face.count != count) {
+            face.reset(trackingId);
+        }
+
+        int next = face.size == 0 ? 0 : (face.newest + 1) % historySize;
+        int offset = next * capacity;
+        System.arraycopy(values, 0, face.history, offset, count);
+        if (face.filter != null) {
+            // Filtered in the ring, so values is left as it was.
+            float dtSeconds = face.size == 0
+                    ? 0 : (frameNanos - face.timestamps[face.newest]) / 1e9f;
+            face.filter.filter(face.history, offset, count, dtSeconds);
+        }
+        face.timestamps[next] = frameNanos;
+        face.newest = next;
+        face.size = Math.min(face.size + 1, historySize);
+        face.count = count;
+        face.missedFrames = 0;
+        face.seen = true;
+    }
+
+    /** Finishes the current frame, dropping the faces missing from too many frames. */
+    public synchronized void endFrame() {
+        for (int i = faces.size() - 1; i >= 0; i--) {
+            TrackedFace face = faces.get(i);
+            if (!face.seen && ++face.missedFrames > maxMissedFrames) {
+                faces.remove(i);
+                freeFaces.add(face);
+            }
+        }
+    }
+
+    /**
+     * Writes the positions of the face {@code trackingId} extrapolated to {@code nowNanos} into
+     * {@code out}, and returns their number, or -1 if the face is not tracked.
+     */
+    public synchronized int predict(int trackingId, long nowNanos, float[] out) {
+        TrackedFace face = find(trackingId);
+        if (face == null) {
+            return -1;
+        }
+        int count = face.count;
+        int newestOffset = face.newest * capacity;
+        long newestNanos = face.timestamps[face.newest];
+        if (face.size < 2 || nowNanos <= newestNanos) {
+            System.arraycopy(face.history, newestOffset, out, 0, count);
+            return count;
+        }
+        // The velocity over the whole ring is steadier than the one between the last two samples.
+        int oldest = (face.newest - face.size + 1 + historySize) % historySize;
+        int oldestOffset = oldest * capacity;
+        long spanNanos = newestNanos - face.timestamps[oldest];
+        if (spanNanos <= 0) {
+            System.arraycopy(face.history, newestOffset, out, 0, count);
+            return count;
+        }
+        float ahead = (float) Math.min(nowNanos - newestNanos, maxExtrapolationNanos) / spanNanos;
+        for (int i = 0; i < count; i++) {
+            float newestValue = face.history[newestOffset + i];
+            out[i] = newestValue + (newestValue - face.history[oldestOffset + i]) * ahead;
+        }
+        return count;
+    }
+
+    /** Writes the tracking ids of the tracked faces into {@code out} and returns their number. */
+    public synchronized int getTrackingIds(int[] out) {
+        int count = Math.min(out.length, faces.size());
+        for (int i = 0; i < count; i++) {
+            out[i] = faces.get(i).trackingId;
+        }
+        return count;
+    }
+
+    /** Returns the number of tracked faces. */
+    public synchronized int size() {
+        return faces.size();
+    }
+
+    /** Drops all the tracked faces. */
+    public synchronized void clear() {
+        freeFaces.addAll(faces);
+        faces.clear();
+    }
+
+    @Nullable
+    private TrackedFace find(int trackingId) {
+        for (int i = 0; i < faces.size(); i++) {
+            TrackedFace face = faces.get(i);
+            if (face.trackingId == trackingId) {
+                return face;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,96 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.facedetection;
+
+/**
+ * The One Euro filter (Casiez et al., CHI 2012), a low-pass filter whose cutoff frequency rises
+ * with the speed of the values. Slow movements are smoothed heavily, which removes the jitter of
+ * a face that holds still, while fast ones pass with little lag.
+ *
+ * <p>Every value is filtered on its own, with its state kept in primitive arrays.
+ */
+public class OneEuroFilter implements FaceTracker.Filter {
+
+    /** The cutoff frequency of still values by default, in Hz. */
+    public static final float DEFAULT_MIN_CUTOFF = 1.0f;
+
+    /** How much the cutoff frequency rises with the speed of the values by default. */
+    public static final float DEFAULT_BETA = 0.01f;
+
+    /** The cutoff frequency of the speed estimate by default, in Hz. */
+    public static final float DEFAULT_DERIVATIVE_CUTOFF = 1.0f;
+
+    private final float minCutoff;
+    private final float beta;
+    private final float derivativeCutoff;
+
+    private final float[] previousValues;
+    private final float[] previousDerivatives;
+    private boolean hasPrevious;
+
+    public OneEuroFilter(int capacity, float minCutoff, float beta, float derivativeCutoff) {
+        this.minCutoff = minCutoff;
+        this.beta = beta;
+        this.derivativeCutoff = derivativeCutoff;
+        previousValues = new float[capacity];
+        previousDerivatives = new float[capacity];
+    }
+
+    /** Returns a factory of filters with the given parameters, for a {@link FaceTracker}. */
+    public static FaceTracker.FilterFactory factory(
+            final float minCutoff, final float beta, final float derivativeCutoff) {
+        return new FaceTracker.FilterFactory() {
+            @Override
+            public FaceTracker.Filter create(int capacity) {
+                return new OneEuroFilter(capacity, minCutoff, beta, derivativeCutoff);
+            }
+        };
+    }
+
+    @Override
+    public void filter(float[] values, int offset, int count, float dtSeconds) {
+        if (!hasPrevious || dtSeconds <= 0) {
+            System.arraycopy(values, offset, previousValues, 0, count);
+            for (int i = 0; i < count; i++) {
+                previousDerivatives[i] = 0;
+            }
+            hasPrevious = true;
+            return;
+        }
+        float derivativeAlpha = alpha(derivativeCutoff, dtSeconds);
+        for (int i = 0; i < count; i++) {
+            float value = values[offset + i];
+            float derivative = (value - previousValues[i]) / dtSeconds;
+            float smoothedDerivative = previousDerivatives[i]
+                    + derivativeAlpha * (derivative - previousDerivatives[i]);
+            float cutoff = minCutoff + beta * Math.abs(smoothedDerivative);
+            float smoothed = previousValues[i]
+                    + alpha(cutoff, dtSeconds) * (value - previousValues[i]);
+            values[offset + i] = smoothed;
+            previousValues[i] = smoothed;
+            previousDerivatives[i] = smoothedDerivative;
+        }
+    }
+
+    @Override
+    public void reset() {
+        hasPrevious = false;
+    }
+
+    // The smoothing factor of an exponential filter with the cutoff frequency, at the sample rate.
+    private static float alpha(float cutoff, float dtSeconds) {
+        float tau = (float) (1 / (2 * Math.PI * cutoff));
+        return 1 / (1 + tau / dtSeconds);
+    }
+}
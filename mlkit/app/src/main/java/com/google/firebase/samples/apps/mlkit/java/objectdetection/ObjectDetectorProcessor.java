@@ -14,6 +14,8 @@ import com.google.firebase.ml.vision.objects.FirebaseVisionObjectDetectorOptions
 import com.google.firebase.samples.apps.mlkit.common.CameraImageGraphic;
 import com.google.firebase.samples.apps.mlkit.common.FrameMetadata;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
+import com.google.firebase.samples.apps.mlkit.common.GraphicPool;
+import com.google.firebase.samples.apps.mlkit.java.EveryNthFramePolicy;
 import com.google.firebase.samples.apps.mlkit.java.VisionProcessorBase;
 
 import java.io.IOException;
@@ -26,8 +28,12 @@ public class ObjectDetectorProcessor extends VisionProcessorBase<List<FirebaseVi
 
   private final FirebaseVisionObjectDetector detector;
 
+  // Recycles the graphics of earlier frames, created for the first overlay drawn on.
+  private GraphicPool<ObjectGraphic> objectGraphics;
+
   public ObjectDetectorProcessor(FirebaseVisionObjectDetectorOptions options) {
     detector = FirebaseVision.getInstance().getOnDeviceObjectDetector(options);
+    setDetectionPolicy(new EveryNthFramePolicy<List<FirebaseVisionObject>>(2));
   }
 
   @Override
@@ -51,16 +57,27 @@ public class ObjectDetectorProcessor extends VisionProcessorBase<List<FirebaseVi
       @NonNull List<FirebaseVisionObject> results,
       @NonNull FrameMetadata frameMetadata,
       @NonNull GraphicOverlay graphicOverlay) {
-    graphicOverlay.clear();
+    GraphicOverlay.Scene.Builder scene = newScene(graphicOverlay);
     if (originalCameraImage != null) {
       CameraImageGraphic imageGraphic = new CameraImageGraphic(graphicOverlay, originalCameraImage);
-      graphicOverlay.add(imageGraphic);
+      scene.add(imageGraphic);
+    }
+    addGraphics(results, graphicOverlay, scene);
+    graphicOverlay.publish(scene.build());
+  }
+
+  @Override
+  protected void addGraphics(
+      @NonNull List<FirebaseVisionObject> results,
+      @NonNull GraphicOverlay graphicOverlay,
+      @NonNull GraphicOverlay.Scene.Builder scene) {
+    if (objectGraphics == null) {
+      objectGraphics = ObjectGraphic.newPool(graphicOverlay);
     }
     for (FirebaseVisionObject object : results) {
-      ObjectGraphic objectGraphic = new ObjectGraphic(graphicOverlay, object);
-      graphicOverlay.add(objectGraphic);
+      ObjectGraphic objectGraphic = objectGraphics.obtain().bind(object);
+      scene.add(objectGraphic);
     }
-    graphicOverlay.postInvalidate();
   }
 
   @Override
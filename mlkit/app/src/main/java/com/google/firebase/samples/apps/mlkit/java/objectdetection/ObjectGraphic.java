@@ -9,6 +9,7 @@ import android.graphics.RectF;
 import com.google.firebase.ml.vision.objects.FirebaseVisionObject;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay.Graphic;
+import com.google.firebase.samples.apps.mlkit.common.GraphicPool;
 
 /** Draw the detected object info in preview. */
 public class ObjectGraphic extends Graphic {
@@ -16,15 +17,14 @@ public class ObjectGraphic extends Graphic {
   private static final float TEXT_SIZE = 54.0f;
   private static final float STROKE_WIDTH = 4.0f;
 
-  private final FirebaseVisionObject object;
   private final Paint boxPaint;
   private final Paint textPaint;
+  private final RectF rect = new RectF();
+  private FirebaseVisionObject object;
 
-  ObjectGraphic(GraphicOverlay overlay, FirebaseVisionObject object) {
+  private ObjectGraphic(GraphicOverlay overlay) {
     super(overlay);
 
-    this.object = object;
-
     boxPaint = new Paint();
     boxPaint.setColor(Color.WHITE);
     boxPaint.setStyle(Style.STROKE);
@@ -35,10 +35,32 @@ public class ObjectGraphic extends Graphic {
     textPaint.setTextSize(TEXT_SIZE);
   }
 
+  /** Returns a pool of object graphics for {@code overlay}, to be bound with {@link #bind}. */
+  static GraphicPool<ObjectGraphic> newPool(final GraphicOverlay overlay) {
+    return new GraphicPool<>(
+        new GraphicPool.Factory<ObjectGraphic>() {
+          @Override
+          public ObjectGraphic create() {
+            return new ObjectGraphic(overlay);
+          }
+        });
+  }
+
+  /** Sets the detected object to draw. */
+  ObjectGraphic bind(FirebaseVisionObject object) {
+    this.object = object;
+    return this;
+  }
+
+  @Override
+  public void onRecycled() {
+    object = null;
+  }
+
   @Override
   public void draw(Canvas canvas) {
     // Draws the bounding box.
-    RectF rect = new RectF(object.getBoundingBox());
+    rect.set(object.getBoundingBox());
     rect.left = translateX(rect.left);
     rect.top = translateY(rect.top);
     rect.right = translateX(rect.right);
@@ -0,0 +1,193 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.textrecognition;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Text recognized in an image, laid out like {@code FirebaseVisionText} as blocks of lines of
+ * elements, but built by the app: ML Kit's own results cannot be created outside of it, e.g. to
+ * put the results of several tiles together.
+ */
+public final class RecognizedText {
+
+    /** A bounding box, in the coordinates of the image the text was recognized in. */
+    public static final class Bounds {
+        private final int left;
+        private final int top;
+        private final int right;
+        private final int bottom;
+
+        public Bounds(int left, int top, int right, int bottom) {
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+        }
+
+        public int getLeft() {
+            return left;
+        }
+
+        public int getTop() {
+            return top;
+        }
+
+        public int getRight() {
+            return right;
+        }
+
+        public int getBottom() {
+            return bottom;
+        }
+
+        public int getWidth() {
+            return right - left;
+        }
+
+        public int getHeight() {
+            return bottom - top;
+        }
+
+        /** Returns the box moved by ({@code dx}, {@code dy}). */
+        public Bounds offset(int dx, int dy) {
+            return new Bounds(left + dx, top + dy, right + dx, bottom + dy);
+        }
+
+        /** Returns the smallest box that contains both boxes. */
+        public Bounds union(Bounds other) {
+            return new Bounds(
+                    Math.min(left, other.left),
+                    Math.min(top, other.top),
+                    Math.max(right, other.right),
+                    Math.max(bottom, other.bottom));
+        }
+
+        /** Returns the area this box and {@code other} have in common. */
+        long intersectionArea(Bounds other) {
+            long width = Math.min(right, other.right) - Math.max(left, other.left);
+            long height = Math.min(bottom, other.bottom) - Math.max(top, other.top);
+            return width <= 0 || height <= 0 ? 0 : width * height;
+        }
+
+        long area() {
+            return (long) Math.max(0, getWidth()) * Math.max(0, getHeight());
+        }
+
+        @Override
+        public String toString() {
+            return "[" + left + ", " + top + " - " + right + ", " + bottom + "]";
+        }
+    }
+
+    /** A word, or a run of characters recognized together. */
+    public static final class Element {
+        private final String text;
+        private final Bounds bounds;
+
+        public Element(String text, Bounds bounds) {
+            this.text = text;
+            this.bounds = bounds;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public Bounds getBounds() {
+            return bounds;
+        }
+
+        Element offset(int dx, int dy) {
+            return new Element(text, bounds.offset(dx, dy));
+        }
+    }
+
+    /** A line of elements. */
+    public static final class Line {
+        private final String text;
+        private final Bounds bounds;
+        private final List<Element> elements;
+
+        public Line(String text, Bounds bounds, List<Element> elements) {
+            this.text = text;
+            this.bounds = bounds;
+            this.elements = Collections.unmodifiableList(elements);
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public Bounds getBounds() {
+            return bounds;
+        }
+
+        public List<Element> getElements() {
+            return elements;
+        }
+
+        Line offset(int dx, int dy) {
+            List<Element> moved = new ArrayList<>(elements.size());
+            for (Element element : elements) {
+                moved.add(element.offset(dx, dy));
+            }
+            return new Line(text, bounds.offset(dx, dy), moved);
+        }
+    }
+
+    /** A paragraph or column of lines. */
+    public static final class Block {
+        private final String text;
+        private final Bounds bounds;
+        private final List<Line> lines;
+
+        public Block(String text, Bounds bounds, List<Line> lines) {
+            this.text = text;
+            this.bounds = bounds;
+            this.lines = Collections.unmodifiableList(lines);
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public Bounds getBounds() {
+            return bounds;
+        }
+
+        public List<Line> getLines() {
+            return lines;
+        }
+    }
+
+    private final String text;
+    private final List<Block> blocks;
+
+    public RecognizedText(String text, List<Block> blocks) {
+        this.text = text;
+        this.blocks = Collections.unmodifiableList(blocks);
+    }
+
+    /** Returns all the text, block by block. */
+    public String getText() {
+        return text;
+    }
+
+    public List<Block> getBlocks() {
+        return blocks;
+    }
+}
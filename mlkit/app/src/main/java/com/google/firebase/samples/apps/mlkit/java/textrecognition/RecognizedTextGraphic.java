@@ -0,0 +1,89 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.textrecognition;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
+import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay.Graphic;
+import com.google.firebase.samples.apps.mlkit.common.GraphicPool;
+
+/** Graphic instance for rendering a line of {@link RecognizedText} and its bounding box. */
+public class RecognizedTextGraphic extends Graphic {
+
+  private static final int TEXT_COLOR = Color.WHITE;
+  private static final float TEXT_SIZE = 36.0f;
+  private static final float STROKE_WIDTH = 3.0f;
+
+  private final Paint rectPaint;
+  private final Paint textPaint;
+  private final RectF rect = new RectF();
+  private RecognizedText.Line line;
+
+  private RecognizedTextGraphic(GraphicOverlay overlay) {
+    super(overlay);
+
+    rectPaint = new Paint();
+    rectPaint.setColor(TEXT_COLOR);
+    rectPaint.setStyle(Paint.Style.STROKE);
+    rectPaint.setStrokeWidth(STROKE_WIDTH);
+
+    textPaint = new Paint();
+    textPaint.setColor(TEXT_COLOR);
+    textPaint.setTextSize(TEXT_SIZE);
+  }
+
+  /** Returns a pool of text graphics for {@code overlay}, to be bound with {@link #bind}. */
+  static GraphicPool<RecognizedTextGraphic> newPool(final GraphicOverlay overlay) {
+    return new GraphicPool<>(
+        new GraphicPool.Factory<RecognizedTextGraphic>() {
+          @Override
+          public RecognizedTextGraphic create() {
+            return new RecognizedTextGraphic(overlay);
+          }
+        });
+  }
+
+  /** Sets the line to draw. */
+  RecognizedTextGraphic bind(RecognizedText.Line line) {
+    this.line = line;
+    return this;
+  }
+
+  @Override
+  public void onRecycled() {
+    line = null;
+  }
+
+  /** Draws the bounding box of the line and its text on the supplied canvas. */
+  @Override
+  public void draw(Canvas canvas) {
+    if (line == null) {
+      throw new IllegalStateException("Attempting to draw a null line.");
+    }
+
+    RecognizedText.Bounds bounds = line.getBounds();
+    rect.left = translateX(bounds.getLeft());
+    rect.top = translateY(bounds.getTop());
+    rect.right = translateX(bounds.getRight());
+    rect.bottom = translateY(bounds.getBottom());
+    canvas.drawRect(rect, rectPaint);
+
+    // Renders the text at the bottom of the box.
+    canvas.drawText(line.getText(), rect.left, rect.bottom, textPaint);
+  }
+}
@@ -21,6 +21,7 @@ import android.graphics.RectF;
 import com.google.firebase.ml.vision.text.FirebaseVisionText;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay.Graphic;
+import com.google.firebase.samples.apps.mlkit.common.GraphicPool;
 
 /**
  * Graphic instance for rendering TextBlock position, size, and ID within an associated graphic
@@ -34,13 +35,12 @@ public class TextGraphic extends Graphic {
 
   private final Paint rectPaint;
   private final Paint textPaint;
-  private final FirebaseVisionText.Element text;
+  private final RectF rect = new RectF();
+  private FirebaseVisionText.Element text;
 
-  TextGraphic(GraphicOverlay overlay, FirebaseVisionText.Element text) {
+  private TextGraphic(GraphicOverlay overlay) {
     super(overlay);
 
-    this.text = text;
-
     rectPaint = new Paint();
     rectPaint.setColor(TEXT_COLOR);
     rectPaint.setStyle(Paint.Style.STROKE);
@@ -51,6 +51,28 @@ public class TextGraphic extends Graphic {
     textPaint.setTextSize(TEXT_SIZE);
   }
 
+  /** Returns a pool of text graphics for {@code overlay}, to be bound with {@link #bind}. */
+  static GraphicPool<TextGraphic> newPool(final GraphicOverlay overlay) {
+    return new GraphicPool<>(
+        new GraphicPool.Factory<TextGraphic>() {
+          @Override
+          public TextGraphic create() {
+            return new TextGraphic(overlay);
+          }
+        });
+  }
+
+  /** Sets the text element to draw. */
+  TextGraphic bind(FirebaseVisionText.Element text) {
+    this.text = text;
+    return this;
+  }
+
+  @Override
+  public void onRecycled() {
+    text = null;
+  }
+
   /** Draws the text block annotations for position, size, and raw value on the supplied canvas. */
   @Override
   public void draw(Canvas canvas) {
@@ -59,7 +81,7 @@ public class TextGraphic extends Graphic {
     }
 
     // Draws the bounding box around the TextBlock.
-    RectF rect = new RectF(text.getBoundingBox());
+    rect.set(text.getBoundingBox());
     rect.left = translateX(rect.left);
     rect.top = translateY(rect.top);
     rect.right = translateX(rect.right);
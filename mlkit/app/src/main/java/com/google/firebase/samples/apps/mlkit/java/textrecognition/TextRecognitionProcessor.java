@@ -14,6 +14,7 @@
 package com.google.firebase.samples.apps.mlkit.java.textrecognition;
 
 import android.graphics.Bitmap;
+import android.graphics.Rect;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import android.util.Log;
@@ -26,13 +27,25 @@ import com.google.firebase.ml.vision.text.FirebaseVisionTextRecognizer;
 import com.google.firebase.samples.apps.mlkit.common.CameraImageGraphic;
 import com.google.firebase.samples.apps.mlkit.common.FrameMetadata;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
+import com.google.firebase.samples.apps.mlkit.common.GraphicPool;
+import com.google.firebase.samples.apps.mlkit.java.EveryNthFramePolicy;
 import com.google.firebase.samples.apps.mlkit.java.VisionProcessorBase;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Processor for the text recognition demo.
+ *
+ * <p>Recognized elements are followed across frames by a {@link TextTracker}. The graphic of an
+ * element is kept for as long as the element is unchanged, so only added and changed elements get
+ * new graphics. All graphics are replaced when the scene's graphic offset or scale changes, as a
+ * graphic keeps the ones it was created with.
+ *
+ * <p>The tracking state is guarded by the processor, since results may be rendered on a pipeline
+ * thread while {@link #stop()} runs on the main thread.
  */
 public class TextRecognitionProcessor extends VisionProcessorBase<FirebaseVisionText> {
 
@@ -40,12 +53,36 @@ public class TextRecognitionProcessor extends VisionProcessorBase<FirebaseVision
 
     private final FirebaseVisionTextRecognizer detector;
 
+    // Recycles the graphics of earlier frames, created for the first overlay drawn on.
+    private GraphicPool<TextGraphic> textGraphics;
+
+    // Guarded by this, like the graphics below.
+    private final TextTracker<FirebaseVisionText.Element> tracker = new TextTracker<>();
+
+    // The results the tracker was last updated with, which are drawn again for skipped frames.
+    @Nullable
+    private FirebaseVisionText trackedResults;
+
+    // The retained graphic of every tracked element, by id.
+    private final Map<Long, TextGraphic> trackedGraphics = new HashMap<>();
+
+    // The scene's graphic offset and scale when the tracked graphics were created.
+    private float trackedOffsetX;
+    private float trackedOffsetY;
+    private float trackedScale = 1f;
+
     public TextRecognitionProcessor() {
         detector = FirebaseVision.getInstance().getOnDeviceTextRecognizer();
+        // Text rarely changes between consecutive frames, so recognizing every third one is
+        // enough.
+        setDetectionPolicy(new EveryNthFramePolicy<FirebaseVisionText>(3));
     }
 
     @Override
-    public void stop() {
+    public synchronized void stop() {
+        releaseGraphics();
+        tracker.clear();
+        trackedResults = null;
         try {
             detector.close();
         } catch (IOException e) {
@@ -53,6 +90,14 @@ public class TextRecognitionProcessor extends VisionProcessorBase<FirebaseVision
         }
     }
 
+    /**
+     * Returns the tracker following the recognized elements, e.g. to listen for the elements each
+     * frame added, changed and removed. Its listener is called on the thread rendering results.
+     */
+    public TextTracker<FirebaseVisionText.Element> getTracker() {
+        return tracker;
+    }
+
     @Override
     protected Task<FirebaseVisionText> detectInImage(FirebaseVisionImage image) {
         return detector.processImage(image);
@@ -64,25 +109,94 @@ public class TextRecognitionProcessor extends VisionProcessorBase<FirebaseVision
             @NonNull FirebaseVisionText results,
             @NonNull FrameMetadata frameMetadata,
             @NonNull GraphicOverlay graphicOverlay) {
-        graphicOverlay.clear();
+        GraphicOverlay.Scene.Builder scene = newScene(graphicOverlay);
         if (originalCameraImage != null) {
             CameraImageGraphic imageGraphic = new CameraImageGraphic(graphicOverlay,
                     originalCameraImage);
-            graphicOverlay.add(imageGraphic);
+            scene.add(imageGraphic);
+        }
+        addGraphics(results, graphicOverlay, scene);
+        graphicOverlay.publish(scene.build());
+    }
+
+    @Override
+    protected synchronized void addGraphics(
+            @NonNull FirebaseVisionText results,
+            @NonNull GraphicOverlay graphicOverlay,
+            @NonNull GraphicOverlay.Scene.Builder scene) {
+        if (textGraphics == null) {
+            textGraphics = TextGraphic.newPool(graphicOverlay);
+        }
+        if (scene.getGraphicOffsetX() != trackedOffsetX
+                || scene.getGraphicOffsetY() != trackedOffsetY
+                || scene.getGraphicScale() != trackedScale) {
+            trackedOffsetX = scene.getGraphicOffsetX();
+            trackedOffsetY = scene.getGraphicOffsetY();
+            trackedScale = scene.getGraphicScale();
+            replaceGraphics(tracker.getElements());
+        }
+        if (results != trackedResults) {
+            trackedResults = results;
+            track(results);
         }
+        for (TextGraphic textGraphic : trackedGraphics.values()) {
+            scene.add(textGraphic);
+        }
+    }
+
+    /** Updates the tracker with new results and replaces the graphics of changed elements. */
+    private void track(FirebaseVisionText results) {
+        tracker.beginFrame();
         List<FirebaseVisionText.TextBlock> blocks = results.getTextBlocks();
         for (int i = 0; i < blocks.size(); i++) {
             List<FirebaseVisionText.Line> lines = blocks.get(i).getLines();
             for (int j = 0; j < lines.size(); j++) {
                 List<FirebaseVisionText.Element> elements = lines.get(j).getElements();
                 for (int k = 0; k < elements.size(); k++) {
-                    GraphicOverlay.Graphic textGraphic = new TextGraphic(graphicOverlay,
-                            elements.get(k));
-                    graphicOverlay.add(textGraphic);
+                    FirebaseVisionText.Element element = elements.get(k);
+                    Rect box = element.getBoundingBox();
+                    if (box != null) {
+                        tracker.addElement(element, element.getText(),
+                                box.left, box.top, box.right, box.bottom);
+                    }
                 }
             }
         }
-        graphicOverlay.postInvalidate();
+        TextTracker.Diff<FirebaseVisionText.Element> diff = tracker.endFrame();
+
+        for (TextTracker.TrackedElement<FirebaseVisionText.Element> removed
+                : diff.getRemoved()) {
+            TextGraphic textGraphic = trackedGraphics.remove(removed.getId());
+            if (textGraphic != null) {
+                textGraphic.release();
+            }
+        }
+        // The published scene may still be drawing the old graphic, so a changed element gets a
+        // new one rather than rebinding it.
+        replaceGraphics(diff.getChanged());
+        replaceGraphics(diff.getAdded());
+    }
+
+    private void replaceGraphics(
+            List<TextTracker.TrackedElement<FirebaseVisionText.Element>> elements) {
+        for (int i = 0; i < elements.size(); i++) {
+            TextTracker.TrackedElement<FirebaseVisionText.Element> element = elements.get(i);
+            TextGraphic textGraphic = textGraphics.obtain().bind(element.getPayload());
+            textGraphic.retain();
+            TextGraphic previous = trackedGraphics.put(element.getId(), textGraphic);
+            if (previous != null) {
+                previous.release();
+            }
+        }
+    }
+
+    // Drops the processor's reference to every tracked graphic, so the pool gets them back once the
+    // published scene no longer draws them.
+    private void releaseGraphics() {
+        for (TextGraphic textGraphic : trackedGraphics.values()) {
+            textGraphic.release();
+        }
+        trackedGraphics.clear();
     }
 
     @Override
@@ -0,0 +1,378 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.textrecognition;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Splits large images into overlapping tiles for text recognition, and puts the text recognized
+ * in the tiles back together in the coordinates of the whole image.
+ *
+ * <p>Lines in the overlap of two tiles are recognized twice. A line that reaches the inner edge
+ * of its tile may have been cut there, so the copy that does not is kept; of two whole copies,
+ * the larger one is kept. As long as the overlap is taller than a line of text, every line is
+ * whole in at least one of the tiles above and below each other. A line wider than the overlap
+ * that crosses a vertical seam is cut in the tiles on both sides of it, though, so the two pieces
+ * are stitched together first: the words of both pieces that are not cut at the seam are kept,
+ * the ones in the overlap only once. Lines are then put back into the blocks they were recognized
+ * in, and a block across a seam may come back as two blocks.
+ */
+public final class TextTiling {
+
+    // How close to an inner tile edge a line may get before it counts as cut, in pixels.
+    private static final int SEAM_MARGIN = 2;
+
+    // How much of the smaller of two lines from different tiles they must share to be the same.
+    private static final float DUPLICATE_OVERLAP = 0.5f;
+
+    /** A part of the image, recognized on its own. */
+    public static final class Tile {
+        private final int left;
+        private final int top;
+        private final int right;
+        private final int bottom;
+
+        Tile(int left, int top, int right, int bottom) {
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+        }
+
+        public int getLeft() {
+            return left;
+        }
+
+        public int getTop() {
+            return top;
+        }
+
+        public int getWidth() {
+            return right - left;
+        }
+
+        public int getHeight() {
+            return bottom - top;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + left + ", " + top + " - " + right + ", " + bottom + "]";
+        }
+    }
+
+    private static final class Candidate {
+        final RecognizedText.Line line;
+        final int tileIndex;
+        final int blockIndex;
+        // Where the line reaches an inner edge of the tiles it was recognized in.
+        final boolean cutLeft;
+        final boolean cutRight;
+        final boolean cutTopOrBottom;
+        final boolean cut;
+        final long area;
+        boolean kept;
+        // Stitched into the line of the tile to its left.
+        boolean stitched;
+
+        Candidate(RecognizedText.Line line, int tileIndex, int blockIndex, boolean cutLeft,
+                boolean cutRight, boolean cutTopOrBottom) {
+            this.line = line;
+            this.tileIndex = tileIndex;
+            this.blockIndex = blockIndex;
+            this.cutLeft = cutLeft;
+            this.cutRight = cutRight;
+            this.cutTopOrBottom = cutTopOrBottom;
+            cut = cutLeft || cutRight || cutTopOrBottom;
+            area = line.getBounds().area();
+        }
+    }
+
+    private TextTiling() {}
+
+    /**
+     * Returns the tiles of at most {@code tileSize} x {@code tileSize} that cover an image of
+     * {@code width} x {@code height}, row by row, with neighbors sharing at least {@code overlap}
+     * pixels. An image that fits in a tile is a single tile.
+     */
+    public static List<Tile> layout(int width, int height, int tileSize, int overlap) {
+        if (tileSize < 1 || overlap < 0 || overlap >= tileSize) {
+            throw new IllegalArgumentException(
+                    "Invalid tile size or overlap: " + tileSize + ", " + overlap);
+        }
+        int[] lefts = starts(width, tileSize, overlap);
+        int[] tops = starts(height, tileSize, overlap);
+        List<Tile> tiles = new ArrayList<>(lefts.length * tops.length);
+        for (int top : tops) {
+            for (int left : lefts) {
+                tiles.add(new Tile(left, top,
+                        Math.min(left + tileSize, width), Math.min(top + tileSize, height)));
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Puts the text recognized in {@code tiles}, in the coordinates of each tile, together into
+     * the text of the {@code width} x {@code height} image. Blocks are in reading order, top to
+     * bottom and then left to right.
+     */
+    public static RecognizedText merge(
+            List<Tile> tiles, List<RecognizedText> tileResults, int width, int height) {
+        if (tiles.size() != tileResults.size()) {
+            throw new IllegalArgumentException(
+                    tileResults.size() + " results for " + tiles.size() + " tiles");
+        }
+        List<Candidate> candidates = new ArrayList<>();
+        for (int i = 0; i < tiles.size(); i++) {
+            Tile tile = tiles.get(i);
+            List<RecognizedText.Block> blocks = tileResults.get(i).getBlocks();
+            for (int j = 0; j < blocks.size(); j++) {
+                for (RecognizedText.Line line : blocks.get(j).getLines()) {
+                    RecognizedText.Line moved = line.offset(tile.left, tile.top);
+                    RecognizedText.Bounds bounds = moved.getBounds();
+                    candidates.add(new Candidate(moved, i, j,
+                            isCutLeft(bounds, tile),
+                            isCutRight(bounds, tile, width),
+                            isCutTopOrBottom(bounds, tile, height)));
+                }
+            }
+        }
+        candidates = stitch(candidates, tiles, width);
+
+        List<Candidate> byPreference = new ArrayList<>(candidates);
+        Collections.sort(byPreference, new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate a, Candidate b) {
+                if (a.cut != b.cut) {
+                    return a.cut ? 1 : -1;
+                }
+                return a.area > b.area ? -1 : (a.area == b.area ? 0 : 1);
+            }
+        });
+        List<Candidate> kept = new ArrayList<>();
+        for (Candidate candidate : byPreference) {
+            if (!isDuplicate(candidate, kept)) {
+                candidate.kept = true;
+                kept.add(candidate);
+            }
+        }
+
+        // Back into their blocks, in the order they were recognized in.
+        List<RecognizedText.Block> blocks = new ArrayList<>();
+        List<RecognizedText.Line> lines = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            Candidate candidate = candidates.get(i);
+            if (candidate.kept) {
+                lines.add(candidate.line);
+            }
+            boolean blockEnds = i + 1 == candidates.size()
+                    || candidates.get(i + 1).tileIndex != candidate.tileIndex
+                    || candidates.get(i + 1).blockIndex != candidate.blockIndex;
+            if (blockEnds && !lines.isEmpty()) {
+                blocks.add(toBlock(lines));
+                lines = new ArrayList<>();
+            }
+        }
+        Collections.sort(blocks, new Comparator<RecognizedText.Block>() {
+            @Override
+            public int compare(RecognizedText.Block a, RecognizedText.Block b) {
+                RecognizedText.Bounds aBounds = a.getBounds();
+                RecognizedText.Bounds bBounds = b.getBounds();
+                if (aBounds.getTop() != bBounds.getTop()) {
+                    return aBounds.getTop() < bBounds.getTop() ? -1 : 1;
+                }
+                return aBounds.getLeft() < bBounds.getLeft()
+                        ? -1 : (aBounds.getLeft() == bBounds.getLeft() ? 0 : 1);
+            }
+        });
+
+        StringBuilder text = new StringBuilder();
+        for (RecognizedText.Block block : blocks) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append(block.getText());
+        }
+        return new RecognizedText(text.toString(), blocks);
+    }
+
+    // The starts of the tiles along a side of the image, the last one flush with its end.
+    private static int[] starts(int length, int tileSize, int overlap) {
+        if (length <= tileSize) {
+            return new int[] {0};
+        }
+        int step = tileSize - overlap;
+        int count = (length - overlap + step - 1) / step;
+        int[] starts = new int[count];
+        for (int i = 0; i < count; i++) {
+            starts[i] = Math.min(i * step, length - tileSize);
+        }
+        return starts;
+    }
+
+    private static boolean isCutLeft(RecognizedText.Bounds bounds, Tile tile) {
+        return tile.left > 0 && bounds.getLeft() <= tile.left + SEAM_MARGIN;
+    }
+
+    private static boolean isCutRight(RecognizedText.Bounds bounds, Tile tile, int width) {
+        return tile.right < width && bounds.getRight() >= tile.right - SEAM_MARGIN;
+    }
+
+    private static boolean isCutTopOrBottom(RecognizedText.Bounds bounds, Tile tile, int height) {
+        return (tile.top > 0 && bounds.getTop() <= tile.top + SEAM_MARGIN)
+                || (tile.bottom < height && bounds.getBottom() >= tile.bottom - SEAM_MARGIN);
+    }
+
+    /**
+     * Stitches every line cut at the right edge of its tile to the piece of it cut at the left
+     * edge of the tile next to it, left to right, and returns the candidates with the stitched
+     * lines in place of their leftmost pieces.
+     */
+    private static List<Candidate> stitch(
+            List<Candidate> candidates, List<Tile> tiles, int width) {
+        List<Candidate> stitched = new ArrayList<>(candidates.size());
+        for (Candidate candidate : candidates) {
+            if (candidate.stitched) {
+                continue;
+            }
+            Candidate current = candidate;
+            Candidate right;
+            while (current.cutRight
+                    && (right = findRightPiece(current, candidates, tiles)) != null) {
+                right.stitched = true;
+                current = join(current, right, tiles, width);
+            }
+            stitched.add(current);
+        }
+        return stitched;
+    }
+
+    // Returns the piece of a line cut at the right edge of its tile in the tile next to it.
+    private static Candidate findRightPiece(
+            Candidate left, List<Candidate> candidates, List<Tile> tiles) {
+        Tile leftTile = tiles.get(left.tileIndex);
+        RecognizedText.Bounds leftBounds = left.line.getBounds();
+        Candidate best = null;
+        int bestTileLeft = Integer.MAX_VALUE;
+        int bestOverlap = 0;
+        for (Candidate candidate : candidates) {
+            Tile tile = tiles.get(candidate.tileIndex);
+            if (candidate.stitched || !candidate.cutLeft || tile.top != leftTile.top
+                    || tile.left <= leftTile.left || tile.left >= leftTile.right
+                    || tile.left > bestTileLeft) {
+                continue;
+            }
+            RecognizedText.Bounds bounds = candidate.line.getBounds();
+            int overlap = Math.min(leftBounds.getBottom(), bounds.getBottom())
+                    - Math.max(leftBounds.getTop(), bounds.getTop());
+            int minHeight = Math.min(leftBounds.getHeight(), bounds.getHeight());
+            if (bounds.getLeft() >= leftBounds.getRight()
+                    || overlap < DUPLICATE_OVERLAP * minHeight) {
+                continue;
+            }
+            if (tile.left < bestTileLeft || overlap > bestOverlap) {
+                best = candidate;
+                bestTileLeft = tile.left;
+                bestOverlap = overlap;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Joins two pieces of a line cut at a vertical seam: the elements of the left piece that do
+     * not reach the seam at its tile's right edge, and the elements of the right piece that do not
+     * reach its tile's left edge and are not already among the left piece's.
+     */
+    private static Candidate join(Candidate left, Candidate right, List<Tile> tiles, int width) {
+        Tile leftTile = tiles.get(left.tileIndex);
+        Tile rightTile = tiles.get(right.tileIndex);
+        List<RecognizedText.Element> elements = new ArrayList<>();
+        for (RecognizedText.Element element : left.line.getElements()) {
+            if (element.getBounds().getRight() < leftTile.right - SEAM_MARGIN) {
+                elements.add(element);
+            }
+        }
+        int leftCount = elements.size();
+        for (RecognizedText.Element element : right.line.getElements()) {
+            RecognizedText.Bounds bounds = element.getBounds();
+            if (bounds.getLeft() <= rightTile.left + SEAM_MARGIN) {
+                continue;
+            }
+            boolean duplicate = false;
+            for (int i = 0; i < leftCount && !duplicate; i++) {
+                RecognizedText.Bounds other = elements.get(i).getBounds();
+                duplicate = bounds.intersectionArea(other)
+                        >= DUPLICATE_OVERLAP * Math.min(bounds.area(), other.area());
+            }
+            if (!duplicate) {
+                elements.add(element);
+            }
+        }
+        Collections.sort(elements, new Comparator<RecognizedText.Element>() {
+            @Override
+            public int compare(RecognizedText.Element a, RecognizedText.Element b) {
+                int aLeft = a.getBounds().getLeft();
+                int bLeft = b.getBounds().getLeft();
+                return aLeft < bLeft ? -1 : (aLeft == bLeft ? 0 : 1);
+            }
+        });
+
+        RecognizedText.Bounds bounds = left.line.getBounds().union(right.line.getBounds());
+        StringBuilder text = new StringBuilder();
+        for (RecognizedText.Element element : elements) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            text.append(element.getText());
+        }
+        RecognizedText.Line line = new RecognizedText.Line(text.toString(), bounds, elements);
+        return new Candidate(line, left.tileIndex, left.blockIndex, left.cutLeft,
+                isCutRight(right.line.getBounds(), rightTile, width),
+                left.cutTopOrBottom || right.cutTopOrBottom);
+    }
+
+    private static boolean isDuplicate(Candidate candidate, List<Candidate> kept) {
+        RecognizedText.Bounds bounds = candidate.line.getBounds();
+        for (Candidate other : kept) {
+            if (other.tileIndex == candidate.tileIndex) {
+                continue;
+            }
+            long shared = bounds.intersectionArea(other.line.getBounds());
+            if (shared > 0 && shared >= DUPLICATE_OVERLAP * Math.min(candidate.area, other.area)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static RecognizedText.Block toBlock(List<RecognizedText.Line> lines) {
+        StringBuilder text = new StringBuilder();
+        RecognizedText.Bounds bounds = null;
+        for (RecognizedText.Line line : lines) {
+            if (bounds == null) {
+                bounds = line.getBounds();
+            } else {
+                text.append('\n');
+                bounds = bounds.union(line.getBounds());
+            }
+            text.append(line.getText());
+        }
+        return new RecognizedText.Block(text.toString(), bounds, lines);
+    }
+}
@@ -0,0 +1,298 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.textrecognition;
+
+import androidx.annotation.Nullable;
+
+import com.google.firebase.samples.apps.mlkit.common.BoundingBoxes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Follows recognized text elements from frame to frame, so that results pointing at the same text
+ * can be handled incrementally instead of from scratch.
+ *
+ * <p>The elements of each frame are added between {@link #beginFrame()} and {@link #endFrame()}.
+ * An element is matched to the tracked element whose bounding box overlaps it most, by
+ * intersection over union, preferring one with the same text. A matched element keeps its id; it
+ * only counts as changed, and takes over the new payload and bounds, when its text differs or its
+ * box moved noticeably. Elements that are not matched are added, and tracked elements that are
+ * missing for more than a few frames are removed. {@link #endFrame()} returns the {@link Diff}.
+ *
+ * <p>The tracker is not thread-safe; it is meant to be updated by the thread rendering results.
+ *
+ * @param <T> the result the element was recognized as, e.g. a {@code FirebaseVisionText.Element}
+ */
+public class TextTracker<T> {
+
+    /** The overlap needed to match an element to a tracked one, by default. */
+    public static final float DEFAULT_MIN_IOU = 0.5f;
+
+    /** The overlap above which a matched element with the same text is unchanged, by default. */
+    public static final float DEFAULT_STABLE_IOU = 0.9f;
+
+    /** The number of frames an element may be missing before it is removed, by default. */
+    public static final int DEFAULT_MAX_MISSED_FRAMES = 1;
+
+    /** Told about every frame that added, changed or removed elements. */
+    public interface Listener<T> {
+        void onTextChanged(Diff<T> diff);
+    }
+
+    /** A text element followed across frames. */
+    public static final class TrackedElement<T> {
+        private final long id;
+        private T payload;
+        private String text;
+        private int left;
+        private int top;
+        private int right;
+        private int bottom;
+        // The frame the element was last matched in, and for how many frames it has been missing.
+        private long matchedFrame;
+        private int missedFrames;
+
+        TrackedElement(long id) {
+            this.id = id;
+        }
+
+        /** Returns the id of the element, which stays the same as long as it is tracked. */
+        public long getId() {
+            return id;
+        }
+
+        /** Returns the result the element was last changed with. */
+        public T getPayload() {
+            return payload;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public int getLeft() {
+            return left;
+        }
+
+        public int getTop() {
+            return top;
+        }
+
+        public int getRight() {
+            return right;
+        }
+
+        public int getBottom() {
+            return bottom;
+        }
+
+        /** Returns for how many consecutive frames the element has not been seen. */
+        public int getMissedFrames() {
+            return missedFrames;
+        }
+
+        void set(T payload, String text, int left, int top, int right, int bottom) {
+            this.payload = payload;
+            this.text = text;
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "TextElement#%d(\"%s\" [%d, %d, %d, %d])",
+                    id, text, left, top, right, bottom);
+        }
+    }
+
+    /** The elements one frame added, changed and removed. */
+    public static final class Diff<T> {
+        private final List<TrackedElement<T>> added;
+        private final List<TrackedElement<T>> changed;
+        private final List<TrackedElement<T>> removed;
+
+        Diff(
+                List<TrackedElement<T>> added,
+                List<TrackedElement<T>> changed,
+                List<TrackedElement<T>> removed) {
+            this.added = Collections.unmodifiableList(added);
+            this.changed = Collections.unmodifiableList(changed);
+            this.removed = Collections.unmodifiableList(removed);
+        }
+
+        /** Returns the elements seen for the first time. */
+        public List<TrackedElement<T>> getAdded() {
+            return added;
+        }
+
+        /** Returns the elements whose text or position changed. */
+        public List<TrackedElement<T>> getChanged() {
+            return changed;
+        }
+
+        /** Returns the elements that are no longer tracked. */
+        public List<TrackedElement<T>> getRemoved() {
+            return removed;
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "Diff(added=%d, changed=%d, removed=%d)",
+                    added.size(), changed.size(), removed.size());
+        }
+    }
+
+    private final float minIou;
+    private final float stableIou;
+    private final int maxMissedFrames;
+
+    private final List<TrackedElement<T>> elements = new ArrayList<>();
+    private final List<TrackedElement<T>> unmodifiableElements =
+            Collections.unmodifiableList(elements);
+    private List<TrackedElement<T>> added = new ArrayList<>();
+    private List<TrackedElement<T>> changed = new ArrayList<>();
+    // The number of elements tracked before the frame; elements added by it come after them.
+    private int previousCount;
+    private long frame;
+    private boolean inFrame;
+    private long nextId = 1;
+
+    @Nullable private Listener<T> listener;
+
+    public TextTracker() {
+        this(DEFAULT_MIN_IOU, DEFAULT_STABLE_IOU, DEFAULT_MAX_MISSED_FRAMES);
+    }
+
+    public TextTracker(float minIou, float stableIou, int maxMissedFrames) {
+        if (minIou <= 0 || stableIou < minIou || stableIou > 1 || maxMissedFrames < 0) {
+            throw new IllegalArgumentException(
+                    "Invalid tracker: IoU " + minIou + ", stable IoU " + stableIou
+                            + ", missed frames " + maxMissedFrames);
+        }
+        this.minIou = minIou;
+        this.stableIou = stableIou;
+        this.maxMissedFrames = maxMissedFrames;
+    }
+
+    /** Sets the listener told about the diff of every frame that has changes, or null. */
+    public void setListener(@Nullable Listener<T> listener) {
+        this.listener = listener;
+    }
+
+    /** Starts adding the elements of a new frame. */
+    public void beginFrame() {
+        if (inFrame) {
+            throw new IllegalStateException("Frame already begun.");
+        }
+        inFrame = true;
+        frame++;
+        previousCount = elements.size();
+    }
+
+    /**
+     * Adds an element recognized in the current frame and returns the tracked element it matched
+     * or was added as.
+     */
+    public TrackedElement<T> addElement(
+            T payload, String text, int left, int top, int right, int bottom) {
+        if (!inFrame) {
+            throw new IllegalStateException("No frame begun.");
+        }
+        TrackedElement<T> match = null;
+        float bestScore = 0;
+        float matchIou = 0;
+        for (int i = 0; i < previousCount; i++) {
+            TrackedElement<T> element = elements.get(i);
+            if (element.matchedFrame == frame) {
+                continue;
+            }
+            float iou = intersectionOverUnion(element, left, top, right, bottom);
+            if (iou < minIou) {
+                continue;
+            }
+            // Any element with the same text beats all others.
+            float score = element.text.equals(text) ? 1 + iou : iou;
+            if (score > bestScore) {
+                match = element;
+                bestScore = score;
+                matchIou = iou;
+            }
+        }
+
+        if (match == null) {
+            match = new TrackedElement<>(nextId++);
+            match.set(payload, text, left, top, right, bottom);
+            elements.add(match);
+            added.add(match);
+        } else if (!match.text.equals(text) || matchIou < stableIou) {
+            match.set(payload, text, left, top, right, bottom);
+            changed.add(match);
+        }
+        match.matchedFrame = frame;
+        match.missedFrames = 0;
+        return match;
+    }
+
+    /** Finishes the current frame and returns what it added, changed and removed. */
+    public Diff<T> endFrame() {
+        if (!inFrame) {
+            throw new IllegalStateException("No frame begun.");
+        }
+        inFrame = false;
+        List<TrackedElement<T>> removed = new ArrayList<>();
+        for (int i = previousCount - 1; i >= 0; i--) {
+            TrackedElement<T> element = elements.get(i);
+            if (element.matchedFrame != frame && ++element.missedFrames > maxMissedFrames) {
+                elements.remove(i);
+                removed.add(element);
+            }
+        }
+        Diff<T> diff = new Diff<>(added, changed, removed);
+        added = new ArrayList<>();
+        changed = new ArrayList<>();
+        if (listener != null && !diff.isEmpty()) {
+            listener.onTextChanged(diff);
+        }
+        return diff;
+    }
+
+    /** Returns the tracked elements, including those missing for only a few frames. */
+    public List<TrackedElement<T>> getElements() {
+        return unmodifiableElements;
+    }
+
+    /** Stops tracking all elements, without reporting them as removed. */
+    public void clear() {
+        elements.clear();
+        added.clear();
+        changed.clear();
+        inFrame = false;
+    }
+
+    private static float intersectionOverUnion(
+            TrackedElement<?> element, int left, int top, int right, int bottom) {
+        return BoundingBoxes.intersectionOverUnion(
+                element.left, element.top, element.right, element.bottom,
+                left, top, right, bottom);
+    }
+}
@@ -0,0 +1,135 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.textrecognition;
+
+import android.graphics.Bitmap;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.ml.vision.FirebaseVision;
+import com.google.firebase.ml.vision.common.FirebaseVisionImage;
+import com.google.firebase.ml.vision.document.FirebaseVisionDocumentTextRecognizer;
+import com.google.firebase.ml.vision.text.FirebaseVisionTextRecognizer;
+import com.google.firebase.samples.apps.mlkit.common.FrameMetadata;
+import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
+import com.google.firebase.samples.apps.mlkit.common.GraphicPool;
+import com.google.firebase.samples.apps.mlkit.java.VisionProcessorBase;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Processor for text recognition in large images, e.g. scanned pages, which are recognized in
+ * overlapping tiles by a {@link TiledTextRecognizer} rather than scaled down as a whole.
+ */
+public class TiledTextRecognitionProcessor extends VisionProcessorBase<RecognizedText> {
+
+    private static final String TAG = "TiledTextRecProc";
+
+    // On-device tiles compete for the CPU, so few are recognized at a time.
+    private static final int ON_DEVICE_PARALLELISM = 2;
+
+    // Cloud tiles mostly wait for the network, so more are sent at a time.
+    private static final int CLOUD_PARALLELISM = 4;
+
+    private final Closeable detector;
+    private final TiledTextRecognizer recognizer;
+    @Nullable private final String resultCacheKey;
+
+    // Recycles the graphics of earlier images, created for the first overlay drawn on.
+    private GraphicPool<RecognizedTextGraphic> lineGraphics;
+
+    private TiledTextRecognitionProcessor(
+            Closeable detector, TiledTextRecognizer recognizer, @Nullable String resultCacheKey) {
+        this.detector = detector;
+        this.recognizer = recognizer;
+        this.resultCacheKey = resultCacheKey;
+    }
+
+    /** Returns a processor that recognizes the tiles with the on-device text recognizer. */
+    public static TiledTextRecognitionProcessor onDevice() {
+        FirebaseVisionTextRecognizer detector =
+                FirebaseVision.getInstance().getOnDeviceTextRecognizer();
+        return new TiledTextRecognitionProcessor(
+                detector,
+                new TiledTextRecognizer(TiledTextRecognizer.of(detector),
+                        TiledTextRecognizer.DEFAULT_TILE_SIZE, TiledTextRecognizer.DEFAULT_OVERLAP,
+                        ON_DEVICE_PARALLELISM),
+                null);
+    }
+
+    /** Returns a processor that recognizes the tiles with the cloud document text recognizer. */
+    public static TiledTextRecognitionProcessor cloudDocument() {
+        FirebaseVisionDocumentTextRecognizer detector =
+                FirebaseVision.getInstance().getCloudDocumentTextRecognizer();
+        return new TiledTextRecognitionProcessor(
+                detector,
+                new TiledTextRecognizer(TiledTextRecognizer.of(detector),
+                        TiledTextRecognizer.DEFAULT_TILE_SIZE, TiledTextRecognizer.DEFAULT_OVERLAP,
+                        CLOUD_PARALLELISM),
+                "cloud-document-text/tiled/" + TiledTextRecognizer.DEFAULT_TILE_SIZE + "+"
+                        + TiledTextRecognizer.DEFAULT_OVERLAP);
+    }
+
+    @Override
+    public void stop() {
+        recognizer.shutdown();
+        try {
+            detector.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Exception thrown while trying to close Text Detector: " + e);
+        }
+    }
+
+    @Override
+    protected Task<RecognizedText> detectInImage(FirebaseVisionImage image) {
+        return recognizer.recognize(image.getBitmap());
+    }
+
+    @Override
+    protected String getResultCacheKey() {
+        return resultCacheKey;
+    }
+
+    @Override
+    protected void onSuccess(
+            @Nullable Bitmap originalCameraImage,
+            @NonNull RecognizedText text,
+            @NonNull FrameMetadata frameMetadata,
+            @NonNull GraphicOverlay graphicOverlay) {
+        GraphicOverlay.Scene.Builder scene = newScene(graphicOverlay);
+        if (lineGraphics == null) {
+            lineGraphics = RecognizedTextGraphic.newPool(graphicOverlay);
+        }
+        for (RecognizedText.Block block : text.getBlocks()) {
+            for (RecognizedText.Line line : block.getLines()) {
+                scene.add(lineGraphics.obtain().bind(line));
+            }
+        }
+        graphicOverlay.publish(scene.build());
+    }
+
+    @NonNull
+    @Override
+    protected String describeResults(@NonNull RecognizedText text) {
+        return text.getText();
+    }
+
+    @Override
+    protected void onFailure(@NonNull Exception e) {
+        Log.w(TAG, "Tiled text detection failed." + e);
+    }
+}
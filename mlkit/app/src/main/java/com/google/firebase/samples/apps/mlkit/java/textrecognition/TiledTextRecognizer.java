@@ -0,0 +1,293 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.textrecognition;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.os.SystemClock;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Continuation;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.ml.vision.common.FirebaseVisionImage;
+import com.google.firebase.ml.vision.document.FirebaseVisionDocumentText;
+import com.google.firebase.ml.vision.document.FirebaseVisionDocumentTextRecognizer;
+import com.google.firebase.ml.vision.text.FirebaseVisionText;
+import com.google.firebase.ml.vision.text.FirebaseVisionTextRecognizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Recognizes text in large images tile by tile, so that small text keeps its resolution: the
+ * image is split into overlapping tiles by {@link TextTiling}, a bounded number of tiles are
+ * recognized at the same time, and their text is merged back into one {@link RecognizedText} in
+ * the coordinates of the whole image.
+ */
+public class TiledTextRecognizer {
+
+    private static final String TAG = "TiledTextRecognizer";
+
+    /** The side of the tiles by default, about what recognizers are tuned for. */
+    public static final int DEFAULT_TILE_SIZE = 1024;
+
+    /** How much neighboring tiles overlap by default, more than a line of small text. */
+    public static final int DEFAULT_OVERLAP = 96;
+
+    // Runs the conversion of the results on the thread the recognizer completes on.
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            command.run();
+        }
+    };
+
+    /** Recognizes the text in one tile. */
+    public interface Recognizer {
+        Task<RecognizedText> recognize(FirebaseVisionImage image);
+    }
+
+    private final Recognizer recognizer;
+    private final int tileSize;
+    private final int overlap;
+    private final ExecutorService coordinator;
+    private final ExecutorService workers;
+
+    /**
+     * Creates a recognizer that splits images into tiles of {@code tileSize} pixels overlapping by
+     * {@code overlap}, and recognizes up to {@code parallelism} tiles at a time with {@code
+     * recognizer}.
+     */
+    public TiledTextRecognizer(Recognizer recognizer, int tileSize, int overlap, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+        }
+        this.recognizer = recognizer;
+        this.tileSize = tileSize;
+        this.overlap = overlap;
+        coordinator = Executors.newSingleThreadExecutor();
+        workers = Executors.newFixedThreadPool(parallelism);
+    }
+
+    /** Returns a recognizer of tiles that runs {@code detector}. */
+    public static Recognizer of(final FirebaseVisionTextRecognizer detector) {
+        return new Recognizer() {
+            @Override
+            public Task<RecognizedText> recognize(FirebaseVisionImage image) {
+                return detector.processImage(image).continueWith(DIRECT_EXECUTOR,
+                        new Continuation<FirebaseVisionText, RecognizedText>() {
+                            @Override
+                            public RecognizedText then(@NonNull Task<FirebaseVisionText> task) {
+                                return toRecognizedText(task.getResult());
+                            }
+                        });
+            }
+        };
+    }
+
+    /** Returns a recognizer of tiles that runs {@code detector}. */
+    public static Recognizer of(final FirebaseVisionDocumentTextRecognizer detector) {
+        return new Recognizer() {
+            @Override
+            public Task<RecognizedText> recognize(FirebaseVisionImage image) {
+                return detector.processImage(image).continueWith(DIRECT_EXECUTOR,
+                        new Continuation<FirebaseVisionDocumentText, RecognizedText>() {
+                            @Override
+                            public RecognizedText then(
+                                    @NonNull Task<FirebaseVisionDocumentText> task) {
+                                return toRecognizedText(task.getResult());
+                            }
+                        });
+            }
+        };
+    }
+
+    /**
+     * Recognizes the text in {@code bitmap} in the background. {@code bitmap} must not change
+     * until the returned task is complete. The task fails if any tile fails.
+     */
+    public Task<RecognizedText> recognize(final Bitmap bitmap) {
+        return Tasks.call(coordinator, new Callable<RecognizedText>() {
+            @Override
+            public RecognizedText call() throws Exception {
+                return recognizeTiles(bitmap);
+            }
+        });
+    }
+
+    /** Stops the background threads once the images being recognized are done. */
+    public void shutdown() {
+        coordinator.shutdown();
+        workers.shutdown();
+    }
+
+    private RecognizedText recognizeTiles(final Bitmap bitmap) throws Exception {
+        long startMillis = SystemClock.elapsedRealtime();
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        List<TextTiling.Tile> tiles = TextTiling.layout(width, height, tileSize, overlap);
+        List<Future<RecognizedText>> futures = new ArrayList<>(tiles.size());
+        for (final TextTiling.Tile tile : tiles) {
+            futures.add(workers.submit(new Callable<RecognizedText>() {
+                @Override
+                public RecognizedText call() throws Exception {
+                    return recognizeTile(bitmap, tile);
+                }
+            }));
+        }
+
+        List<RecognizedText> results = new ArrayList<>(tiles.size());
+        try {
+            for (Future<RecognizedText> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            // The tiles not started yet would be wasted work. The ones already running still read
+            // from the bitmap, which the caller may reuse as soon as the task fails, so wait for
+            // them to finish first.
+            for (Future<RecognizedText> future : futures) {
+                future.cancel(false);
+            }
+            for (Future<RecognizedText> future : futures) {
+                if (!future.isCancelled()) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException ignored) {
+                        // Only the first failure is reported.
+                    }
+                }
+            }
+            throw asException(e.getCause());
+        }
+        RecognizedText text = TextTiling.merge(tiles, results, width, height);
+        Log.d(TAG, "Recognized " + width + "x" + height + " in " + tiles.size() + " tiles, "
+                + text.getBlocks().size() + " blocks in "
+                + (SystemClock.elapsedRealtime() - startMillis) + " ms");
+        return text;
+    }
+
+    private RecognizedText recognizeTile(Bitmap bitmap, TextTiling.Tile tile) throws Exception {
+        Bitmap tileBitmap = Bitmap.createBitmap(
+                bitmap, tile.getLeft(), tile.getTop(), tile.getWidth(), tile.getHeight());
+        try {
+            return Tasks.await(recognizer.recognize(FirebaseVisionImage.fromBitmap(tileBitmap)));
+        } catch (ExecutionException e) {
+            throw asException(e.getCause());
+        } finally {
+            // A tile that covers the whole image may be the image itself.
+            if (tileBitmap != bitmap) {
+                tileBitmap.recycle();
+            }
+        }
+    }
+
+    private static Exception asException(Throwable cause) {
+        return cause instanceof Exception ? (Exception) cause : new ExecutionException(cause);
+    }
+
+    /** Returns the text of {@code text}, leaving out the parts without a bounding box. */
+    public static RecognizedText toRecognizedText(FirebaseVisionText text) {
+        List<RecognizedText.Block> blocks = new ArrayList<>();
+        for (FirebaseVisionText.TextBlock block : text.getTextBlocks()) {
+            RecognizedText.Bounds blockBounds = toBounds(block.getBoundingBox());
+            if (blockBounds == null) {
+                continue;
+            }
+            List<RecognizedText.Line> lines = new ArrayList<>();
+            for (FirebaseVisionText.Line line : block.getLines()) {
+                RecognizedText.Bounds lineBounds = toBounds(line.getBoundingBox());
+                if (lineBounds == null) {
+                    continue;
+                }
+                List<RecognizedText.Element> elements = new ArrayList<>();
+                for (FirebaseVisionText.Element element : line.getElements()) {
+                    RecognizedText.Bounds elementBounds = toBounds(element.getBoundingBox());
+                    if (elementBounds != null) {
+                        elements.add(new RecognizedText.Element(element.getText(), elementBounds));
+                    }
+                }
+                lines.add(new RecognizedText.Line(line.getText(), lineBounds, elements));
+            }
+            blocks.add(new RecognizedText.Block(block.getText(), blockBounds, lines));
+        }
+        return new RecognizedText(text.getText(), blocks);
+    }
+
+    /**
+     * Returns the text of {@code text}, with paragraphs as blocks and their words broken into
+     * lines where the next word starts left of the previous one.
+     */
+    public static RecognizedText toRecognizedText(FirebaseVisionDocumentText text) {
+        List<RecognizedText.Block> blocks = new ArrayList<>();
+        for (FirebaseVisionDocumentText.Block block : text.getBlocks()) {
+            for (FirebaseVisionDocumentText.Paragraph paragraph : block.getParagraphs()) {
+                RecognizedText.Bounds paragraphBounds = toBounds(paragraph.getBoundingBox());
+                if (paragraphBounds == null) {
+                    continue;
+                }
+                List<RecognizedText.Line> lines = new ArrayList<>();
+                List<RecognizedText.Element> words = new ArrayList<>();
+                for (FirebaseVisionDocumentText.Word word : paragraph.getWords()) {
+                    RecognizedText.Bounds wordBounds = toBounds(word.getBoundingBox());
+                    if (wordBounds == null) {
+                        continue;
+                    }
+                    RecognizedText.Element previous =
+                            words.isEmpty() ? null : words.get(words.size() - 1);
+                    if (previous != null
+                            && wordBounds.getLeft() < previous.getBounds().getLeft()) {
+                        lines.add(toLine(words));
+                        words = new ArrayList<>();
+                    }
+                    words.add(new RecognizedText.Element(word.getText(), wordBounds));
+                }
+                if (!words.isEmpty()) {
+                    lines.add(toLine(words));
+                }
+                blocks.add(new RecognizedText.Block(paragraph.getText(), paragraphBounds, lines));
+            }
+        }
+        return new RecognizedText(text.getText(), blocks);
+    }
+
+    private static RecognizedText.Line toLine(List<RecognizedText.Element> words) {
+        StringBuilder text = new StringBuilder();
+        RecognizedText.Bounds bounds = null;
+        for (RecognizedText.Element word : words) {
+            if (bounds == null) {
+                bounds = word.getBounds();
+            } else {
+                text.append(' ');
+                bounds = bounds.union(word.getBounds());
+            }
+            text.append(word.getText());
+        }
+        return new RecognizedText.Line(text.toString(), bounds, words);
+    }
+
+    @Nullable
+    private static RecognizedText.Bounds toBounds(@Nullable Rect box) {
+        return box == null
+                ? null : new RecognizedText.Bounds(box.left, box.top, box.right, box.bottom);
+    }
+}
@@ -0,0 +1,163 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.google.firebase.samples.apps.mlkit.common.AdaptiveCaptureController.CaptureSettings;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit tests for {@link AdaptiveCaptureController}, driven by a simulated clock. */
+public class AdaptiveCaptureControllerTest {
+
+  private static final long MILLIS = 1000000L;
+
+  private long nowNanos;
+  private CaptureSettings reported;
+  private int reportCount;
+  private AdaptiveCaptureController controller;
+
+  @Before
+  public void setUp() {
+    nowNanos = 0;
+    controller =
+        new AdaptiveCaptureController.Builder()
+            .setClock(
+                new AdaptiveCaptureController.Clock() {
+                  @Override
+                  public long nanoTime() {
+                    return nowNanos;
+                  }
+                })
+            .setFpsRange(5, 30, 5)
+            .addPreviewSize(640, 480)
+            .addPreviewSize(320, 240)
+            .addPreviewSize(480, 360)
+            .setInitialSettings(20, 480, 360)
+            .setTargetUtilization(0.8f)
+            .setEvaluationWindow(1000, 5)
+            .setListener(
+                new AdaptiveCaptureController.Listener() {
+                  @Override
+                  public void onCaptureSettingsChanged(CaptureSettings settings) {
+                    reported = settings;
+                    reportCount++;
+                  }
+                })
+            .build();
+  }
+
+  /**
+   * Simulates a serial detector taking {@code detectionMillis} per frame at the current frame
+   * rate, for {@code durationMillis}.
+   */
+  private void runDetector(long detectionMillis, long durationMillis) {
+    long end = nowNanos + durationMillis * MILLIS;
+    while (nowNanos < end) {
+      long framePeriod = 1000 * MILLIS / controller.getCurrentSettings().getFps();
+      nowNanos += Math.max(framePeriod, detectionMillis * MILLIS);
+      controller.onFrameLatency(detectionMillis * MILLIS, detectionMillis * MILLIS);
+    }
+  }
+
+  @Test
+  public void noDecisionBeforeWindowElapsed() {
+    runDetector(200, 700);
+
+    assertEquals(0, controller.getEvaluationCount());
+    assertNull(reported);
+    assertEquals(new CaptureSettings(20, 480, 360), controller.getCurrentSettings());
+  }
+
+  @Test
+  public void noDecisionWithTooFewSamples() {
+    nowNanos += 5000 * MILLIS;
+    controller.onFrameLatency(100 * MILLIS, 100 * MILLIS);
+
+    assertEquals(0, controller.getEvaluationCount());
+  }
+
+  @Test
+  public void slowDetector_lowersFrameRateFirst() {
+    // 100ms per frame sustains 8 fps at 80% utilization.
+    runDetector(100, 1100);
+
+    assertEquals(new CaptureSettings(5, 480, 360), reported);
+    assertEquals(1, controller.getFpsChangeCount());
+    assertEquals(0, controller.getSizeChangeCount());
+  }
+
+  @Test
+  public void verySlowDetector_shrinksPreviewAtMinimumFrameRate() {
+    // 400ms per frame sustains 2 fps, below the minimum. The first window only lowers the frame
+    // rate, the next one the size.
+    runDetector(400, 2000);
+    assertEquals(new CaptureSettings(5, 480, 360), reported);
+    assertEquals(0, controller.getSizeChangeCount());
+
+    runDetector(400, 2000);
+    assertEquals(new CaptureSettings(5, 320, 240), reported);
+    assertEquals(new CaptureSettings(5, 320, 240), controller.getCurrentSettings());
+    assertEquals(1, controller.getSizeChangeCount());
+  }
+
+  @Test
+  public void fastDetector_raisesFrameRateThenPreviewSize() {
+    // 5ms per frame sustains 160 fps.
+    runDetector(5, 1100);
+    assertEquals(new CaptureSettings(30, 480, 360), reported);
+
+    runDetector(5, 1100);
+    assertEquals(new CaptureSettings(30, 640, 480), reported);
+
+    runDetector(5, 5000);
+    assertEquals(2, reportCount);
+    assertEquals(1, controller.getFpsChangeCount());
+    assertEquals(1, controller.getSizeChangeCount());
+  }
+
+  @Test
+  public void fastDetector_keepsPreviewSizeWhenLargerSizeWouldOverload() {
+    // 20ms per frame sustains 40 fps, which would drop to 22 fps at 640x480.
+    runDetector(20, 1100);
+    runDetector(20, 5000);
+
+    assertEquals(new CaptureSettings(30, 480, 360), controller.getCurrentSettings());
+    assertEquals(0, controller.getSizeChangeCount());
+  }
+
+  @Test
+  public void balancedDetector_keepsSettings() {
+    // 45ms per frame sustains 17.8 fps: not enough to reach the next step, enough for 15.
+    runDetector(45, 1100);
+    assertEquals(new CaptureSettings(15, 480, 360), reported);
+
+    runDetector(45, 10000);
+    assertEquals(1, reportCount);
+    assertEquals(new CaptureSettings(15, 480, 360), controller.getCurrentSettings());
+  }
+
+  @Test
+  public void metricsDescribeLastWindow() {
+    runDetector(40, 1100);
+
+    assertEquals(1, controller.getEvaluationCount());
+    assertEquals(40f, controller.getMeanDetectionMillis(), 0.01f);
+    assertEquals(20f, controller.getSustainableFps(), 0.01f);
+    assertEquals(0.8f, controller.getUtilization(), 0.05f);
+  }
+}
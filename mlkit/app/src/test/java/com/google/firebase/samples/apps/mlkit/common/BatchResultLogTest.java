@@ -0,0 +1,108 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Unit tests for {@link BatchResultLog}. */
+public class BatchResultLogTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void resumedLogHasTheResultsButNotTheErrors() throws IOException {
+    File file = folder.newFile("results.jsonl");
+    BatchResultLog log = BatchResultLog.open(file);
+    log.writeResult("a.jpg", 640, 480, 4, 120, "cat:0.9");
+    log.writeError("b.jpg", "Detection failed");
+    log.close();
+
+    BatchResultLog resumed = BatchResultLog.open(file);
+    assertTrue(resumed.isDone("a.jpg"));
+    assertFalse(resumed.isDone("b.jpg"));
+    assertEquals(1, resumed.getDoneCount());
+    resumed.writeResult("b.jpg", 640, 480, 4, 80, "dog:0.8");
+    resumed.close();
+
+    List<String> lines = readLines(file);
+    assertEquals(3, lines.size());
+    assertEquals(
+        "{\"id\":\"a.jpg\",\"width\":640,\"height\":480,\"sampleSize\":4,\"millis\":120,"
+            + "\"result\":\"cat:0.9\"}",
+        lines.get(0));
+    assertEquals("{\"id\":\"b.jpg\",\"error\":\"Detection failed\"}", lines.get(1));
+  }
+
+  @Test
+  public void lineCutShortIsDroppedOnResume() throws IOException {
+    File file = folder.newFile("results.jsonl");
+    BatchResultLog log = BatchResultLog.open(file);
+    log.writeResult("a.jpg", 640, 480, 1, 100, "cat");
+    log.close();
+    FileOutputStream out = new FileOutputStream(file, true);
+    out.write("{\"id\":\"b.jpg\",\"width\":64".getBytes("UTF-8"));
+    out.close();
+
+    BatchResultLog resumed = BatchResultLog.open(file);
+    assertFalse(resumed.isDone("b.jpg"));
+    resumed.writeResult("b.jpg", 640, 480, 1, 100, "dog");
+    resumed.close();
+
+    List<String> lines = readLines(file);
+    assertEquals(2, lines.size());
+    assertEquals("b.jpg", BatchResultLog.readId(lines.get(1)));
+  }
+
+  @Test
+  public void idsAndResultsAreEscaped() throws IOException {
+    String id = "content://folder/\"quoted\" \\ tab\té .jpg";
+    File file = folder.newFile("results.jsonl");
+    BatchResultLog log = BatchResultLog.open(file);
+    log.writeResult(id, 1, 1, 1, 1, "line one\nline two");
+    log.close();
+
+    List<String> lines = readLines(file);
+    assertEquals(1, lines.size());
+    assertTrue(lines.get(0).endsWith("\"result\":\"line one\\nline two\"}"));
+    assertEquals(id, BatchResultLog.readId(lines.get(0)));
+    BatchResultLog resumed = BatchResultLog.open(file);
+    assertTrue(resumed.isDone(id));
+    resumed.close();
+  }
+
+  @Test
+  public void readIdRejectsIncompleteLines() {
+    assertNull(BatchResultLog.readId(""));
+    assertNull(BatchResultLog.readId("{\"id\":\"a.jpg"));
+    assertNull(BatchResultLog.readId("{\"name\":\"a.jpg\"}"));
+  }
+
+  private static List<String> readLines(File file) throws IOException {
+    return Files.readAllLines(file.toPath(), Charset.forName("UTF-8"));
+  }
+}
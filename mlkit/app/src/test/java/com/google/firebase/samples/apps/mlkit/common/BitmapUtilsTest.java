@@ -0,0 +1,59 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import org.junit.Test;
+
+/** Unit tests for {@link BitmapUtils#calculateInSampleSize} and the file content hash. */
+public class BitmapUtilsTest {
+
+  @Test
+  public void sampleSizeKeepsTheImageAtLeastAsLargeAsTheTarget() {
+    // A 12MP camera image shown at 640x480 only needs a quarter of its width and height.
+    assertEquals(4, BitmapUtils.calculateInSampleSize(4000, 3000, 640, 480));
+    // Halving it again would make it smaller than 1024x768.
+    assertEquals(2, BitmapUtils.calculateInSampleSize(4000, 3000, 1024, 768));
+  }
+
+  @Test
+  public void sampleSizeIgnoresOrientation() {
+    assertEquals(4, BitmapUtils.calculateInSampleSize(3000, 4000, 640, 480));
+    assertEquals(4, BitmapUtils.calculateInSampleSize(4000, 3000, 480, 640));
+  }
+
+  @Test
+  public void imagesSmallerThanTheTargetAreNotSubsampled() {
+    assertEquals(1, BitmapUtils.calculateInSampleSize(640, 480, 1024, 768));
+    assertEquals(1, BitmapUtils.calculateInSampleSize(1024, 768, 1024, 768));
+  }
+
+  @Test
+  public void contentHashDependsOnTheBytesOnly() throws IOException {
+    // Larger than the read buffer, so the hash spans reads.
+    byte[] file = new byte[100 * 1024];
+    for (int i = 0; i < file.length; i++) {
+      file[i] = (byte) (i * 31);
+    }
+    long hash = BitmapUtils.contentHash(new ByteArrayInputStream(file));
+    assertEquals(hash, BitmapUtils.contentHash(new ByteArrayInputStream(file.clone())));
+
+    file[file.length - 1]++;
+    assertNotEquals(hash, BitmapUtils.contentHash(new ByteArrayInputStream(file)));
+  }
+}
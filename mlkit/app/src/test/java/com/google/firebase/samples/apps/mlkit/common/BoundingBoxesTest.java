@@ -0,0 +1,49 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/** Unit tests for {@link BoundingBoxes}. */
+public class BoundingBoxesTest {
+
+  private static final float DELTA = 1e-6f;
+
+  @Test
+  public void intersectionOverUnion_equalBoxes_isOne() {
+    assertEquals(1f, BoundingBoxes.intersectionOverUnion(0, 0, 10, 10, 0, 0, 10, 10), DELTA);
+  }
+
+  @Test
+  public void intersectionOverUnion_halfOverlap() {
+    // Intersection 50, union 150.
+    assertEquals(
+        1f / 3, BoundingBoxes.intersectionOverUnion(0, 0, 10, 10, 5, 0, 15, 10), DELTA);
+  }
+
+  @Test
+  public void intersectionOverUnion_touchingOrEmptyBoxes_isZero() {
+    assertEquals(0f, BoundingBoxes.intersectionOverUnion(0, 0, 10, 10, 10, 0, 20, 10), DELTA);
+    assertEquals(0f, BoundingBoxes.intersectionOverUnion(0, 0, 0, 0, 0, 0, 0, 0), DELTA);
+  }
+
+  @Test
+  public void intersectionOverUnion_largeBoxes_doNotOverflow() {
+    int max = Integer.MAX_VALUE / 2;
+    assertEquals(
+        1f, BoundingBoxes.intersectionOverUnion(0, 0, max, max, 0, 0, max, max), DELTA);
+  }
+}
@@ -0,0 +1,108 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.firebase.samples.apps.mlkit.common.FrameMetrics.Stage;
+import com.google.firebase.samples.apps.mlkit.common.FrameTrace.Point;
+
+import org.junit.Test;
+
+/** Unit tests for {@link LatencyHistogram} and {@link FrameMetrics}. */
+public class FrameMetricsTest {
+
+  private static final long MILLIS = 1000000L;
+
+  @Test
+  public void histogram_reportsNearestRankPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram(128);
+    for (int i = 100; i >= 1; i--) {
+      histogram.record(i * MILLIS);
+    }
+
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+    assertEquals(100, snapshot.getSampleCount());
+    assertEquals(50.0, snapshot.getP50Millis(), 1e-9);
+    assertEquals(95.0, snapshot.getP95Millis(), 1e-9);
+    assertEquals(99.0, snapshot.getP99Millis(), 1e-9);
+    assertEquals(100.0, snapshot.getMaxMillis(), 1e-9);
+  }
+
+  @Test
+  public void histogram_keepsOnlyTheMostRecentSamples() {
+    LatencyHistogram histogram = new LatencyHistogram(6);
+    for (int i = 0; i < 8; i++) {
+      histogram.record(1000 * MILLIS);
+    }
+    for (int i = 0; i < 8; i++) {
+      histogram.record(MILLIS);
+    }
+
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+    // The capacity is rounded up to 8, so the slow samples have all been overwritten.
+    assertEquals(8, snapshot.getSampleCount());
+    assertEquals(1.0, snapshot.getMaxMillis(), 1e-9);
+    assertEquals(16, histogram.getRecordedCount());
+  }
+
+  @Test
+  public void histogram_emptyAfterReset() {
+    LatencyHistogram histogram = new LatencyHistogram(4);
+    histogram.record(MILLIS);
+    histogram.reset();
+
+    assertEquals(0, histogram.snapshot().getSampleCount());
+    assertEquals(0.0, histogram.snapshot().getP99Millis(), 1e-9);
+  }
+
+  @Test
+  public void metrics_recordsStagesBetweenMarkedPoints() throws InterruptedException {
+    FrameMetrics metrics = new FrameMetrics(16);
+    FrameTrace trace = metrics.startFrame(System.nanoTime());
+    trace.mark(Point.FRAME_QUEUED);
+    trace.mark(Point.DETECTION_START);
+    Thread.sleep(5);
+    trace.mark(Point.DETECTION_END);
+    trace.mark(Point.ON_SUCCESS);
+    trace.mark(Point.DRAWN);
+    trace.finish();
+    trace.finish();
+
+    assertEquals(1, metrics.getStartedFrameCount());
+    assertEquals(1, metrics.getFinishedFrameCount());
+    assertEquals(1, metrics.getSnapshot(Stage.DETECTION).getSampleCount());
+    assertEquals(1, metrics.getSnapshot(Stage.TOTAL).getSampleCount());
+    // The frame was never converted, so the stages around conversion are left out.
+    assertEquals(0, metrics.getSnapshot(Stage.CONVERSION).getSampleCount());
+    assertEquals(0, metrics.getSnapshot(Stage.WAIT).getSampleCount());
+    double detectionMillis = metrics.getSnapshot(Stage.DETECTION).getP50Millis();
+    assertTrue(detectionMillis >= 5.0);
+    assertTrue(metrics.getSnapshot(Stage.TOTAL).getP50Millis() >= detectionMillis);
+  }
+
+  @Test
+  public void metrics_computesFrameRates() {
+    FrameMetrics metrics = new FrameMetrics(64);
+    for (int i = 0; i < 31; i++) {
+      metrics.startFrame(i * 33 * MILLIS);
+    }
+
+    assertEquals(1000.0 / 33, metrics.getCameraFps(), 1e-6);
+    assertEquals(0.0, metrics.getDrawnFps(), 1e-9);
+  }
+}
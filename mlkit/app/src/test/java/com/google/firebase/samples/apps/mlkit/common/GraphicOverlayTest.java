@@ -0,0 +1,94 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertEquals;
+
+import android.graphics.Canvas;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the graphic offset and scale that {@link GraphicOverlay} scenes hand to their
+ * graphics. The overlay runs on the stubbed Android classes and keeps a view scale of 1.
+ */
+public class GraphicOverlayTest {
+
+  private static final float DELTA = 1e-6f;
+
+  /** A graphic that draws nothing. */
+  private static class EmptyGraphic extends GraphicOverlay.Graphic {
+    EmptyGraphic(GraphicOverlay overlay) {
+      super(overlay);
+    }
+
+    @Override
+    public void draw(Canvas canvas) {}
+  }
+
+  @Test
+  public void newScene_withoutTransform_leavesCoordinates() {
+    GraphicOverlay overlay = new GraphicOverlay(null, null);
+    EmptyGraphic graphic = new EmptyGraphic(overlay);
+
+    overlay.newScene().add(graphic);
+
+    assertEquals(10f, graphic.translateX(10f), DELTA);
+    assertEquals(20f, graphic.translateY(20f), DELTA);
+    assertEquals(5f, graphic.scaleX(5f), DELTA);
+  }
+
+  @Test
+  public void newScene_withTransform_mapsBackToPreview() {
+    GraphicOverlay overlay = new GraphicOverlay(null, null);
+    EmptyGraphic graphic = new EmptyGraphic(overlay);
+
+    overlay.newScene(100f, 50f, 2f).add(graphic);
+
+    assertEquals(120f, graphic.translateX(10f), DELTA);
+    assertEquals(90f, graphic.translateY(20f), DELTA);
+    assertEquals(10f, graphic.scaleX(5f), DELTA);
+    assertEquals(10f, graphic.scaleY(5f), DELTA);
+  }
+
+  @Test
+  public void newScene_interleavedBuilders_keepTheirOwnTransform() {
+    GraphicOverlay overlay = new GraphicOverlay(null, null);
+    GraphicOverlay.Scene.Builder cropped = overlay.newScene(100f, 50f, 1f);
+    GraphicOverlay.Scene.Builder scaled = overlay.newScene(0, 0, 4f);
+    EmptyGraphic croppedGraphic = new EmptyGraphic(overlay);
+    EmptyGraphic scaledGraphic = new EmptyGraphic(overlay);
+
+    cropped.add(croppedGraphic);
+    scaled.add(scaledGraphic);
+    overlay.publish(cropped.build());
+    overlay.publish(scaled.build());
+
+    assertEquals(110f, croppedGraphic.translateX(10f), DELTA);
+    assertEquals(40f, scaledGraphic.translateX(10f), DELTA);
+    assertEquals(100f, cropped.getGraphicOffsetX(), DELTA);
+    assertEquals(4f, scaled.getGraphicScale(), DELTA);
+  }
+
+  @Test
+  public void add_keepsTransformOfPublishedGraphics() {
+    GraphicOverlay overlay = new GraphicOverlay(null, null);
+    EmptyGraphic cropped = new EmptyGraphic(overlay);
+    overlay.publish(overlay.newScene(100f, 0, 1f).add(cropped).build());
+
+    overlay.add(new EmptyGraphic(overlay));
+
+    assertEquals(110f, cropped.translateX(10f), DELTA);
+  }
+}
@@ -0,0 +1,220 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Canvas;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link GraphicPool}, on its own and with the graphics of a {@link GraphicOverlay}
+ * going back to it as scenes are published, dropped and retired. The overlay runs on the stubbed
+ * Android classes, which do nothing.
+ */
+public class GraphicPoolTest {
+
+  private static final int GRAPHICS_PER_FRAME = 120;
+
+  /** Stands in for a graphic bound to one detection result. */
+  private static class FakeGraphic implements GraphicPool.Poolable {
+    GraphicPool<?> pool;
+    Object result;
+    int obtainCount;
+
+    @Override
+    public void onObtained(GraphicPool<?> pool) {
+      this.pool = pool;
+      obtainCount++;
+    }
+
+    @Override
+    public void onRecycled() {
+      result = null;
+    }
+  }
+
+  /** An overlay graphic that draws nothing and counts how often it was recycled. */
+  private static class OverlayGraphic extends GraphicOverlay.Graphic {
+    int recycledCount;
+
+    OverlayGraphic(GraphicOverlay overlay) {
+      super(overlay);
+    }
+
+    @Override
+    public void onRecycled() {
+      recycledCount++;
+    }
+
+    @Override
+    public void draw(Canvas canvas) {}
+  }
+
+  private static final GraphicPool.Factory<FakeGraphic> FACTORY =
+      new GraphicPool.Factory<FakeGraphic>() {
+        @Override
+        public FakeGraphic create() {
+          return new FakeGraphic();
+        }
+      };
+
+  @Test
+  public void steadyState_allocatesNoGraphicsPerFrame() {
+    GraphicPool<FakeGraphic> pool = new GraphicPool<>(FACTORY);
+    // Like the overlay, a frame's graphics are only recycled once the next frame replaced them.
+    List<FakeGraphic> shown = new ArrayList<>();
+    long[] createdPerFrame = new long[10];
+
+    for (int frame = 0; frame < createdPerFrame.length; frame++) {
+      long createdBefore = pool.getCreatedCount();
+      List<FakeGraphic> scene = new ArrayList<>();
+      for (int i = 0; i < GRAPHICS_PER_FRAME; i++) {
+        FakeGraphic graphic = pool.obtain();
+        graphic.result = new Object();
+        scene.add(graphic);
+      }
+      for (FakeGraphic graphic : shown) {
+        pool.recycle(graphic);
+      }
+      shown = scene;
+      createdPerFrame[frame] = pool.getCreatedCount() - createdBefore;
+    }
+
+    assertEquals(GRAPHICS_PER_FRAME, createdPerFrame[0]);
+    assertEquals(GRAPHICS_PER_FRAME, createdPerFrame[1]);
+    for (int frame = 2; frame < createdPerFrame.length; frame++) {
+      assertEquals("graphics created in frame " + frame, 0, createdPerFrame[frame]);
+    }
+    assertEquals(2 * GRAPHICS_PER_FRAME, pool.getCreatedCount());
+    assertEquals(createdPerFrame.length * GRAPHICS_PER_FRAME, pool.getObtainedCount());
+  }
+
+  @Test
+  public void recycle_dropsResultAndHandsGraphicOutAgain() {
+    GraphicPool<FakeGraphic> pool = new GraphicPool<>(FACTORY);
+    FakeGraphic graphic = pool.obtain();
+    graphic.result = new Object();
+
+    pool.recycle(graphic);
+
+    assertNull(graphic.result);
+    assertSame(graphic, pool.obtain());
+    assertSame(pool, graphic.pool);
+    assertEquals(2, graphic.obtainCount);
+  }
+
+  @Test
+  public void recycle_keepsAtMostMaxIdle() {
+    GraphicPool<FakeGraphic> pool = new GraphicPool<>(FACTORY, 1);
+    FakeGraphic first = pool.obtain();
+    FakeGraphic second = pool.obtain();
+
+    pool.recycle(first);
+    pool.recycle(second);
+
+    assertEquals(1, pool.getIdleCount());
+    assertEquals(2, pool.getRecycledCount());
+    assertSame(first, pool.obtain());
+    assertNotSame(second, pool.obtain());
+    assertEquals(3, pool.getCreatedCount());
+  }
+
+  @Test
+  public void overlay_replacedScene_isRecycledOnNextDraw() {
+    GraphicOverlay overlay = new GraphicOverlay(null, null);
+    GraphicPool<OverlayGraphic> pool = newOverlayPool(overlay);
+    OverlayGraphic graphic = pool.obtain();
+
+    assertTrue(overlay.publish(overlay.newScene().add(graphic).build()));
+    assertTrue(overlay.publish(overlay.newScene().build()));
+
+    // The UI thread may still be drawing the replaced scene until the next draw.
+    assertEquals(0, pool.getIdleCount());
+    overlay.onDraw(new Canvas());
+    assertEquals(1, pool.getIdleCount());
+    assertEquals(1, graphic.recycledCount);
+    assertSame(graphic, pool.obtain());
+  }
+
+  @Test
+  public void overlay_graphicInNextScene_isNotRecycled() {
+    GraphicOverlay overlay = new GraphicOverlay(null, null);
+    GraphicPool<OverlayGraphic> pool = newOverlayPool(overlay);
+    OverlayGraphic graphic = pool.obtain();
+
+    overlay.publish(overlay.newScene().add(graphic).build());
+    overlay.publish(overlay.newScene().add(graphic).build());
+    overlay.onDraw(new Canvas());
+
+    assertEquals(0, graphic.recycledCount);
+    overlay.publish(overlay.newScene().build());
+    overlay.onDraw(new Canvas());
+    assertEquals(1, graphic.recycledCount);
+  }
+
+  @Test
+  public void overlay_staleScene_isDroppedAndRecycledRightAway() {
+    GraphicOverlay overlay = new GraphicOverlay(null, null);
+    GraphicPool<OverlayGraphic> pool = newOverlayPool(overlay);
+    GraphicOverlay.Scene.Builder older = overlay.newScene().add(pool.obtain());
+    OverlayGraphic current = pool.obtain();
+    GraphicOverlay.Scene newer = overlay.newScene().add(current).build();
+
+    assertTrue(overlay.publish(newer));
+    assertFalse(overlay.publish(older.build()));
+
+    assertEquals(1, overlay.getDroppedSceneCount());
+    assertSame(newer, overlay.getPublishedScene());
+    // Never drawn, so it goes back without waiting for a draw.
+    assertEquals(1, pool.getIdleCount());
+    assertEquals(0, current.recycledCount);
+  }
+
+  @Test
+  public void overlay_retainedGraphic_isRecycledOnlyOnceReleased() {
+    GraphicOverlay overlay = new GraphicOverlay(null, null);
+    GraphicPool<OverlayGraphic> pool = newOverlayPool(overlay);
+    OverlayGraphic graphic = pool.obtain();
+    graphic.retain();
+
+    overlay.publish(overlay.newScene().add(graphic).build());
+    overlay.publish(overlay.newScene().build());
+    overlay.onDraw(new Canvas());
+    assertEquals(0, graphic.recycledCount);
+
+    graphic.release();
+    assertEquals(1, graphic.recycledCount);
+    assertEquals(1, pool.getIdleCount());
+  }
+
+  private static GraphicPool<OverlayGraphic> newOverlayPool(final GraphicOverlay overlay) {
+    return new GraphicPool<>(
+        new GraphicPool.Factory<OverlayGraphic>() {
+          @Override
+          public OverlayGraphic create() {
+            return new OverlayGraphic(overlay);
+          }
+        });
+  }
+}
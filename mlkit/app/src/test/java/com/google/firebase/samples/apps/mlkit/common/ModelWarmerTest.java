@@ -0,0 +1,222 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.firebase.ml.common.FirebaseMLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.Test;
+
+/** Unit tests for {@link ModelWarmer}. */
+public class ModelWarmerTest {
+
+  /** Stands in for a model; counts the inferences run on it. */
+  private static class FakeModel {
+    int inferences;
+  }
+
+  private static class FakeLoader implements ModelWarmer.Loader<FakeModel> {
+    final List<FakeModel> loaded = new ArrayList<>();
+    final List<FakeModel> released = new ArrayList<>();
+    int failLoads;
+    boolean failWarmUp;
+
+    @Override
+    public FakeModel load() throws FirebaseMLException {
+      if (failLoads > 0) {
+        failLoads--;
+        throw new FirebaseMLException("fake load failure", FirebaseMLException.INTERNAL);
+      }
+      FakeModel model = new FakeModel();
+      loaded.add(model);
+      return model;
+    }
+
+    @Override
+    public void warmUp(FakeModel model) throws Exception {
+      if (failWarmUp) {
+        throw new IllegalStateException("No delegate");
+      }
+      model.inferences++;
+    }
+
+    @Override
+    public void release(FakeModel model) {
+      released.add(model);
+    }
+  }
+
+  /** Runs tasks only when asked to, so tests can look at the warmer before and after. */
+  private static class ManualExecutor implements Executor {
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    @Override
+    public synchronized void execute(Runnable task) {
+      tasks.add(task);
+    }
+
+    synchronized int size() {
+      return tasks.size();
+    }
+
+    void runAll() {
+      List<Runnable> queued;
+      synchronized (this) {
+        queued = new ArrayList<>(tasks);
+        tasks.clear();
+      }
+      for (Runnable task : queued) {
+        task.run();
+      }
+    }
+  }
+
+  private final FakeLoader loader = new FakeLoader();
+  private final ManualExecutor executor = new ManualExecutor();
+
+  @Test
+  public void takenModel_isReplacedInTheBackground() throws Exception {
+    ModelWarmer warmer = new ModelWarmer(executor).register("classifier", loader);
+    warmer.start();
+    executor.runAll();
+
+    assertEquals(ModelWarmer.State.READY, warmer.getState("classifier"));
+    FakeModel warm = warmer.take("classifier", 0);
+    assertSame(loader.loaded.get(0), warm);
+    assertEquals(1, warm.inferences);
+    assertEquals(ModelWarmer.State.QUEUED, warmer.getState("classifier"));
+
+    // The next processor, e.g. of a recreated activity, gets a warm model of its own.
+    executor.runAll();
+    FakeModel next = warmer.take("classifier", 0);
+    assertSame(loader.loaded.get(1), next);
+    assertEquals(1, next.inferences);
+  }
+
+  @Test
+  public void take_whileQueued_returnsNull() throws Exception {
+    ModelWarmer warmer =
+        new ModelWarmer(executor)
+            .register("automl", new FakeLoader())
+            .register("classifier", loader);
+    warmer.start();
+
+    assertNull(warmer.take("classifier", 0));
+    assertEquals(ModelWarmer.State.QUEUED, warmer.getState("classifier"));
+    assertEquals(0, loader.loaded.size());
+
+    executor.runAll();
+    assertSame(loader.loaded.get(0), warmer.take("classifier", 0));
+  }
+
+  @Test
+  public void take_waitsForModelBeingWarmedUp() throws Exception {
+    final ModelWarmer warmer = new ModelWarmer(executor).register("classifier", loader);
+    warmer.start();
+    Thread warmUpThread =
+        new Thread() {
+          @Override
+          public void run() {
+            try {
+              Thread.sleep(50);
+            } catch (InterruptedException e) {
+              return;
+            }
+            executor.runAll();
+          }
+        };
+    warmUpThread.start();
+
+    FakeModel model = warmer.take("classifier", 10000);
+    warmUpThread.join();
+
+    assertNotNull(model);
+    assertEquals(1, model.inferences);
+    assertEquals(1, loader.loaded.size());
+  }
+
+  @Test
+  public void take_notStarted_loadsInTheBackground() throws Exception {
+    ModelWarmer warmer = new ModelWarmer(executor).register("classifier", loader);
+
+    assertNull(warmer.take("classifier", 0));
+    assertEquals(0, loader.loaded.size());
+
+    executor.runAll();
+    assertEquals(ModelWarmer.State.READY, warmer.getState("classifier"));
+    assertNotNull(warmer.take("classifier", 0));
+  }
+
+  @Test
+  public void failedModel_isRetriedAfterInterval() throws Exception {
+    loader.failLoads = 2;
+    ModelWarmer patient = new ModelWarmer(executor, 60000).register("classifier", loader);
+    patient.start();
+    executor.runAll();
+
+    assertEquals(ModelWarmer.State.FAILED, patient.getState("classifier"));
+    assertNull(patient.take("classifier", 0));
+    assertEquals(0, executor.size());
+
+    ModelWarmer eager = new ModelWarmer(executor, 0).register("classifier", loader);
+    eager.start();
+    executor.runAll();
+    assertEquals(ModelWarmer.State.FAILED, eager.getState("classifier"));
+    assertNull(eager.take("classifier", 0));
+    executor.runAll();
+    assertNotNull(eager.take("classifier", 0));
+  }
+
+  @Test
+  public void failedWarmUp_modelIsStillReady() throws Exception {
+    loader.failWarmUp = true;
+    ModelWarmer warmer = new ModelWarmer(executor).register("classifier", loader);
+    warmer.start();
+    executor.runAll();
+
+    assertEquals(ModelWarmer.State.READY, warmer.getState("classifier"));
+    assertSame(loader.loaded.get(0), warmer.take("classifier", 0));
+  }
+
+  @Test
+  public void trimMemory_releasesModelsNotTaken() throws Exception {
+    FakeLoader taken = new FakeLoader();
+    ModelWarmer warmer =
+        new ModelWarmer(executor).register("taken", taken).register("classifier", loader);
+    warmer.start();
+    executor.runAll();
+    FakeModel model = warmer.take("taken", 0);
+
+    // Only the replacement of the taken model is still loading.
+    warmer.trimMemory();
+
+    assertEquals(ModelWarmer.State.IDLE, warmer.getState("classifier"));
+    assertEquals(loader.loaded, loader.released);
+    assertTrue(taken.released.isEmpty());
+    assertEquals(ModelWarmer.State.QUEUED, warmer.getState("taken"));
+    assertNotNull(model);
+
+    assertNull(warmer.take("classifier", 0));
+    executor.runAll();
+    assertEquals(ModelWarmer.State.READY, warmer.getState("classifier"));
+  }
+}
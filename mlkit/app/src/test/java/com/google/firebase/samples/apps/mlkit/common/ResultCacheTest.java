@@ -0,0 +1,93 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/** Unit tests for {@link ResultCache}, in front of a fake detector. */
+public class ResultCacheTest {
+
+  private static final long TTL_MILLIS = 60_000;
+  private static final long NOW = 1_500_000_000_000L;
+
+  /** Stands in for a cloud detector, counting the images sent to it. */
+  private static class FakeDetector {
+    int requestCount;
+
+    String detect(String image) {
+      requestCount++;
+      return "labels of " + image;
+    }
+  }
+
+  // Looks up the image the way a processor does, going to the detector on a miss.
+  private static String detect(
+      ResultCache<String> cache, FakeDetector detector, String image, long nowMillis) {
+    String key = "fake/" + image;
+    String results = cache.get(key, nowMillis);
+    if (results == null) {
+      results = detector.detect(image);
+      cache.put(key, results, nowMillis);
+    }
+    return results;
+  }
+
+  @Test
+  public void repeatedImage_isDetectedOnce() {
+    ResultCache<String> cache = new ResultCache<>(8, TTL_MILLIS);
+    FakeDetector detector = new FakeDetector();
+
+    assertEquals("labels of a", detect(cache, detector, "a", NOW));
+    assertEquals("labels of b", detect(cache, detector, "b", NOW));
+    assertEquals("labels of a", detect(cache, detector, "a", NOW + 1));
+    assertEquals("labels of b", detect(cache, detector, "b", NOW + 2));
+
+    assertEquals(2, detector.requestCount);
+    assertEquals(2, cache.getHitCount());
+    assertEquals(2, cache.getMissCount());
+  }
+
+  @Test
+  public void expiredResult_isDetectedAgain() {
+    ResultCache<String> cache = new ResultCache<>(8, TTL_MILLIS);
+    FakeDetector detector = new FakeDetector();
+
+    detect(cache, detector, "a", NOW);
+    detect(cache, detector, "a", NOW + TTL_MILLIS - 1);
+    detect(cache, detector, "a", NOW + TTL_MILLIS);
+
+    assertEquals(2, detector.requestCount);
+    assertEquals(1, cache.getExpiredCount());
+  }
+
+  @Test
+  public void fullMemory_dropsLeastRecentlyUsed() {
+    ResultCache<String> cache = new ResultCache<>(2, TTL_MILLIS);
+    FakeDetector detector = new FakeDetector();
+
+    detect(cache, detector, "a", NOW);
+    detect(cache, detector, "b", NOW);
+    detect(cache, detector, "a", NOW);
+    detect(cache, detector, "c", NOW);
+    assertEquals(3, detector.requestCount);
+
+    detect(cache, detector, "a", NOW);
+    assertEquals(3, detector.requestCount);
+    detect(cache, detector, "b", NOW);
+    assertEquals(4, detector.requestCount);
+    assertEquals(2, cache.getSize());
+  }
+}
@@ -0,0 +1,55 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/** Unit tests for {@link UploadPreparer.Profile}. */
+public class UploadPreparerTest {
+
+  @Test
+  public void getScale_largeImage_fitsLongSide() {
+    UploadPreparer.Profile profile = new UploadPreparer.Profile(640);
+
+    assertEquals(0.5f, profile.getScale(1280, 960), 1e-6);
+    assertEquals(0.5f, profile.getScale(960, 1280), 1e-6);
+    assertEquals(0.625f, profile.getScale(768, 1024), 1e-6);
+  }
+
+  @Test
+  public void getScale_smallImage_isNotScaledUp() {
+    UploadPreparer.Profile profile = new UploadPreparer.Profile(640);
+
+    assertEquals(1f, profile.getScale(640, 480), 0);
+    assertEquals(1f, profile.getScale(320, 240), 0);
+  }
+
+  @Test
+  public void getResultScale_accountsForRoundedPreparedSize() {
+    UploadPreparer.Profile profile = new UploadPreparer.Profile(640);
+
+    // 1001 x 333 is prepared at 640 x 213, since 0.6394 * 1001 rounds to 640.
+    assertEquals(640, profile.getPreparedWidth(1001, 333));
+    assertEquals(213, profile.getPreparedHeight(1001, 333));
+    assertEquals(1001 / 640f, profile.getResultScale(1001, 333), 1e-6);
+    assertEquals(1f, profile.getResultScale(320, 240), 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void profile_invalidMaxDimension_throws() {
+    new UploadPreparer.Profile(0);
+  }
+}
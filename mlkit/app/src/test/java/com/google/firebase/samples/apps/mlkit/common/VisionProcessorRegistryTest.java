@@ -0,0 +1,137 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit tests for {@link VisionProcessorRegistry}. */
+public class VisionProcessorRegistryTest {
+
+  private static final long MB = 1 << 20;
+
+  /** Stands in for a processor with a detector that is closed when stopped. */
+  private static class FakeProcessor implements VisionImageProcessor {
+    final String mode;
+    boolean stopped;
+
+    FakeProcessor(String mode) {
+      this.mode = mode;
+    }
+
+    @Override
+    public void process(ByteBuffer data, FrameMetadata frameMetadata, GraphicOverlay overlay) {}
+
+    @Override
+    public void process(Bitmap bitmap, GraphicOverlay graphicOverlay) {}
+
+    @Override
+    public void stop() {
+      stopped = true;
+    }
+  }
+
+  private final List<FakeProcessor> created = new ArrayList<>();
+  private VisionProcessorRegistry registry;
+
+  @Before
+  public void setUp() {
+    VisionProcessorRegistry.Factory factory =
+        new VisionProcessorRegistry.Factory() {
+          @Override
+          public VisionImageProcessor create(String key) {
+            FakeProcessor processor = new FakeProcessor(key);
+            created.add(processor);
+            return processor;
+          }
+        };
+    registry =
+        new VisionProcessorRegistry(10 * MB)
+            .register("face", 4 * MB, factory)
+            .register("text", 4 * MB, factory)
+            .register("barcode", 2 * MB, factory)
+            .register("label", 4 * MB, factory)
+            .register("classifier", 16 * MB, factory);
+  }
+
+  @Test
+  public void processorIsCreatedOnceAndKept() throws Exception {
+    assertFalse(registry.isLive("face"));
+    VisionImageProcessor face = registry.get("face");
+    registry.get("text");
+
+    assertSame(face, registry.get("face"));
+    assertEquals(2, created.size());
+    assertTrue(registry.isLive("face"));
+    assertEquals(8 * MB, registry.getLiveBytes());
+  }
+
+  @Test
+  public void leastRecentlyUsedProcessorIsStoppedOverBudget() throws Exception {
+    FakeProcessor face = (FakeProcessor) registry.get("face");
+    FakeProcessor text = (FakeProcessor) registry.get("text");
+    registry.get("face");
+    FakeProcessor barcode = (FakeProcessor) registry.get("barcode");
+    assertEquals(10 * MB, registry.getLiveBytes());
+
+    registry.get("label");
+
+    assertTrue(text.stopped);
+    assertFalse(face.stopped);
+    assertFalse(barcode.stopped);
+    assertFalse(registry.isLive("text"));
+    assertEquals(1, registry.getEvictionCount());
+    assertEquals(10 * MB, registry.getLiveBytes());
+
+    FakeProcessor newText = (FakeProcessor) registry.get("text");
+    assertNotSame(text, newText);
+    assertFalse(newText.stopped);
+  }
+
+  @Test
+  public void processorOverBudgetOnItsOwnIsKept() throws Exception {
+    FakeProcessor face = (FakeProcessor) registry.get("face");
+    FakeProcessor classifier = (FakeProcessor) registry.get("classifier");
+
+    assertTrue(face.stopped);
+    assertFalse(classifier.stopped);
+    assertSame(classifier, registry.get("classifier"));
+    assertEquals(16 * MB, registry.getLiveBytes());
+  }
+
+  @Test
+  public void createdProcessorsAreOwnedByTheCaller() throws Exception {
+    FakeProcessor live = (FakeProcessor) registry.get("face");
+    FakeProcessor own = (FakeProcessor) registry.create("face");
+    assertNotSame(live, own);
+
+    registry.close();
+
+    assertTrue(live.stopped);
+    assertFalse(own.stopped);
+    assertFalse(registry.isLive("face"));
+    assertEquals(0, registry.getLiveBytes());
+  }
+}
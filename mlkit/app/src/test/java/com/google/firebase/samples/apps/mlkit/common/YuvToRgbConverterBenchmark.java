@@ -0,0 +1,130 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import java.awt.geom.AffineTransform;
+import java.awt.image.AffineTransformOp;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Random;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * JVM benchmark comparing {@link YuvToRgbConverter} against the previous conversion path: copy
+ * the frame, compress it to JPEG at quality 80, decode it again and rotate the decoded image.
+ *
+ * <p>{@code YuvImage} and {@code BitmapFactory} are not available on the JVM, so the old path is
+ * approximated with {@code javax.imageio} and {@code AffineTransformOp}. Absolute numbers differ
+ * from a device, but the ratio is representative. Run {@link #main(String[])} from the IDE.
+ */
+public class YuvToRgbConverterBenchmark {
+
+  private static final int[][] RESOLUTIONS = {{480, 360}, {640, 480}, {1280, 720}};
+  private static final int WARMUP_ITERATIONS = 10;
+  private static final int ITERATIONS = 50;
+  private static final int ROTATION_90 = 1;
+
+  public static void main(String[] args) throws IOException {
+    for (int[] resolution : RESOLUTIONS) {
+      int width = resolution[0];
+      int height = resolution[1];
+      byte[] nv21 = createFrame(width, height);
+
+      double directMs = timeDirect(nv21, width, height);
+      double jpegMs = timeJpegRoundTrip(nv21, width, height);
+      System.out.println(
+          String.format(
+              "%dx%d: direct %.2f ms/frame, jpeg round-trip %.2f ms/frame (%.1fx)",
+              width, height, directMs, jpegMs, jpegMs / directMs));
+    }
+  }
+
+  private static byte[] createFrame(int width, int height) {
+    byte[] nv21 = new byte[width * height * 3 / 2];
+    new Random(42).nextBytes(nv21);
+    return nv21;
+  }
+
+  private static double timeDirect(byte[] nv21, int width, int height) {
+    YuvToRgbConverter converter = new YuvToRgbConverter();
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      int[] pixels = converter.obtainPixels(width * height);
+      YuvToRgbConverter.convert(nv21, 0, width, height, ROTATION_90, false, pixels);
+      converter.recyclePixels(pixels);
+    }
+    return timeDirectIterations(converter, nv21, width, height);
+  }
+
+  private static double timeDirectIterations(
+      YuvToRgbConverter converter, byte[] nv21, int width, int height) {
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      int[] pixels = converter.obtainPixels(width * height);
+      YuvToRgbConverter.convert(nv21, 0, width, height, ROTATION_90, false, pixels);
+      converter.recyclePixels(pixels);
+    }
+    return (System.nanoTime() - start) / 1e6 / ITERATIONS;
+  }
+
+  private static double timeJpegRoundTrip(byte[] nv21, int width, int height)
+      throws IOException {
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      jpegRoundTrip(nv21, width, height);
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      jpegRoundTrip(nv21, width, height);
+    }
+    return (System.nanoTime() - start) / 1e6 / ITERATIONS;
+  }
+
+  private static BufferedImage jpegRoundTrip(byte[] nv21, int width, int height)
+      throws IOException {
+    // Copy the frame out of the camera buffer.
+    byte[] copy = new byte[nv21.length];
+    System.arraycopy(nv21, 0, copy, 0, nv21.length);
+
+    // YuvImage.compressToJpeg converts to RGB internally before encoding.
+    int[] rgb = new int[width * height];
+    YuvToRgbConverter.convert(copy, 0, width, height, 0, false, rgb);
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    image.setRGB(0, 0, width, height, rgb, 0, width);
+
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+    ImageWriter writer = writers.next();
+    ImageWriteParam param = writer.getDefaultWriteParam();
+    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+    param.setCompressionQuality(0.8f);
+    MemoryCacheImageOutputStream output = new MemoryCacheImageOutputStream(stream);
+    writer.setOutput(output);
+    writer.write(null, new IIOImage(image, null, null), param);
+    output.close();
+    writer.dispose();
+
+    BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(stream.toByteArray()));
+
+    AffineTransform rotate = new AffineTransform();
+    rotate.translate(height, 0);
+    rotate.rotate(Math.PI / 2);
+    return new AffineTransformOp(rotate, AffineTransformOp.TYPE_BILINEAR).filter(decoded, null);
+  }
+}
@@ -0,0 +1,104 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/** Unit tests for {@link YuvToRgbConverter}. */
+public class YuvToRgbConverterTest {
+
+  // A 4x2 frame whose luma encodes the pixel position, with neutral chroma.
+  private static final int WIDTH = 4;
+  private static final int HEIGHT = 2;
+
+  private static byte[] createFrame() {
+    byte[] nv21 = new byte[WIDTH * HEIGHT * 3 / 2];
+    for (int i = 0; i < WIDTH * HEIGHT; i++) {
+      nv21[i] = (byte) (16 + i * 20);
+    }
+    for (int i = WIDTH * HEIGHT; i < nv21.length; i++) {
+      nv21[i] = (byte) 128;
+    }
+    return nv21;
+  }
+
+  /** Returns the source pixel index encoded in an output pixel. */
+  private static int[] sourceIndices(int[] argb) {
+    int[] indices = new int[argb.length];
+    for (int i = 0; i < argb.length; i++) {
+      int gray = argb[i] & 0xff;
+      // Undo the video-range expansion: gray = (y - 16) * 255 / 219.
+      indices[i] = Math.round(gray * 219f / 255f / 20f);
+    }
+    return indices;
+  }
+
+  private static int[] convert(int rotation, boolean mirror) {
+    int[] out = new int[WIDTH * HEIGHT];
+    YuvToRgbConverter.convert(createFrame(), 0, WIDTH, HEIGHT, rotation, mirror, out);
+    return sourceIndices(out);
+  }
+
+  @Test
+  public void convert_noRotation_keepsLayout() {
+    assertArrayEquals(new int[] {0, 1, 2, 3, 4, 5, 6, 7}, convert(0, false));
+  }
+
+  @Test
+  public void convert_rotation90_rotatesClockwise() {
+    // Output is 2 wide and 4 tall.
+    assertArrayEquals(new int[] {4, 0, 5, 1, 6, 2, 7, 3}, convert(1, false));
+  }
+
+  @Test
+  public void convert_rotation180_flipsBothAxes() {
+    assertArrayEquals(new int[] {7, 6, 5, 4, 3, 2, 1, 0}, convert(2, false));
+  }
+
+  @Test
+  public void convert_rotation270_rotatesCounterClockwise() {
+    assertArrayEquals(new int[] {3, 7, 2, 6, 1, 5, 0, 4}, convert(3, false));
+  }
+
+  @Test
+  public void convert_mirror_flipsUprightImageHorizontally() {
+    assertArrayEquals(new int[] {3, 2, 1, 0, 7, 6, 5, 4}, convert(0, true));
+    assertArrayEquals(new int[] {0, 4, 1, 5, 2, 6, 3, 7}, convert(1, true));
+  }
+
+  @Test
+  public void yuvToArgb_primaryColors() {
+    assertEquals(0xff000000, YuvToRgbConverter.yuvToArgb(16, 0, 0));
+    assertEquals(0xffffffff, YuvToRgbConverter.yuvToArgb(255, 0, 0));
+    // Pure red in BT.601 video range is roughly Y=81, U=90, V=240.
+    int red = YuvToRgbConverter.yuvToArgb(81, 90 - 128, 240 - 128);
+    assertEquals(0xff, (red >> 16) & 0xff, 2);
+    assertEquals(0, (red >> 8) & 0xff, 2);
+    assertEquals(0, red & 0xff, 2);
+  }
+
+  @Test
+  public void obtainPixels_reusesRecycledBuffers() {
+    YuvToRgbConverter converter = new YuvToRgbConverter();
+    int[] first = converter.obtainPixels(640 * 480);
+    converter.recyclePixels(first);
+    assertSame(first, converter.obtainPixels(640 * 480));
+    assertNotSame(first, converter.obtainPixels(640 * 480));
+  }
+}
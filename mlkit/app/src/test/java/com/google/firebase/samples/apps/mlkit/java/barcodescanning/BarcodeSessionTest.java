@@ -0,0 +1,143 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.barcodescanning;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/** Unit tests for {@link BarcodeSession}. */
+public class BarcodeSessionTest {
+
+  private static final int FORMAT_QR_CODE = 256;
+  private static final int FORMAT_EAN_13 = 32;
+  private static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+  @Test
+  public void onBarcode_sameCodeOnEveryFrame_isNewOnce() {
+    BarcodeSession session = new BarcodeSession();
+    final List<BarcodeSession.Barcode> events = new ArrayList<>();
+    session.setListener(
+        new BarcodeSession.Listener() {
+          @Override
+          public void onNewBarcode(BarcodeSession.Barcode barcode) {
+            events.add(barcode);
+          }
+        });
+
+    BarcodeSession.Barcode first = null;
+    for (int frame = 0; frame < 20; frame++) {
+      // The code drifts a little from frame to frame.
+      BarcodeSession.Barcode barcode =
+          session.onBarcode(
+              "https://firebase.google.com", FORMAT_QR_CODE,
+              100 + frame, 100, 200 + frame, 200, frame * FRAME_NANOS);
+      if (first == null) {
+        first = barcode;
+        assertTrue(barcode.isNew());
+      } else {
+        assertSame(first, barcode);
+        assertFalse(barcode.isNew());
+      }
+    }
+
+    assertEquals(1, events.size());
+    assertEquals(20, first.getSightingCount());
+    assertEquals(1, session.getUniqueCount());
+    assertEquals(20, session.getSightingCount());
+  }
+
+  @Test
+  public void onBarcode_twoCopiesInOneFrame_areTwoBarcodes() {
+    BarcodeSession session = new BarcodeSession();
+
+    BarcodeSession.Barcode left = session.onBarcode("ABC", FORMAT_QR_CODE, 0, 0, 100, 100, 0);
+    BarcodeSession.Barcode right = session.onBarcode("ABC", FORMAT_QR_CODE, 300, 0, 400, 100, 0);
+    assertNotSame(left, right);
+    assertTrue(right.isNew());
+
+    // Next frame, each copy matches the one it overlaps.
+    assertSame(right, session.onBarcode("ABC", FORMAT_QR_CODE, 305, 0, 405, 100, FRAME_NANOS));
+    assertSame(left, session.onBarcode("ABC", FORMAT_QR_CODE, 5, 0, 105, 100, FRAME_NANOS));
+    assertEquals(2, session.getUniqueCount());
+  }
+
+  @Test
+  public void onBarcode_movedCode_matchesByRawValue() {
+    BarcodeSession session = new BarcodeSession();
+
+    BarcodeSession.Barcode barcode =
+        session.onBarcode("4006381333931", FORMAT_EAN_13, 0, 0, 100, 50, 0);
+    BarcodeSession.Barcode moved =
+        session.onBarcode("4006381333931", FORMAT_EAN_13, 400, 300, 500, 350, FRAME_NANOS);
+
+    assertSame(barcode, moved);
+    assertFalse(moved.isNew());
+  }
+
+  @Test
+  public void onBarcode_afterWindow_isNewAgain() {
+    long windowNanos = TimeUnit.SECONDS.toNanos(1);
+    BarcodeSession session = new BarcodeSession(windowNanos, BarcodeSession.DEFAULT_MIN_IOU);
+
+    BarcodeSession.Barcode first = session.onBarcode("ABC", FORMAT_QR_CODE, 0, 0, 100, 100, 0);
+    BarcodeSession.Barcode second =
+        session.onBarcode("ABC", FORMAT_QR_CODE, 0, 0, 100, 100, windowNanos + 1);
+
+    assertNotSame(first, second);
+    assertTrue(second.isNew());
+    assertEquals(1, session.getActiveCount());
+    assertEquals(2, session.getUniqueCount());
+  }
+
+  @Test
+  public void counters_trackFormatsAndScanRate() {
+    BarcodeSession session = new BarcodeSession();
+
+    session.onBarcode("A", FORMAT_QR_CODE, 0, 0, 100, 100, 0);
+    session.onBarcode("B", FORMAT_EAN_13, 200, 0, 300, 50, 0);
+    session.onBarcode("A", FORMAT_QR_CODE, 0, 0, 100, 100, FRAME_NANOS);
+
+    assertEquals(FORMAT_QR_CODE | FORMAT_EAN_13, session.getSeenFormats());
+    assertEquals(2, session.getUniqueScansPerSecond(FRAME_NANOS));
+    assertEquals(0, session.getUniqueScansPerSecond(TimeUnit.SECONDS.toNanos(5)));
+
+    session.reset();
+    assertEquals(0, session.getSeenFormats());
+    assertEquals(0, session.getUniqueCount());
+  }
+
+  @Test
+  public void getActiveFormats_dropsFormatsOfExpiredBarcodes() {
+    BarcodeSession session = new BarcodeSession();
+    assertEquals(0, session.getActiveFormats());
+
+    session.onBarcode("A", FORMAT_QR_CODE, 0, 0, 100, 100, 0);
+    session.onBarcode("B", FORMAT_EAN_13, 200, 0, 300, 50, TimeUnit.SECONDS.toNanos(1));
+    assertEquals(FORMAT_QR_CODE | FORMAT_EAN_13, session.getActiveFormats());
+
+    // Only "B" is still in the window.
+    session.expire(TimeUnit.SECONDS.toNanos(3));
+    assertEquals(FORMAT_EAN_13, session.getActiveFormats());
+    assertEquals(FORMAT_QR_CODE | FORMAT_EAN_13, session.getSeenFormats());
+  }
+}
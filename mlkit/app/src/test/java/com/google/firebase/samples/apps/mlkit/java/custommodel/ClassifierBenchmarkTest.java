@@ -0,0 +1,86 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.custommodel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.firebase.samples.apps.mlkit.java.custommodel.ClassifierBenchmark.Measurement;
+import org.junit.Test;
+
+/** Unit tests for {@link ClassifierBenchmark}. */
+public class ClassifierBenchmarkTest {
+
+  private static final double BUDGET = 0.1;
+
+  private static final int[] REFERENCE_LABELS = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+
+  private static Measurement measure(boolean quantized, double p50Millis, int[] topLabels) {
+    return new Measurement(quantized, p50Millis, 2 * p50Millis, 1000 / p50Millis, topLabels);
+  }
+
+  @Test
+  public void fasterQuantized_withinBudget_isChosen() {
+    Measurement quantized = measure(true, 40, new int[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 99});
+    Measurement floatModel = measure(false, 120, REFERENCE_LABELS);
+
+    assertEquals(0.9, ClassifierBenchmark.agreement(quantized, floatModel), 1e-9);
+    assertTrue(ClassifierBenchmark.chooseQuantized(quantized, floatModel, BUDGET));
+  }
+
+  @Test
+  public void fasterQuantized_overBudget_isNotChosen() {
+    Measurement quantized = measure(true, 40, new int[] {1, 2, 3, 4, 5, 6, 7, 8, 98, 99});
+    Measurement floatModel = measure(false, 120, REFERENCE_LABELS);
+
+    assertFalse(ClassifierBenchmark.chooseQuantized(quantized, floatModel, BUDGET));
+  }
+
+  @Test
+  public void fasterFloat_isChosen() {
+    Measurement quantized = measure(true, 80, REFERENCE_LABELS);
+    Measurement floatModel = measure(false, 60, REFERENCE_LABELS);
+
+    assertFalse(ClassifierBenchmark.chooseQuantized(quantized, floatModel, BUDGET));
+  }
+
+  @Test
+  public void missingFloat_quantizedIsChosen() {
+    assertTrue(
+        ClassifierBenchmark.chooseQuantized(measure(true, 40, REFERENCE_LABELS), null, BUDGET));
+  }
+
+  @Test
+  public void encode_decode_roundTrips() {
+    Measurement measurement = new Measurement(true, 41.5, 57.25, 30.125, new int[] {7, 0, 1000});
+
+    Measurement decoded = Measurement.decode(measurement.encode());
+
+    assertTrue(decoded.isQuantized());
+    assertEquals(41.5, decoded.getP50LatencyMillis(), 1e-9);
+    assertEquals(57.25, decoded.getP95LatencyMillis(), 1e-9);
+    assertEquals(30.125, decoded.getImagesPerSecond(), 1e-9);
+    assertEquals(1.0, ClassifierBenchmark.agreement(measurement, decoded), 1e-9);
+  }
+
+  @Test
+  public void decode_malformed_returnsNull() {
+    assertNull(Measurement.decode(null));
+    assertNull(Measurement.decode("quant;1;2"));
+    assertNull(Measurement.decode("int8;1;2;3;4"));
+    assertNull(Measurement.decode("float;1;x;3;4"));
+  }
+}
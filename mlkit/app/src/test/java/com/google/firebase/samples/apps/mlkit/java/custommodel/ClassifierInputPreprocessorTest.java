@@ -0,0 +1,165 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.custommodel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import org.junit.Test;
+
+/** Unit tests for {@link ClassifierInputPreprocessor}. */
+public class ClassifierInputPreprocessorTest {
+
+  private static final int INPUT_SIZE = 299;
+
+  private static ByteBuffer createGrayFrame(int width, int height, int luma) {
+    byte[] nv21 = new byte[width * height * 3 / 2];
+    Arrays.fill(nv21, 0, width * height, (byte) luma);
+    Arrays.fill(nv21, width * height, nv21.length, (byte) 128);
+    return ByteBuffer.wrap(nv21);
+  }
+
+  @Test
+  public void preprocess_steadyState_doesNotAllocate() {
+    ClassifierInputPreprocessor preprocessor =
+        new ClassifierInputPreprocessor(INPUT_SIZE, /* quantized= */ false);
+    ByteBuffer frame = createGrayFrame(480, 360, 128);
+
+    preprocessor.preprocess(frame, 480, 360);
+    long allocations = preprocessor.getAllocationCount();
+    for (int i = 0; i < 20; i++) {
+      preprocessor.preprocess(frame, 480, 360);
+    }
+
+    assertEquals(allocations, preprocessor.getAllocationCount());
+  }
+
+  @Test
+  public void preprocess_returnsSameNativeOrderBuffer() {
+    ClassifierInputPreprocessor preprocessor =
+        new ClassifierInputPreprocessor(INPUT_SIZE, /* quantized= */ true);
+    ByteBuffer frame = createGrayFrame(640, 480, 128);
+
+    ByteBuffer first = preprocessor.preprocess(frame, 640, 480);
+    ByteBuffer second = preprocessor.preprocess(frame, 640, 480);
+
+    assertSame(first, second);
+    assertEquals(ByteOrder.nativeOrder(), first.order());
+    assertEquals(0, first.position());
+    assertEquals(INPUT_SIZE * INPUT_SIZE * 3, first.capacity());
+  }
+
+  @Test
+  public void preprocess_quantized_writesUniformGray() {
+    ClassifierInputPreprocessor preprocessor =
+        new ClassifierInputPreprocessor(INPUT_SIZE, /* quantized= */ true);
+
+    ByteBuffer input = preprocessor.preprocess(createGrayFrame(480, 360, 235), 480, 360);
+
+    for (int i = 0; i < input.capacity(); i++) {
+      assertEquals(255, input.get(i) & 0xff, 1);
+    }
+  }
+
+  @Test
+  public void preprocess_float_normalizesToUnitRange() {
+    ClassifierInputPreprocessor preprocessor =
+        new ClassifierInputPreprocessor(INPUT_SIZE, /* quantized= */ false);
+
+    ByteBuffer input = preprocessor.preprocess(createGrayFrame(480, 360, 16), 480, 360);
+
+    for (int i = 0; i < INPUT_SIZE * INPUT_SIZE * 3; i++) {
+      assertEquals(0f, input.getFloat(i * 4), 1e-6);
+    }
+  }
+
+  @Test
+  public void preprocess_newResolution_onlyRebuildsTables() {
+    ClassifierInputPreprocessor preprocessor =
+        new ClassifierInputPreprocessor(INPUT_SIZE, /* quantized= */ true);
+    preprocessor.preprocess(createGrayFrame(480, 360, 128), 480, 360);
+    long allocations = preprocessor.getAllocationCount();
+
+    preprocessor.preprocess(createGrayFrame(1280, 720, 128), 1280, 720);
+
+    assertEquals(allocations, preprocessor.getAllocationCount());
+  }
+
+  @Test
+  public void preprocessArgb_packsConsecutiveImages() {
+    ClassifierInputPreprocessor preprocessor =
+        new ClassifierInputPreprocessor(INPUT_SIZE, /* quantized= */ true);
+    int imageSize = preprocessor.getImageInputSize();
+    ByteBuffer batch = ByteBuffer.allocateDirect(2 * imageSize).order(ByteOrder.nativeOrder());
+    int[] red = new int[400 * 300];
+    Arrays.fill(red, 0xffff0000);
+    int[] blue = new int[640 * 480];
+    Arrays.fill(blue, 0xff0000ff);
+
+    preprocessor.preprocess(red, 400, 300, batch);
+    preprocessor.preprocess(blue, 640, 480, batch);
+
+    assertEquals(2 * imageSize, batch.position());
+    assertEquals(255, batch.get(0) & 0xff);
+    assertEquals(0, batch.get(2) & 0xff);
+    assertEquals(0, batch.get(imageSize) & 0xff);
+    assertEquals(255, batch.get(imageSize + 2) & 0xff);
+  }
+
+  @Test
+  public void preprocessArgb_float_normalizesToUnitRange() {
+    ClassifierInputPreprocessor preprocessor =
+        new ClassifierInputPreprocessor(INPUT_SIZE, /* quantized= */ false);
+    ByteBuffer input =
+        ByteBuffer.allocateDirect(preprocessor.getImageInputSize())
+            .order(ByteOrder.nativeOrder());
+    int[] gray = new int[320 * 240];
+    Arrays.fill(gray, 0xff808080);
+
+    preprocessor.preprocess(gray, 320, 240, input);
+
+    assertEquals(input.capacity(), input.position());
+    for (int i = 0; i < INPUT_SIZE * INPUT_SIZE * 3; i++) {
+      assertEquals(128 / 255f, input.getFloat(i * 4), 1e-6);
+    }
+  }
+
+  @Test
+  public void preprocessArgb_float_packsConsecutiveImagesWithoutNewViews() {
+    ClassifierInputPreprocessor preprocessor =
+        new ClassifierInputPreprocessor(INPUT_SIZE, /* quantized= */ false);
+    int imageSize = preprocessor.getImageInputSize();
+    ByteBuffer batch = ByteBuffer.allocateDirect(3 * imageSize).order(ByteOrder.nativeOrder());
+    int[] red = new int[400 * 300];
+    Arrays.fill(red, 0xffff0000);
+    int[] blue = new int[400 * 300];
+    Arrays.fill(blue, 0xff0000ff);
+
+    preprocessor.preprocess(red, 400, 300, batch);
+    long allocations = preprocessor.getAllocationCount();
+    preprocessor.preprocess(blue, 400, 300, batch);
+    preprocessor.preprocess(red, 400, 300, batch);
+
+    assertEquals(allocations, preprocessor.getAllocationCount());
+    assertEquals(3 * imageSize, batch.position());
+    assertEquals(1f, batch.getFloat(0), 1e-6);
+    assertEquals(0f, batch.getFloat(8), 1e-6);
+    assertEquals(0f, batch.getFloat(imageSize), 1e-6);
+    assertEquals(1f, batch.getFloat(imageSize + 8), 1e-6);
+    assertEquals(1f, batch.getFloat(2 * imageSize), 1e-6);
+  }
+}
@@ -0,0 +1,115 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.custommodel;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import org.junit.Test;
+
+/** Unit tests for {@link TopKSelector}. */
+public class TopKSelectorTest {
+
+  private static final float DELTA = 1e-6f;
+
+  private static ClassificationResult newResult(int k) {
+    return new ClassificationResult(Collections.<String>emptyList(), k);
+  }
+
+  private static void assertRanks(ClassificationResult result, int... labelIndices) {
+    assertEquals(labelIndices.length, result.size());
+    for (int rank = 0; rank < labelIndices.length; rank++) {
+      assertEquals(labelIndices[rank], result.getLabelIndex(rank));
+    }
+  }
+
+  @Test
+  public void select_float_keepsBestInOrder() {
+    ClassificationResult result = newResult(3);
+
+    TopKSelector.select(new float[] {0.1f, 0.7f, 0.05f, 0.9f, 0.3f}, 5, result);
+
+    assertRanks(result, 3, 1, 4);
+    assertEquals(0.9f, result.getScore(0), DELTA);
+    assertEquals(0.3f, result.getScore(2), DELTA);
+  }
+
+  @Test
+  public void select_float_tiesKeepLowerIndexFirst() {
+    ClassificationResult result = newResult(2);
+
+    TopKSelector.select(new float[] {0.2f, 0.5f, 0.5f, 0.5f}, 4, result);
+
+    assertRanks(result, 1, 2);
+  }
+
+  @Test
+  public void select_byte_tiesKeepLowerIndexFirst() {
+    ClassificationResult result = newResult(2);
+
+    TopKSelector.select(new byte[] {10, (byte) 200, (byte) 200, (byte) 200}, 4, result);
+
+    assertRanks(result, 1, 2);
+    assertEquals(200 / 255.0f, result.getScore(1), DELTA);
+  }
+
+  @Test
+  public void select_kLargerThanCount_returnsAllSorted() {
+    ClassificationResult result = newResult(5);
+
+    TopKSelector.select(new float[] {0.2f, 0.6f, 0.4f}, 3, result);
+
+    assertRanks(result, 1, 2, 0);
+  }
+
+  @Test
+  public void select_byte_kLargerThanCount_returnsAllSorted() {
+    ClassificationResult result = newResult(5);
+
+    TopKSelector.select(new byte[] {20, 60, 40}, 3, result);
+
+    assertRanks(result, 1, 2, 0);
+  }
+
+  @Test
+  public void select_countBelowArrayLength_ignoresTail() {
+    ClassificationResult result = newResult(2);
+
+    TopKSelector.select(new float[] {0.1f, 0.2f, 0.9f}, 2, result);
+
+    assertRanks(result, 1, 0);
+  }
+
+  @Test
+  public void select_kZero_selectsNothing() {
+    ClassificationResult result = newResult(0);
+
+    TopKSelector.select(new float[] {0.1f, 0.9f}, 2, result);
+    assertEquals(0, result.size());
+
+    TopKSelector.select(new byte[] {10, 90}, 2, result);
+    assertEquals(0, result.size());
+  }
+
+  @Test
+  public void select_reusedResult_startsOver() {
+    ClassificationResult result = newResult(2);
+    TopKSelector.select(new float[] {0.9f, 0.8f, 0.1f}, 3, result);
+
+    TopKSelector.select(new float[] {0.1f, 0.2f, 0.3f}, 3, result);
+
+    assertRanks(result, 2, 1);
+    assertEquals(0.3f, result.getScore(0), DELTA);
+  }
+}
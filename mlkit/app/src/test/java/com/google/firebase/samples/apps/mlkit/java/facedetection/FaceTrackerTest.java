@@ -0,0 +1,134 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.facedetection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/** Unit tests for {@link FaceTracker} and {@link OneEuroFilter}. */
+public class FaceTrackerTest {
+
+  private static final long FRAME_NANOS = 66_000_000L;
+
+  @Test
+  public void endFrame_missingFace_isDroppedAfterMaxMissedFrames() {
+    FaceTracker tracker = new FaceTracker(2, FaceTracker.DEFAULT_HISTORY_SIZE, null);
+    float[] out = new float[2];
+
+    tracker.beginFrame(0);
+    tracker.update(1, new float[] {10, 20}, 2);
+    tracker.update(2, new float[] {30, 40}, 2);
+    tracker.endFrame();
+    assertEquals(2, tracker.size());
+
+    tracker.beginFrame(FRAME_NANOS);
+    tracker.update(1, new float[] {10, 20}, 2);
+    tracker.endFrame();
+    assertEquals(2, tracker.predict(2, FRAME_NANOS, out));
+
+    tracker.beginFrame(2 * FRAME_NANOS);
+    tracker.update(1, new float[] {10, 20}, 2);
+    tracker.endFrame();
+    assertEquals(1, tracker.size());
+    assertEquals(-1, tracker.predict(2, 2 * FRAME_NANOS, out));
+    assertEquals(2, tracker.predict(1, 2 * FRAME_NANOS, out));
+  }
+
+  @Test
+  public void predict_movingFace_extrapolatesLinearlyUpToMax() {
+    FaceTracker tracker = new FaceTracker(1, FaceTracker.DEFAULT_HISTORY_SIZE, null);
+    tracker.setMaxExtrapolationNanos(FRAME_NANOS);
+    float[] out = new float[1];
+
+    // Moves 10 per frame.
+    for (int i = 0; i < 3; i++) {
+      tracker.beginFrame(i * FRAME_NANOS);
+      tracker.update(1, new float[] {10 * i}, 1);
+      tracker.endFrame();
+    }
+
+    tracker.predict(1, 2 * FRAME_NANOS, out);
+    assertEquals(20, out[0], 1e-3);
+    tracker.predict(1, 2 * FRAME_NANOS + FRAME_NANOS / 2, out);
+    assertEquals(25, out[0], 1e-3);
+    tracker.predict(1, 10 * FRAME_NANOS, out);
+    assertEquals(30, out[0], 1e-3);
+  }
+
+  @Test
+  public void update_changedCount_startsOver() {
+    FaceTracker tracker = new FaceTracker(4, FaceTracker.DEFAULT_HISTORY_SIZE, null);
+    float[] out = new float[4];
+
+    tracker.beginFrame(0);
+    tracker.update(1, new float[] {0, 0}, 2);
+    tracker.endFrame();
+    tracker.beginFrame(FRAME_NANOS);
+    tracker.update(1, new float[] {100, 100, 5, 5}, 4);
+    tracker.endFrame();
+
+    // A single sample, so nothing to extrapolate from.
+    assertEquals(4, tracker.predict(1, 2 * FRAME_NANOS, out));
+    assertEquals(100, out[0], 0);
+    assertEquals(5, out[3], 0);
+  }
+
+  @Test
+  public void update_oneEuroFilter_reducesJitterOfStillFace() {
+    FaceTracker filtered = new FaceTracker(1, 1, OneEuroFilter.factory(
+        OneEuroFilter.DEFAULT_MIN_CUTOFF,
+        OneEuroFilter.DEFAULT_BETA,
+        OneEuroFilter.DEFAULT_DERIVATIVE_CUTOFF));
+    Random random = new Random(42);
+    float[] value = new float[1];
+    float[] out = new float[1];
+    double rawError = 0;
+    double filteredError = 0;
+
+    for (int i = 0; i < 100; i++) {
+      value[0] = 100 + (float) random.nextGaussian() * 3;
+      filtered.beginFrame(i * FRAME_NANOS);
+      filtered.update(1, value, 1);
+      filtered.endFrame();
+      filtered.predict(1, i * FRAME_NANOS, out);
+      if (i >= 10) {
+        rawError += Math.abs(value[0] - 100);
+        filteredError += Math.abs(out[0] - 100);
+      }
+    }
+
+    assertTrue(filteredError + " vs " + rawError, filteredError < rawError / 2);
+  }
+
+  @Test
+  public void update_oneEuroFilter_followsFastMovement() {
+    FaceTracker filtered = new FaceTracker(1, 1, OneEuroFilter.factory(
+        OneEuroFilter.DEFAULT_MIN_CUTOFF, 0.05f, OneEuroFilter.DEFAULT_DERIVATIVE_CUTOFF));
+    float[] out = new float[1];
+
+    // Moves 30 per frame, so the cutoff rises and the lag stays small.
+    for (int i = 0; i < 30; i++) {
+      filtered.beginFrame(i * FRAME_NANOS);
+      filtered.update(1, new float[] {30 * i}, 1);
+      filtered.endFrame();
+    }
+
+    filtered.predict(1, 29 * FRAME_NANOS, out);
+    assertEquals(30 * 29, out[0], 30);
+  }
+}
@@ -0,0 +1,179 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.textrecognition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/** Unit tests for {@link TextTiling}. */
+public class TextTilingTest {
+
+  @Test
+  public void layout_coversImageWithOverlap() {
+    List<TextTiling.Tile> tiles = TextTiling.layout(2500, 1000, 1024, 100);
+
+    // Three columns, the last one flush with the right edge, and a single row.
+    assertEquals(3, tiles.size());
+    assertEquals(0, tiles.get(0).getLeft());
+    assertEquals(924, tiles.get(1).getLeft());
+    assertEquals(2500 - 1024, tiles.get(2).getLeft());
+    for (TextTiling.Tile tile : tiles) {
+      assertEquals(1024, tile.getWidth());
+      assertEquals(1000, tile.getHeight());
+    }
+  }
+
+  @Test
+  public void layout_smallImage_isOneTile() {
+    List<TextTiling.Tile> tiles = TextTiling.layout(800, 600, 1024, 100);
+
+    assertEquals(1, tiles.size());
+    assertEquals(800, tiles.get(0).getWidth());
+    assertEquals(600, tiles.get(0).getHeight());
+  }
+
+  @Test
+  public void merge_lineInOverlap_isKeptOnceWholeInGlobalCoordinates() {
+    // Two tiles stacked vertically, sharing rows 900 to 1000 of a 1000 x 1900 image.
+    List<TextTiling.Tile> tiles = TextTiling.layout(1000, 1900, 1000, 100);
+    assertEquals(2, tiles.size());
+    assertEquals(900, tiles.get(1).getTop());
+
+    // The line at rows 940 to 990 is whole in both tiles, the one at rows 990 to 1030 is cut at
+    // the bottom of the first tile.
+    RecognizedText top = text(
+        block(line("Hello top", 10, 100, 300, 140)),
+        block(line("middle", 10, 940, 200, 990), line("cut", 10, 990, 150, 1000)));
+    RecognizedText bottom = text(
+        block(line("middle", 10, 40, 200, 90), line("seam line", 10, 90, 300, 130)),
+        block(line("bottom", 10, 800, 200, 850)));
+
+    RecognizedText merged = TextTiling.merge(tiles, Arrays.asList(top, bottom), 1000, 1900);
+
+    List<String> lines = new ArrayList<>();
+    for (RecognizedText.Block block : merged.getBlocks()) {
+      for (RecognizedText.Line line : block.getLines()) {
+        lines.add(line.getText());
+      }
+    }
+    Collections.sort(lines);
+    assertEquals(Arrays.asList("Hello top", "bottom", "middle", "seam line"), lines);
+
+    RecognizedText.Block last = merged.getBlocks().get(merged.getBlocks().size() - 1);
+    assertEquals("bottom", last.getText());
+    assertEquals(1700, last.getBounds().getTop());
+    assertEquals(1700, last.getLines().get(0).getElements().get(0).getBounds().getTop());
+    assertTrue(merged.getText().startsWith("Hello top"));
+  }
+
+  @Test
+  public void merge_sideBySideLines_areNotDuplicates() {
+    List<TextTiling.Tile> tiles = TextTiling.layout(1900, 500, 1000, 100);
+
+    RecognizedText left = text(block(line("left", 100, 10, 400, 50)));
+    RecognizedText right = text(block(line("right", 500, 10, 800, 50)));
+
+    RecognizedText merged = TextTiling.merge(tiles, Arrays.asList(left, right), 1900, 500);
+
+    assertEquals(2, merged.getBlocks().size());
+    assertEquals("left\nright", merged.getText());
+    assertEquals(1400, merged.getBlocks().get(1).getBounds().getLeft());
+  }
+
+  @Test
+  public void merge_lineAcrossColumnSeam_isStitchedWithoutRepeatedWords() {
+    // Two tiles side by side, sharing columns 900 to 1000 of a 1900 x 500 image.
+    List<TextTiling.Tile> tiles = TextTiling.layout(1900, 500, 1000, 100);
+    assertEquals(2, tiles.size());
+    assertEquals(900, tiles.get(1).getLeft());
+
+    // "fox" is cut at the right edge of the first tile, "brown" at the left edge of the second
+    // one, and "a" is whole in both.
+    RecognizedText left = text(block(line(10, 50,
+        element("the", 600, 680),
+        element("quick", 700, 800),
+        element("brown", 820, 930),
+        element("a", 945, 955),
+        element("fo", 965, 1000))));
+    RecognizedText right = text(block(line(10, 50,
+        element("wn", 0, 30),
+        element("a", 45, 55),
+        element("fox", 65, 120),
+        element("jumps", 140, 240))));
+
+    RecognizedText merged = TextTiling.merge(tiles, Arrays.asList(left, right), 1900, 500);
+
+    assertEquals(1, merged.getBlocks().size());
+    assertEquals(1, merged.getBlocks().get(0).getLines().size());
+    RecognizedText.Line line = merged.getBlocks().get(0).getLines().get(0);
+    assertEquals("the quick brown a fox jumps", line.getText());
+    assertEquals(600, line.getBounds().getLeft());
+    assertEquals(1140, line.getBounds().getRight());
+    assertEquals(6, line.getElements().size());
+    assertEquals(965, line.getElements().get(4).getBounds().getLeft());
+  }
+
+  private static RecognizedText text(RecognizedText.Block... blocks) {
+    StringBuilder text = new StringBuilder();
+    for (RecognizedText.Block block : blocks) {
+      text.append(block.getText()).append('\n');
+    }
+    return new RecognizedText(text.toString(), Arrays.asList(blocks));
+  }
+
+  private static RecognizedText.Block block(RecognizedText.Line... lines) {
+    RecognizedText.Bounds bounds = lines[0].getBounds();
+    StringBuilder text = new StringBuilder(lines[0].getText());
+    for (int i = 1; i < lines.length; i++) {
+      bounds = bounds.union(lines[i].getBounds());
+      text.append('\n').append(lines[i].getText());
+    }
+    return new RecognizedText.Block(text.toString(), bounds, Arrays.asList(lines));
+  }
+
+  private static RecognizedText.Element element(String text, int left, int right) {
+    // The top and bottom are those of the line.
+    return new RecognizedText.Element(text, new RecognizedText.Bounds(left, 0, right, 0));
+  }
+
+  private static RecognizedText.Line line(int top, int bottom, RecognizedText.Element... elements) {
+    List<RecognizedText.Element> placed = new ArrayList<>();
+    StringBuilder text = new StringBuilder();
+    for (RecognizedText.Element element : elements) {
+      RecognizedText.Bounds bounds = element.getBounds();
+      placed.add(new RecognizedText.Element(element.getText(),
+          new RecognizedText.Bounds(bounds.getLeft(), top, bounds.getRight(), bottom)));
+      text.append(text.length() > 0 ? " " : "").append(element.getText());
+    }
+    RecognizedText.Bounds bounds = new RecognizedText.Bounds(
+        elements[0].getBounds().getLeft(), top,
+        elements[elements.length - 1].getBounds().getRight(), bottom);
+    return new RecognizedText.Line(text.toString(), bounds, placed);
+  }
+
+  private static RecognizedText.Line line(String text, int left, int top, int right, int bottom) {
+    RecognizedText.Bounds bounds = new RecognizedText.Bounds(left, top, right, bottom);
+    return new RecognizedText.Line(
+        text,
+        bounds,
+        Collections.singletonList(new RecognizedText.Element(text, bounds)));
+  }
+}
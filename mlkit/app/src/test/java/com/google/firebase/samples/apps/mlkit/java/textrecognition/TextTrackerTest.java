@@ -0,0 +1,131 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.textrecognition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/** Unit tests for {@link TextTracker}. */
+public class TextTrackerTest {
+
+  @Test
+  public void endFrame_sameText_isAddedOnceThenUnchanged() {
+    TextTracker<String> tracker = new TextTracker<>();
+
+    tracker.beginFrame();
+    TextTracker.TrackedElement<String> hello = tracker.addElement("a", "Hello", 0, 0, 100, 20);
+    TextTracker.TrackedElement<String> world = tracker.addElement("b", "world", 110, 0, 200, 20);
+    TextTracker.Diff<String> diff = tracker.endFrame();
+    assertEquals(2, diff.getAdded().size());
+
+    tracker.beginFrame();
+    assertSame(hello, tracker.addElement("c", "Hello", 1, 0, 101, 20));
+    assertSame(world, tracker.addElement("d", "world", 110, 1, 200, 21));
+    diff = tracker.endFrame();
+
+    assertTrue(diff.isEmpty());
+    // Unchanged elements keep the payload they were last changed with.
+    assertEquals("a", hello.getPayload());
+    assertEquals(0, hello.getLeft());
+  }
+
+  @Test
+  public void endFrame_textOrPositionChanged_isChangedWithSameId() {
+    TextTracker<String> tracker = new TextTracker<>();
+    tracker.beginFrame();
+    TextTracker.TrackedElement<String> word = tracker.addElement("a", "c1ass", 0, 0, 100, 20);
+    tracker.endFrame();
+
+    tracker.beginFrame();
+    assertSame(word, tracker.addElement("b", "class", 0, 0, 100, 20));
+    TextTracker.Diff<String> diff = tracker.endFrame();
+    assertEquals(1, diff.getChanged().size());
+    assertEquals("class", word.getText());
+    assertEquals("b", word.getPayload());
+
+    tracker.beginFrame();
+    // Still overlapping enough to match, but too far to count as the same position.
+    assertSame(word, tracker.addElement("c", "class", 15, 0, 115, 20));
+    diff = tracker.endFrame();
+    assertEquals(1, diff.getChanged().size());
+    assertEquals(15, word.getLeft());
+    assertEquals(1, word.getId());
+  }
+
+  @Test
+  public void addElement_prefersTheSameText() {
+    TextTracker<String> tracker = new TextTracker<>();
+    tracker.beginFrame();
+    TextTracker.TrackedElement<String> first = tracker.addElement("a", "foo", 0, 0, 100, 20);
+    TextTracker.TrackedElement<String> second = tracker.addElement("b", "bar", 10, 0, 110, 20);
+    tracker.endFrame();
+
+    tracker.beginFrame();
+    // Overlaps "foo" best, but has the text of "bar".
+    assertSame(second, tracker.addElement("c", "bar", 2, 0, 102, 20));
+    assertSame(first, tracker.addElement("d", "foo", 2, 0, 102, 20));
+    tracker.endFrame();
+  }
+
+  @Test
+  public void endFrame_missingElement_isRemovedAfterMaxMissedFrames() {
+    TextTracker<String> tracker = new TextTracker<>(0.5f, 0.9f, 1);
+    tracker.beginFrame();
+    TextTracker.TrackedElement<String> word = tracker.addElement("a", "gone", 0, 0, 100, 20);
+    tracker.endFrame();
+
+    tracker.beginFrame();
+    TextTracker.Diff<String> diff = tracker.endFrame();
+    assertTrue(diff.isEmpty());
+    assertEquals(1, tracker.getElements().size());
+    assertEquals(1, word.getMissedFrames());
+
+    tracker.beginFrame();
+    diff = tracker.endFrame();
+    assertEquals(1, diff.getRemoved().size());
+    assertSame(word, diff.getRemoved().get(0));
+    assertEquals(0, tracker.getElements().size());
+
+    tracker.beginFrame();
+    TextTracker.TrackedElement<String> again = tracker.addElement("b", "gone", 0, 0, 100, 20);
+    diff = tracker.endFrame();
+    assertNotSame(word, again);
+    assertEquals(1, diff.getAdded().size());
+  }
+
+  @Test
+  public void listener_isOnlyToldAboutChanges() {
+    TextTracker<String> tracker = new TextTracker<>();
+    final int[] calls = new int[1];
+    tracker.setListener(
+        new TextTracker.Listener<String>() {
+          @Override
+          public void onTextChanged(TextTracker.Diff<String> diff) {
+            calls[0]++;
+          }
+        });
+
+    for (int frame = 0; frame < 5; frame++) {
+      tracker.beginFrame();
+      tracker.addElement("a", "static", 0, 0, 100, 20);
+      tracker.endFrame();
+    }
+
+    assertEquals(1, calls[0]);
+  }
+}